@@ -46,4 +46,18 @@ public @interface Options {
   String keyProperty() default "id";
 
   String keyColumn() default "";
+
+  /**
+   * The {@link org.apache.ibatis.session.ConnectionPriority} this statement waits for a pooled
+   * connection with, DEFAULT to use the priority of the calling thread.
+   */
+  Priority priority() default Priority.DEFAULT;
+
+  /**
+   * The constants of {@link org.apache.ibatis.session.ConnectionPriority} plus DEFAULT,
+   * which an annotation cannot express with null.
+   */
+  enum Priority {
+    DEFAULT, HIGH, NORMAL, LOW
+  }
 }
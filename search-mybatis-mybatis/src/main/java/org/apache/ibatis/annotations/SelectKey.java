@@ -20,6 +20,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import org.apache.ibatis.executor.keygen.SequenceOptimizer;
 import org.apache.ibatis.mapping.StatementType;
 
 /**
@@ -39,4 +40,12 @@ public @interface SelectKey {
   Class<?> resultType();
 
   StatementType statementType() default StatementType.PREPARED;
+
+  /**
+   * Number of keys obtained from each execution of the statement, handed out from memory
+   * to the following inserts. Only allowed with before=true and a single keyProperty.
+   */
+  int allocationSize() default 1;
+
+  SequenceOptimizer optimizer() default SequenceOptimizer.POOLED;
 }
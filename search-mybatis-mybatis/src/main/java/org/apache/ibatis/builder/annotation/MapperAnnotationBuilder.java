@@ -61,6 +61,7 @@ import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
@@ -77,6 +78,7 @@ import org.apache.ibatis.mapping.SqlSource;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ConnectionPriority;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.type.JdbcType;
@@ -258,6 +260,7 @@ public class MapperAnnotationBuilder {
       final String mappedStatementId = type.getName() + "." + method.getName();
       Integer fetchSize = null;
       Integer timeout = null;
+      ConnectionPriority priority = null;
       StatementType statementType = StatementType.PREPARED;
       ResultSetType resultSetType = ResultSetType.FORWARD_ONLY;
       SqlCommandType sqlCommandType = getSqlCommandType(method);
@@ -290,6 +293,7 @@ public class MapperAnnotationBuilder {
         useCache = options.useCache();
         fetchSize = options.fetchSize() > -1 || options.fetchSize() == Integer.MIN_VALUE ? options.fetchSize() : null; //issue #348
         timeout = options.timeout() > -1 ? options.timeout() : null;
+        priority = options.priority() != Options.Priority.DEFAULT ? ConnectionPriority.valueOf(options.priority().name()) : null;
         statementType = options.statementType();
         resultSetType = options.resultSetType();
       }
@@ -334,7 +338,8 @@ public class MapperAnnotationBuilder {
           null,
           languageDriver,
           // ResultSets
-          null);
+          null,
+          priority);
     }
   }
   
@@ -371,7 +376,7 @@ public class MapperAnnotationBuilder {
       if (rt != null) {
         returnType = rt.value();
       } 
-    } else if (Collection.class.isAssignableFrom(returnType)) {
+    } else if (Collection.class.isAssignableFrom(returnType) || Cursor.class.isAssignableFrom(returnType)) {
       Type returnTypeParameter = method.getGenericReturnType();
       if (returnTypeParameter instanceof ParameterizedType) {
         Type[] actualTypeArguments = ((ParameterizedType) returnTypeParameter).getActualTypeArguments();
@@ -579,6 +584,10 @@ public class MapperAnnotationBuilder {
     String keyProperty = selectKeyAnnotation.keyProperty();
     String keyColumn = selectKeyAnnotation.keyColumn();
     boolean executeBefore = selectKeyAnnotation.before();
+    int allocationSize = selectKeyAnnotation.allocationSize();
+    if (allocationSize > 1 && (!executeBefore || keyProperty.contains(","))) {
+      throw new BuilderException("The @SelectKey of '" + baseStatementId + "' can only use an allocationSize with before=true and a single keyProperty.");
+    }
 
     // defaults
     boolean useCache = false;
@@ -600,7 +609,7 @@ public class MapperAnnotationBuilder {
     id = assistant.applyCurrentNamespace(id, false);
 
     MappedStatement keyStatement = configuration.getMappedStatement(id, false);
-    SelectKeyGenerator answer = new SelectKeyGenerator(keyStatement, executeBefore);
+    SelectKeyGenerator answer = new SelectKeyGenerator(keyStatement, executeBefore, allocationSize, selectKeyAnnotation.optimizer());
     configuration.addKeyGenerator(id, answer);
     return answer;
   }
@@ -24,6 +24,7 @@ import javax.sql.DataSource;
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.datasource.TenantDataSource;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.io.Resources;
@@ -238,16 +239,31 @@ public class XMLConfigBuilder extends BaseBuilder {
         }
       }
       configuration.setAutoMappingBehavior(AutoMappingBehavior.valueOf(props.getProperty("autoMappingBehavior", "PARTIAL")));
+      configuration.setRowMappersEnabled(booleanValueOf(props.getProperty("rowMappersEnabled"), false));
       configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
       configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
       configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
       configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), true));
+      configuration.setLazyLoadingBatchSize(integerValueOf(props.getProperty("lazyLoadingBatchSize"), 0));
       configuration.setMultipleResultSetsEnabled(booleanValueOf(props.getProperty("multipleResultSetsEnabled"), true));
       configuration.setUseColumnLabel(booleanValueOf(props.getProperty("useColumnLabel"), true));
       configuration.setUseGeneratedKeys(booleanValueOf(props.getProperty("useGeneratedKeys"), false));
       configuration.setDefaultExecutorType(ExecutorType.valueOf(props.getProperty("defaultExecutorType", "SIMPLE")));
       configuration.setDefaultStatementTimeout(integerValueOf(props.getProperty("defaultStatementTimeout"), null));
       configuration.setDefaultFetchSize(integerValueOf(props.getProperty("defaultFetchSize"), null));
+      configuration.setAdaptiveFetchSizeEnabled(booleanValueOf(props.getProperty("adaptiveFetchSizeEnabled"), false));
+      configuration.getAdaptiveFetchSize().setMinFetchSize(integerValueOf(props.getProperty("adaptiveFetchSizeMin"), 10));
+      configuration.getAdaptiveFetchSize().setMaxFetchSize(integerValueOf(props.getProperty("adaptiveFetchSizeMax"), 1000));
+      configuration.setBatchFlushSize(integerValueOf(props.getProperty("batchFlushSize"), 0));
+      configuration.setBatchFlushBytes(longValueOf(props.getProperty("batchFlushBytes"), 0L));
+      configuration.setBatchKeepParameterObjects(booleanValueOf(props.getProperty("batchKeepParameterObjects"), true));
+      configuration.setBatchRegroupInserts(booleanValueOf(props.getProperty("batchRegroupInserts"), false));
+      configuration.setMultiRowInsertChunkSize(integerValueOf(props.getProperty("multiRowInsertChunkSize"), 0));
+      multiRowInsertChunkSizesElement(props.getProperty("multiRowInsertChunkSizes"));
+      configuration.setNestedSelectBatchSize(integerValueOf(props.getProperty("nestedSelectBatchSize"), 0));
+      configuration.setMultiStatementSelectsEnabled(booleanValueOf(props.getProperty("multiStatementSelectsEnabled"), false));
+      configuration.setQueryCoalescingEnabled(booleanValueOf(props.getProperty("queryCoalescingEnabled"), false));
+      configuration.setQueryCoalescingTimeout(integerValueOf(props.getProperty("queryCoalescingTimeout"), null));
       configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
       configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
       configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
@@ -295,6 +311,22 @@ public class XMLConfigBuilder extends BaseBuilder {
     }
   }
 
+  /**
+   * 解析形如 mysql:1000,sqlserver:200 的按databaseId设置的多行insert块大小
+   */
+  private void multiRowInsertChunkSizesElement(String value) {
+    if (value == null) {
+      return;
+    }
+    for (String entry : value.split(",")) {
+      String[] pair = entry.split(":");
+      if (pair.length != 2) {
+        throw new BuilderException("Invalid multiRowInsertChunkSizes entry '" + entry + "'.  Expected databaseId:chunkSize.");
+      }
+      configuration.setMultiRowInsertChunkSize(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+    }
+  }
+
   private void databaseIdProviderElement(XNode context) throws Exception {
     DatabaseIdProvider databaseIdProvider = null;
     if (context != null) {
@@ -309,7 +341,16 @@ public class XMLConfigBuilder extends BaseBuilder {
     }
     Environment environment = configuration.getEnvironment();
     if (environment != null && databaseIdProvider != null) {
-      String databaseId = databaseIdProvider.getDatabaseId(environment.getDataSource());
+      DataSource dataSource = environment.getDataSource();
+      if (dataSource instanceof TenantDataSource) {
+        // 启动时通常还没有设置租户，各租户的数据库相同，取任意一个租户的数据源即可
+        dataSource = ((TenantDataSource) dataSource).getAnyTenantDataSource();
+        if (dataSource == null) {
+          throw new BuilderException("Cannot get the databaseId of a tenant DataSource without tenants. "
+              + "Register one or set the tenant before building the configuration.");
+        }
+      }
+      String databaseId = databaseIdProvider.getDatabaseId(dataSource);
       configuration.setDatabaseId(databaseId);
     }
   }
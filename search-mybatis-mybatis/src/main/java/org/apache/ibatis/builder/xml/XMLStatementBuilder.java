@@ -19,11 +19,13 @@ import java.util.List;
 import java.util.Locale;
 
 import org.apache.ibatis.builder.BaseBuilder;
+import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
+import org.apache.ibatis.executor.keygen.SequenceOptimizer;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ResultSetType;
 import org.apache.ibatis.mapping.SqlCommandType;
@@ -32,6 +34,7 @@ import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.parsing.XNode;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ConnectionPriority;
 
 /**
  * @author Clinton Begin
@@ -63,6 +66,7 @@ public class XMLStatementBuilder extends BaseBuilder {
 
     Integer fetchSize = context.getIntAttribute("fetchSize");
     Integer timeout = context.getIntAttribute("timeout");
+    ConnectionPriority priority = resolveConnectionPriority(context.getStringAttribute("priority"));
     String parameterMap = context.getStringAttribute("parameterMap");
     String parameterType = context.getStringAttribute("parameterType");
     Class<?> parameterTypeClass = resolveClass(parameterType);
@@ -109,7 +113,7 @@ public class XMLStatementBuilder extends BaseBuilder {
     builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
         fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
         resultSetTypeEnum, flushCache, useCache, resultOrdered, 
-        keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets);
+        keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets, priority);
   }
 
   private void processSelectKeyNodes(String id, Class<?> parameterTypeClass, LanguageDriver langDriver) {
@@ -138,6 +142,11 @@ public class XMLStatementBuilder extends BaseBuilder {
     String keyProperty = nodeToHandle.getStringAttribute("keyProperty");
     String keyColumn = nodeToHandle.getStringAttribute("keyColumn");
     boolean executeBefore = "BEFORE".equals(nodeToHandle.getStringAttribute("order", "AFTER"));
+    int allocationSize = nodeToHandle.getIntAttribute("allocationSize", 1);
+    SequenceOptimizer optimizer = SequenceOptimizer.valueOf(nodeToHandle.getStringAttribute("optimizer", SequenceOptimizer.POOLED.toString()));
+    if (allocationSize > 1 && (!executeBefore || keyProperty == null || keyProperty.contains(","))) {
+      throw new BuilderException("The selectKey of '" + id + "' can only use an allocationSize with order BEFORE and a single keyProperty.");
+    }
 
     //defaults
     boolean useCache = false;
@@ -161,7 +170,7 @@ public class XMLStatementBuilder extends BaseBuilder {
     id = builderAssistant.applyCurrentNamespace(id, false);
 
     MappedStatement keyStatement = configuration.getMappedStatement(id, false);
-    configuration.addKeyGenerator(id, new SelectKeyGenerator(keyStatement, executeBefore));
+    configuration.addKeyGenerator(id, new SelectKeyGenerator(keyStatement, executeBefore, allocationSize, optimizer));
   }
 
   private void removeSelectKeyNodes(List<XNode> selectKeyNodes) {
@@ -0,0 +1,47 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor;
+
+import java.io.Closeable;
+
+/**
+ * 游标：按需从数据库逐行读取并映射结果，内存占用与结果集大小无关。
+ * 游标在遍历完毕、或调用 {@link #close()}、或所在 SqlSession 关闭时释放 ResultSet 与 Statement。
+ * <p>
+ * 游标只能遍历一次，且必须在打开它的 SqlSession 关闭之前使用。
+ * 对于包含嵌套结果映射（collection）的语句，需要 resultOrdered="true" 并按父对象的id排序，
+ * 否则父对象可能在其全部子行读取之前就被返回。
+ *
+ * @param <T> 每一行映射出的对象类型
+ */
+public interface Cursor<T> extends Closeable, Iterable<T> {
+
+  /**
+   * @return 游标已开始读取数据且尚未关闭时为 true
+   */
+  boolean isOpen();
+
+  /**
+   * @return 所有结果都已读取完毕时为 true
+   */
+  boolean isConsumed();
+
+  /**
+   * 获取当前元素的下标，从0开始；尚未读取任何元素时为 -1
+   */
+  int getCurrentIndex();
+
+}
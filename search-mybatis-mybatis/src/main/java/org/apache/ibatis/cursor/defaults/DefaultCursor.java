@@ -0,0 +1,218 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetWrapper;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * 默认的游标实现：每次迭代只让 {@link DefaultResultSetHandler} 映射一个对象，
+ * 读完最后一行或被关闭时关闭 ResultSet 以及产生它的 Statement。
+ * <p>
+ * 本类不是线程安全的。
+ *
+ * @author Clinton Begin
+ */
+public class DefaultCursor<T> implements Cursor<T> {
+
+  private final DefaultResultSetHandler resultSetHandler;
+  private final ResultMap resultMap;
+  private final ResultSetWrapper rsw;
+  private final RowBounds rowBounds;
+  private final ObjectWrapperResultHandler<T> objectWrapperResultHandler = new ObjectWrapperResultHandler<T>();
+
+  private final CursorIterator cursorIterator = new CursorIterator();
+  private boolean iteratorRetrieved;
+
+  private CursorStatus status = CursorStatus.CREATED;
+  private int indexWithRowBound = -1;
+
+  private enum CursorStatus {
+    /** 尚未开始读取 */
+    CREATED,
+    /** 正在读取 */
+    OPEN,
+    /** 被调用方关闭，结果可能未读完 */
+    CLOSED,
+    /** 结果已全部读完 */
+    CONSUMED
+  }
+
+  public DefaultCursor(DefaultResultSetHandler resultSetHandler, ResultMap resultMap, ResultSetWrapper rsw, RowBounds rowBounds) {
+    this.resultSetHandler = resultSetHandler;
+    this.resultMap = resultMap;
+    this.rsw = rsw;
+    this.rowBounds = rowBounds;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return status == CursorStatus.OPEN;
+  }
+
+  @Override
+  public boolean isConsumed() {
+    return status == CursorStatus.CONSUMED;
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return rowBounds.getOffset() + cursorIterator.iteratorIndex;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    if (iteratorRetrieved) {
+      throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+    }
+    iteratorRetrieved = true;
+    return cursorIterator;
+  }
+
+  @Override
+  public void close() {
+    if (isClosed()) {
+      return;
+    }
+    closeResultSetAndStatement();
+    status = CursorStatus.CLOSED;
+  }
+
+  protected T fetchNextUsingRowBound() {
+    if (indexWithRowBound + 1 >= rowBounds.getLimit()) {
+      // 已经达到 RowBounds 的 limit，剩下的行不再读取
+      close();
+      return null;
+    }
+    T result = fetchNextObjectFromDatabase();
+    if (result != null) {
+      indexWithRowBound++;
+    }
+    return result;
+  }
+
+  protected T fetchNextObjectFromDatabase() {
+    if (isClosed()) {
+      return null;
+    }
+    T next;
+    try {
+      do {
+        // offset 只在第一次读取时跳过
+        RowBounds bounds = status == CursorStatus.CREATED
+            ? new RowBounds(rowBounds.getOffset(), RowBounds.NO_ROW_LIMIT) : RowBounds.DEFAULT;
+        status = CursorStatus.OPEN;
+        objectWrapperResultHandler.fetched = false;
+        resultSetHandler.handleRowValues(rsw, resultMap, objectWrapperResultHandler, bounds, null);
+        next = objectWrapperResultHandler.result;
+        objectWrapperResultHandler.result = null;
+        // 所有列都为空的行映射为 null，跳过它继续读取
+      } while (next == null && objectWrapperResultHandler.fetched);
+    } catch (SQLException e) {
+      throw new PersistenceException("Error fetching next row from cursor.  Cause: " + e, e);
+    }
+
+    if (next == null) {
+      closeResultSetAndStatement();
+      status = CursorStatus.CONSUMED;
+    }
+    return next;
+  }
+
+  private boolean isClosed() {
+    return status == CursorStatus.CLOSED || status == CursorStatus.CONSUMED;
+  }
+
+  private void closeResultSetAndStatement() {
+    ResultSet rs = rsw.getResultSet();
+    try {
+      Statement statement = rs.getStatement();
+      rs.close();
+      if (statement != null) {
+        statement.close();
+      }
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+  private static class ObjectWrapperResultHandler<T> implements ResultHandler<T> {
+
+    private T result;
+    private boolean fetched;
+
+    @Override
+    public void handleResult(ResultContext<? extends T> context) {
+      this.result = context.getResultObject();
+      this.fetched = true;
+      // 每次只取一个对象
+      context.stop();
+    }
+  }
+
+  private class CursorIterator implements Iterator<T> {
+
+    /**
+     * 预读的下一个对象，hasNext() 与 next() 共用
+     */
+    private T object;
+
+    /**
+     * 已经通过 next() 返回的对象的下标
+     */
+    private int iteratorIndex = -1;
+
+    @Override
+    public boolean hasNext() {
+      if (object == null) {
+        object = fetchNextUsingRowBound();
+      }
+      return object != null;
+    }
+
+    @Override
+    public T next() {
+      T next = object;
+      if (next == null) {
+        next = fetchNextUsingRowBound();
+      }
+      if (next != null) {
+        object = null;
+        iteratorIndex++;
+        return next;
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Cannot remove element from Cursor");
+    }
+  }
+
+}
@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource;
+
+import javax.sql.DataSource;
+
+/**
+ * A DataSource that has no database of its own but hands out the connections of the tenant
+ * resolved for the calling thread, such as {@link org.apache.ibatis.datasource.pooled.PooledDataSourceGroup}.
+ * <p>
+ * Code that must know which database its connections come from resolves the tenant's DataSource once
+ * and uses that instead.
+ *
+ * @author Clinton Begin
+ */
+public interface TenantDataSource extends DataSource {
+
+  /*
+   * Gets the DataSource of the tenant resolved for the calling thread
+   */
+  DataSource getTenantDataSource();
+
+  /*
+   * Gets a DataSource to read database metadata from, which is the same for every tenant:
+   * the current tenant's if one is set, otherwise any known tenant's
+   *
+   * @return the DataSource, or null if no tenant is set and none is known
+   */
+  DataSource getAnyTenantDataSource();
+
+}
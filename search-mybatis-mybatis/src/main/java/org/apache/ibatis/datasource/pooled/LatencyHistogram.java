@@ -0,0 +1,134 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in microseconds, with fixed roughly logarithmic buckets
+ * from 100us to 10s. Percentiles are reported as the upper bound of the bucket they fall in.
+ *
+ * @author Clinton Begin
+ */
+public class LatencyHistogram {
+
+  private static final long[] BUCKET_BOUNDS = new long[] {
+      100L, 500L, 1000L, 5000L, 10000L, 50000L, 100000L, 500000L, 1000000L, 5000000L, 10000000L, Long.MAX_VALUE };
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long micros) {
+    if (micros < 0) {
+      micros = 0;
+    }
+    int i = 0;
+    while (micros > BUCKET_BOUNDS[i]) {
+      i++;
+    }
+    buckets.incrementAndGet(i);
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+    long current;
+    while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+      // retry
+    }
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKET_BOUNDS.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return new Snapshot(counts, count.get(), sum.get(), max.get());
+  }
+
+  /*
+   * Gets the upper bounds of the buckets in microseconds, the last one being Long.MAX_VALUE
+   */
+  public static long[] getBucketBounds() {
+    return BUCKET_BOUNDS.clone();
+  }
+
+  /**
+   * Immutable copy of a histogram at one point in time.
+   */
+  public static class Snapshot {
+
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    Snapshot(long[] bucketCounts, long count, long sum, long max) {
+      this.bucketCounts = bucketCounts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMean() {
+      return count == 0 ? 0 : sum / count;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long[] getBucketCounts() {
+      return bucketCounts.clone();
+    }
+
+    /*
+     * Gets the bucket bound below which the given fraction of the recorded values lie
+     *
+     * @param percentile - between 0 and 1, for example 0.99
+     * @return the bound in microseconds, capped at the maximum recorded value
+     */
+    public long getPercentile(double percentile) {
+      long total = 0;
+      for (long bucketCount : bucketCounts) {
+        total += bucketCount;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(percentile * total);
+      long seen = 0;
+      for (int i = 0; i < bucketCounts.length; i++) {
+        seen += bucketCounts[i];
+        if (seen >= rank) {
+          return Math.min(BUCKET_BOUNDS[i], max);
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + count + " mean=" + getMean() + "us p50=" + getPercentile(0.5) + "us p99="
+          + getPercentile(0.99) + "us max=" + max + "us";
+    }
+  }
+
+}
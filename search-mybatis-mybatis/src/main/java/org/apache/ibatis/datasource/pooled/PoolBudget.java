@@ -0,0 +1,37 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * A limit on physical connections shared by several pools, see {@link PooledDataSourceGroup}.
+ *
+ * @author Clinton Begin
+ */
+interface PoolBudget {
+
+  /*
+   * Takes room for one more physical connection, freeing some elsewhere if the budget allows it
+   *
+   * @return false if the shared limit is reached
+   */
+  boolean acquire();
+
+  /*
+   * Gives back the room of a closed physical connection
+   */
+  void release();
+
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Periodically runs the maintenance of one {@link PooledDataSource} (eviction, validation
+ * and refill of idle connections) on a single daemon thread shared by all pools.
+ * <p>
+ * Only a weak reference to the data source is kept, so an abandoned pool can still be
+ * garbage collected; its task cancels itself on the next run.
+ *
+ * @author Clinton Begin
+ */
+class PoolHousekeeper implements Runnable {
+
+  private static final Log log = LogFactory.getLog(PoolHousekeeper.class);
+
+  private static ScheduledExecutorService scheduler;
+
+  private final WeakReference<PooledDataSource> dataSource;
+  private volatile ScheduledFuture<?> future;
+
+  private PoolHousekeeper(PooledDataSource dataSource) {
+    this.dataSource = new WeakReference<PooledDataSource>(dataSource);
+  }
+
+  static PoolHousekeeper schedule(PooledDataSource dataSource, long interval) {
+    PoolHousekeeper housekeeper = new PoolHousekeeper(dataSource);
+    housekeeper.future = getScheduler().scheduleWithFixedDelay(housekeeper, interval, interval, TimeUnit.MILLISECONDS);
+    return housekeeper;
+  }
+
+  void cancel() {
+    ScheduledFuture<?> scheduled = future;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+
+  @Override
+  public void run() {
+    PooledDataSource ds = dataSource.get();
+    if (ds == null) {
+      cancel();
+      return;
+    }
+    try {
+      ds.runHousekeeping();
+    } catch (Throwable t) {
+      // never let an exception kill the periodic task
+      log.warn("PooledDataSource housekeeping failed: " + t.getMessage());
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "mybatis-pool-housekeeper");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      scheduler = executor;
+    }
+    return scheduler;
+  }
+
+}
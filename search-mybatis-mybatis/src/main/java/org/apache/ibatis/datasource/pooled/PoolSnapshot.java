@@ -0,0 +1,142 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * Immutable copy of the statistics of a {@link PooledDataSource}, taken without blocking the pool.
+ * The counters are read one after the other, so they may be off by the few requests that
+ * completed while the snapshot was taken.
+ *
+ * @author Clinton Begin
+ */
+public class PoolSnapshot {
+
+  private final long timestamp;
+  private final int activeConnectionCount;
+  private final int idleConnectionCount;
+  private final int waitingThreadCount;
+  private final long requestCount;
+  private final long averageRequestTime;
+  private final long averageCheckoutTime;
+  private final long hadToWaitCount;
+  private final long averageWaitTime;
+  private final long badConnectionCount;
+  private final long claimedOverdueConnectionCount;
+  private final long leakedConnectionCount;
+  private final long statementCacheHitCount;
+  private final long statementCacheMissCount;
+  private final LatencyHistogram.Snapshot acquireTime;
+  private final LatencyHistogram.Snapshot leaseTime;
+  private final LatencyHistogram.Snapshot validationTime;
+
+  PoolSnapshot(PoolState state) {
+    this.timestamp = System.currentTimeMillis();
+    this.activeConnectionCount = state.getActiveConnectionCount();
+    this.idleConnectionCount = state.getIdleConnectionCount();
+    this.waitingThreadCount = state.getWaitingThreadCount();
+    this.requestCount = state.getRequestCount();
+    this.averageRequestTime = state.getAverageRequestTime();
+    this.averageCheckoutTime = state.getAverageCheckoutTime();
+    this.hadToWaitCount = state.getHadToWaitCount();
+    this.averageWaitTime = state.getAverageWaitTime();
+    this.badConnectionCount = state.getBadConnectionCount();
+    this.claimedOverdueConnectionCount = state.getClaimedOverdueConnectionCount();
+    this.leakedConnectionCount = state.getLeakedConnectionCount();
+    this.statementCacheHitCount = state.getStatementCacheHitCount();
+    this.statementCacheMissCount = state.getStatementCacheMissCount();
+    this.acquireTime = state.acquireTimeHistogram.snapshot();
+    this.leaseTime = state.leaseTimeHistogram.snapshot();
+    this.validationTime = state.validationTimeHistogram.snapshot();
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public int getActiveConnectionCount() {
+    return activeConnectionCount;
+  }
+
+  public int getIdleConnectionCount() {
+    return idleConnectionCount;
+  }
+
+  public int getWaitingThreadCount() {
+    return waitingThreadCount;
+  }
+
+  public long getRequestCount() {
+    return requestCount;
+  }
+
+  public long getAverageRequestTime() {
+    return averageRequestTime;
+  }
+
+  public long getAverageCheckoutTime() {
+    return averageCheckoutTime;
+  }
+
+  public long getHadToWaitCount() {
+    return hadToWaitCount;
+  }
+
+  public long getAverageWaitTime() {
+    return averageWaitTime;
+  }
+
+  public long getBadConnectionCount() {
+    return badConnectionCount;
+  }
+
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnectionCount;
+  }
+
+  public long getLeakedConnectionCount() {
+    return leakedConnectionCount;
+  }
+
+  public long getStatementCacheHitCount() {
+    return statementCacheHitCount;
+  }
+
+  public long getStatementCacheMissCount() {
+    return statementCacheMissCount;
+  }
+
+  /*
+   * Time taken by getConnection, in microseconds
+   */
+  public LatencyHistogram.Snapshot getAcquireTime() {
+    return acquireTime;
+  }
+
+  /*
+   * Time connections were checked out before being returned, in microseconds
+   */
+  public LatencyHistogram.Snapshot getLeaseTime() {
+    return leaseTime;
+  }
+
+  /*
+   * Time taken to validate connections, in microseconds
+   */
+  public LatencyHistogram.Snapshot getValidationTime() {
+    return validationTime;
+  }
+
+}
@@ -15,96 +15,208 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.session.ConnectionPriority;
 
 /**
  * PooledDataSource将java.sql.Connection对象包裹成PooledConnection对象放到了PoolState类型的容器中维护。
  *  MyBatis将连接池中的PooledConnection分为两种状态： 空闲状态（idle）和活动状态(active)，
- *  这两种状态的PooledConnection对象分别被存储到PoolState容器内的idleConnections和activeConnections两个List集合中：
+ *  这两种状态的PooledConnection对象都保存在PoolState的connections容器中，通过各自的状态区分。
+ *  所有统计计数器都是原子变量，读取时不需要获取连接池的锁。
  * @author Clinton Begin
  */
-public class PoolState {
+public class PoolState implements PoolStateMXBean {
 
   protected PooledDataSource dataSource;
 
   /**
-   * 空闲(idle)状态PooledConnection对象被放置到此集合中，表示当前闲置的没有被使用的PooledConnection集合，
-   * 调用PooledDataSource的getConnection()方法时，会优先从此集合中取PooledConnection对象。
-   * 当用完一个java.sql.Connection对象时，MyBatis会将其包裹成PooledConnection对象放到此集合中。
-   */
-  protected final List<PooledConnection> idleConnections = new ArrayList<PooledConnection>();
-  /**
-   * 活动(active)状态的PooledConnection对象被放置到名为activeConnections的ArrayList中，表示当前正在被使用的PooledConnection集合，
-   * 调用PooledDataSource的getConnection()方法时，会优先从idleConnections集合中取PooledConnection对象,
-   * 如果没有，则看此集合是否已满，如果未满，PooledDataSource会创建出一个PooledConnection，添加到此集合中，并返回。
+   * 连接池中所有的PooledConnection，包括空闲(idle)状态和活动(active)状态的连接。
+   * 调用PooledDataSource的getConnection()方法时，会通过CAS从中认领一个空闲的PooledConnection对象，
+   * 如果没有，且连接总数未满，PooledDataSource会创建出一个PooledConnection，以活动状态放入此容器中，并返回。
    */
-  protected final List<PooledConnection> activeConnections = new ArrayList<PooledConnection>();
-  protected long requestCount = 0;
-  protected long accumulatedRequestTime = 0;
-  protected long accumulatedCheckoutTime = 0;
-  protected long claimedOverdueConnectionCount = 0;
-  protected long accumulatedCheckoutTimeOfOverdueConnections = 0;
-  protected long accumulatedWaitTime = 0;
-  protected long hadToWaitCount = 0;
-  protected long badConnectionCount = 0;
+  protected final PooledConnectionBag connections = new PooledConnectionBag();
+  protected final AtomicLong requestCount = new AtomicLong();
+  protected final AtomicLong accumulatedRequestTime = new AtomicLong();
+  protected final AtomicLong accumulatedCheckoutTime = new AtomicLong();
+  protected final AtomicLong claimedOverdueConnectionCount = new AtomicLong();
+  protected final AtomicLong accumulatedCheckoutTimeOfOverdueConnections = new AtomicLong();
+  protected final AtomicLong accumulatedWaitTime = new AtomicLong();
+  protected final AtomicLong hadToWaitCount = new AtomicLong();
+  protected final AtomicLong badConnectionCount = new AtomicLong();
+  protected final AtomicLong leakedConnectionCount = new AtomicLong();
+  protected final AtomicLong rejectedRequestCount = new AtomicLong();
+  protected final AtomicLong statementCacheHitCount = new AtomicLong();
+  protected final AtomicLong statementCacheMissCount = new AtomicLong();
+  protected final AtomicLong warmupTime = new AtomicLong();
+  protected final AtomicLong warmupConnectionCount = new AtomicLong();
+  protected final LatencyHistogram acquireTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram leaseTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram validationTimeHistogram = new LatencyHistogram();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  @Override
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  @Override
+  public long getAverageRequestTime() {
+    long requests = requestCount.get();
+    return requests == 0 ? 0 : accumulatedRequestTime.get() / requests;
+  }
+
+  @Override
+  public long getAverageWaitTime() {
+    long waits = hadToWaitCount.get();
+    return waits == 0 ? 0 : accumulatedWaitTime.get() / waits;
+
+  }
+
+  @Override
+  public long getHadToWaitCount() {
+    return hadToWaitCount.get();
+  }
+
+  @Override
+  public long getBadConnectionCount() {
+    return badConnectionCount.get();
+  }
+
+  @Override
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnectionCount.get();
+  }
+
+  @Override
+  public long getAverageOverdueCheckoutTime() {
+    long claimed = claimedOverdueConnectionCount.get();
+    return claimed == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections.get() / claimed;
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  @Override
+  public long getAverageCheckoutTime() {
+    long requests = requestCount.get();
+    return requests == 0 ? 0 : accumulatedCheckoutTime.get() / requests;
+  }
+
+
+  /**
+   * 空闲连接数
+   * @return
+   */
+  @Override
+  public int getIdleConnectionCount() {
+    return connections.getIdleCount();
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  /**
+   * 活动连接数
+   * @return
+   */
+  @Override
+  public int getActiveConnectionCount() {
+    return connections.getCount(PooledConnectionBag.STATE_IN_USE);
+  }
 
+  /**
+   * 正在等待空闲连接的线程数
+   * @return
+   */
+  @Override
+  public int getWaitingThreadCount() {
+    return connections.getWaitingThreadCount();
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  /**
+   * 某优先级的等待队列已满而被立即拒绝的请求数
+   * @return
+   */
+  @Override
+  public long getRejectedRequestCount() {
+    return rejectedRequestCount.get();
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  /**
+   * 某优先级正在等待空闲连接的线程数
+   * @param priority
+   * @return
+   */
+  public int getWaitingThreadCount(ConnectionPriority priority) {
+    return connections.getWaitingThreadCount(priority.ordinal());
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  /**
+   * 检出后超过泄漏检测阈值仍未归还的连接数
+   * @return
+   */
+  @Override
+  public long getLeakedConnectionCount() {
+    return leakedConnectionCount.get();
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  /**
+   * 从PreparedStatement缓存中直接取到语句的次数
+   * @return
+   */
+  @Override
+  public long getStatementCacheHitCount() {
+    return statementCacheHitCount.get();
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  /**
+   * PreparedStatement缓存未命中，需要重新预编译的次数
+   * @return
+   */
+  @Override
+  public long getStatementCacheMissCount() {
+    return statementCacheMissCount.get();
   }
 
+  /**
+   * 启动预热耗时（毫秒）
+   * @return
+   */
+  public long getWarmupTime() {
+    return warmupTime.get();
+  }
 
   /**
-   * 最大空闲连接数
+   * 启动预热成功打开的连接数
    * @return
    */
-  public synchronized int getIdleConnectionCount() {
-    return idleConnections.size();
+  public long getWarmupConnectionCount() {
+    return warmupConnectionCount.get();
+  }
+
+  @Override
+  public long getAcquireTime99thPercentile() {
+    return acquireTimeHistogram.snapshot().getPercentile(0.99);
+  }
+
+  @Override
+  public long getLeaseTime99thPercentile() {
+    return leaseTimeHistogram.snapshot().getPercentile(0.99);
+  }
+
+  @Override
+  public long getValidationTime99thPercentile() {
+    return validationTimeHistogram.snapshot().getPercentile(0.99);
   }
 
   /**
-   * 最大活动连接数
+   * 获取当前统计信息的快照，不会阻塞连接池
    * @return
    */
-  public synchronized int getActiveConnectionCount() {
-    return activeConnections.size();
+  public PoolSnapshot snapshot() {
+    return new PoolSnapshot(this);
   }
 
   @Override
-  public synchronized String toString() {
+  public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("\n===CONFINGURATION==============================================");
     builder.append("\n jdbcDriver                     ").append(dataSource.getDriver());
@@ -118,6 +230,15 @@ public class PoolState {
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolValidationTimeout          ").append(dataSource.poolValidationTimeout);
+    builder.append("\n poolMinIdleConnections         ").append(dataSource.poolMinimumIdleConnections);
+    builder.append("\n poolMaxLifetime                ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolMaxIdleTime                ").append(dataSource.poolMaximumIdleTime);
+    builder.append("\n poolHousekeepingInterval       ").append(dataSource.poolHousekeepingInterval);
+    builder.append("\n poolLeakDetectionThreshold     ").append(dataSource.poolLeakDetectionThreshold);
+    builder.append("\n poolPreparedStatementCacheSize ").append(dataSource.poolPreparedStatementCacheSize);
+    builder.append("\n poolReservedHighPriority       ").append(dataSource.poolReservedHighPriorityConnections);
+    builder.append("\n poolReservedNormalPriority     ").append(dataSource.poolReservedNormalPriorityConnections);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -126,9 +247,19 @@ public class PoolState {
     builder.append("\n averageCheckoutTime            ").append(getAverageCheckoutTime());
     builder.append("\n claimedOverdue                 ").append(getClaimedOverdueConnectionCount());
     builder.append("\n averageOverdueCheckoutTime     ").append(getAverageOverdueCheckoutTime());
+    builder.append("\n waitingThreads                 ").append(getWaitingThreadCount());
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
+    builder.append("\n rejectedRequests               ").append(getRejectedRequestCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n leakedConnectionCount          ").append(getLeakedConnectionCount());
+    builder.append("\n warmupConnections              ").append(getWarmupConnectionCount());
+    builder.append("\n warmupTime                     ").append(getWarmupTime());
+    builder.append("\n statementCacheHits             ").append(getStatementCacheHitCount());
+    builder.append("\n statementCacheMisses           ").append(getStatementCacheMissCount());
+    builder.append("\n acquireTime                    ").append(acquireTimeHistogram.snapshot());
+    builder.append("\n leaseTime                      ").append(leaseTimeHistogram.snapshot());
+    builder.append("\n validationTime                 ").append(validationTimeHistogram.snapshot());
     builder.append("\n===============================================================");
     return builder.toString();
   }
@@ -0,0 +1,71 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * Management interface under which a {@link PoolState} is registered in JMX.
+ * Every attribute is read without taking a lock on the pool.
+ *
+ * @author Clinton Begin
+ */
+public interface PoolStateMXBean {
+
+  int getActiveConnectionCount();
+
+  int getIdleConnectionCount();
+
+  int getWaitingThreadCount();
+
+  long getRequestCount();
+
+  long getAverageRequestTime();
+
+  long getAverageWaitTime();
+
+  long getHadToWaitCount();
+
+  long getRejectedRequestCount();
+
+  long getBadConnectionCount();
+
+  long getClaimedOverdueConnectionCount();
+
+  long getAverageOverdueCheckoutTime();
+
+  long getAverageCheckoutTime();
+
+  long getLeakedConnectionCount();
+
+  long getStatementCacheHitCount();
+
+  long getStatementCacheMissCount();
+
+  /*
+   * 99th percentile of the time taken by getConnection, in microseconds
+   */
+  long getAcquireTime99thPercentile();
+
+  /*
+   * 99th percentile of the time connections were checked out, in microseconds
+   */
+  long getLeaseTime99thPercentile();
+
+  /*
+   * 99th percentile of the time taken to validate connections, in microseconds
+   */
+  long getValidationTime99thPercentile();
+
+}
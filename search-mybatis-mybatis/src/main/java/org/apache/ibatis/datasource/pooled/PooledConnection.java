@@ -19,7 +19,10 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ibatis.reflection.ExceptionUtil;
 
@@ -29,6 +32,7 @@ import org.apache.ibatis.reflection.ExceptionUtil;
 class PooledConnection implements InvocationHandler {
 
   private static final String CLOSE = "close";
+  private static final String PREPARE_STATEMENT = "prepareStatement";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
 
   private int hashCode = 0;
@@ -38,11 +42,22 @@ class PooledConnection implements InvocationHandler {
   private Connection realConnection;
   //代理自己的代理Connection 
   private Connection proxyConnection;
-  private long checkoutTimestamp;
+  private volatile long checkoutTimestamp;
   private long createdTimestamp;
-  private long lastUsedTimestamp;
+  private volatile long lastUsedTimestamp;
+  private volatile long lastValidatedTimestamp;
+  private long expiryTimestamp;
+  private Throwable checkoutTrace;
+  private volatile boolean leakReported;
+  //跨会话复用的PreparedStatement缓存，随真正的Connection对象在PooledConnection之间传递
+  private PreparedStatementCache statementCache;
+  //真正的Connection对象上已知的设置，同样随真正的Connection对象在PooledConnection之间传递
+  private TrackedState trackedState = new TrackedState();
   private int connectionTypeCode;
-  private boolean valid;
+  private volatile int priorityLane;
+  private volatile boolean valid;
+  private final AtomicInteger bagState = new AtomicInteger(PooledConnectionBag.STATE_NOT_IN_USE);
+  private volatile PooledConnectionBag.Entry bagEntry;
 
   /*
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in
@@ -66,6 +81,58 @@ class PooledConnection implements InvocationHandler {
    */
   public void invalidate() {
     valid = false;
+    PreparedStatementCache cache;
+    synchronized (this) {
+      cache = statementCache;
+      statementCache = null;
+    }
+    if (cache != null) {
+      cache.clear();
+    }
+  }
+
+  /*
+   * Takes over the statement cache and the known settings of the pooled connection that wrapped
+   * the same real connection before
+   *
+   * @param previous - the previous wrapper, which loses its cache
+   */
+  synchronized void adoptState(PooledConnection previous) {
+    synchronized (previous) {
+      this.statementCache = previous.statementCache;
+      previous.statementCache = null;
+    }
+    this.trackedState = previous.trackedState;
+  }
+
+  /*
+   * Rolls back whatever the last user left uncommitted. When state tracking is on, the
+   * getAutoCommit() and rollback() round trips are skipped if nothing can be pending.
+   */
+  void rollbackIfDirty() throws SQLException {
+    if (!dataSource.poolTrackConnectionState) {
+      if (!realConnection.getAutoCommit()) {
+        realConnection.rollback();
+      }
+      return;
+    }
+    TrackedState tracked = trackedState;
+    if (tracked.dirty && !Boolean.TRUE.equals(tracked.autoCommit)) {
+      if (tracked.autoCommit == null) {
+        tracked.autoCommit = realConnection.getAutoCommit();
+      }
+      if (!tracked.autoCommit) {
+        realConnection.rollback();
+      }
+    }
+    tracked.dirty = false;
+  }
+
+  private synchronized PreparedStatementCache getStatementCache(int maximumSize) {
+    if (statementCache == null) {
+      statementCache = new PreparedStatementCache(maximumSize, dataSource.getPoolState());
+    }
+    return statementCache;
   }
 
   /*
@@ -122,6 +189,19 @@ class PooledConnection implements InvocationHandler {
     this.connectionTypeCode = connectionTypeCode;
   }
 
+  /*
+   * Getter for the lane (the ConnectionPriority ordinal) of the request that checked the connection out
+   *
+   * @return the lane, 0 being the highest priority
+   */
+  int getPriorityLane() {
+    return priorityLane;
+  }
+
+  void setPriorityLane(int priorityLane) {
+    this.priorityLane = priorityLane;
+  }
+
   /*
    * Getter for the time that the connection was created
    *
@@ -167,6 +247,87 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - lastUsedTimestamp;
   }
 
+  /*
+   * Getter for the time that the connection was last validated
+   *
+   * @return - the timestamp
+   */
+  public long getLastValidatedTimestamp() {
+    return lastValidatedTimestamp;
+  }
+
+  /*
+   * Setter for the time that the connection was last validated
+   *
+   * @param lastValidatedTimestamp - the timestamp
+   */
+  public void setLastValidatedTimestamp(long lastValidatedTimestamp) {
+    this.lastValidatedTimestamp = lastValidatedTimestamp;
+  }
+
+  /*
+   * Getter for the time since this connection was last used or validated, whichever is later
+   *
+   * @return - the time since the connection was last known to be good
+   */
+  public long getTimeElapsedSinceLastValidation() {
+    return System.currentTimeMillis() - Math.max(lastUsedTimestamp, lastValidatedTimestamp);
+  }
+
+  /*
+   * Getter for the time after which the connection must be retired (0 if it never expires)
+   *
+   * @return - the timestamp
+   */
+  public long getExpiryTimestamp() {
+    return expiryTimestamp;
+  }
+
+  /*
+   * Setter for the time after which the connection must be retired
+   *
+   * @param expiryTimestamp - the timestamp, or 0 if the connection never expires
+   */
+  public void setExpiryTimestamp(long expiryTimestamp) {
+    this.expiryTimestamp = expiryTimestamp;
+  }
+
+  /*
+   * Checks if the connection has outlived its maximum lifetime
+   *
+   * @param now - the current time
+   * @return True if the connection must be retired
+   */
+  public boolean isExpired(long now) {
+    return expiryTimestamp > 0 && now >= expiryTimestamp;
+  }
+
+  /*
+   * Getter for the stack trace captured when the connection was checked out (null unless leak detection is on)
+   *
+   * @return the trace
+   */
+  public Throwable getCheckoutTrace() {
+    return checkoutTrace;
+  }
+
+  /*
+   * Setter for the stack trace captured when the connection was checked out
+   *
+   * @param checkoutTrace - the trace
+   */
+  public void setCheckoutTrace(Throwable checkoutTrace) {
+    this.checkoutTrace = checkoutTrace;
+  }
+
+  boolean isLeakReported() {
+    return leakReported;
+  }
+
+  void setLeakReported(boolean leakReported) {
+    this.leakReported = leakReported;
+  }
+
   /*
    * Getter for the age of the connection
    *
@@ -203,6 +364,34 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - checkoutTimestamp;
   }
 
+  /*
+   * Getter for the state of this connection inside the pool
+   *
+   * @return one of the PooledConnectionBag STATE_* constants
+   */
+  int getBagState() {
+    return bagState.get();
+  }
+
+  void setBagState(int state) {
+    bagState.set(state);
+  }
+
+  boolean compareAndSetBagState(int expect, int update) {
+    return bagState.compareAndSet(expect, update);
+  }
+
+  /*
+   * Getter for the place of the physical connection in the pool, shared by all the wrappers of it
+   */
+  PooledConnectionBag.Entry getBagEntry() {
+    return bagEntry;
+  }
+
+  void setBagEntry(PooledConnectionBag.Entry bagEntry) {
+    this.bagEntry = bagEntry;
+  }
+
   @Override
   public int hashCode() {
     return hashCode;
@@ -248,17 +437,209 @@ class PooledConnection implements InvocationHandler {
           // throw an SQLException instead of a Runtime
           checkConnection();
         }
-        return method.invoke(realConnection, args);
+        if (dataSource.poolTrackConnectionState && !Object.class.equals(method.getDeclaringClass())) {
+          Object result = trackedState.invoke(realConnection, method, args);
+          if (result != TrackedState.PASS) {
+            return result;
+          }
+        }
+        int cacheSize = dataSource.poolPreparedStatementCacheSize;
+        if (cacheSize > 0 && PREPARE_STATEMENT.equals(methodName)) {
+          PreparedStatement statement = getStatementCache(cacheSize).prepare(realConnection, proxyConnection, args);
+          if (statement != null) {
+            return trackStatement(method, statement);
+          }
+        }
+        return trackStatement(method, method.invoke(realConnection, args));
       } catch (Throwable t) {
         throw ExceptionUtil.unwrapThrowable(t);
       }
     }
   }
 
+  /*
+   * Wraps a statement created on this connection so that running it marks the connection dirty
+   */
+  private Object trackStatement(Method method, Object result) {
+    Class<?> type = method.getReturnType();
+    if (!dataSource.poolTrackConnectionState || !(result instanceof Statement) || !type.isInterface()) {
+      return result;
+    }
+    TrackedStatement handler = new TrackedStatement(result, realConnection, trackedState);
+    return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+  }
+
   private void checkConnection() throws SQLException {
     if (!valid) {
       throw new SQLException("Error accessing PooledConnection. Connection is invalid.");
     }
   }
 
+  /**
+   * The settings this pool knows the real connection to have, null while unknown, and whether
+   * a statement ran since the last commit or rollback. Calls that would not change a
+   * known setting, and commits or rollbacks with nothing to end, never reach the driver.
+   * An autocommit switch made while no transaction is running is only applied when the next
+   * statement is created or run, so the usual off-on flip of a session that runs nothing is free.
+   * A connection is only used by the thread that checked it out, so no locking is needed.
+   */
+  private static class TrackedState {
+
+    private static final Object PASS = new Object();
+
+    private Boolean autoCommit;
+    private Boolean pendingAutoCommit;
+    private Integer transactionIsolation;
+    private Boolean readOnly;
+    private boolean catalogKnown;
+    private String catalog;
+    private boolean dirty;
+
+    /*
+     * Handles the call from the known state when possible
+     *
+     * @return the result, or PASS if the call must go on to the real connection
+     */
+    Object invoke(Connection realConnection, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      int argCount = args == null ? 0 : args.length;
+      if ("getAutoCommit".equals(methodName)) {
+        if (pendingAutoCommit != null) {
+          return pendingAutoCommit;
+        }
+        if (autoCommit == null) {
+          autoCommit = realConnection.getAutoCommit();
+        }
+        return autoCommit;
+      } else if ("setAutoCommit".equals(methodName)) {
+        Boolean value = (Boolean) args[0];
+        if (!dirty && autoCommit != null) {
+          // nothing to commit, so the switch can wait until a statement needs it
+          pendingAutoCommit = value.equals(autoCommit) ? null : value;
+        } else {
+          pendingAutoCommit = null;
+          applyAutoCommit(realConnection, value);
+        }
+        return null;
+      } else if ("getTransactionIsolation".equals(methodName)) {
+        if (transactionIsolation == null) {
+          transactionIsolation = realConnection.getTransactionIsolation();
+        }
+        return transactionIsolation;
+      } else if ("setTransactionIsolation".equals(methodName)) {
+        Integer value = (Integer) args[0];
+        if (!value.equals(transactionIsolation)) {
+          transactionIsolation = null;
+          realConnection.setTransactionIsolation(value);
+          transactionIsolation = value;
+        }
+        return null;
+      } else if ("isReadOnly".equals(methodName)) {
+        if (readOnly == null) {
+          readOnly = realConnection.isReadOnly();
+        }
+        return readOnly;
+      } else if ("setReadOnly".equals(methodName)) {
+        Boolean value = (Boolean) args[0];
+        if (!value.equals(readOnly)) {
+          readOnly = null;
+          realConnection.setReadOnly(value);
+          readOnly = value;
+        }
+        return null;
+      } else if ("getCatalog".equals(methodName)) {
+        if (!catalogKnown) {
+          catalog = realConnection.getCatalog();
+          catalogKnown = true;
+        }
+        return catalog;
+      } else if ("setCatalog".equals(methodName)) {
+        String value = (String) args[0];
+        if (!catalogKnown || (value == null ? catalog != null : !value.equals(catalog))) {
+          catalogKnown = false;
+          realConnection.setCatalog(value);
+          catalog = value;
+          catalogKnown = true;
+        }
+        return null;
+      } else if (argCount == 0 && ("commit".equals(methodName) || "rollback".equals(methodName))) {
+        if (dirty) {
+          method.invoke(realConnection, args);
+          dirty = false;
+        }
+        return null;
+      } else if (methodName.startsWith("prepare") || "createStatement".equals(methodName)) {
+        applyPendingAutoCommit(realConnection);
+      } else if ("setSavepoint".equals(methodName)) {
+        statementRunning(realConnection);
+      }
+      return PASS;
+    }
+
+    /*
+     * Called before a statement created on the connection runs, which may be long after it was created
+     */
+    void statementRunning(Connection realConnection) throws SQLException {
+      applyPendingAutoCommit(realConnection);
+      dirty = true;
+    }
+
+    private void applyPendingAutoCommit(Connection realConnection) throws SQLException {
+      if (pendingAutoCommit != null) {
+        Boolean value = pendingAutoCommit;
+        pendingAutoCommit = null;
+        applyAutoCommit(realConnection, value);
+      }
+    }
+
+    private void applyAutoCommit(Connection realConnection, Boolean value) throws SQLException {
+      if (!value.equals(autoCommit)) {
+        autoCommit = null;
+        realConnection.setAutoCommit(value);
+        autoCommit = value;
+        if (value) {
+          // switching autocommit on commits the running transaction
+          dirty = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * A statement created while state tracking is on. Executing it or adding to its batch tells
+   * the tracked state that a transaction may be running, even if the statement was created
+   * before the last commit, e.g. by user code holding it across SqlSession.commit().
+   */
+  private static class TrackedStatement implements InvocationHandler {
+
+    private final Object statement;
+    private final Connection realConnection;
+    private final TrackedState trackedState;
+
+    TrackedStatement(Object statement, Connection realConnection, TrackedState trackedState) {
+      this.statement = statement;
+      this.realConnection = realConnection;
+      this.trackedState = trackedState;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      if (Object.class.equals(method.getDeclaringClass())) {
+        if ("equals".equals(methodName)) {
+          return proxy == args[0];
+        } else if ("hashCode".equals(methodName)) {
+          return System.identityHashCode(proxy);
+        }
+      } else if (methodName.startsWith("execute") || "addBatch".equals(methodName)) {
+        trackedState.statementRunning(realConnection);
+      }
+      try {
+        return method.invoke(statement, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+  }
+
 }
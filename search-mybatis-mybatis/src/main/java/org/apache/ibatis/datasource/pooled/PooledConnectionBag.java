@@ -0,0 +1,502 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.ibatis.session.ConnectionPriority;
+
+/**
+ * Lock-free container for the connections of a {@link PooledDataSource}.
+ * <p>
+ * Every physical connection has one entry in a shared list for its whole life. The entry points to
+ * the wrapper currently handed out for it, which is claimed by a CAS on its state; a returned connection
+ * gets a new wrapper in the same entry, so checkout and checkin never take a monitor or copy the list.
+ * Each thread also remembers the connections it returned last, which are tried first because they
+ * are most likely still idle.
+ * Threads that find nothing wait on a fair handoff queue and are served one by one
+ * instead of being woken all at once.
+ * <p>
+ * Each connection in use holds a lease. Lanes (one per {@link org.apache.ibatis.session.ConnectionPriority},
+ * 0 being the highest) may be limited to fewer leases than the pool size, which keeps the remaining
+ * connections for higher lanes, and returned connections are handed to the highest waiting lane first.
+ *
+ * @author Clinton Begin
+ */
+class PooledConnectionBag {
+
+  static final int STATE_NOT_IN_USE = 0;
+  static final int STATE_IN_USE = 1;
+  static final int STATE_REMOVED = -1;
+  static final int STATE_RESERVED = 2;
+
+  static final int LANES = ConnectionPriority.values().length;
+
+  private static final int MAX_THREAD_LOCAL_CONNECTIONS = 16;
+
+  private final CopyOnWriteArrayList<Entry> sharedList = new CopyOnWriteArrayList<Entry>();
+  private final SynchronousQueue<PooledConnection>[] handoffQueues = newHandoffQueues();
+  private final AtomicInteger[] laneWaiters = newCounters();
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final AtomicInteger leases = new AtomicInteger();
+  private volatile int[] leaseLimits;
+  private final AtomicInteger totalConnections = new AtomicInteger();
+  private final AtomicInteger idleConnections = new AtomicInteger();
+  private volatile PoolBudget budget;
+  private final ThreadLocal<List<WeakReference<Entry>>> threadList = new ThreadLocal<List<WeakReference<Entry>>>() {
+    @Override
+    protected List<WeakReference<Entry>> initialValue() {
+      return new ArrayList<WeakReference<Entry>>(MAX_THREAD_LOCAL_CONNECTIONS);
+    }
+  };
+
+  /*
+   * The place of one physical connection in the shared list
+   */
+  static final class Entry {
+
+    private volatile PooledConnection connection;
+
+    PooledConnection getConnection() {
+      return connection;
+    }
+
+    private void attach(PooledConnection conn) {
+      conn.setBagEntry(this);
+      connection = conn;
+    }
+  }
+
+  /*
+   * Claims an idle connection without blocking, trying the ones this thread returned last first.
+   * The caller must hold a lease.
+   *
+   * @return the claimed connection (now in use) or null if none is idle
+   */
+  PooledConnection poll() {
+    List<WeakReference<Entry>> list = threadList.get();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      Entry entry = list.remove(i).get();
+      if (entry != null) {
+        PooledConnection conn = entry.getConnection();
+        if (claim(conn)) {
+          return conn;
+        }
+      }
+    }
+    return pollShared();
+  }
+
+  /*
+   * Waits for a connection handed off by a returning thread. The caller must have entered the
+   * wait queue of its lane and must not hold a lease.
+   *
+   * @param lane the lane of the caller
+   * @param timeout the maximum time to wait in milliseconds
+   * @return the claimed connection (now in use, with a lease) or null if the time elapsed
+   */
+  PooledConnection await(int lane, long timeout) throws InterruptedException {
+    // a connection may have been returned before we registered as a waiter
+    if (acquireLease(lane)) {
+      PooledConnection conn = pollShared();
+      if (conn != null) {
+        return conn;
+      }
+      releaseLease();
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    long remaining = deadline - System.nanoTime();
+    while (remaining > 0) {
+      // the returning thread took a lease for us before handing the connection off
+      PooledConnection conn = handoffQueues[lane].poll(remaining, TimeUnit.NANOSECONDS);
+      if (conn == null) {
+        return null;
+      }
+      if (claim(conn)) {
+        return conn;
+      }
+      releaseLease();
+      remaining = deadline - System.nanoTime();
+    }
+    return null;
+  }
+
+  /*
+   * Joins the wait queue of a lane
+   *
+   * @param maximumWaiters the queue capacity, negative for no limit
+   * @return false if the queue is full
+   */
+  boolean enterWaitQueue(int lane, int maximumWaiters) {
+    AtomicInteger counter = laneWaiters[lane];
+    for (;;) {
+      int count = counter.get();
+      if (maximumWaiters >= 0 && count >= maximumWaiters) {
+        return false;
+      }
+      if (counter.compareAndSet(count, count + 1)) {
+        waiters.incrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  void leaveWaitQueue(int lane) {
+    waiters.decrementAndGet();
+    laneWaiters[lane].decrementAndGet();
+  }
+
+  /*
+   * Takes a lease, which every connection in use holds
+   *
+   * @return false if the lane already uses all the connections it may use
+   */
+  boolean acquireLease(int lane) {
+    int[] limits = leaseLimits;
+    if (limits == null) {
+      leases.incrementAndGet();
+      return true;
+    }
+    for (;;) {
+      int count = leases.get();
+      if (count >= limits[lane]) {
+        return false;
+      }
+      if (leases.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  void releaseLease() {
+    leases.decrementAndGet();
+  }
+
+  /*
+   * Limits the number of connections each lane may have in use, null for no limit other than the pool size
+   */
+  void setLeaseLimits(int[] leaseLimits) {
+    this.leaseLimits = leaseLimits;
+  }
+
+  /*
+   * Adds a freshly created connection that is already handed out to a caller holding a lease.
+   */
+  void addInUse(PooledConnection conn) {
+    Entry entry = new Entry();
+    markInUse(conn);
+    entry.attach(conn);
+    sharedList.add(entry);
+  }
+
+  /*
+   * Puts a new wrapper of a released connection in its place, already handed out to a caller holding a lease.
+   */
+  void addInUse(PooledConnection conn, PooledConnection previous) {
+    markInUse(conn);
+    previous.getBagEntry().attach(conn);
+  }
+
+  /*
+   * Adds a freshly opened idle connection, handing it directly to a waiting thread if there is one.
+   */
+  void requite(PooledConnection conn) {
+    Entry entry = new Entry();
+    markIdle(conn);
+    entry.attach(conn);
+    sharedList.add(entry);
+    handOff(conn);
+  }
+
+  /*
+   * Puts a new wrapper of a released connection in its place as an idle connection,
+   * handing it directly to a waiting thread if there is one.
+   */
+  void requite(PooledConnection conn, PooledConnection previous) {
+    markIdle(conn);
+    previous.getBagEntry().attach(conn);
+    handOff(conn);
+  }
+
+  /*
+   * Takes an idle connection out of circulation for maintenance without counting it as checked out.
+   *
+   * @return true if the connection was idle and is now reserved by the caller
+   */
+  boolean reserve(PooledConnection conn) {
+    if (conn.compareAndSetBagState(STATE_NOT_IN_USE, STATE_RESERVED)) {
+      idleConnections.decrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /*
+   * Puts a reserved connection back into circulation.
+   */
+  void unreserve(PooledConnection conn) {
+    if (conn.compareAndSetBagState(STATE_RESERVED, STATE_NOT_IN_USE)) {
+      idleConnections.incrementAndGet();
+      handOff(conn);
+    }
+  }
+
+  /*
+   * Ends the use of an in-use wrapper and releases its lease, keeping the entry of the physical connection
+   * for a new wrapper. Fails if the connection was already reclaimed as overdue or force closed in the meantime.
+   *
+   * @return true if the caller now owns the connection's entry and slot, to be given to a new wrapper or discarded
+   */
+  boolean release(PooledConnection conn) {
+    if (!conn.compareAndSetBagState(STATE_IN_USE, STATE_REMOVED)) {
+      return false;
+    }
+    releaseLease();
+    return true;
+  }
+
+  /*
+   * Drops the entry of a released connection and frees its slot
+   */
+  void discard(PooledConnection conn) {
+    sharedList.remove(conn.getBagEntry());
+    releaseSlot();
+  }
+
+  /*
+   * Takes an in-use connection out of the bag and releases its lease. Fails if the connection
+   * was already reclaimed as overdue or force closed in the meantime.
+   *
+   * @return true if the caller now owns the connection's slot
+   */
+  boolean remove(PooledConnection conn) {
+    if (!release(conn)) {
+      return false;
+    }
+    sharedList.remove(conn.getBagEntry());
+    return true;
+  }
+
+  /*
+   * Takes a connection out of the bag whatever its state and frees its slot.
+   *
+   * @return true if this call removed it
+   */
+  boolean forceRemove(PooledConnection conn) {
+    int bagState;
+    do {
+      bagState = conn.getBagState();
+      if (bagState == STATE_REMOVED) {
+        return false;
+      }
+    } while (!conn.compareAndSetBagState(bagState, STATE_REMOVED));
+    sharedList.remove(conn.getBagEntry());
+    if (bagState == STATE_IN_USE) {
+      releaseLease();
+    } else if (bagState == STATE_NOT_IN_USE) {
+      idleConnections.decrementAndGet();
+    }
+    releaseSlot();
+    return true;
+  }
+
+  /*
+   * Reclaims an in-use connection checked out for more than the given time, never from a higher
+   * lane than the caller's. The lowest lane goes first, then the longest checkout.
+   *
+   * @return the reclaimed connection (released, its entry and slot kept for a new wrapper) or null
+   */
+  PooledConnection claimOverdue(long maximumCheckoutTime, int lane) {
+    long now = System.currentTimeMillis();
+    PooledConnection victim = null;
+    for (Entry entry : sharedList) {
+      PooledConnection conn = entry.getConnection();
+      if (conn.getBagState() == STATE_IN_USE && conn.getPriorityLane() >= lane
+          && now - conn.getCheckoutTimestamp() > maximumCheckoutTime
+          && (victim == null || conn.getPriorityLane() > victim.getPriorityLane()
+              || (conn.getPriorityLane() == victim.getPriorityLane()
+                  && conn.getCheckoutTimestamp() < victim.getCheckoutTimestamp()))) {
+        victim = conn;
+      }
+    }
+    if (victim != null && release(victim)) {
+      return victim;
+    }
+    return null;
+  }
+
+  /*
+   * Reserves room for a new physical connection.
+   *
+   * @return true if the pool had fewer than maximumConnections connections and the shared budget, if any, had room
+   */
+  boolean reserveSlot(int maximumConnections) {
+    for (;;) {
+      int total = totalConnections.get();
+      if (total >= maximumConnections) {
+        return false;
+      }
+      if (totalConnections.compareAndSet(total, total + 1)) {
+        PoolBudget shared = budget;
+        if (shared != null && !shared.acquire()) {
+          totalConnections.decrementAndGet();
+          return false;
+        }
+        return true;
+      }
+    }
+  }
+
+  void releaseSlot() {
+    totalConnections.decrementAndGet();
+    PoolBudget shared = budget;
+    if (shared != null) {
+      shared.release();
+    }
+  }
+
+  /*
+   * Makes every slot also count against a limit shared with other pools
+   */
+  void setBudget(PoolBudget budget) {
+    this.budget = budget;
+  }
+
+  boolean hasBudget() {
+    return budget != null;
+  }
+
+  int getWaitingThreadCount() {
+    return waiters.get();
+  }
+
+  int getWaitingThreadCount(int lane) {
+    return laneWaiters[lane].get();
+  }
+
+  int getTotalCount() {
+    return totalConnections.get();
+  }
+
+  int getIdleCount() {
+    return idleConnections.get();
+  }
+
+  int getCount(int bagState) {
+    int count = 0;
+    for (Entry entry : sharedList) {
+      if (entry.getConnection().getBagState() == bagState) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /*
+   * @return the wrappers currently handed out for the physical connections
+   */
+  List<PooledConnection> values() {
+    List<PooledConnection> values = new ArrayList<PooledConnection>(sharedList.size());
+    for (Entry entry : sharedList) {
+      values.add(entry.getConnection());
+    }
+    return values;
+  }
+
+  private void handOff(PooledConnection conn) {
+    for (int lane = 0; lane < LANES; lane++) {
+      for (int i = 0; laneWaiters[lane].get() > 0; i++) {
+        if (conn.getBagState() != STATE_NOT_IN_USE) {
+          return;
+        }
+        if (!acquireLease(lane)) {
+          // this lane may not take more connections, try a lower one
+          break;
+        }
+        if (handoffQueues[lane].offer(conn)) {
+          return;
+        }
+        releaseLease();
+        if ((i & 0xff) == 0xff) {
+          LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+        } else {
+          Thread.yield();
+        }
+      }
+    }
+    List<WeakReference<Entry>> list = threadList.get();
+    if (list.size() < MAX_THREAD_LOCAL_CONNECTIONS) {
+      list.add(new WeakReference<Entry>(conn.getBagEntry()));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static SynchronousQueue<PooledConnection>[] newHandoffQueues() {
+    SynchronousQueue<PooledConnection>[] queues = new SynchronousQueue[LANES];
+    for (int i = 0; i < LANES; i++) {
+      queues[i] = new SynchronousQueue<PooledConnection>(true);
+    }
+    return queues;
+  }
+
+  private static AtomicInteger[] newCounters() {
+    AtomicInteger[] counters = new AtomicInteger[LANES];
+    for (int i = 0; i < LANES; i++) {
+      counters[i] = new AtomicInteger();
+    }
+    return counters;
+  }
+
+  private void markInUse(PooledConnection conn) {
+    conn.setCheckoutTimestamp(System.currentTimeMillis());
+    conn.setBagState(STATE_IN_USE);
+  }
+
+  private void markIdle(PooledConnection conn) {
+    // an idle connection must never look overdue, claim() stamps the real checkout time
+    conn.setCheckoutTimestamp(Long.MAX_VALUE);
+    conn.setBagState(STATE_NOT_IN_USE);
+    idleConnections.incrementAndGet();
+  }
+
+  private boolean claim(PooledConnection conn) {
+    if (conn.compareAndSetBagState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+      idleConnections.decrementAndGet();
+      // stamp right away so an overdue scan never sees a stale checkout time
+      conn.setCheckoutTimestamp(System.currentTimeMillis());
+      return true;
+    }
+    return false;
+  }
+
+  private PooledConnection pollShared() {
+    for (Entry entry : sharedList) {
+      PooledConnection conn = entry.getConnection();
+      if (claim(conn)) {
+        return conn;
+      }
+    }
+    return null;
+  }
+
+}
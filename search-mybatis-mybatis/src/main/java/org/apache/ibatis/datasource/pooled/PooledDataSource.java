@@ -16,24 +16,44 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
 import java.sql.Statement;
 import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
+import org.apache.ibatis.datasource.DataSourceException;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.ConnectionPriority;
+import org.apache.ibatis.session.Deadline;
 
 /**
- * This is a simple, synchronous, thread-safe database connection pool.
+ * This is a simple, thread-safe database connection pool.
+ * Connections are checked out and returned without a global lock; threads that have to wait
+ * are served in FIFO order as connections come back.
  * PooledDataSource和UnpooledDataSource都实现了java.sql.DataSource接口。
  * 并且PooledDataSource需要创建java.sql.Connection实例对象时，还是通过UnpooledDataSource来创建。
  * PooledDataSource只是提供一种缓存连接池机制
@@ -43,6 +63,11 @@ public class PooledDataSource implements DataSource {
 
   private static final Log log = LogFactory.getLog(PooledDataSource.class);
 
+  private static final String NO_PING_QUERY = "NO PING QUERY SET";
+  // a pool in a group may be kept waiting by the shared budget, which does not hand off connections
+  private static final long GROUP_WAIT_SLICE = 100;
+  private static final Random lifetimeJitter = new Random();
+
   private final PoolState state = new PoolState(this);
 
   private final UnpooledDataSource dataSource;
@@ -52,11 +77,30 @@ public class PooledDataSource implements DataSource {
   protected int poolMaximumIdleConnections = 5;//默认最大空闲连接是5
   protected int poolMaximumCheckoutTime = 20000;
   protected int poolTimeToWait = 20000;
-  protected String poolPingQuery = "NO PING QUERY SET";
+  protected String poolPingQuery = NO_PING_QUERY;
   protected boolean poolPingEnabled = false;
   protected int poolPingConnectionsNotUsedFor = 0;
-
-  private int expectedConnectionTypeCode;
+  protected int poolValidationTimeout = 5000;
+  protected int poolMinimumIdleConnections = 0;
+  protected int poolMaximumLifetime = 0;
+  protected int poolMaximumIdleTime = 0;
+  protected int poolHousekeepingInterval = 0;
+  protected int poolLeakDetectionThreshold = 0;
+  protected int poolPreparedStatementCacheSize = 0;
+  protected int poolWarmupConnections = 0;
+  protected int poolWarmupTimeout = 30000;
+  protected boolean poolTrackConnectionState = false;
+  protected int poolReservedHighPriorityConnections = 0;
+  protected int poolReservedNormalPriorityConnections = 0;
+  protected int poolMaximumHighPriorityWaiters = -1;
+  protected int poolMaximumNormalPriorityWaiters = -1;
+  protected int poolMaximumLowPriorityWaiters = -1;
+  protected String poolMBeanName;
+
+  private PoolHousekeeper housekeeper;
+  private ObjectName registeredMBeanName;
+
+  private volatile int expectedConnectionTypeCode;
 
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
@@ -158,6 +202,7 @@ public class PooledDataSource implements DataSource {
    */
   public void setPoolMaximumActiveConnections(int poolMaximumActiveConnections) {
     this.poolMaximumActiveConnections = poolMaximumActiveConnections;
+    updateLeaseLimits();
     forceCloseAll();
   }
 
@@ -223,6 +268,197 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /*
+   * The time to wait for Connection.isValid when no ping query is set
+   *
+   * @param milliseconds the validation timeout
+   */
+  public void setPoolValidationTimeout(int milliseconds) {
+    this.poolValidationTimeout = milliseconds;
+    forceCloseAll();
+  }
+
+  /*
+   * The number of idle connections the housekeeping keeps open
+   *
+   * @param poolMinimumIdleConnections The minimum number of idle connections
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+    forceCloseAll();
+  }
+
+  /*
+   * The time after which a connection is retired, 0 to keep connections forever.
+   * Each connection gets up to 2.5% less so that they do not all reconnect at once.
+   *
+   * @param milliseconds The maximum lifetime
+   */
+  public void setPoolMaximumLifetime(int milliseconds) {
+    this.poolMaximumLifetime = milliseconds;
+    forceCloseAll();
+  }
+
+  /*
+   * The time an idle connection above the minimum idle count may stay unused
+   * before the housekeeping closes it, 0 to never close idle connections.
+   *
+   * @param milliseconds The maximum idle time
+   */
+  public void setPoolMaximumIdleTime(int milliseconds) {
+    this.poolMaximumIdleTime = milliseconds;
+    forceCloseAll();
+  }
+
+  /*
+   * How often the background housekeeping runs, 0 (the default) to disable it.
+   *
+   * @param milliseconds The housekeeping interval
+   */
+  public void setPoolHousekeepingInterval(int milliseconds) {
+    this.poolHousekeepingInterval = milliseconds;
+    scheduleHousekeeping();
+    forceCloseAll();
+  }
+
+  /*
+   * If a connection stays checked out longer than this, log the stack trace of the code that
+   * checked it out. 0 (the default) disables leak detection, which costs a stack trace per checkout.
+   *
+   * @param milliseconds The leak detection threshold
+   */
+  public void setPoolLeakDetectionThreshold(int milliseconds) {
+    this.poolLeakDetectionThreshold = milliseconds;
+    scheduleHousekeeping();
+    forceCloseAll();
+  }
+
+  /*
+   * The number of prepared statements each connection keeps open across checkouts,
+   * 0 (the default) to close statements when the caller closes them.
+   *
+   * @param poolPreparedStatementCacheSize The maximum number of cached statements per connection
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
+  /*
+   * The number of connections PooledDataSourceFactory opens in parallel before handing out
+   * the data source, 0 (the default) to open connections on demand only.
+   * Capped at poolMaximumIdleConnections and poolMaximumActiveConnections.
+   *
+   * @param poolWarmupConnections The number of connections to open up front
+   */
+  public void setPoolWarmupConnections(int poolWarmupConnections) {
+    this.poolWarmupConnections = poolWarmupConnections;
+    forceCloseAll();
+  }
+
+  /*
+   * The maximum time the warm-up may take before startup carries on without it
+   *
+   * @param milliseconds The warm-up timeout
+   */
+  public void setPoolWarmupTimeout(int milliseconds) {
+    this.poolWarmupTimeout = milliseconds;
+    forceCloseAll();
+  }
+
+  /*
+   * Whether connections remember the autocommit, isolation, read-only and catalog settings
+   * and whether a statement ran since the last commit or rollback, so that calls which would
+   * not change anything skip the round trip to the database. Off by default, because a skipped
+   * commit or rollback is wrong when the application changes these settings behind the pool's
+   * back, for example through SQL, or keeps executing a statement after committing the
+   * connection it was created on; only turn it on if neither happens (MyBatis executors
+   * close their statements on every commit).
+   *
+   * @param poolTrackConnectionState True to skip redundant calls
+   */
+  public void setPoolTrackConnectionState(boolean poolTrackConnectionState) {
+    this.poolTrackConnectionState = poolTrackConnectionState;
+    forceCloseAll();
+  }
+
+  /*
+   * The number of active connections only HIGH priority requests may use
+   *
+   * @param poolReservedHighPriorityConnections The number of connections kept for HIGH priority requests
+   */
+  public void setPoolReservedHighPriorityConnections(int poolReservedHighPriorityConnections) {
+    this.poolReservedHighPriorityConnections = poolReservedHighPriorityConnections;
+    updateLeaseLimits();
+    forceCloseAll();
+  }
+
+  /*
+   * The number of active connections, on top of the HIGH priority ones, that LOW priority requests may not use
+   *
+   * @param poolReservedNormalPriorityConnections The number of connections kept for NORMAL and HIGH priority requests
+   */
+  public void setPoolReservedNormalPriorityConnections(int poolReservedNormalPriorityConnections) {
+    this.poolReservedNormalPriorityConnections = poolReservedNormalPriorityConnections;
+    updateLeaseLimits();
+    forceCloseAll();
+  }
+
+  /*
+   * The number of HIGH priority requests that may wait for a connection at once, -1 (the default) for no limit.
+   * Further requests fail right away with an SQLTransientConnectionException.
+   *
+   * @param poolMaximumHighPriorityWaiters The capacity of the HIGH priority wait queue
+   */
+  public void setPoolMaximumHighPriorityWaiters(int poolMaximumHighPriorityWaiters) {
+    this.poolMaximumHighPriorityWaiters = poolMaximumHighPriorityWaiters;
+    forceCloseAll();
+  }
+
+  /*
+   * The number of NORMAL priority requests that may wait for a connection at once, -1 (the default) for no limit
+   *
+   * @param poolMaximumNormalPriorityWaiters The capacity of the NORMAL priority wait queue
+   */
+  public void setPoolMaximumNormalPriorityWaiters(int poolMaximumNormalPriorityWaiters) {
+    this.poolMaximumNormalPriorityWaiters = poolMaximumNormalPriorityWaiters;
+    forceCloseAll();
+  }
+
+  /*
+   * The number of LOW priority requests that may wait for a connection at once, -1 (the default) for no limit
+   *
+   * @param poolMaximumLowPriorityWaiters The capacity of the LOW priority wait queue
+   */
+  public void setPoolMaximumLowPriorityWaiters(int poolMaximumLowPriorityWaiters) {
+    this.poolMaximumLowPriorityWaiters = poolMaximumLowPriorityWaiters;
+    forceCloseAll();
+  }
+
+  /*
+   * Registers the pool statistics in the platform MBean server under
+   * org.apache.ibatis.datasource:type=PooledDataSource,name=&lt;name&gt;, null to unregister them.
+   *
+   * @param poolMBeanName The name of the pool
+   */
+  public synchronized void setPoolMBeanName(String poolMBeanName) {
+    this.poolMBeanName = poolMBeanName;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (registeredMBeanName != null) {
+        server.unregisterMBean(registeredMBeanName);
+        registeredMBeanName = null;
+      }
+      if (poolMBeanName != null) {
+        ObjectName name = new ObjectName("org.apache.ibatis.datasource:type=PooledDataSource,name=" + ObjectName.quote(poolMBeanName));
+        server.registerMBean(state, name);
+        registeredMBeanName = name;
+      }
+    } catch (Exception e) {
+      throw new DataSourceException("Error registering PooledDataSource MBean '" + poolMBeanName + "'.  Cause: " + e, e);
+    }
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -279,48 +515,361 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolValidationTimeout() {
+    return poolValidationTimeout;
+  }
+
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public int getPoolMaximumIdleTime() {
+    return poolMaximumIdleTime;
+  }
+
+  public int getPoolHousekeepingInterval() {
+    return poolHousekeepingInterval;
+  }
+
+  public int getPoolLeakDetectionThreshold() {
+    return poolLeakDetectionThreshold;
+  }
+
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
+  public int getPoolWarmupConnections() {
+    return poolWarmupConnections;
+  }
+
+  public int getPoolWarmupTimeout() {
+    return poolWarmupTimeout;
+  }
+
+  public boolean isPoolTrackConnectionState() {
+    return poolTrackConnectionState;
+  }
+
+  public int getPoolReservedHighPriorityConnections() {
+    return poolReservedHighPriorityConnections;
+  }
+
+  public int getPoolReservedNormalPriorityConnections() {
+    return poolReservedNormalPriorityConnections;
+  }
+
+  public int getPoolMaximumHighPriorityWaiters() {
+    return poolMaximumHighPriorityWaiters;
+  }
+
+  public int getPoolMaximumNormalPriorityWaiters() {
+    return poolMaximumNormalPriorityWaiters;
+  }
+
+  public int getPoolMaximumLowPriorityWaiters() {
+    return poolMaximumLowPriorityWaiters;
+  }
+
+  public String getPoolMBeanName() {
+    return poolMBeanName;
+  }
+
   /*
    * Closes all active and idle connections in the pool
    */
   public void forceCloseAll() {
-    synchronized (state) {
-      expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
-      for (int i = state.activeConnections.size(); i > 0; i--) {
-        try {
-          PooledConnection conn = state.activeConnections.remove(i - 1);
-          conn.invalidate();
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+    for (PooledConnection conn : state.connections.values()) {
+      if (state.connections.forceRemove(conn)) {
+        closeQuietly(conn);
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("PooledDataSource forcefully closed/removed all connections.");
+    }
+  }
 
-          Connection realConn = conn.getRealConnection();
-          if (!realConn.getAutoCommit()) {
-            realConn.rollback();
-          }
-          realConn.close();//释放连接
-        } catch (Exception e) {
-          // ignore
+  public PoolState getPoolState() {
+    return state;
+  }
+
+  /*
+   * Opens poolWarmupConnections connections in parallel, validates them and adds them to
+   * the pool as idle connections. Waits at most poolWarmupTimeout milliseconds; connections
+   * that are still being opened by then join the pool when they are ready.
+   *
+   * @return the number of connections that were ready within the timeout
+   */
+  public int warmUp() {
+    int target = Math.min(poolWarmupConnections, Math.min(poolMaximumIdleConnections, poolMaximumActiveConnections))
+        - state.getIdleConnectionCount();
+    if (target <= 0) {
+      return 0;
+    }
+    long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(target, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "mybatis-pool-warmup");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+    for (int i = 0; i < target; i++) {
+      tasks.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return openIdleConnection();
+        }
+      });
+    }
+    int opened = 0;
+    try {
+      for (Future<Boolean> future : executor.invokeAll(tasks, poolWarmupTimeout, TimeUnit.MILLISECONDS)) {
+        if (!future.isCancelled() && future.get()) {
+          opened++;
         }
       }
-      for (int i = state.idleConnections.size(); i > 0; i--) {
-        try {
-          PooledConnection conn = state.idleConnections.remove(i - 1);
+    } catch (Exception e) {
+      log.warn("PooledDataSource warm-up was interrupted: " + e.getMessage());
+    } finally {
+      executor.shutdown();
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    state.warmupTime.set(elapsed);
+    state.warmupConnectionCount.set(opened);
+    if (opened < target) {
+      log.warn("PooledDataSource warm-up opened " + opened + " of " + target + " connections in " + elapsed + " milliseconds.");
+    } else if (log.isDebugEnabled()) {
+      log.debug("PooledDataSource warm-up opened " + opened + " connections in " + elapsed + " milliseconds.");
+    }
+    return opened;
+  }
+
+  private boolean openIdleConnection() {
+    if (!state.connections.reserveSlot(poolMaximumActiveConnections)) {
+      return false;
+    }
+    PooledConnection conn;
+    try {
+      conn = newPooledConnection();
+    } catch (SQLException e) {
+      state.connections.releaseSlot();
+      log.warn("PooledDataSource could not open an idle connection: " + e.getMessage());
+      return false;
+    }
+    if (!validateConnection(conn)) {
+      state.connections.releaseSlot();
+      state.badConnectionCount.incrementAndGet();
+      return false;
+    }
+    conn.setConnectionTypeCode(expectedConnectionTypeCode);
+    conn.setLastValidatedTimestamp(System.currentTimeMillis());
+    state.connections.requite(conn);
+    if (log.isDebugEnabled()) {
+      log.debug("Created idle connection " + conn.getRealHashCode() + ".");
+    }
+    return true;
+  }
+
+  /*
+   * One pass of the background maintenance: retires expired connections, closes idle
+   * connections above the minimum that have not been used for poolMaximumIdleTime,
+   * validates idle connections before a checkout would have to, and opens connections
+   * until poolMinimumIdleConnections are idle again.
+   */
+  void runHousekeeping() {
+    long now = System.currentTimeMillis();
+    if (poolLeakDetectionThreshold > 0) {
+      detectLeaks(now);
+    }
+    if (poolHousekeepingInterval <= 0) {
+      return;
+    }
+    int idleCount = state.getIdleConnectionCount();
+    for (PooledConnection conn : state.connections.values()) {
+      if (!state.connections.reserve(conn)) {
+        continue;
+      }
+      if (conn.isExpired(now)
+          || (poolMaximumIdleTime > 0 && idleCount > poolMinimumIdleConnections && conn.getTimeElapsedSinceLastUse() > poolMaximumIdleTime)) {
+        if (state.connections.forceRemove(conn)) {
+          idleCount--;
+          closeQuietly(conn);
+          if (log.isDebugEnabled()) {
+            log.debug("Retired idle connection " + conn.getRealHashCode() + ".");
+          }
+        }
+      } else if (poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
+          && conn.getTimeElapsedSinceLastValidation() + poolHousekeepingInterval > poolPingConnectionsNotUsedFor) {
+        // validate now, before a checkout would have to do it on the request path
+        if (validateConnection(conn)) {
+          conn.setLastValidatedTimestamp(System.currentTimeMillis());
+          state.connections.unreserve(conn);
+        } else if (state.connections.forceRemove(conn)) {
+          idleCount--;
           conn.invalidate();
+          state.badConnectionCount.incrementAndGet();
+        }
+      } else {
+        state.connections.unreserve(conn);
+      }
+    }
+    fillPool();
+  }
+
+  /*
+   * Joins a group of pools whose physical connections count against a shared budget
+   */
+  void setBudget(PoolBudget budget) {
+    forceCloseAll();
+    state.connections.setBudget(budget);
+  }
+
+  /*
+   * Gets the time the least recently used idle connection was last used
+   *
+   * @return the timestamp, or Long.MAX_VALUE if no connection can be given up
+   */
+  long getOldestIdleTimestamp() {
+    if (state.connections.getTotalCount() <= poolMinimumIdleConnections) {
+      return Long.MAX_VALUE;
+    }
+    long oldest = Long.MAX_VALUE;
+    for (PooledConnection conn : state.connections.values()) {
+      if (conn.getBagState() == PooledConnectionBag.STATE_NOT_IN_USE) {
+        oldest = Math.min(oldest, conn.getLastUsedTimestamp());
+      }
+    }
+    return oldest;
+  }
 
-          Connection realConn = conn.getRealConnection();
-          if (!realConn.getAutoCommit()) {
-            realConn.rollback();
+  /*
+   * Closes the least recently used idle connection to free its place in the shared budget,
+   * provided the pool keeps its minimum number of connections
+   *
+   * @return true if a connection was closed
+   */
+  boolean reclaimIdleConnection() {
+    while (state.connections.getTotalCount() > poolMinimumIdleConnections) {
+      PooledConnection oldest = null;
+      for (PooledConnection conn : state.connections.values()) {
+        if (conn.getBagState() == PooledConnectionBag.STATE_NOT_IN_USE
+            && (oldest == null || conn.getLastUsedTimestamp() < oldest.getLastUsedTimestamp())) {
+          oldest = conn;
+        }
+      }
+      if (oldest == null) {
+        return false;
+      }
+      if (state.connections.reserve(oldest)) {
+        if (state.connections.forceRemove(oldest)) {
+          closeQuietly(oldest);
+          if (log.isDebugEnabled()) {
+            log.debug("Reclaimed idle connection " + oldest.getRealHashCode() + " for another pool of the group.");
           }
-          realConn.close();//释放连接
-        } catch (Exception e) {
-          // ignore
+          return true;
         }
       }
     }
-    if (log.isDebugEnabled()) {
-      log.debug("PooledDataSource forcefully closed/removed all connections.");
+    return false;
+  }
+
+  /*
+   * Recomputes how many connections each priority may have in use, every priority keeping at least one
+   */
+  private void updateLeaseLimits() {
+    if (poolReservedHighPriorityConnections <= 0 && poolReservedNormalPriorityConnections <= 0) {
+      state.connections.setLeaseLimits(null);
+      return;
     }
+    int[] limits = new int[PooledConnectionBag.LANES];
+    limits[ConnectionPriority.HIGH.ordinal()] = poolMaximumActiveConnections;
+    limits[ConnectionPriority.NORMAL.ordinal()] = Math.max(poolMaximumActiveConnections
+        - Math.max(poolReservedHighPriorityConnections, 0), 1);
+    limits[ConnectionPriority.LOW.ordinal()] = Math.max(limits[ConnectionPriority.NORMAL.ordinal()]
+        - Math.max(poolReservedNormalPriorityConnections, 0), 1);
+    state.connections.setLeaseLimits(limits);
   }
 
-  public PoolState getPoolState() {
-    return state;
+  private int getMaximumWaiters(ConnectionPriority priority) {
+    switch (priority) {
+      case HIGH:
+        return poolMaximumHighPriorityWaiters;
+      case LOW:
+        return poolMaximumLowPriorityWaiters;
+      default:
+        return poolMaximumNormalPriorityWaiters;
+    }
+  }
+
+  private void detectLeaks(long now) {
+    for (PooledConnection conn : state.connections.values()) {
+      if (conn.getBagState() == PooledConnectionBag.STATE_IN_USE && !conn.isLeakReported()
+          && now - conn.getCheckoutTimestamp() > poolLeakDetectionThreshold) {
+        conn.setLeakReported(true);
+        state.leakedConnectionCount.incrementAndGet();
+        StringWriter trace = new StringWriter();
+        if (conn.getCheckoutTrace() != null) {
+          conn.getCheckoutTrace().printStackTrace(new PrintWriter(trace));
+        }
+        log.warn("Connection " + conn.getRealHashCode() + " has been checked out for more than "
+            + poolLeakDetectionThreshold + " milliseconds, possible leak. Checked out at: " + trace);
+      }
+    }
+  }
+
+  private synchronized void scheduleHousekeeping() {
+    if (housekeeper != null) {
+      housekeeper.cancel();
+      housekeeper = null;
+    }
+    int interval = poolHousekeepingInterval;
+    if (poolLeakDetectionThreshold > 0) {
+      int leakCheckInterval = Math.max(poolLeakDetectionThreshold / 2, 1);
+      interval = interval > 0 ? Math.min(interval, leakCheckInterval) : leakCheckInterval;
+    }
+    if (interval > 0) {
+      housekeeper = PoolHousekeeper.schedule(this, interval);
+    }
+  }
+
+  private void fillPool() {
+    while (state.getIdleConnectionCount() < poolMinimumIdleConnections && openIdleConnection()) {
+      // keep opening
+    }
+  }
+
+  private PooledConnection newPooledConnection() throws SQLException {
+    PooledConnection conn = new PooledConnection(dataSource.getConnection(), this);
+    if (poolMaximumLifetime > 0) {
+      long jitter;
+      synchronized (lifetimeJitter) {
+        jitter = (long) (lifetimeJitter.nextDouble() * poolMaximumLifetime / 40);
+      }
+      conn.setExpiryTimestamp(conn.getCreatedTimestamp() + poolMaximumLifetime - jitter);
+    }
+    return conn;
+  }
+
+  private void closeQuietly(PooledConnection conn) {
+    try {
+      conn.invalidate();
+
+      Connection realConn = conn.getRealConnection();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();//释放连接
+    } catch (Exception e) {
+      // ignore
+    }
   }
 
   private int assembleConnectionTypeCode(String url, String username, String password) {
@@ -334,47 +883,59 @@ public class PooledDataSource implements DataSource {
    * @throws SQLException
    */
   protected void pushConnection(PooledConnection conn) throws SQLException {
-    //1.加同步锁
-    synchronized (state) {
-      state.activeConnections.remove(conn);
+    //1.结束该包装对象的使用，失败说明该连接已被强制关闭或作为逾期连接被回收
+    if (!state.connections.release(conn)) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCount.incrementAndGet();
+      return;
+    }
+    state.leaseTimeHistogram.record(conn.getCheckoutTime() * 1000);
+    boolean slotReused = false;
+    try {
       //2.判断连接有效性
       if (conn.isValid()) {
-    	  //3.判断空闲连接小于最大空闲连接数
-        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
+        //3.有线程在等待，或者空闲连接小于最大空闲连接数
+        if ((state.connections.getWaitingThreadCount() > 0 || state.getIdleConnectionCount() < poolMaximumIdleConnections)
+            && conn.getConnectionTypeCode() == expectedConnectionTypeCode && !conn.isExpired(System.currentTimeMillis())) {
+          state.accumulatedCheckoutTime.addAndGet(conn.getCheckoutTime());
           //该连接未提交则回滚
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
-          //向空闲创建连接并且添加到空闲连接中
+          conn.rollbackIfDirty();
+          //重新包装连接
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
-          state.idleConnections.add(newConn);
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+          newConn.setLastValidatedTimestamp(conn.getLastValidatedTimestamp());
+          newConn.setExpiryTimestamp(conn.getExpiryTimestamp());
+          newConn.adoptState(conn);
           //原连接失效
           conn.invalidate();
           if (log.isDebugEnabled()) {
             log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
           }
-          //唤醒所有暂停连接
-          state.notifyAll();
+          //放回连接池原来的位置，如果有等待的线程则直接交给最先等待的线程
+          state.connections.requite(newConn, conn);
+          slotReused = true;
         } else {
-          //最大空闲连接数超过上限，则该连接失效，并且回滚相关未提交信息
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
+          //最大空闲连接数超过上限或者连接已到最大生存时间，则该连接失效，并且回滚相关未提交信息
+          state.accumulatedCheckoutTime.addAndGet(conn.getCheckoutTime());
+          conn.rollbackIfDirty();
+          conn.invalidate();
           conn.getRealConnection().close();
           if (log.isDebugEnabled()) {
             log.debug("Closed connection " + conn.getRealHashCode() + ".");
           }
-          conn.invalidate();
         }
       } else {
         if (log.isDebugEnabled()) {
           log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
         }
-        state.badConnectionCount++;
+        state.badConnectionCount.incrementAndGet();
+      }
+    } finally {
+      if (!slotReused) {
+        state.connections.discard(conn);
       }
     }
   }
@@ -390,97 +951,154 @@ public class PooledDataSource implements DataSource {
     boolean countedWait = false;
     PooledConnection conn = null;
     long t = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
     int localBadConnectionCount = 0;
 
+    ConnectionPriority priority = ConnectionPriority.getCurrent();
+    int lane = priority.ordinal();
+
     while (conn == null) {
-      synchronized (state) {
-    	//1. 先看是否有空闲(idle)状态下的PooledConnection对象
-        if (!state.idleConnections.isEmpty()) {//有空闲(idle)状态下的PooledConnection对象
+      //1. 先按优先级取得租约（低优先级不能占用为高优先级保留的连接），再看是否有空闲(idle)状态下的PooledConnection对象，优先使用当前线程最近归还的连接
+      if (state.connections.acquireLease(lane)) {
+        conn = state.connections.poll();
+        if (conn != null) {
           // Pool has available connection
-          //有，就直接返回一个可用的PooledConnection对象， 连接池中有空闲连接，取出第一个  
-          conn = state.idleConnections.remove(0);
           if (log.isDebugEnabled()) {
             log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
           }
-        } else {//没有空闲（idle）状态的PooledConnection对象
+        } else if (state.connections.reserveSlot(poolMaximumActiveConnections)) {
           // Pool does not have available connection
-          //2.查看活动状态的PooledConnection池activeConnections是否已满
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {//活动连接数小于最大活动连接数，活动连接数不满
-            // Can create new connection
-        	//没有满，则创建一个新的PooledConnection对象，然后放到activeConnections池
-            conn = new PooledConnection(dataSource.getConnection(), this);
+          // Can create new connection
+          //2.连接总数未满，则创建一个新的PooledConnection对象
+          try {
+            conn = newPooledConnection();
+          } catch (SQLException e) {
+            state.connections.releaseSlot();
+            state.connections.releaseLease();
+            throw e;
+          } catch (RuntimeException e) {
+            state.connections.releaseSlot();
+            state.connections.releaseLease();
+            throw e;
+          }
+          state.connections.addInUse(conn);
+          if (log.isDebugEnabled()) {
+            log.debug("Created connection " + conn.getRealHashCode() + ".");
+          }
+        } else {
+          // Cannot create new connection
+          //3. 看同等或更低优先级中检出时间最长的PooledConnection对象是否已经过期
+          PooledConnection oldestActiveConnection = state.connections.claimOverdue(poolMaximumCheckoutTime, lane);
+          if (oldestActiveConnection != null) {
+            // Can claim overdue connection
+            //申明逾期连接
+            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+            state.claimedOverdueConnectionCount.incrementAndGet();
+            state.accumulatedCheckoutTimeOfOverdueConnections.addAndGet(longestCheckoutTime);
+            state.accumulatedCheckoutTime.addAndGet(longestCheckoutTime);
+            oldestActiveConnection.invalidate();
+            try {
+              if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
+                oldestActiveConnection.getRealConnection().rollback();
+              }
+            } catch (SQLException e) {
+              state.connections.discard(oldestActiveConnection);
+              state.connections.releaseLease();
+              throw e;
+            }
+            //利用这个PoolConnection内部的realConnection重新生成一个PooledConnection，占用原来的位置
+            conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+            conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
+            conn.setExpiryTimestamp(oldestActiveConnection.getExpiryTimestamp());
+            state.connections.addInUse(conn, oldestActiveConnection);
             if (log.isDebugEnabled()) {
-              log.debug("Created connection " + conn.getRealHashCode() + ".");
+              log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
             }
-		          } else {
-		        	//3. 看最先进入activeConnections池中的PooledConnection对象是否已经过期
-		            // Cannot create new connection
-		        	// 当活动连接池已满，不能创建时，取出活动连接池的第一个，即最先进入连接池的PooledConnection对象  
-		            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-		            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
-		            //计算它的校验时间，如果校验时间大于连接池规定的最大校验时间，则认为它已经过期了，           
-		            if (longestCheckoutTime > poolMaximumCheckoutTime) {
-		              // Can claim overdue connection
-		              //申明逾期连接
-		              state.claimedOverdueConnectionCount++;
-		              state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-		              state.accumulatedCheckoutTime += longestCheckoutTime;
-		              state.activeConnections.remove(oldestActiveConnection);
-		              if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
-		                oldestActiveConnection.getRealConnection().rollback();
-		              }
-		              //利用这个PoolConnection内部的realConnection重新生成一个PooledConnection 
-		              conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
-		              oldestActiveConnection.invalidate();
-		              if (log.isDebugEnabled()) {
-		                log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
-		              }
-		            } else {
-		              // Must wait
-		              //4.线程等待
-		              try {
-		                if (!countedWait) {
-		                  state.hadToWaitCount++;
-		                  countedWait = true;
-		                }
-		                if (log.isDebugEnabled()) {
-		                  log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
-		                }
-		                long wt = System.currentTimeMillis();
-		                state.wait(poolTimeToWait);//线程等待
-		                state.accumulatedWaitTime += System.currentTimeMillis() - wt;
-		              } catch (InterruptedException e) {
-		                break;
-		              }
-		            }
-		          }
+          } else {
+            state.connections.releaseLease();
+          }
         }
-        if (conn != null) {
-        	//5.判断连接有效性
-          if (conn.isValid()) {//注意这个的逻辑内容
-            if (!conn.getRealConnection().getAutoCommit()) {
-              conn.getRealConnection().rollback();
+      }
+      if (conn == null) {
+        // Must wait
+        //调用线程设置了deadline时，等待不超过剩余的时间
+        long timeToWait = state.connections.hasBudget() ? Math.min(poolTimeToWait, GROUP_WAIT_SLICE) : poolTimeToWait;
+        Deadline deadline = Deadline.getCurrent();
+        if (deadline != null) {
+          long remaining = deadline.getRemaining(TimeUnit.MILLISECONDS);
+          if (remaining <= 0) {
+            state.rejectedRequestCount.incrementAndGet();
+            throw new SQLTimeoutException("PooledDataSource: the deadline expired while waiting for a connection.");
+          }
+          timeToWait = Math.min(timeToWait, remaining);
+        }
+        //4.线程在本优先级的队列中排队等待归还的连接，队列已满则立即失败
+        if (!state.connections.enterWaitQueue(lane, getMaximumWaiters(priority))) {
+          state.rejectedRequestCount.incrementAndGet();
+          throw new SQLTransientConnectionException("PooledDataSource: too many " + priority
+              + " priority requests are already waiting for a connection (" + getMaximumWaiters(priority) + ").");
+        }
+        try {
+          if (!countedWait) {
+            state.hadToWaitCount.incrementAndGet();
+            countedWait = true;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("Waiting as long as " + timeToWait + " milliseconds for connection.");
+          }
+          long wt = System.currentTimeMillis();
+          conn = state.connections.await(lane, timeToWait);
+          state.accumulatedWaitTime.addAndGet(System.currentTimeMillis() - wt);
+        } catch (InterruptedException e) {
+          break;
+        } finally {
+          state.connections.leaveWaitQueue(lane);
+        }
+      }
+      if (conn != null && conn.isExpired(System.currentTimeMillis())) {
+        //已到最大生存时间的连接直接关闭，不计入坏连接
+        if (state.connections.remove(conn)) {
+          state.connections.releaseSlot();
+        }
+        closeQuietly(conn);
+        conn = null;
+      } else if (conn != null) {
+        //5.判断连接有效性
+        if (conn.isValid()) {//注意这个的逻辑内容
+          try {
+            conn.rollbackIfDirty();
+          } catch (SQLException e) {
+            if (state.connections.remove(conn)) {
+              state.connections.releaseSlot();
             }
-            conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
-            conn.setCheckoutTimestamp(System.currentTimeMillis());
-            conn.setLastUsedTimestamp(System.currentTimeMillis());
-            state.activeConnections.add(conn);
-            state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
-          } else {
+            throw e;
+          }
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setPriorityLane(lane);
+          conn.setCheckoutTimestamp(System.currentTimeMillis());
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          if (poolLeakDetectionThreshold > 0) {
+            conn.setCheckoutTrace(new Throwable("Connection checked out"));
+          }
+          state.requestCount.incrementAndGet();
+          state.accumulatedRequestTime.addAndGet(System.currentTimeMillis() - t);
+          state.acquireTimeHistogram.record((System.nanoTime() - startNanos) / 1000);
+        } else {
+          if (log.isDebugEnabled()) {
+            log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+          }
+          if (state.connections.remove(conn)) {
+            state.connections.releaseSlot();
+          }
+          state.badConnectionCount.incrementAndGet();
+          localBadConnectionCount++;
+          conn = null;
+          //超过最大空闲连接数+3，则抛出异常
+          if (localBadConnectionCount > (poolMaximumIdleConnections + 3)) {
             if (log.isDebugEnabled()) {
-              log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
-            }
-            state.badConnectionCount++;
-            localBadConnectionCount++;
-            conn = null;
-            //超过最大空闲连接数+3，则抛出异常
-            if (localBadConnectionCount > (poolMaximumIdleConnections + 3)) {
-              if (log.isDebugEnabled()) {
-                log.debug("PooledDataSource: Could not get a good connection to the database.");
-              }
-              throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+              log.debug("PooledDataSource: Could not get a good connection to the database.");
             }
+            throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
           }
         }
       }
@@ -517,34 +1135,11 @@ public class PooledDataSource implements DataSource {
 
     if (result) {//未关闭
       if (poolPingEnabled) {//默认ping检查未启用
-        if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
-          try {
-            if (log.isDebugEnabled()) {
-              log.debug("Testing connection " + conn.getRealHashCode() + " ...");
-            }
-            Connection realConn = conn.getRealConnection();
-            Statement statement = realConn.createStatement();
-            ResultSet rs = statement.executeQuery(poolPingQuery);
-            rs.close();
-            statement.close();
-            if (!realConn.getAutoCommit()) {
-              realConn.rollback();
-            }
-            result = true;
-            if (log.isDebugEnabled()) {
-              log.debug("Connection " + conn.getRealHashCode() + " is GOOD!");
-            }
-          } catch (Exception e) {
-            log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
-            try {
-              conn.getRealConnection().close();
-            } catch (Exception e2) {
-              //ignore
-            }
-            result = false;
-            if (log.isDebugEnabled()) {
-              log.debug("Connection " + conn.getRealHashCode() + " is BAD: " + e.getMessage());
-            }
+        //后台维护线程最近校验过的连接不再重复校验
+        if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastValidation() > poolPingConnectionsNotUsedFor) {
+          result = validateConnection(conn);
+          if (result) {
+            conn.setLastValidatedTimestamp(System.currentTimeMillis());
           }
         }
       }
@@ -552,6 +1147,54 @@ public class PooledDataSource implements DataSource {
     return result;
   }
 
+  /*
+   * Checks the connection against the database, with the ping query if one is set
+   * or with Connection.isValid otherwise.
+   *
+   * @param conn - the connection to check
+   * @return True if the database answered
+   */
+  protected boolean validateConnection(PooledConnection conn) {
+    boolean result;
+    long startNanos = System.nanoTime();
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Testing connection " + conn.getRealHashCode() + " ...");
+      }
+      Connection realConn = conn.getRealConnection();
+      if (NO_PING_QUERY.equals(poolPingQuery)) {
+        result = realConn.isValid((poolValidationTimeout + 999) / 1000);
+      } else {
+        Statement statement = realConn.createStatement();
+        ResultSet rs = statement.executeQuery(poolPingQuery);
+        rs.close();
+        statement.close();
+        if (!realConn.getAutoCommit()) {
+          realConn.rollback();
+        }
+        result = true;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + conn.getRealHashCode() + " is " + (result ? "GOOD!" : "BAD"));
+      }
+    } catch (Exception e) {
+      log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
+      result = false;
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + conn.getRealHashCode() + " is BAD: " + e.getMessage());
+      }
+    }
+    state.validationTimeHistogram.record((System.nanoTime() - startNanos) / 1000);
+    if (!result) {
+      try {
+        conn.getRealConnection().close();
+      } catch (Exception e2) {
+        //ignore
+      }
+    }
+    return result;
+  }
+
   /*
    * Unwraps a pooled connection to get to the 'real' connection
    *
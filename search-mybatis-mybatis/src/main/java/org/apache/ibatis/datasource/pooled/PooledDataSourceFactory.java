@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
+import javax.sql.DataSource;
+
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 
 /**
@@ -22,8 +24,26 @@ import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
  */
 public class PooledDataSourceFactory extends UnpooledDataSourceFactory {
 
+  private boolean warmedUp;
+
   public PooledDataSourceFactory() {
     this.dataSource = new PooledDataSource();
   }
 
+  PooledDataSourceFactory(PooledDataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /*
+   * Warms the pool up the first time the data source is handed out, once all properties are set
+   */
+  @Override
+  public DataSource getDataSource() {
+    if (!warmedUp) {
+      warmedUp = true;
+      ((PooledDataSource) dataSource).warmUp();
+    }
+    return dataSource;
+  }
+
 }
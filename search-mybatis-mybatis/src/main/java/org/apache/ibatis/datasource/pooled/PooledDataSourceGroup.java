@@ -0,0 +1,337 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.TenantDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A set of {@link PooledDataSource} sub-pools, one per tenant, whose physical connections
+ * all count against one global maximum.
+ * <p>
+ * Each sub-pool keeps its own limits (poolMaximumActiveConnections, poolMinimumIdleConnections and
+ * so on, set through the tenant properties). When a busy tenant needs a connection and the global
+ * maximum is reached, the least recently used idle connection of the coldest other tenant is closed
+ * to make room, never going below that tenant's minimum.
+ * <p>
+ * The tenant is obtained from the {@link TenantResolver} (by default {@link ThreadLocalTenantResolver})
+ * when a session is opened. Sub-pools are created on first use from the url template, where
+ * <code>{tenant}</code> is replaced with the tenant name, or registered with {@link #addTenant}.
+ *
+ * @author Clinton Begin
+ */
+public class PooledDataSourceGroup implements TenantDataSource {
+
+  private static final Log log = LogFactory.getLog(PooledDataSourceGroup.class);
+
+  private static final String TENANT_PLACEHOLDER = "{tenant}";
+  private static final int MAX_RECLAIM_ATTEMPTS = 3;
+
+  private final ConcurrentMap<String, PooledDataSource> tenants = new ConcurrentHashMap<String, PooledDataSource>();
+  private final AtomicInteger usedConnections = new AtomicInteger();
+  private final Properties tenantProperties = new Properties();
+
+  private String urlTemplate;
+  private int maximumConnections = 100;
+  private TenantResolver tenantResolver = new ThreadLocalTenantResolver();
+
+  public PooledDataSourceGroup() {
+  }
+
+  public PooledDataSourceGroup(String urlTemplate, Properties tenantProperties) {
+    this.urlTemplate = urlTemplate;
+    this.tenantProperties.putAll(tenantProperties);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return getTenantDataSource().getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return getTenantDataSource().getConnection(username, password);
+  }
+
+  /*
+   * Gets the sub-pool of the tenant the resolver returns now
+   */
+  @Override
+  public PooledDataSource getTenantDataSource() {
+    String tenant = tenantResolver.resolveTenant();
+    if (tenant == null) {
+      throw new DataSourceException("No tenant is set. Set one with " + tenantResolver.getClass().getSimpleName()
+          + " before opening a session on a PooledDataSourceGroup.");
+    }
+    return getTenantDataSource(tenant);
+  }
+
+  /*
+   * Gets a sub-pool to read database metadata from, which is the same for every tenant:
+   * the current tenant's if one is set, otherwise any registered tenant's
+   *
+   * @return the sub-pool, or null if no tenant is set and none is registered
+   */
+  @Override
+  public PooledDataSource getAnyTenantDataSource() {
+    String tenant = tenantResolver.resolveTenant();
+    if (tenant != null) {
+      return getTenantDataSource(tenant);
+    }
+    Iterator<PooledDataSource> registered = tenants.values().iterator();
+    return registered.hasNext() ? registered.next() : null;
+  }
+
+  /*
+   * Gets the sub-pool of a tenant, creating it from the url template if needed
+   */
+  public PooledDataSource getTenantDataSource(String tenant) {
+    PooledDataSource dataSource = tenants.get(tenant);
+    if (dataSource == null) {
+      if (urlTemplate == null) {
+        throw new DataSourceException("Unknown tenant '" + tenant + "' and no urlTemplate to create its pool from.");
+      }
+      PooledDataSource created = new PooledDataSource();
+      created.setBudget(new TenantBudget(created));
+      Properties properties = new Properties();
+      properties.putAll(tenantProperties);
+      properties.setProperty("url", urlTemplate.replace(TENANT_PLACEHOLDER, tenant));
+      PooledDataSourceFactory factory = new PooledDataSourceFactory(created);
+      factory.setProperties(properties);
+      // warms the new pool up if poolWarmupConnections is set
+      factory.getDataSource();
+      dataSource = tenants.putIfAbsent(tenant, created);
+      if (dataSource == null) {
+        dataSource = created;
+        if (log.isDebugEnabled()) {
+          log.debug("Created pool for tenant " + tenant + ".");
+        }
+      } else {
+        created.forceCloseAll();
+      }
+    }
+    return dataSource;
+  }
+
+  /*
+   * Registers the pool of a tenant, which from now on counts against the global maximum
+   */
+  public void addTenant(String tenant, PooledDataSource dataSource) {
+    dataSource.setBudget(new TenantBudget(dataSource));
+    PooledDataSource previous = tenants.put(tenant, dataSource);
+    if (previous != null) {
+      previous.forceCloseAll();
+    }
+  }
+
+  public void removeTenant(String tenant) {
+    PooledDataSource removed = tenants.remove(tenant);
+    if (removed != null) {
+      removed.forceCloseAll();
+    }
+  }
+
+  public Set<String> getTenants() {
+    return Collections.unmodifiableSet(tenants.keySet());
+  }
+
+  /*
+   * Gets the statistics of one tenant's pool
+   *
+   * @return the pool state, or null if the tenant has no pool yet
+   */
+  public PoolState getPoolState(String tenant) {
+    PooledDataSource dataSource = tenants.get(tenant);
+    return dataSource == null ? null : dataSource.getPoolState();
+  }
+
+  /*
+   * Gets the number of physical connections open across all tenants
+   */
+  public int getConnectionCount() {
+    return usedConnections.get();
+  }
+
+  public void forceCloseAll() {
+    for (PooledDataSource dataSource : tenants.values()) {
+      dataSource.forceCloseAll();
+    }
+  }
+
+  public String getUrlTemplate() {
+    return urlTemplate;
+  }
+
+  /*
+   * The url of the tenant databases, where {tenant} stands for the tenant name
+   */
+  public void setUrlTemplate(String urlTemplate) {
+    this.urlTemplate = urlTemplate;
+  }
+
+  public int getMaximumConnections() {
+    return maximumConnections;
+  }
+
+  /*
+   * The maximum number of physical connections across all tenants
+   */
+  public void setMaximumConnections(int maximumConnections) {
+    this.maximumConnections = maximumConnections;
+  }
+
+  public TenantResolver getTenantResolver() {
+    return tenantResolver;
+  }
+
+  public void setTenantResolver(TenantResolver tenantResolver) {
+    this.tenantResolver = tenantResolver;
+  }
+
+  /*
+   * Sets a property (driver, username, poolMaximumActiveConnections...) of the pools created from the url template
+   */
+  public void setTenantProperty(String name, String value) {
+    tenantProperties.setProperty(name, value);
+  }
+
+  public Properties getTenantProperties() {
+    return tenantProperties;
+  }
+
+  private boolean tryAcquire() {
+    for (;;) {
+      int used = usedConnections.get();
+      if (used >= maximumConnections) {
+        return false;
+      }
+      if (usedConnections.compareAndSet(used, used + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /*
+   * Closes an idle connection of the tenant that has been cold the longest
+   */
+  private boolean reclaimIdleConnection(PooledDataSource requester) {
+    final Map<PooledDataSource, Long> idleSince = new HashMap<PooledDataSource, Long>();
+    for (PooledDataSource dataSource : tenants.values()) {
+      if (dataSource != requester) {
+        long oldest = dataSource.getOldestIdleTimestamp();
+        if (oldest != Long.MAX_VALUE) {
+          idleSince.put(dataSource, oldest);
+        }
+      }
+    }
+    List<PooledDataSource> candidates = new ArrayList<PooledDataSource>(idleSince.keySet());
+    Collections.sort(candidates, new Comparator<PooledDataSource>() {
+      @Override
+      public int compare(PooledDataSource o1, PooledDataSource o2) {
+        return idleSince.get(o1).compareTo(idleSince.get(o2));
+      }
+    });
+    for (PooledDataSource candidate : candidates) {
+      if (candidate.reclaimIdleConnection()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return DriverManager.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter logWriter) throws SQLException {
+    DriverManager.setLogWriter(logWriter);
+  }
+
+  @Override
+  public void setLoginTimeout(int loginTimeout) throws SQLException {
+    DriverManager.setLoginTimeout(loginTimeout);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return DriverManager.getLoginTimeout();
+  }
+
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    throw new SQLException(getClass().getName() + " is not a wrapper.");
+  }
+
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return false;
+  }
+
+  public Logger getParentLogger() {
+    return Logger.getLogger(Logger.GLOBAL_LOGGER_NAME); // requires JDK version 1.6
+  }
+
+  /**
+   * The share of the global maximum used by one tenant's pool.
+   */
+  private class TenantBudget implements PoolBudget {
+
+    private final PooledDataSource owner;
+
+    TenantBudget(PooledDataSource owner) {
+      this.owner = owner;
+    }
+
+    @Override
+    public boolean acquire() {
+      for (int attempt = 0; attempt < MAX_RECLAIM_ATTEMPTS; attempt++) {
+        if (tryAcquire()) {
+          return true;
+        }
+        if (!reclaimIdleConnection(owner)) {
+          return false;
+        }
+      }
+      return tryAcquire();
+    }
+
+    @Override
+    public void release() {
+      usedConnections.decrementAndGet();
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+/**
+ * Builds a {@link PooledDataSourceGroup}. The <code>urlTemplate</code>, <code>maximumConnections</code>
+ * and <code>tenantResolver</code> (a class name) properties configure the group, every other property
+ * is passed to the pool of each tenant.
+ *
+ * @author Clinton Begin
+ */
+public class PooledDataSourceGroupFactory implements DataSourceFactory {
+
+  private static final String DRIVER_PROPERTY_PREFIX = "driver.";
+
+  private final PooledDataSourceGroup dataSource = new PooledDataSourceGroup();
+
+  @Override
+  public void setProperties(Properties properties) {
+    MetaObject metaPool = SystemMetaObject.forObject(new PooledDataSource());
+    for (String name : properties.stringPropertyNames()) {
+      String value = properties.getProperty(name);
+      if ("urlTemplate".equals(name)) {
+        dataSource.setUrlTemplate(value);
+      } else if ("maximumConnections".equals(name)) {
+        dataSource.setMaximumConnections(Integer.parseInt(value));
+      } else if ("tenantResolver".equals(name)) {
+        dataSource.setTenantResolver(newTenantResolver(value));
+      } else if (name.startsWith(DRIVER_PROPERTY_PREFIX) || metaPool.hasSetter(name)) {
+        dataSource.setTenantProperty(name, value);
+      } else {
+        throw new DataSourceException("Unknown DataSource property: " + name);
+      }
+    }
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  private TenantResolver newTenantResolver(String className) {
+    try {
+      return (TenantResolver) Resources.classForName(className).newInstance();
+    } catch (Exception e) {
+      throw new DataSourceException("Error creating tenant resolver " + className + ". Cause: " + e, e);
+    }
+  }
+
+}
@@ -0,0 +1,323 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * Bounded LRU cache of prepared statements that belongs to one physical connection and
+ * survives the checkouts of that connection, so that the same SQL is prepared only once
+ * per connection instead of once per SqlSession.
+ * <p>
+ * Statements are handed out wrapped in a proxy; closing the proxy puts the statement back
+ * into the cache instead of closing it. A statement is only ever lent to one caller at a time.
+ *
+ * @author Clinton Begin
+ */
+class PreparedStatementCache {
+
+  private static final Class<?>[] IFACES = new Class<?>[] { PreparedStatement.class };
+  private static final int NOT_SET = Integer.MIN_VALUE;
+  // settings without a getter to restore them from
+  private static final Set<String> UNRESETTABLE_SETTINGS = new HashSet<String>(Arrays.asList(
+      "setEscapeProcessing", "setCursorName", "setLargeMaxRows", "closeOnCompletion"));
+
+  private final int maximumSize;
+  private final PoolState state;
+  private final LinkedHashMap<Key, PreparedStatement> statements;
+  private boolean closed;
+
+  PreparedStatementCache(int maximumSize, PoolState state) {
+    this.maximumSize = maximumSize;
+    this.state = state;
+    this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true);
+  }
+
+  /*
+   * Prepares a statement through the cache.
+   *
+   * @param realConnection - the connection to prepare new statements on
+   * @param proxyConnection - the connection the returned statement reports as its own
+   * @param args - the arguments given to Connection.prepareStatement
+   * @return the statement, or null if this variant of prepareStatement is not cached
+   */
+  PreparedStatement prepare(Connection realConnection, Connection proxyConnection, Object[] args) throws SQLException {
+    Key key = Key.forArguments(args);
+    if (key == null) {
+      return null;
+    }
+    PreparedStatement statement;
+    synchronized (this) {
+      statement = statements.remove(key);
+    }
+    if (statement != null) {
+      state.statementCacheHitCount.incrementAndGet();
+    } else {
+      state.statementCacheMissCount.incrementAndGet();
+      statement = key.prepare(realConnection);
+    }
+    CachedStatementHandler handler = new CachedStatementHandler(this, key, statement, proxyConnection);
+    return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), IFACES, handler);
+  }
+
+  /*
+   * Closes every cached statement. Statements lent out at this time are closed when they are returned.
+   */
+  synchronized void clear() {
+    closed = true;
+    for (PreparedStatement statement : statements.values()) {
+      closeQuietly(statement);
+    }
+    statements.clear();
+  }
+
+  synchronized int size() {
+    return statements.size();
+  }
+
+  private void giveBack(Key key, PreparedStatement statement) {
+    PreparedStatement evicted = null;
+    synchronized (this) {
+      if (!closed && !statements.containsKey(key)) {
+        statements.put(key, statement);
+        statement = null;
+        if (statements.size() > maximumSize) {
+          Iterator<PreparedStatement> eldest = statements.values().iterator();
+          evicted = eldest.next();
+          eldest.remove();
+        }
+      }
+    }
+    // either the cache is closed, or it already holds a statement for the same SQL
+    closeQuietly(statement);
+    closeQuietly(evicted);
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    if (statement != null) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+  }
+
+  /**
+   * The SQL text and the options a statement was prepared with.
+   */
+  static final class Key {
+
+    private final String sql;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int autoGeneratedKeys;
+    private final int hashCode;
+
+    private Key(String sql, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys) {
+      this.sql = sql;
+      this.resultSetType = resultSetType;
+      this.resultSetConcurrency = resultSetConcurrency;
+      this.autoGeneratedKeys = autoGeneratedKeys;
+      this.hashCode = ((sql.hashCode() * 31 + resultSetType) * 31 + resultSetConcurrency) * 31 + autoGeneratedKeys;
+    }
+
+    static Key forArguments(Object[] args) {
+      if (args == null || args.length == 0 || !(args[0] instanceof String)) {
+        return null;
+      } else if (args.length == 1) {
+        return new Key((String) args[0], NOT_SET, NOT_SET, NOT_SET);
+      } else if (args.length == 2 && args[1] instanceof Integer) {
+        return new Key((String) args[0], NOT_SET, NOT_SET, (Integer) args[1]);
+      } else if (args.length == 3 && args[1] instanceof Integer && args[2] instanceof Integer) {
+        return new Key((String) args[0], (Integer) args[1], (Integer) args[2], NOT_SET);
+      }
+      // column index/name arrays and holdability are not worth caching
+      return null;
+    }
+
+    PreparedStatement prepare(Connection connection) throws SQLException {
+      if (autoGeneratedKeys != NOT_SET) {
+        return connection.prepareStatement(sql, autoGeneratedKeys);
+      } else if (resultSetType != NOT_SET) {
+        return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+      } else {
+        return connection.prepareStatement(sql);
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hashCode == other.hashCode
+          && resultSetType == other.resultSetType
+          && resultSetConcurrency == other.resultSetConcurrency
+          && autoGeneratedKeys == other.autoGeneratedKeys
+          && sql.equals(other.sql);
+    }
+  }
+
+  /**
+   * One loan of a cached statement. Remembers the settings the borrower changed so they can
+   * be reset before the statement goes back into the cache. A statement whose settings
+   * cannot be read back is closed instead of being cached.
+   */
+  private static final class CachedStatementHandler implements InvocationHandler {
+
+    private final PreparedStatementCache cache;
+    private final Key key;
+    private final PreparedStatement statement;
+    private final Connection proxyConnection;
+    private final Map<String, Object> originalSettings = new HashMap<String, Object>();
+    private boolean batched;
+    private boolean reusable = true;
+    private boolean closed;
+
+    CachedStatementHandler(PreparedStatementCache cache, Key key, PreparedStatement statement, Connection proxyConnection) {
+      this.cache = cache;
+      this.key = key;
+      this.statement = statement;
+      this.proxyConnection = proxyConnection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      if (Object.class.equals(method.getDeclaringClass())) {
+        if ("equals".equals(methodName)) {
+          return proxy == args[0];
+        } else if ("hashCode".equals(methodName)) {
+          return System.identityHashCode(proxy);
+        }
+        return method.invoke(statement, args);
+      }
+      if ("close".equals(methodName)) {
+        close();
+        return null;
+      } else if ("isClosed".equals(methodName)) {
+        return closed || statement.isClosed();
+      }
+      if (closed) {
+        throw new SQLException("Error accessing PreparedStatement. Statement is closed.");
+      }
+      try {
+        if ("getConnection".equals(methodName)) {
+          return proxyConnection;
+        } else if ("addBatch".equals(methodName)) {
+          batched = true;
+        } else if ("setFetchSize".equals(methodName)) {
+          remember(methodName, statement.getFetchSize());
+        } else if ("setQueryTimeout".equals(methodName)) {
+          remember(methodName, statement.getQueryTimeout());
+        } else if ("setMaxRows".equals(methodName)) {
+          remember(methodName, statement.getMaxRows());
+        } else if ("setMaxFieldSize".equals(methodName)) {
+          remember(methodName, statement.getMaxFieldSize());
+        } else if ("setFetchDirection".equals(methodName)) {
+          remember(methodName, statement.getFetchDirection());
+        } else if ("setPoolable".equals(methodName)) {
+          remember(methodName, statement.isPoolable());
+        } else if (UNRESETTABLE_SETTINGS.contains(methodName)) {
+          // 这些设置无法读回原值，语句归还时直接关闭而不再放回缓存
+          reusable = false;
+        }
+        return method.invoke(statement, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+
+    private void remember(String setter, Object originalValue) {
+      if (!originalSettings.containsKey(setter)) {
+        originalSettings.put(setter, originalValue);
+      }
+    }
+
+    private void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (!reusable) {
+        closeQuietly(statement);
+        return;
+      }
+      try {
+        // 上一个使用者没有关闭的结果集和警告链不能留给下一个使用者
+        ResultSet resultSet = statement.getResultSet();
+        if (resultSet != null) {
+          resultSet.close();
+        }
+        statement.clearWarnings();
+        statement.clearParameters();
+        if (batched) {
+          statement.clearBatch();
+        }
+        for (Map.Entry<String, Object> setting : originalSettings.entrySet()) {
+          reset(setting.getKey(), setting.getValue());
+        }
+      } catch (SQLException e) {
+        // a statement that cannot be reset cannot be reused
+        closeQuietly(statement);
+        return;
+      }
+      cache.giveBack(key, statement);
+    }
+
+    private void reset(String setter, Object value) throws SQLException {
+      if ("setFetchSize".equals(setter)) {
+        statement.setFetchSize((Integer) value);
+      } else if ("setQueryTimeout".equals(setter)) {
+        statement.setQueryTimeout((Integer) value);
+      } else if ("setMaxRows".equals(setter)) {
+        statement.setMaxRows((Integer) value);
+      } else if ("setMaxFieldSize".equals(setter)) {
+        statement.setMaxFieldSize((Integer) value);
+      } else if ("setFetchDirection".equals(setter)) {
+        statement.setFetchDirection((Integer) value);
+      } else if ("setPoolable".equals(setter)) {
+        statement.setPoolable((Boolean) value);
+      }
+    }
+  }
+
+}
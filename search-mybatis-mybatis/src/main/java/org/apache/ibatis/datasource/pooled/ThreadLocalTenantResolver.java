@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * The default {@link TenantResolver}: the tenant is set on the calling thread before a session is opened.
+ * <pre>
+ * ThreadLocalTenantResolver.setCurrentTenant("acme");
+ * try {
+ *   SqlSession session = sqlSessionFactory.openSession();
+ *   ...
+ * } finally {
+ *   ThreadLocalTenantResolver.clearCurrentTenant();
+ * }
+ * </pre>
+ *
+ * @author Clinton Begin
+ */
+public class ThreadLocalTenantResolver implements TenantResolver {
+
+  private static final ThreadLocal<String> CURRENT_TENANT = new ThreadLocal<String>();
+
+  public static void setCurrentTenant(String tenant) {
+    CURRENT_TENANT.set(tenant);
+  }
+
+  public static String getCurrentTenant() {
+    return CURRENT_TENANT.get();
+  }
+
+  public static void clearCurrentTenant() {
+    CURRENT_TENANT.remove();
+  }
+
+  @Override
+  public String resolveTenant() {
+    return CURRENT_TENANT.get();
+  }
+
+}
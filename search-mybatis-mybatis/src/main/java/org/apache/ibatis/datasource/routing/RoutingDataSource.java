@@ -0,0 +1,300 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * A DataSource made of one primary and any number of read replicas.
+ * <p>
+ * {@link #getConnection()} always returns a primary connection, so this data source can be used
+ * anywhere a plain one is expected. {@link #getReplicaDataSource()} gives a view that balances
+ * connections over the replicas, falling back to the primary when there are none.
+ * The routing itself is done per statement by
+ * {@link org.apache.ibatis.transaction.routing.RoutingTransaction}.
+ *
+ * @author Clinton Begin
+ */
+public class RoutingDataSource implements DataSource {
+
+  /**
+   * How a replica is picked for each new replica connection.
+   */
+  public enum BalanceStrategy {
+    /** the replica with the fewest connections currently open through this data source, weights break ties */
+    LEAST_OUTSTANDING,
+    /** a random replica, chosen proportionally to its weight */
+    WEIGHTED
+  }
+
+  private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
+
+  private DataSource primary;
+  private final List<Replica> replicas = new CopyOnWriteArrayList<Replica>();
+  private final Random random = new Random();
+  private final DataSource replicaDataSource = new ReplicaDataSource();
+  private BalanceStrategy balanceStrategy = BalanceStrategy.LEAST_OUTSTANDING;
+
+  public RoutingDataSource() {
+  }
+
+  public RoutingDataSource(DataSource primary) {
+    this.primary = primary;
+  }
+
+  public void setPrimary(DataSource primary) {
+    this.primary = primary;
+  }
+
+  public DataSource getPrimary() {
+    return primary;
+  }
+
+  public void addReplica(DataSource replica) {
+    addReplica(replica, 1);
+  }
+
+  public void addReplica(DataSource replica, int weight) {
+    if (weight <= 0) {
+      throw new DataSourceException("Replica weight must be positive but was " + weight);
+    }
+    replicas.add(new Replica(replica, weight));
+  }
+
+  public List<DataSource> getReplicas() {
+    List<DataSource> list = new ArrayList<DataSource>();
+    for (Replica replica : replicas) {
+      list.add(replica.dataSource);
+    }
+    return list;
+  }
+
+  public void setBalanceStrategy(BalanceStrategy balanceStrategy) {
+    this.balanceStrategy = balanceStrategy;
+  }
+
+  public BalanceStrategy getBalanceStrategy() {
+    return balanceStrategy;
+  }
+
+  /*
+   * A view of this data source that hands out replica connections
+   */
+  public DataSource getReplicaDataSource() {
+    return replicaDataSource;
+  }
+
+  /*
+   * Gets the number of replica connections currently open through this data source, per replica
+   */
+  public int[] getOutstandingReplicaConnections() {
+    int[] counts = new int[replicas.size()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = replicas.get(i).outstanding.get();
+    }
+    return counts;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return primary.getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return primary.getConnection(username, password);
+  }
+
+  private Replica chooseReplica() {
+    List<Replica> candidates = replicas;
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    if (balanceStrategy == BalanceStrategy.WEIGHTED) {
+      int totalWeight = 0;
+      for (Replica replica : candidates) {
+        totalWeight += replica.weight;
+      }
+      int point;
+      synchronized (random) {
+        point = random.nextInt(totalWeight);
+      }
+      for (Replica replica : candidates) {
+        point -= replica.weight;
+        if (point < 0) {
+          return replica;
+        }
+      }
+      return candidates.get(candidates.size() - 1);
+    }
+    Replica best = null;
+    for (Replica replica : candidates) {
+      // compare outstanding/weight without dividing
+      if (best == null
+          || (long) replica.outstanding.get() * best.weight < (long) best.outstanding.get() * replica.weight) {
+        best = replica;
+      }
+    }
+    return best;
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return DriverManager.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter logWriter) throws SQLException {
+    DriverManager.setLogWriter(logWriter);
+  }
+
+  @Override
+  public void setLoginTimeout(int loginTimeout) throws SQLException {
+    DriverManager.setLoginTimeout(loginTimeout);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return DriverManager.getLoginTimeout();
+  }
+
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    throw new SQLException(getClass().getName() + " is not a wrapper.");
+  }
+
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return false;
+  }
+
+  public Logger getParentLogger() {
+    return Logger.getLogger(Logger.GLOBAL_LOGGER_NAME); // requires JDK version 1.6
+  }
+
+  private static class Replica {
+    private final DataSource dataSource;
+    private final int weight;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    Replica(DataSource dataSource, int weight) {
+      this.dataSource = dataSource;
+      this.weight = weight;
+    }
+  }
+
+  private class ReplicaDataSource implements DataSource {
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      Replica replica = chooseReplica();
+      if (replica == null) {
+        return primary.getConnection();
+      }
+      return track(replica, replica.dataSource.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+      Replica replica = chooseReplica();
+      if (replica == null) {
+        return primary.getConnection(username, password);
+      }
+      return track(replica, replica.dataSource.getConnection(username, password));
+    }
+
+    private Connection track(Replica replica, Connection connection) {
+      replica.outstanding.incrementAndGet();
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES,
+          new OutstandingConnection(replica, connection));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+      return RoutingDataSource.this.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter logWriter) throws SQLException {
+      RoutingDataSource.this.setLogWriter(logWriter);
+    }
+
+    @Override
+    public void setLoginTimeout(int loginTimeout) throws SQLException {
+      RoutingDataSource.this.setLoginTimeout(loginTimeout);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+      return RoutingDataSource.this.getLoginTimeout();
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+      throw new SQLException(getClass().getName() + " is not a wrapper.");
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+      return false;
+    }
+
+    public Logger getParentLogger() {
+      return RoutingDataSource.this.getParentLogger();
+    }
+  }
+
+  /**
+   * Decrements the outstanding count of its replica once the connection is closed.
+   */
+  private static class OutstandingConnection implements InvocationHandler {
+    private final Replica replica;
+    private final Connection connection;
+    private boolean closed;
+
+    OutstandingConnection(Replica replica, Connection connection) {
+      this.replica = replica;
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if ("close".equals(method.getName()) && !closed) {
+        closed = true;
+        replica.outstanding.decrementAndGet();
+      }
+      try {
+        return method.invoke(connection, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+  }
+
+}
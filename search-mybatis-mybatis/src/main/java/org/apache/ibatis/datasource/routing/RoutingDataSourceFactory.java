@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.routing;
+
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+
+/**
+ * Builds a {@link RoutingDataSource} with one pooled data source for the primary and one per replica.
+ * <p>
+ * Properties prefixed with <code>primary.</code> or with a replica name listed in <code>replicas</code>
+ * go to that pool only, all other pool properties are shared by every pool. For example:
+ * <pre>
+ * driver=org.hsqldb.jdbcDriver
+ * primary.url=jdbc:hsqldb:hsql://primary/db
+ * replicas=r1,r2
+ * r1.url=jdbc:hsqldb:hsql://replica1/db
+ * r2.url=jdbc:hsqldb:hsql://replica2/db
+ * r2.weight=2
+ * balanceStrategy=WEIGHTED
+ * </pre>
+ *
+ * @author Clinton Begin
+ */
+public class RoutingDataSourceFactory implements DataSourceFactory {
+
+  private static final String PRIMARY = "primary";
+  private static final String REPLICAS = "replicas";
+  private static final String WEIGHT = "weight";
+  private static final String BALANCE_STRATEGY = "balanceStrategy";
+
+  private final RoutingDataSource dataSource = new RoutingDataSource();
+
+  @Override
+  public void setProperties(Properties properties) {
+    String[] replicaNames = split(properties.getProperty(REPLICAS));
+    String strategy = properties.getProperty(BALANCE_STRATEGY);
+    if (strategy != null) {
+      try {
+        dataSource.setBalanceStrategy(RoutingDataSource.BalanceStrategy.valueOf(strategy.trim().toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        throw new DataSourceException("Unknown balanceStrategy: " + strategy + ". Use LEAST_OUTSTANDING or WEIGHTED.", e);
+      }
+    }
+    dataSource.setPrimary(buildPool(PRIMARY, replicaNames, properties));
+    for (String name : replicaNames) {
+      String weight = properties.getProperty(name + "." + WEIGHT);
+      DataSource replica = buildPool(name, replicaNames, properties);
+      dataSource.addReplica(replica, weight == null ? 1 : Integer.parseInt(weight.trim()));
+    }
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  private DataSource buildPool(String name, String[] replicaNames, Properties properties) {
+    Properties poolProperties = new Properties();
+    String prefix = name + ".";
+    for (String key : properties.stringPropertyNames()) {
+      if (REPLICAS.equals(key) || BALANCE_STRATEGY.equals(key) || isGroupProperty(key, replicaNames)) {
+        continue;
+      }
+      poolProperties.setProperty(key, properties.getProperty(key));
+    }
+    for (String key : properties.stringPropertyNames()) {
+      if (key.startsWith(prefix) && !key.equals(prefix + WEIGHT)) {
+        poolProperties.setProperty(key.substring(prefix.length()), properties.getProperty(key));
+      }
+    }
+    PooledDataSourceFactory factory = new PooledDataSourceFactory();
+    factory.setProperties(poolProperties);
+    return factory.getDataSource();
+  }
+
+  private boolean isGroupProperty(String key, String[] replicaNames) {
+    if (key.startsWith(PRIMARY + ".")) {
+      return true;
+    }
+    for (String name : replicaNames) {
+      if (key.startsWith(name + ".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String[] split(String value) {
+    if (value == null || value.trim().length() == 0) {
+      return new String[0];
+    }
+    String[] names = value.split(",");
+    for (int i = 0; i < names.length; i++) {
+      names[i] = names[i].trim();
+    }
+    return names;
+  }
+
+}
@@ -20,11 +20,13 @@ import static org.apache.ibatis.executor.ExecutionPlaceholder.EXECUTION_PLACEHOL
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.logging.jdbc.ConnectionLogger;
@@ -36,10 +38,13 @@ import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ConnectionPriority;
 import org.apache.ibatis.session.LocalCacheScope;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.RoutableTransaction;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.routing.RoutingTransaction;
 import org.apache.ibatis.type.TypeHandlerRegistry;
 
 /**
@@ -60,6 +65,7 @@ public abstract class BaseExecutor implements Executor {
 
   protected int queryStack = 0;
   private boolean closed;
+  private ConnectionPriority statementPriority;
 
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
@@ -114,6 +120,7 @@ public abstract class BaseExecutor implements Executor {
       throw new ExecutorException("Executor was closed.");
     }
     clearLocalCache();
+    route(ms);
     return doUpdate(ms, parameter);
   }
 
@@ -175,17 +182,98 @@ public abstract class BaseExecutor implements Executor {
       queryStack--;
     }
     if (queryStack == 0) {
-      for (DeferredLoad deferredLoad : deferredLoads) {
-        deferredLoad.load();
-      }
-      // issue #601
-      deferredLoads.clear();
-      if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
-        // issue #482
+      finishQuery();
+    }
+    return list;
+  }
+
+  /**
+   * 一级缓存命中的语句直接返回；开启multiStatementSelectsEnabled时其余可拼接的语句在一次往返中执行，
+   * 剩下的逐条查询。只有与第一条可拼接语句路由到同一目标的语句才会拼接，其余的各自路由后逐条查询
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<List<Object>> queryMultiple(List<MappedStatement> mss, List<Object> parameters) throws SQLException {
+    if (closed) {
+      throw new ExecutorException("Executor was closed.");
+    }
+    List<List<Object>> results = new ArrayList<List<Object>>(mss.size());
+    List<CacheKey> keys = new ArrayList<CacheKey>(mss.size());
+    List<BoundSql> boundSqls = new ArrayList<BoundSql>(mss.size());
+    List<Integer> joinable = new ArrayList<Integer>();
+    for (int i = 0; i < mss.size(); i++) {
+      MappedStatement ms = mss.get(i);
+      if (queryStack == 0 && ms.isFlushCacheRequired()) {
         clearLocalCache();
       }
+      BoundSql boundSql = ms.getBoundSql(parameters.get(i));
+      CacheKey key = createCacheKey(ms, parameters.get(i), RowBounds.DEFAULT, boundSql);
+      Object cached = localCache.getObject(key);
+      results.add(cached instanceof List ? (List<Object>) cached : null);
+      keys.add(key);
+      boundSqls.add(boundSql);
+      if (results.get(i) == null && MultiStatementQuery.canJoin(ms, boundSql)
+          && (joinable.isEmpty() || routesTogether(mss.get(joinable.get(0)), ms))) {
+        joinable.add(i);
+      }
     }
-    return list;
+    if (joinable.size() > 1 && configuration.isMultiStatementSelectsEnabled()) {
+      List<MappedStatement> joinedStatements = new ArrayList<MappedStatement>(joinable.size());
+      List<Object> joinedParameters = new ArrayList<Object>(joinable.size());
+      List<BoundSql> joinedBoundSqls = new ArrayList<BoundSql>(joinable.size());
+      for (Integer i : joinable) {
+        joinedStatements.add(mss.get(i));
+        joinedParameters.add(parameters.get(i));
+        joinedBoundSqls.add(boundSqls.get(i));
+      }
+      List<List<Object>> joinedResults;
+      try {
+        queryStack++;
+        route(joinedStatements.get(0));
+        joinedResults = doQueryMultiple(joinedStatements, joinedParameters, joinedBoundSqls);
+      } finally {
+        queryStack--;
+      }
+      if (joinedResults != null) {
+        for (int j = 0; j < joinable.size(); j++) {
+          int i = joinable.get(j);
+          results.set(i, joinedResults.get(j));
+          localCache.putObject(keys.get(i), joinedResults.get(j));
+        }
+      }
+    }
+    for (int i = 0; i < mss.size(); i++) {
+      if (results.get(i) == null) {
+        results.set(i, this.<Object> query(mss.get(i), parameters.get(i), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, keys.get(i), boundSqls.get(i)));
+      }
+    }
+    if (queryStack == 0) {
+      finishQuery();
+    }
+    return results;
+  }
+
+  private void finishQuery() {
+    for (DeferredLoad deferredLoad : deferredLoads) {
+      deferredLoad.load();
+    }
+    // issue #601
+    deferredLoads.clear();
+    if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
+      // issue #482
+      clearLocalCache();
+    }
+  }
+
+  @Override
+  public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+    ErrorContext.instance().resource(ms.getResource()).activity("executing a cursor query").object(ms.getId());
+    if (closed) {
+      throw new ExecutorException("Executor was closed.");
+    }
+    BoundSql boundSql = ms.getBoundSql(parameter);
+    route(ms);
+    return doQueryCursor(ms, parameter, rowBounds, boundSql);
   }
 
   @Override
@@ -313,6 +401,21 @@ public abstract class BaseExecutor implements Executor {
   protected abstract <E> List<E> doQuery(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException;
 
+  /**
+   * 返回的游标持有Statement，由游标在关闭时释放，执行器不能关闭或复用它
+   */
+  protected abstract <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql)
+      throws SQLException;
+
+  /**
+   * 在一次往返中执行多条查询，驱动不支持时返回null，由调用方逐条执行
+   */
+  protected List<List<Object>> doQueryMultiple(List<MappedStatement> mss, List<Object> parameters, List<BoundSql> boundSqls)
+      throws SQLException {
+    Connection connection = getConnection(mss.get(0).getStatementLog());
+    return new MultiStatementQuery(configuration, mss, parameters, boundSqls).execute(wrapper, connection);
+  }
+
   protected void closeStatement(Statement statement) {
     if (statement != null) {
       try {
@@ -344,6 +447,7 @@ public abstract class BaseExecutor implements Executor {
     List<E> list;
     localCache.putObject(key, EXECUTION_PLACEHOLDER);
     try {
+      route(ms);
       //4. 执行查询，返回List 结果，然后将查询的结果放入缓存之中
       list = doQuery(ms, parameter, rowBounds, resultHandler, boundSql);
     } finally {
@@ -356,8 +460,43 @@ public abstract class BaseExecutor implements Executor {
     return list;
   }
 
+  /**
+   * 让支持路由的事务（如读写分离）根据即将执行的语句选择连接，并记下该语句获取连接时的优先级
+   * @param ms
+   */
+  private void route(MappedStatement ms) {
+    statementPriority = ms.getPriority();
+    if (transaction instanceof RoutableTransaction) {
+      ((RoutableTransaction) transaction).route(ms);
+    }
+  }
+
+  /*
+   * Tells whether two statements would get their connection from the same target
+   */
+  private boolean routesTogether(MappedStatement first, MappedStatement ms) {
+    if (transaction instanceof RoutingTransaction) {
+      RoutingTransaction routingTransaction = (RoutingTransaction) transaction;
+      return routingTransaction.isRoutedToPrimary(first) == routingTransaction.isRoutedToPrimary(ms);
+    }
+    // 无法预先知道其他可路由事务会选择哪个目标，不拼接
+    return !(transaction instanceof RoutableTransaction);
+  }
+
   protected Connection getConnection(Log statementLog) throws SQLException {
-    Connection connection = transaction.getConnection();
+    Connection connection;
+    if (statementPriority == null) {
+      connection = transaction.getConnection();
+    } else {
+      // 语句自带的优先级只在获取连接期间覆盖当前线程的优先级
+      ConnectionPriority threadPriority = ConnectionPriority.getCurrent();
+      ConnectionPriority.setCurrent(statementPriority);
+      try {
+        connection = transaction.getConnection();
+      } finally {
+        ConnectionPriority.setCurrent(threadPriority);
+      }
+    }
     if (statementLog.isDebugEnabled()) {
       return ConnectionLogger.newInstance(connection, statementLog, queryStack);
     } else {
@@ -21,30 +21,62 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.executor.statement.StatementWatchdog;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
 
 /**
+ * 批量执行器：每个不同的SQL保持一个打开的JDBC批次，调用flushStatements、提交、查询
+ * 或达到 batchFlushSize / batchFlushBytes 时执行。
+ * <p>
+ * 自动执行的批次结果默认保留到下一次flushStatements一并返回；关闭 batchKeepParameterObjects 后不再保留，
+ * flushStatements 只返回它自己执行的批次，之前自动执行的批次如果失败会在当时抛出 BatchExecutorException。
+ * <p>
+ * 批次按打开的先后顺序执行。默认只有与最后一个批次相同的语句才并入该批次，执行顺序与调用顺序一致。
+ * 开启 batchRegroupInserts 后，交替出现的insert（如 A、B、A、B）只要其间没有update/delete也会并入各自
+ * 更早的批次，执行顺序变为先所有A后所有B。这会把一行insert提前到其间其他表的insert之前，
+ * 如果它依赖其间插入的行（如外键指向之后才插入的父行），执行批次时会违反约束，所以只适用于
+ * 后插入的行只依赖更早打开的批次的导入（如先父表后子表）。
+ * <p>
+ * 设置了 multiRowInsertChunkSize 时，可以改写的单行insert不使用JDBC批次，
+ * 而是在执行时合并成多行 INSERT ... VALUES (...),(...) 分块执行，见 {@link MultiRowInsert}。
+ *
  * @author Jeff Butler 
  */
 public class BatchExecutor extends BaseExecutor {
 
   public static final int BATCH_UPDATE_RETURN_VALUE = Integer.MIN_VALUE + 1002;
 
+  // 每行参数在字节估算中的固定开销
+  private static final int ROW_OVERHEAD_BYTES = 16;
+
   private final List<Statement> statementList = new ArrayList<Statement>();
   private final List<BatchResult> batchResultList = new ArrayList<BatchResult>();
-  private String currentSql;
-  private MappedStatement currentStatement;
+  // 改写为多行insert的批次，与statementList一一对应，普通批次为null（此时statementList中对应的是null）
+  private final List<MultiRowInsert> multiRowInsertList = new ArrayList<MultiRowInsert>();
+  // 语句id + SQL -> 该语句最近打开的批次在statementList中的下标
+  private final Map<String, Integer> openBatches = new HashMap<String, Integer>();
+  // 自动执行过的批次结果，在下一次flushStatements时一并返回；batchKeepParameterObjects关闭时不保留
+  private final List<BatchResult> flushedResults = new ArrayList<BatchResult>();
+  private int lastNonInsertBatch = -1;
+  private int pendingRows;
+  private long pendingBytes;
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
@@ -56,27 +88,136 @@ public class BatchExecutor extends BaseExecutor {
     final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
-    final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
-      int last = statementList.size() - 1;
-      stmt = statementList.get(last);
-     handler.parameterize(stmt);//fix Issues 322
-      BatchResult batchResult = batchResultList.get(last);
-      batchResult.addParameterObject(parameterObject);
+    final String batchKey = ms.getId() + '\n' + sql;
+    final Integer open = openBatches.get(batchKey);
+    final int index;
+    final MultiRowInsert multiRowInsert;
+    if (open != null && canJoin(open, ms)) {
+      index = open;
+      multiRowInsert = multiRowInsertList.get(index);
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection);
-      handler.parameterize(stmt);    //fix Issues 322
-      currentSql = sql;
-      currentStatement = ms;
+      index = statementList.size();
+      multiRowInsert = MultiRowInsert.forStatement(ms, handler, configuration.getMultiRowInsertChunkSize());
+      Statement stmt = null;
+      if (multiRowInsert == null) {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection);
+      }
+      if (ms.getSqlCommandType() != SqlCommandType.INSERT) {
+        lastNonInsertBatch = index;
+      }
+      openBatches.put(batchKey, index);
       statementList.add(stmt);
-      batchResultList.add(new BatchResult(ms, sql, parameterObject));
+      batchResultList.add(new BatchResult(ms, sql));
+      multiRowInsertList.add(multiRowInsert);
+    }
+    retainParameterObject(batchResultList.get(index), parameterObject);
+    Object[] parameterValues = null;
+    if (multiRowInsert != null) {
+      parameterValues = resolveParameterValues(configuration, boundSql, parameterObject);
+      multiRowInsert.addRow(parameterValues);
+    } else {
+      Statement stmt = statementList.get(index);
+      handler.parameterize(stmt);//fix Issues 322
+      handler.batch(stmt);
+    }
+    pendingRows++;
+    if (configuration.getBatchFlushBytes() > 0) {
+      if (parameterValues == null) {
+        parameterValues = resolveParameterValues(configuration, boundSql, parameterObject);
+      }
+      pendingBytes += estimateRowBytes(parameterValues);
+    }
+    if (isFlushRequired(configuration)) {
+      List<BatchResult> results = doFlushStatements(false);
+      // 不保留参数对象时也不保留自动执行的批次结果（每行一个更新数），否则长时间的导入仍会占满内存
+      if (configuration.isBatchKeepParameterObjects()) {
+        flushedResults.addAll(results);
+      }
     }
-  // handler.parameterize(stmt);
-    handler.batch(stmt);
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  /**
+   * 并入批次index会把该语句提前到其后打开的所有批次之前执行，
+   * 最后一个批次总可以并入；更早的批次只有开启batchRegroupInserts、且它和其后的批次都是insert时才并入
+   */
+  private boolean canJoin(int index, MappedStatement ms) {
+    return index == statementList.size() - 1
+        || (configuration.isBatchRegroupInserts() && ms.getSqlCommandType() == SqlCommandType.INSERT
+            && index > lastNonInsertBatch);
+  }
+
+  private void retainParameterObject(BatchResult batchResult, Object parameterObject) {
+    // 生成主键时执行批次后还要回填参数对象，所以总要保留到批次执行
+    if (configuration.isBatchKeepParameterObjects() || hasKeyGenerator(batchResult.getMappedStatement())) {
+      batchResult.addParameterObject(parameterObject);
+    }
+  }
+
+  private boolean hasKeyGenerator(MappedStatement ms) {
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    return keyGenerator != null && !NoKeyGenerator.class.equals(keyGenerator.getClass());
+  }
+
+  private boolean isFlushRequired(Configuration configuration) {
+    int flushSize = configuration.getBatchFlushSize();
+    long flushBytes = configuration.getBatchFlushBytes();
+    return (flushSize > 0 && pendingRows >= flushSize) || (flushBytes > 0 && pendingBytes >= flushBytes);
+  }
+
+  /**
+   * 按 DefaultParameterHandler 的规则取出一行的参数值
+   */
+  static Object[] resolveParameterValues(Configuration configuration, BoundSql boundSql, Object parameterObject) {
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    if (parameterMappings == null) {
+      return new Object[0];
+    }
+    Object[] values = new Object[parameterMappings.size()];
+    MetaObject metaObject = null;
+    for (int i = 0; i < values.length; i++) {
+      String propertyName = parameterMappings.get(i).getProperty();
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        values[i] = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        values[i] = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        values[i] = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        values[i] = metaObject.getValue(propertyName);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * 粗略估算一行参数在驱动中占用的字节数：字符串按UTF-16，二进制按长度，其余按8字节
+   */
+  private long estimateRowBytes(Object[] parameterValues) {
+    long bytes = ROW_OVERHEAD_BYTES;
+    for (Object value : parameterValues) {
+      if (value instanceof CharSequence) {
+        bytes += 2L * ((CharSequence) value).length();
+      } else if (value instanceof byte[]) {
+        bytes += ((byte[]) value).length;
+      } else {
+        bytes += 8;
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  protected List<List<Object>> doQueryMultiple(List<MappedStatement> mss, List<Object> parameters, List<BoundSql> boundSqls)
+      throws SQLException {
+    flushStatements();
+    return super.doQueryMultiple(mss, parameters, boundSqls);
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -94,29 +235,77 @@ public class BatchExecutor extends BaseExecutor {
     }
   }
 
+  @Override
+  protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+    flushStatements();
+    Configuration configuration = ms.getConfiguration();
+    StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameter, rowBounds, null, boundSql);
+    Connection connection = getConnection(ms.getStatementLog());
+    Statement stmt = handler.prepare(connection);
+    try {
+      handler.parameterize(stmt);
+      return handler.<E>queryCursor(stmt);
+    } catch (SQLException e) {
+      //游标没有打开，调用方拿不到这个Statement，必须在这里关闭
+      closeStatement(stmt);
+      throw e;
+    } catch (RuntimeException e) {
+      closeStatement(stmt);
+      throw e;
+    }
+  }
+
+  private int[] executeMultiRowInsert(MultiRowInsert multiRowInsert, MappedStatement ms, List<Object> parameterObjects) throws SQLException {
+    try {
+      return multiRowInsert.execute(getConnection(ms.getStatementLog()), parameterObjects);
+    } catch (BatchUpdateException e) {
+      throw e;
+    } catch (SQLException e) {
+      // 与普通批次一样以BatchUpdateException报告失败
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), new int[0], e);
+    }
+  }
+
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
     try {
-      List<BatchResult> results = new ArrayList<BatchResult>();
+      List<BatchResult> results = new ArrayList<BatchResult>(flushedResults);
+      flushedResults.clear();
       if (isRollback) {
         return Collections.emptyList();
       }
       for (int i = 0, n = statementList.size(); i < n; i++) {
         Statement stmt = statementList.get(i);
         BatchResult batchResult = batchResultList.get(i);
+        MultiRowInsert multiRowInsert = multiRowInsertList.get(i);
         try {
-          batchResult.setUpdateCounts(stmt.executeBatch());
           MappedStatement ms = batchResult.getMappedStatement();
           List<Object> parameterObjects = batchResult.getParameterObjects();
-          KeyGenerator keyGenerator = ms.getKeyGenerator();
-          if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
-            Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
-            jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
-          } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
-            for (Object parameter : parameterObjects) {
-              keyGenerator.processAfter(this, ms, stmt, parameter);
+          if (multiRowInsert != null) {
+            // 多行insert在执行每一块时已经回填了主键
+            batchResult.setUpdateCounts(executeMultiRowInsert(multiRowInsert, ms, parameterObjects));
+          } else {
+            StatementWatchdog watchdog = StatementWatchdog.watch(stmt);
+            try {
+              batchResult.setUpdateCounts(stmt.executeBatch());
+            } catch (SQLException e) {
+              throw watchdog.translate(e);
+            } finally {
+              watchdog.stop();
+            }
+            KeyGenerator keyGenerator = ms.getKeyGenerator();
+            if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
+              Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
+              jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
+            } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
+              for (Object parameter : parameterObjects) {
+                keyGenerator.processAfter(this, ms, stmt, parameter);
+              }
             }
           }
+          if (!configuration.isBatchKeepParameterObjects()) {
+            parameterObjects.clear();
+          }
         } catch (BatchUpdateException e) {
           StringBuilder message = new StringBuilder();
           message.append(batchResult.getMappedStatement().getId())
@@ -124,9 +313,9 @@ public class BatchExecutor extends BaseExecutor {
               .append(i + 1)
               .append(")")
               .append(" failed.");
-          if (i > 0) {
+          if (!results.isEmpty()) {
             message.append(" ")
-                .append(i)
+                .append(results.size())
                 .append(" prior sub executor(s) completed successfully, but will be rolled back.");
           }
           throw new BatchExecutorException(message.toString(), e, results, batchResult);
@@ -138,9 +327,13 @@ public class BatchExecutor extends BaseExecutor {
       for (Statement stmt : statementList) {
         closeStatement(stmt);
       }
-      currentSql = null;
       statementList.clear();
       batchResultList.clear();
+      multiRowInsertList.clear();
+      openBatches.clear();
+      lastNonInsertBatch = -1;
+      pendingRows = 0;
+      pendingBytes = 0;
     }
   }
 
@@ -16,11 +16,13 @@
 package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
@@ -76,6 +78,44 @@ public class CachingExecutor implements Executor {
     return delegate.update(ms, parameterObject);
   }
 
+  /**
+   * 游标不经过二级缓存，但与普通查询一样遵守 flushCache 设置
+   */
+  @Override
+  public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+    flushCacheIfRequired(ms);
+    return delegate.queryCursor(ms, parameter, rowBounds);
+  }
+
+  /**
+   * 使用二级缓存的语句逐条经过缓存查询，其余的交给被装饰的执行器一起执行
+   */
+  @Override
+  public List<List<Object>> queryMultiple(List<MappedStatement> mss, List<Object> parameters) throws SQLException {
+    List<List<Object>> results = new ArrayList<List<Object>>(mss.size());
+    List<Integer> uncached = new ArrayList<Integer>();
+    List<MappedStatement> uncachedStatements = new ArrayList<MappedStatement>();
+    List<Object> uncachedParameters = new ArrayList<Object>();
+    for (int i = 0; i < mss.size(); i++) {
+      MappedStatement ms = mss.get(i);
+      if (ms.getCache() != null) {
+        results.add(this.<Object> query(ms, parameters.get(i), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+      } else {
+        results.add(null);
+        uncached.add(i);
+        uncachedStatements.add(ms);
+        uncachedParameters.add(parameters.get(i));
+      }
+    }
+    if (!uncached.isEmpty()) {
+      List<List<Object>> delegateResults = delegate.queryMultiple(uncachedStatements, uncachedParameters);
+      for (int i = 0; i < uncached.size(); i++) {
+        results.set(uncached.get(i), delegateResults.get(i));
+      }
+    }
+    return results;
+  }
+
   @Override
   public <E> List<E> query(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
     BoundSql boundSql = ms.getBoundSql(parameterObject);
@@ -0,0 +1,269 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.TenantDataSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Deadline;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.DataSourceTransaction;
+import org.apache.ibatis.transaction.RoutableTransaction;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.routing.RoutingTransaction;
+
+/**
+ * 合并并发的相同查询（single-flight）：不同会话同时执行 CacheKey 相等的查询时，只有第一个真正访问数据库，
+ * 其余的等待它的结果，拿到的是同一批结果对象组成的新列表（与只读二级缓存一样，结果对象是共享的，
+ * 调用方不能修改它们）。
+ * <p>
+ * 只有连接来自同一个数据源的会话才会合并：CacheKey 上再加上会话事务打开时的数据源（多租户时即租户的连接池），
+ * 读写分离时再加上语句会被路由到主库还是从库。不知道数据源的会话（如用户传入的连接）不参与合并。
+ * <p>
+ * 不经过二级缓存也能工作。等待超过 queryCoalescingTimeout（未设置时为语句的超时，语句也没有超时时为
+ * {@value #DEFAULT_WAIT_MILLIS} 毫秒，调用线程有 {@link Deadline} 时不超过它）、或者第一个查询失败时，
+ * 等待者改为自己执行查询。等待总是有上限的：第一个查询可能正被等待者自己的事务（如 SELECT ... FOR UPDATE）阻塞。本会话有未提交的修改时不参与合并，
+ * 也不加入在本会话上次提交之前就已开始的查询，以免读不到自己的修改。
+ *
+ * @author Clinton Begin
+ */
+public class CoalescingExecutor implements Executor {
+
+  static final long DEFAULT_WAIT_MILLIS = 1000;
+
+  private final Executor delegate;
+  private final QueryCoalescer coalescer;
+  private final Integer timeout;
+  private boolean dirty;
+  // 本会话上次提交或回滚修改的时间（System.nanoTime），在此之前开始的查询可能读不到这些修改
+  private boolean wrote;
+  private long lastWriteEnded;
+
+  public CoalescingExecutor(Executor delegate, QueryCoalescer coalescer, Integer timeout) {
+    this.delegate = delegate;
+    this.coalescer = coalescer;
+    this.timeout = timeout;
+  }
+
+  @Override
+  public int update(MappedStatement ms, Object parameter) throws SQLException {
+    dirty = true;
+    return delegate.update(ms, parameter);
+  }
+
+  @Override
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+    BoundSql boundSql = ms.getBoundSql(parameter);
+    CacheKey key = createCacheKey(ms, parameter, rowBounds, boundSql);
+    return query(ms, parameter, rowBounds, resultHandler, key, boundSql);
+  }
+
+  @Override
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey key, BoundSql boundSql)
+      throws SQLException {
+    final CacheKey coalescingKey = canCoalesce(ms, resultHandler, key) ? createCoalescingKey(ms, key) : null;
+    if (coalescingKey == null) {
+      return delegate.<E> query(ms, parameter, rowBounds, resultHandler, key, boundSql);
+    }
+    final QueryCoalescer.InFlightQuery query = new QueryCoalescer.InFlightQuery();
+    final QueryCoalescer.InFlightQuery inFlight = coalescer.start(coalescingKey, query);
+    if (inFlight == null) {
+      List<E> list = null;
+      try {
+        list = delegate.<E> query(ms, parameter, rowBounds, resultHandler, key, boundSql);
+        return list;
+      } finally {
+        coalescer.complete(coalescingKey, query, list);
+      }
+    }
+    if (wrote && !inFlight.startedAfter(lastWriteEnded)) {
+      return delegate.<E> query(ms, parameter, rowBounds, resultHandler, key, boundSql);
+    }
+    @SuppressWarnings("unchecked")
+    List<E> shared = (List<E>) await(ms, inFlight);
+    if (shared != null) {
+      // 列表本身不共享，调用方可以自由修改
+      return new ArrayList<E>(shared);
+    }
+    return delegate.<E> query(ms, parameter, rowBounds, resultHandler, key, boundSql);
+  }
+
+  private boolean canCoalesce(MappedStatement ms, ResultHandler resultHandler, CacheKey key) {
+    // 存储过程的OUT参数要回写到各自的参数对象，flushCache的查询要清空各自的缓存
+    return !dirty
+        && resultHandler == null
+        && ms.getSqlCommandType() == SqlCommandType.SELECT
+        && ms.getStatementType() != StatementType.CALLABLE
+        && !ms.isFlushCacheRequired()
+        && key != CacheKey.NULL_CACHE_KEY
+        && !delegate.isCached(ms, key);
+  }
+
+  /*
+   * Adds the DataSource of the session and, for a routing transaction, the connection the statement
+   * would be routed to, so that sessions of different tenants, or on the primary and a replica,
+   * never share results
+   *
+   * @return the key, or null if it is unknown where the session's connections come from
+   */
+  private CacheKey createCoalescingKey(MappedStatement ms, CacheKey key) {
+    Transaction transaction = delegate.getTransaction();
+    if (!(transaction instanceof DataSourceTransaction)
+        || (transaction instanceof RoutableTransaction && !(transaction instanceof RoutingTransaction))) {
+      return null;
+    }
+    DataSource dataSource = ((DataSourceTransaction) transaction).getDataSource();
+    if (dataSource == null || dataSource instanceof TenantDataSource) {
+      // 会话由连接创建，或者每次取连接时才解析租户
+      return null;
+    }
+    CacheKey coalescingKey;
+    try {
+      coalescingKey = key.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;
+    }
+    coalescingKey.update(dataSource);
+    if (transaction instanceof RoutingTransaction) {
+      coalescingKey.update(((RoutingTransaction) transaction).isRoutedToPrimary(ms));
+    }
+    return coalescingKey;
+  }
+
+  private List<?> await(MappedStatement ms, QueryCoalescer.InFlightQuery inFlight) {
+    long waitTime = getWaitTime(ms);
+    Deadline deadline = Deadline.getCurrent();
+    if (deadline != null) {
+      long remaining = deadline.getRemaining(TimeUnit.MILLISECONDS);
+      if (remaining <= 0) {
+        return null;
+      }
+      waitTime = Math.min(waitTime, remaining);
+    }
+    try {
+      return inFlight.await(waitTime);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /*
+   * @return the longest time to wait for the first query, always positive
+   */
+  private long getWaitTime(MappedStatement ms) {
+    if (timeout != null && timeout > 0) {
+      return timeout;
+    }
+    Integer statementTimeout = ms.getTimeout() != null ? ms.getTimeout() : ms.getConfiguration().getDefaultStatementTimeout();
+    if (statementTimeout != null && statementTimeout > 0) {
+      return TimeUnit.SECONDS.toMillis(statementTimeout);
+    }
+    return DEFAULT_WAIT_MILLIS;
+  }
+
+  @Override
+  public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+    return delegate.queryCursor(ms, parameter, rowBounds);
+  }
+
+  @Override
+  public List<List<Object>> queryMultiple(List<MappedStatement> mss, List<Object> parameters) throws SQLException {
+    return delegate.queryMultiple(mss, parameters);
+  }
+
+  @Override
+  public List<BatchResult> flushStatements() throws SQLException {
+    return delegate.flushStatements();
+  }
+
+  @Override
+  public void commit(boolean required) throws SQLException {
+    delegate.commit(required);
+    writeEnded();
+  }
+
+  @Override
+  public void rollback(boolean required) throws SQLException {
+    try {
+      delegate.rollback(required);
+    } finally {
+      writeEnded();
+    }
+  }
+
+  private void writeEnded() {
+    if (dirty) {
+      wrote = true;
+      lastWriteEnded = System.nanoTime();
+      dirty = false;
+    }
+  }
+
+  @Override
+  public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+    return delegate.createCacheKey(ms, parameterObject, rowBounds, boundSql);
+  }
+
+  @Override
+  public boolean isCached(MappedStatement ms, CacheKey key) {
+    return delegate.isCached(ms, key);
+  }
+
+  @Override
+  public void clearLocalCache() {
+    delegate.clearLocalCache();
+  }
+
+  @Override
+  public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
+    delegate.deferLoad(ms, resultObject, property, key, targetType);
+  }
+
+  @Override
+  public Transaction getTransaction() {
+    return delegate.getTransaction();
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
+    delegate.close(forceRollback);
+  }
+
+  @Override
+  public boolean isClosed() {
+    return delegate.isClosed();
+  }
+
+  @Override
+  public void setExecutorWrapper(Executor executor) {
+    throw new UnsupportedOperationException("This method should not be called");
+  }
+
+}
@@ -19,6 +19,7 @@ import java.sql.SQLException;
 import java.util.List;
 
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.MetaObject;
@@ -47,6 +48,16 @@ public interface Executor {
 
   <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException;
 
+  /**
+   * 执行查询并返回按需读取结果的游标，结果不进入一级缓存
+   */
+  <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException;
+
+  /**
+   * 执行多条互不相关的查询，驱动允许时在一次往返中发送，否则逐条执行；结果与语句一一对应
+   */
+  List<List<Object>> queryMultiple(List<MappedStatement> mss, List<Object> parameters) throws SQLException;
+
   List<BatchResult> flushStatements() throws SQLException;
 
   void commit(boolean required) throws SQLException;
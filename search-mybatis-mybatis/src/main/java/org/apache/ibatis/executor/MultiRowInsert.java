@@ -0,0 +1,267 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.executor.statement.StatementWatchdog;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 把同一条单行 INSERT ... VALUES (...) 的多次执行，改写成分块的 INSERT ... VALUES (...),(...) 执行。
+ * <p>
+ * 参数值在加入时就读取出来，所以调用方在两次插入之间复用同一个参数对象也不会出错；
+ * Jdbc3KeyGenerator 生成的主键在每块执行后按行的顺序回填到参数对象。
+ *
+ * @author Jeff Butler
+ */
+class MultiRowInsert {
+
+  private final MappedStatement mappedStatement;
+  private final Configuration configuration;
+  private final String insertPrefix;
+  private final String valuesTuple;
+  private final List<ParameterMapping> parameterMappings;
+  private final int chunkSize;
+  private final List<Object[]> rows = new ArrayList<Object[]>();
+
+  private MultiRowInsert(MappedStatement mappedStatement, String insertPrefix, String valuesTuple,
+      List<ParameterMapping> parameterMappings, int chunkSize) {
+    this.mappedStatement = mappedStatement;
+    this.configuration = mappedStatement.getConfiguration();
+    this.insertPrefix = insertPrefix;
+    this.valuesTuple = valuesTuple;
+    this.parameterMappings = parameterMappings;
+    this.chunkSize = chunkSize;
+  }
+
+  /*
+   * Returns a rewriter for the statement, or null if it cannot be rewritten safely
+   */
+  static MultiRowInsert forStatement(MappedStatement ms, StatementHandler handler, int chunkSize) {
+    if (chunkSize < 2
+        || ms.getSqlCommandType() != SqlCommandType.INSERT
+        || ms.getStatementType() != StatementType.PREPARED
+        || !(handler.getParameterHandler() instanceof DefaultParameterHandler)) {
+      return null;
+    }
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    if (keyGenerator != null && !(keyGenerator instanceof Jdbc3KeyGenerator) && !(keyGenerator instanceof NoKeyGenerator)) {
+      // selectKey 需要逐行执行
+      return null;
+    }
+    BoundSql boundSql = handler.getBoundSql();
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    if (parameterMappings != null) {
+      for (ParameterMapping parameterMapping : parameterMappings) {
+        if (parameterMapping.getMode() != ParameterMode.IN) {
+          return null;
+        }
+      }
+    } else {
+      parameterMappings = new ArrayList<ParameterMapping>();
+    }
+    String sql = boundSql.getSql();
+    int valuesStart = findValuesTuple(sql);
+    if (valuesStart < 0) {
+      return null;
+    }
+    String tuple = sql.substring(valuesStart).trim();
+    if (tuple.endsWith(";")) {
+      tuple = tuple.substring(0, tuple.length() - 1).trim();
+    }
+    return new MultiRowInsert(ms, sql.substring(0, valuesStart), tuple, parameterMappings, chunkSize);
+  }
+
+  /*
+   * Finds the start of the single "(...)" after VALUES that ends the statement, or -1
+   */
+  static int findValuesTuple(String sql) {
+    String upper = sql.toUpperCase(Locale.ENGLISH);
+    if (!upper.trim().startsWith("INSERT")) {
+      return -1;
+    }
+    int values = upper.lastIndexOf("VALUES");
+    if (values < 0
+        || (values > 0 && Character.isJavaIdentifierPart(upper.charAt(values - 1)))
+        || (values + 6 < upper.length() && Character.isJavaIdentifierPart(upper.charAt(values + 6)))) {
+      return -1;
+    }
+    int open = values + 6;
+    while (open < sql.length() && Character.isWhitespace(sql.charAt(open))) {
+      open++;
+    }
+    if (open >= sql.length() || sql.charAt(open) != '(') {
+      return -1;
+    }
+    int close = findClosingParenthesis(sql, open);
+    if (close < 0) {
+      return -1;
+    }
+    // 元组之后只允许空白和分号，否则（如 ON DUPLICATE KEY、RETURNING）不改写
+    for (int i = close + 1; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (!Character.isWhitespace(c) && c != ';') {
+        return -1;
+      }
+    }
+    return open;
+  }
+
+  private static int findClosingParenthesis(String sql, int open) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = open; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+        if (depth == 0) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  void addRow(Object[] parameterValues) {
+    rows.add(parameterValues);
+  }
+
+  /*
+   * Executes the pending rows in chunks and assigns generated keys to the parameter objects
+   *
+   * @param parameterObjects - the parameter objects of all rows, only used for generated keys
+   * @return one update count per row, 1 or Statement.SUCCESS_NO_INFO
+   */
+  int[] execute(Connection connection, List<Object> parameterObjects) throws SQLException {
+    int[] updateCounts = new int[rows.size()];
+    PreparedStatement ps = null;
+    int preparedChunk = -1;
+    try {
+      for (int start = 0; start < rows.size(); start += chunkSize) {
+        int end = Math.min(start + chunkSize, rows.size());
+        int chunk = end - start;
+        if (chunk != preparedChunk) {
+          closeStatement(ps);
+          ps = prepare(connection, chunk);
+          preparedChunk = chunk;
+        }
+        int index = 1;
+        for (int row = start; row < end; row++) {
+          index = setRow(ps, index, rows.get(row));
+        }
+        int count;
+        StatementWatchdog watchdog = StatementWatchdog.watch(ps);
+        try {
+          count = ps.executeUpdate();
+        } catch (SQLException e) {
+          throw watchdog.translate(e);
+        } finally {
+          watchdog.stop();
+        }
+        Arrays.fill(updateCounts, start, end, count == chunk ? 1 : Statement.SUCCESS_NO_INFO);
+        KeyGenerator keyGenerator = mappedStatement.getKeyGenerator();
+        if (keyGenerator instanceof Jdbc3KeyGenerator) {
+          ((Jdbc3KeyGenerator) keyGenerator).processBatch(mappedStatement, ps, parameterObjects.subList(start, end));
+        }
+      }
+    } finally {
+      closeStatement(ps);
+      rows.clear();
+    }
+    return updateCounts;
+  }
+
+  private PreparedStatement prepare(Connection connection, int chunk) throws SQLException {
+    StringBuilder sql = new StringBuilder(insertPrefix.length() + chunk * (valuesTuple.length() + 1));
+    sql.append(insertPrefix);
+    for (int i = 0; i < chunk; i++) {
+      if (i > 0) {
+        sql.append(',');
+      }
+      sql.append(valuesTuple);
+    }
+    PreparedStatement ps;
+    if (mappedStatement.getKeyGenerator() instanceof Jdbc3KeyGenerator) {
+      String[] keyColumnNames = mappedStatement.getKeyColumns();
+      if (keyColumnNames == null) {
+        ps = connection.prepareStatement(sql.toString(), PreparedStatement.RETURN_GENERATED_KEYS);
+      } else {
+        ps = connection.prepareStatement(sql.toString(), keyColumnNames);
+      }
+    } else {
+      ps = connection.prepareStatement(sql.toString());
+    }
+    Integer timeout = mappedStatement.getTimeout() != null ? mappedStatement.getTimeout() : configuration.getDefaultStatementTimeout();
+    if (timeout != null) {
+      ps.setQueryTimeout(timeout);
+    }
+    return ps;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private int setRow(PreparedStatement ps, int index, Object[] values) throws SQLException {
+    for (int i = 0; i < values.length; i++) {
+      ParameterMapping parameterMapping = parameterMappings.get(i);
+      TypeHandler typeHandler = parameterMapping.getTypeHandler();
+      JdbcType jdbcType = parameterMapping.getJdbcType();
+      if (values[i] == null && jdbcType == null) {
+        jdbcType = configuration.getJdbcTypeForNull();
+      }
+      typeHandler.setParameter(ps, index++, values[i], jdbcType);
+    }
+    return index;
+  }
+
+  private void closeStatement(Statement statement) {
+    if (statement != null) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+  }
+
+}
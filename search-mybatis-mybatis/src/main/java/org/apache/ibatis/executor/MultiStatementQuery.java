@@ -0,0 +1,233 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.statement.StatementWatchdog;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * 把多条互不相关的查询用分号连接成一条 PreparedStatement，在一次往返中执行。
+ * <p>
+ * 每个结果集依次交给对应语句自己的 ResultSetHandler 映射：DefaultResultSetHandler 处理完
+ * 唯一的 resultMap 后会调用 getMoreResults 前进到下一个结果集，正好交给下一条语句。
+ * <p>
+ * 参数仍由各语句的 ParameterHandler（包括插件）设置，只是下标顺延到前面语句的参数之后；
+ * 整条语句只有一个超时和 fetchSize，取各语句中最大的值。
+ *
+ * @author Clinton Begin
+ */
+class MultiStatementQuery {
+
+  private final Configuration configuration;
+  private final List<MappedStatement> mappedStatements;
+  private final List<Object> parameters;
+  private final List<BoundSql> boundSqls;
+
+  MultiStatementQuery(Configuration configuration, List<MappedStatement> mappedStatements, List<Object> parameters, List<BoundSql> boundSqls) {
+    this.configuration = configuration;
+    this.mappedStatements = mappedStatements;
+    this.parameters = parameters;
+    this.boundSqls = boundSqls;
+  }
+
+  /*
+   * Checks that the statement returns exactly one result set and can be joined to others
+   */
+  static boolean canJoin(MappedStatement ms, BoundSql boundSql) {
+    if (ms.getSqlCommandType() != SqlCommandType.SELECT
+        || ms.getStatementType() != StatementType.PREPARED
+        || ms.getResultMaps().size() != 1
+        || ms.getResulSets() != null) {
+      return false;
+    }
+    if (boundSql.getParameterMappings() != null) {
+      for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+        if (parameterMapping.getMode() != ParameterMode.IN) {
+          return false;
+        }
+      }
+    }
+    // 语句中间已经有分号的不再拼接
+    return trimSql(boundSql.getSql()).indexOf(';') < 0;
+  }
+
+  private static String trimSql(String sql) {
+    String trimmed = sql.trim();
+    while (trimmed.endsWith(";")) {
+      trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+    }
+    return trimmed;
+  }
+
+  /*
+   * Executes all statements in one round trip
+   *
+   * @return one result list per statement, or null if the driver cannot run them together
+   */
+  List<List<Object>> execute(Executor executor, Connection connection) throws SQLException {
+    if (!connection.getMetaData().supportsMultipleResultSets()) {
+      return null;
+    }
+    StringBuilder sql = new StringBuilder();
+    for (BoundSql boundSql : boundSqls) {
+      if (sql.length() > 0) {
+        sql.append(";\n");
+      }
+      sql.append(trimSql(boundSql.getSql()));
+    }
+    PreparedStatement ps;
+    try {
+      ps = connection.prepareStatement(sql.toString());
+    } catch (SQLException e) {
+      // 驱动不接受多条语句时退回逐条执行
+      return null;
+    }
+    try {
+      applyTimeout(ps);
+      applyFetchSize(ps);
+      int index = 1;
+      for (int i = 0; i < boundSqls.size(); i++) {
+        index = setParameters(ps, index, mappedStatements.get(i), boundSqls.get(i), parameters.get(i));
+      }
+      StatementWatchdog watchdog = StatementWatchdog.watch(ps);
+      try {
+        ps.execute();
+      } catch (SQLException e) {
+        throw watchdog.translate(e);
+      } finally {
+        watchdog.stop();
+      }
+      List<List<Object>> results = new ArrayList<List<Object>>(mappedStatements.size());
+      for (int i = 0; i < mappedStatements.size(); i++) {
+        MappedStatement ms = mappedStatements.get(i);
+        BoundSql boundSql = boundSqls.get(i);
+        ParameterHandler parameterHandler = configuration.newParameterHandler(ms, parameters.get(i), boundSql);
+        ResultSetHandler resultSetHandler = configuration.newResultSetHandler(executor, ms, RowBounds.DEFAULT, parameterHandler, null, boundSql);
+        results.add(resultSetHandler.<Object> handleResultSets(ps));
+      }
+      return results;
+    } finally {
+      closeStatement(ps);
+    }
+  }
+
+  private void applyTimeout(Statement statement) throws SQLException {
+    // 整条语句按各语句中最长的超时执行
+    Integer timeout = null;
+    for (MappedStatement ms : mappedStatements) {
+      Integer statementTimeout = ms.getTimeout() != null ? ms.getTimeout() : configuration.getDefaultStatementTimeout();
+      if (statementTimeout != null && (timeout == null || statementTimeout > timeout)) {
+        timeout = statementTimeout;
+      }
+    }
+    if (timeout != null) {
+      statement.setQueryTimeout(timeout);
+    }
+  }
+
+  private void applyFetchSize(Statement statement) throws SQLException {
+    // 所有结果集共用一个fetchSize，取各语句中最大的
+    Integer fetchSize = null;
+    for (MappedStatement ms : mappedStatements) {
+      Integer statementFetchSize = ms.getFetchSize();
+      if (statementFetchSize == null && configuration.isAdaptiveFetchSizeEnabled()) {
+        statementFetchSize = configuration.getAdaptiveFetchSize().getFetchSize(ms.getId());
+      }
+      if (statementFetchSize == null) {
+        statementFetchSize = configuration.getDefaultFetchSize();
+      }
+      if (statementFetchSize != null && (fetchSize == null || statementFetchSize > fetchSize)) {
+        fetchSize = statementFetchSize;
+      }
+    }
+    if (fetchSize != null) {
+      statement.setFetchSize(fetchSize);
+    }
+  }
+
+  /*
+   * Sets the parameters of one statement through its (possibly plugin wrapped) ParameterHandler,
+   * which numbers them from 1, so they are shifted behind those of the preceding statements
+   */
+  private int setParameters(PreparedStatement ps, int index, MappedStatement ms, BoundSql boundSql, Object parameterObject) throws SQLException {
+    ParameterHandler parameterHandler = configuration.newParameterHandler(ms, parameterObject, boundSql);
+    parameterHandler.setParameters(ParameterIndexShifter.shift(ps, index - 1));
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    return parameterMappings == null ? index : index + parameterMappings.size();
+  }
+
+  private static class ParameterIndexShifter implements InvocationHandler {
+
+    private final PreparedStatement delegate;
+    private final int offset;
+
+    private ParameterIndexShifter(PreparedStatement delegate, int offset) {
+      this.delegate = delegate;
+      this.offset = offset;
+    }
+
+    static PreparedStatement shift(PreparedStatement ps, int offset) {
+      if (offset == 0) {
+        return ps;
+      }
+      return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+          new Class<?>[] { PreparedStatement.class }, new ParameterIndexShifter(ps, offset));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      // 只平移PreparedStatement声明的setXxx(int parameterIndex, ...)，不影响setFetchSize等Statement的设置
+      if (method.getDeclaringClass() == PreparedStatement.class && method.getName().startsWith("set")
+          && method.getParameterTypes().length > 0 && method.getParameterTypes()[0] == int.class) {
+        args[0] = (Integer) args[0] + offset;
+      }
+      try {
+        return method.invoke(delegate, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+  }
+
+  private void closeStatement(Statement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.CacheKey;
+
+/**
+ * The queries currently being executed by a {@link CoalescingExecutor} of one configuration, by cache key.
+ * <p>
+ * An entry only lives while its query runs, so the registry does not grow with the number of distinct keys.
+ *
+ * @author Clinton Begin
+ */
+public class QueryCoalescer {
+
+  private final ConcurrentMap<CacheKey, InFlightQuery> inFlightQueries = new ConcurrentHashMap<CacheKey, InFlightQuery>();
+
+  /*
+   * Registers a new query for the key
+   *
+   * @return the query already in flight for an equal key, or null if the caller must run it and then call complete
+   */
+  InFlightQuery start(CacheKey key, InFlightQuery query) {
+    return inFlightQueries.putIfAbsent(key, query);
+  }
+
+  /*
+   * Publishes the result, null if the query failed, to the waiting callers and forgets the query
+   */
+  void complete(CacheKey key, InFlightQuery query, List<?> result) {
+    try {
+      inFlightQueries.remove(key, query);
+    } finally {
+      query.complete(result);
+    }
+  }
+
+  public int getInFlightCount() {
+    return inFlightQueries.size();
+  }
+
+  static class InFlightQuery {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long startedAt = System.nanoTime();
+    private volatile List<?> result;
+
+    /*
+     * Tells whether the query started after the given System.nanoTime() value
+     */
+    boolean startedAfter(long nanoTime) {
+      return startedAt - nanoTime > 0;
+    }
+
+    private void complete(List<?> result) {
+      this.result = result;
+      done.countDown();
+    }
+
+    /*
+     * Waits for the result
+     *
+     * @param timeout - in milliseconds, 0 to wait until the query completes
+     * @return null if the query failed or did not complete in time
+     */
+    List<?> await(long timeout) throws InterruptedException {
+      if (timeout > 0) {
+        if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+          return null;
+        }
+      } else {
+        done.await();
+      }
+      return result;
+    }
+  }
+
+}
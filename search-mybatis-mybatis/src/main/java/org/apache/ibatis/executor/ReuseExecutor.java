@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.mapping.BoundSql;
@@ -59,6 +60,28 @@ public class ReuseExecutor extends BaseExecutor {
     return handler.<E>query(stmt, resultHandler);
   }
 
+  /**
+   * 游标在遍历期间一直占用Statement，复用它会关闭游标的ResultSet，所以游标总是使用新建且不缓存的Statement
+   */
+  @Override
+  protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+    Configuration configuration = ms.getConfiguration();
+    StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameter, rowBounds, null, boundSql);
+    Connection connection = getConnection(ms.getStatementLog());
+    Statement stmt = handler.prepare(connection);
+    try {
+      handler.parameterize(stmt);
+      return handler.<E>queryCursor(stmt);
+    } catch (SQLException e) {
+      //游标没有打开，调用方拿不到这个Statement，必须在这里关闭
+      closeStatement(stmt);
+      throw e;
+    } catch (RuntimeException e) {
+      closeStatement(stmt);
+      throw e;
+    }
+  }
+
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
     for (Statement stmt : statementMap.values()) {
@@ -15,9 +15,17 @@
  */
 package org.apache.ibatis.executor.keygen;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.TenantDataSource;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -25,6 +33,8 @@ import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.DataSourceTransaction;
+import org.apache.ibatis.transaction.Transaction;
 
 /**
  * @author Clinton Begin
@@ -35,10 +45,21 @@ public class SelectKeyGenerator implements KeyGenerator {
   public static final String SELECT_KEY_SUFFIX = "!selectKey";
   private boolean executeBefore;
   private MappedStatement keyStatement;
+  //大于1时每次执行selectKey预取这么多个键值，之后的insert直接从内存中分配
+  private final int allocationSize;
+  private final SequenceOptimizer optimizer;
+  //每个数据源（多租户时即每个租户的连接池）各自预取的键值区间
+  private final ConcurrentMap<DataSource, KeyBlock> blocks = new ConcurrentHashMap<DataSource, KeyBlock>();
 
   public SelectKeyGenerator(MappedStatement keyStatement, boolean executeBefore) {
+    this(keyStatement, executeBefore, 1, SequenceOptimizer.POOLED);
+  }
+
+  public SelectKeyGenerator(MappedStatement keyStatement, boolean executeBefore, int allocationSize, SequenceOptimizer optimizer) {
     this.executeBefore = executeBefore;
     this.keyStatement = keyStatement;
+    this.allocationSize = allocationSize;
+    this.optimizer = optimizer;
   }
 
   @Override
@@ -62,27 +83,22 @@ public class SelectKeyGenerator implements KeyGenerator {
         final Configuration configuration = ms.getConfiguration();
         final MetaObject metaParam = configuration.newMetaObject(parameter);
         if (keyProperties != null) {
-          // Do not close keyExecutor.
-          // The transaction will be closed by parent executor.
-          Executor keyExecutor = configuration.newExecutor(executor.getTransaction(), ExecutorType.SIMPLE);
-          List<Object> values = keyExecutor.query(keyStatement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
-          if (values.size() == 0) {
-            throw new ExecutorException("SelectKey returned no data.");            
-          } else if (values.size() > 1) {
-            throw new ExecutorException("SelectKey returned more than one value.");
-          } else {
-            MetaObject metaResult = configuration.newMetaObject(values.get(0));
-            if (keyProperties.length == 1) {
-              if (metaResult.hasGetter(keyProperties[0])) {
-                setValue(metaParam, keyProperties[0], metaResult.getValue(keyProperties[0]));
-              } else {
-                // no getter for the property - maybe just a single value object
-                // so try that
-                setValue(metaParam, keyProperties[0], values.get(0));
-              }
+          if (allocationSize > 1) {
+            setValue(metaParam, keyProperties[0], allocateKey(executor, parameter, keyProperties[0]));
+            return;
+          }
+          Object value = selectKey(executor, parameter);
+          MetaObject metaResult = configuration.newMetaObject(value);
+          if (keyProperties.length == 1) {
+            if (metaResult.hasGetter(keyProperties[0])) {
+              setValue(metaParam, keyProperties[0], metaResult.getValue(keyProperties[0]));
             } else {
-              handleMultipleProperties(keyProperties, metaParam, metaResult);
+              // no getter for the property - maybe just a single value object
+              // so try that
+              setValue(metaParam, keyProperties[0], value);
             }
+          } else {
+            handleMultipleProperties(keyProperties, metaParam, metaResult);
           }
         }
       }
@@ -93,6 +109,92 @@ public class SelectKeyGenerator implements KeyGenerator {
     }
   }
 
+  private Object selectKey(Executor executor, Object parameter) throws SQLException {
+    // Do not close keyExecutor.
+    // The transaction will be closed by parent executor.
+    Executor keyExecutor = keyStatement.getConfiguration().newExecutor(executor.getTransaction(), ExecutorType.SIMPLE);
+    List<Object> values = keyExecutor.query(keyStatement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    if (values.size() == 0) {
+      throw new ExecutorException("SelectKey returned no data.");
+    } else if (values.size() > 1) {
+      throw new ExecutorException("SelectKey returned more than one value.");
+    }
+    return values.get(0);
+  }
+
+  /*
+   * Hands out the next key of the block prefetched for the DataSource of the executor. When the block
+   * is used up, the new block is selected without holding any lock, because the select may have to
+   * wait for a pooled connection that another thread waiting here holds.
+   */
+  private Object allocateKey(Executor executor, Object parameter, String keyProperty) throws SQLException {
+    DataSource dataSource = getDataSource(executor);
+    if (dataSource == null) {
+      // 不知道连接来自哪个数据源（或租户）时不能共享预取的键值，每次取一个新区间只用第一个
+      return toKeyType(selectBlockStart(executor, parameter, keyProperty));
+    }
+    KeyBlock block = blocks.get(dataSource);
+    if (block == null) {
+      KeyBlock created = new KeyBlock();
+      block = blocks.putIfAbsent(dataSource, created);
+      if (block == null) {
+        block = created;
+      }
+    }
+    Long key = block.next();
+    if (key == null) {
+      long blockStart = selectBlockStart(executor, parameter, keyProperty);
+      key = block.refill(blockStart, blockStart + allocationSize);
+    }
+    return toKeyType(key);
+  }
+
+  private long selectBlockStart(Executor executor, Object parameter, String keyProperty) throws SQLException {
+    Object value = selectKey(executor, parameter);
+    MetaObject metaResult = keyStatement.getConfiguration().newMetaObject(value);
+    if (metaResult.hasGetter(keyProperty)) {
+      value = metaResult.getValue(keyProperty);
+    }
+    if (!(value instanceof Number)) {
+      throw new ExecutorException("SelectKey with an allocationSize must return a number but returned " + value + ".");
+    }
+    long sequenceValue = ((Number) value).longValue();
+    return optimizer == SequenceOptimizer.HILO ? sequenceValue * allocationSize : sequenceValue;
+  }
+
+  private static DataSource getDataSource(Executor executor) {
+    Transaction transaction = executor.getTransaction();
+    if (!(transaction instanceof DataSourceTransaction)) {
+      return null;
+    }
+    DataSource dataSource = ((DataSourceTransaction) transaction).getDataSource();
+    // 按租户分发的数据源每次取连接时才解析租户
+    return dataSource instanceof TenantDataSource ? null : dataSource;
+  }
+
+  private Object toKeyType(long key) {
+    Class<?> type = keyStatement.getResultMaps().isEmpty() ? Long.class : keyStatement.getResultMaps().get(0).getType();
+    if (type == Integer.class || type == int.class) {
+      checkRange(key, Integer.MIN_VALUE, Integer.MAX_VALUE, type);
+      return (int) key;
+    } else if (type == Short.class || type == short.class) {
+      checkRange(key, Short.MIN_VALUE, Short.MAX_VALUE, type);
+      return (short) key;
+    } else if (type == BigInteger.class) {
+      return BigInteger.valueOf(key);
+    } else if (type == BigDecimal.class) {
+      return BigDecimal.valueOf(key);
+    }
+    return key;
+  }
+
+  private void checkRange(long key, long min, long max, Class<?> type) {
+    if (key < min || key > max) {
+      throw new ExecutorException("SelectKey '" + keyStatement.getId() + "' allocated the key " + key
+          + ", which does not fit into " + type.getSimpleName() + ". Use a wider resultType.");
+    }
+  }
+
   private void handleMultipleProperties(String[] keyProperties,
       MetaObject metaParam, MetaObject metaResult) {
     String[] keyColumns = keyStatement.getKeyColumns();
@@ -119,4 +221,32 @@ public class SelectKeyGenerator implements KeyGenerator {
       throw new ExecutorException("No setter found for the keyProperty '" + property + "' in " + metaParam.getOriginalObject().getClass().getName() + ".");
     }
   }
+
+  /**
+   * The prefetched keys [nextKey, blockEnd) of one DataSource that are not handed out yet.
+   */
+  private static final class KeyBlock {
+
+    private long nextKey;
+    private long blockEnd;
+
+    /*
+     * @return the next key, or null if the block is used up
+     */
+    synchronized Long next() {
+      return nextKey < blockEnd ? Long.valueOf(nextKey++) : null;
+    }
+
+    /*
+     * Takes the first key of a newly selected block. The rest of it replaces the current block only
+     * if that is still used up; otherwise another thread refilled it first and the rest is skipped.
+     */
+    synchronized long refill(long blockStart, long newBlockEnd) {
+      if (nextKey >= blockEnd) {
+        nextKey = blockStart + 1;
+        blockEnd = newBlockEnd;
+      }
+      return blockStart;
+    }
+  }
 }
@@ -0,0 +1,32 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.keygen;
+
+/**
+ * How a {@link SelectKeyGenerator} with an allocation size turns one sequence value into a block of keys.
+ *
+ * @author Clinton Begin
+ */
+public enum SequenceOptimizer {
+  /**
+   * The sequence is incremented by the allocation size and each value is the first key of its block.
+   */
+  POOLED,
+  /**
+   * The sequence is incremented by 1 and each value is the number of a block of allocation size keys.
+   */
+  HILO
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import javax.sql.DataSource;
 
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.datasource.TenantDataSource;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.ResultExtractor;
@@ -29,8 +30,10 @@ import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.Deadline;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.DataSourceTransaction;
 import org.apache.ibatis.transaction.Transaction;
 import org.apache.ibatis.transaction.TransactionFactory;
 
@@ -49,6 +52,9 @@ public class ResultLoader {
   protected final BoundSql boundSql;
   protected final ResultExtractor resultExtractor;
   protected final long creatorThreadId;
+  protected final Deadline deadline;
+  //创建本加载器的会话所用的数据源，会话关闭后或在其他线程上延迟加载时沿用它，不再从环境中重新解析（如多租户）
+  protected final DataSource dataSource;
   
   protected boolean loaded;
   protected Object resultObject;
@@ -64,6 +70,8 @@ public class ResultLoader {
     this.boundSql = boundSql;
     this.resultExtractor = new ResultExtractor(configuration, objectFactory);
     this.creatorThreadId = Thread.currentThread().getId();
+    this.deadline = Deadline.getCurrent();
+    this.dataSource = getDataSource(executor);
   }
 
   public Object loadResult() throws SQLException {
@@ -77,29 +85,45 @@ public class ResultLoader {
     if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
       localExecutor = newExecutor();
     }
+    // 在没有deadline的线程上延迟加载时，沿用创建本加载器的查询的deadline
+    final boolean inheritDeadline = deadline != null && Deadline.getCurrent() == null;
+    if (inheritDeadline) {
+      Deadline.setCurrent(deadline);
+    }
     try {
       return localExecutor.<E> query(mappedStatement, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, cacheKey, boundSql);
     } finally {
       if (localExecutor != executor) {
         localExecutor.close(false);
       }
+      if (inheritDeadline) {
+        Deadline.clearCurrent();
+      }
     }
   }
 
-  private Executor newExecutor() {
+  Executor newExecutor() {
     final Environment environment = configuration.getEnvironment();
     if (environment == null) {
       throw new ExecutorException("ResultLoader could not load lazily.  Environment was not configured.");
     }
-    final DataSource ds = environment.getDataSource();
+    final DataSource ds = dataSource != null ? dataSource : environment.getDataSource();
     if (ds == null) {
       throw new ExecutorException("ResultLoader could not load lazily.  DataSource was not configured.");
     }
+    if (ds instanceof TenantDataSource) {
+      throw new ExecutorException("ResultLoader could not load lazily.  The tenant of the session that created it is unknown.");
+    }
     final TransactionFactory transactionFactory = environment.getTransactionFactory();
     final Transaction tx = transactionFactory.newTransaction(ds, null, false);
     return configuration.newExecutor(tx, ExecutorType.SIMPLE);
   }
 
+  private static DataSource getDataSource(Executor executor) {
+    Transaction transaction = executor.getTransaction();
+    return transaction instanceof DataSourceTransaction ? ((DataSourceTransaction) transaction).getDataSource() : null;
+  }
+
   public boolean wasNull() {
     return resultObject == null;
   }
@@ -0,0 +1,103 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.resultset.NestedQueryBatch;
+import org.apache.ibatis.session.Deadline;
+
+/**
+ * Lazy loaders created by one query for the same property of sibling objects. The first one that is
+ * triggered loads the property of all the siblings that are still unloaded with batched IN queries,
+ * so looping over a lazily loaded list does not run one query per element.
+ *
+ * @author Clinton Begin
+ */
+public class ResultLoaderGroup {
+
+  private final NestedQueryBatch batch;
+  private final int batchSize;
+  private final List<ResultLoaderMap.LoadPair> unloaded = new ArrayList<ResultLoaderMap.LoadPair>();
+
+  public ResultLoaderGroup(NestedQueryBatch batch, int batchSize) {
+    this.batch = batch;
+    this.batchSize = batchSize;
+  }
+
+  synchronized void add(ResultLoaderMap.LoadPair pair) {
+    unloaded.add(pair);
+  }
+
+  /*
+   * @return true once a whole batch of siblings is waiting to be loaded
+   */
+  public synchronized boolean isFull() {
+    return unloaded.size() >= batchSize;
+  }
+
+  /*
+   * Loads the trigger together with its unloaded siblings
+   *
+   * @return false if the trigger is already being loaded by another thread and must be loaded on its own
+   */
+  boolean load(ResultLoaderMap.LoadPair trigger) throws SQLException {
+    final List<ResultLoaderMap.LoadPair> pairs;
+    // 只在认领时加锁，设置兄弟对象的属性会进入它们各自代理的锁，不能在持有本锁时进行
+    synchronized (this) {
+      if (trigger.claimed) {
+        return false;
+      }
+      pairs = new ArrayList<ResultLoaderMap.LoadPair>(unloaded);
+      for (ResultLoaderMap.LoadPair pair : pairs) {
+        pair.claimed = true;
+      }
+      unloaded.clear();
+    }
+    final List<Object> keys = new ArrayList<Object>(pairs.size());
+    for (ResultLoaderMap.LoadPair pair : pairs) {
+      keys.add(pair.getResultLoader().parameterObject);
+    }
+    final ResultLoader resultLoader = trigger.getResultLoader();
+    Executor localExecutor = resultLoader.executor;
+    if (Thread.currentThread().getId() != resultLoader.creatorThreadId || localExecutor.isClosed()) {
+      localExecutor = resultLoader.newExecutor();
+    }
+    final boolean inheritDeadline = resultLoader.deadline != null && Deadline.getCurrent() == null;
+    if (inheritDeadline) {
+      Deadline.setCurrent(resultLoader.deadline);
+    }
+    final List<List<Object>> children;
+    try {
+      children = batch.selectChildren(localExecutor, keys, batchSize);
+    } finally {
+      if (localExecutor != resultLoader.executor) {
+        localExecutor.close(false);
+      }
+      if (inheritDeadline) {
+        Deadline.clearCurrent();
+      }
+    }
+    for (int i = 0; i < pairs.size(); i++) {
+      pairs.get(i).loaded(children.get(i));
+    }
+    return true;
+  }
+
+}
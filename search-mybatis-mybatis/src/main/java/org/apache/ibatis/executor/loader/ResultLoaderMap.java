@@ -28,6 +28,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.BaseExecutor;
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.executor.ExecutorException;
@@ -49,17 +50,36 @@ public class ResultLoaderMap {
   private final Map<String, LoadPair> loaderMap = new HashMap<String, LoadPair>();
 
   public void addLoader(String property, MetaObject metaResultObject, ResultLoader resultLoader) {
+    addLoader(property, metaResultObject, resultLoader, null);
+  }
+
+  /*
+   * Adds a loader that is loaded together with the other loaders of the group when one of them is triggered
+   */
+  public void addLoader(String property, MetaObject metaResultObject, ResultLoader resultLoader, ResultLoaderGroup group) {
     String upperFirst = getUppercaseFirstProperty(property);
     if (!upperFirst.equalsIgnoreCase(property) && loaderMap.containsKey(upperFirst)) {
       throw new ExecutorException("Nested lazy loaded result property '" + property +
               "' for query id '" + resultLoader.mappedStatement.getId() +
               " already exists in the result map. The leftmost property of all lazy loaded properties must be unique within a result map.");
     }
-    loaderMap.put(upperFirst, new LoadPair(property, metaResultObject, resultLoader));
+    LoadPair pair = new LoadPair(property, metaResultObject, resultLoader);
+    loaderMap.put(upperFirst, pair);
+    if (group != null) {
+      pair.group = group;
+      group.add(pair);
+    }
   }
 
   public final Map<String, LoadPair> getProperties() {
-    return new HashMap<String, LoadPair>(this.loaderMap);
+    final Map<String, LoadPair> properties = new HashMap<String, LoadPair>();
+    for (Map.Entry<String, LoadPair> entry : loaderMap.entrySet()) {
+      // 已随兄弟对象一起加载的属性不必序列化
+      if (!entry.getValue().loaded) {
+        properties.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return properties;
   }
 
   public Set<String> getPropertyNames() {
@@ -138,6 +158,18 @@ public class ResultLoaderMap {
      * Parameter of the sql statement.
      */
     private Serializable mappedParameter;
+    /**
+     * Sibling loaders loaded together with this one, if any.
+     */
+    private transient ResultLoaderGroup group;
+    /**
+     * Set once a sibling started loading this property (guarded by the group).
+     */
+    transient boolean claimed;
+    /**
+     * Set once a sibling loaded this property.
+     */
+    private transient volatile boolean loaded;
 
     private LoadPair(final String property, MetaObject metaResultObject, ResultLoader resultLoader) {
       this.property = property;
@@ -176,9 +208,29 @@ public class ResultLoaderMap {
         throw new IllegalArgumentException("resultLoader is null");
       }
 
+      if (this.loaded) {
+        return;
+      }
+      if (this.group != null && this.group.load(this)) {
+        return;
+      }
       this.load(null);
     }
 
+    ResultLoader getResultLoader() {
+      return this.resultLoader;
+    }
+
+    /*
+     * Sets the property from the rows a sibling loaded for it
+     */
+    void loaded(List<Object> list) {
+      final Object value = this.resultLoader.resultExtractor.extractObjectFromList(list, this.resultLoader.targetType);
+      // 先置标志：通过代理调用setter时会再次触发本属性的加载，此时应直接跳过
+      this.loaded = true;
+      this.metaResultObject.setValue(this.property, value);
+    }
+
     public void load(final Object userObject) throws SQLException {
       if (this.metaResultObject == null || this.resultLoader == null) {
         if (this.mappedParameter == null) {
@@ -300,5 +352,10 @@ public class ResultLoaderMap {
     protected <E> List<E> doQuery(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql) throws SQLException {
       throw new UnsupportedOperationException("Not supported.");
     }
+
+    @Override
+    protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+      throw new UnsupportedOperationException("Not supported.");
+    }
   }
 }
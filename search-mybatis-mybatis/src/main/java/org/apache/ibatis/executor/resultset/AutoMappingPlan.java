@@ -0,0 +1,64 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 一个 ResultMap 在一种列布局下的自动映射计划：哪些未映射的列写入结果对象的哪个属性、用哪个 TypeHandler 读取。
+ * 计划按第一次遇到的结果对象类型计算，结果对象类型不同时不能使用。
+ *
+ * @author Iwao AVE!
+ */
+class AutoMappingPlan {
+
+  private final Class<?> resultType;
+  private final List<ColumnMapping> columnMappings;
+
+  AutoMappingPlan(Class<?> resultType, List<ColumnMapping> columnMappings) {
+    this.resultType = resultType;
+    this.columnMappings = Collections.unmodifiableList(columnMappings);
+  }
+
+  Class<?> getResultType() {
+    return resultType;
+  }
+
+  List<ColumnMapping> getColumnMappings() {
+    return columnMappings;
+  }
+
+  static class ColumnMapping {
+
+    final String column;
+    final int columnIndex;
+    final String property;
+    final TypeHandler<?> typeHandler;
+    final boolean primitive;
+
+    ColumnMapping(String column, int columnIndex, String property, TypeHandler<?> typeHandler, boolean primitive) {
+      this.column = column;
+      this.columnIndex = columnIndex;
+      this.property = property;
+      this.typeHandler = typeHandler;
+      this.primitive = primitive;
+    }
+  }
+
+}
@@ -23,16 +23,20 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.DefaultCursor;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.loader.ResultLoader;
+import org.apache.ibatis.executor.loader.ResultLoaderGroup;
 import org.apache.ibatis.executor.loader.ResultLoaderMap;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
@@ -77,14 +81,29 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private final ReflectorFactory reflectorFactory;
 
   // nested resultmaps
-  private final Map<CacheKey, Object> nestedResultObjects = new HashMap<CacheKey, Object>();
-  private final Map<CacheKey, Object> ancestorObjects = new HashMap<CacheKey, Object>();
+  private final Map<RowKey, Object> nestedResultObjects = new HashMap<RowKey, Object>();
+  private final Map<RowKey, Object> ancestorObjects = new HashMap<RowKey, Object>();
   private final Map<String, String> ancestorColumnPrefix = new HashMap<String, String>();
 
   // multiple resultsets
   private final Map<String, ResultMapping> nextResultMaps = new HashMap<String, ResultMapping>();
   private final Map<CacheKey, List<PendingRelation>> pendingRelations = new HashMap<CacheKey, List<PendingRelation>>();
 
+  // batched nested selects (nestedSelectBatchSize)
+  private final Map<String, NestedQueryBatch> nestedQueryBatches = new LinkedHashMap<String, NestedQueryBatch>();
+  private final Set<String> unbatchableNestedQueries = new HashSet<String>();
+  private final Map<String, ResultLoaderGroup> resultLoaderGroups = new HashMap<String, ResultLoaderGroup>();
+  private boolean batchingNestedQueries;
+  //结果逐个交给ResultHandler或游标、不在内存中保留时为true，此时已交出对象的延迟加载分组不能一直留在这里
+  private boolean streamingResults;
+  //已读取的行数（含跳过RowBounds之后的所有结果集），供自适应fetchSize统计
+  private int rowCount;
+  //当前结果集中各ResultMap的行映射器，值为null表示该ResultMap走解释执行的映射
+  private final Map<String, RowMapper> rowMappers = new HashMap<String, RowMapper>();
+
+  // 游标逐个读取嵌套结果时，保存尚未返回的、已按序读完前几行的对象
+  private Object previousRowValue;
+
   private static class PendingRelation {
     public MetaObject metaObject;
     public ResultMapping propertyMapping;
@@ -131,7 +150,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       final String resultMapId = parameterMapping.getResultMapId();
       final ResultMap resultMap = configuration.getResultMap(resultMapId);
       final DefaultResultHandler resultHandler = new DefaultResultHandler(objectFactory);
-      final ResultSetWrapper rsw = new ResultSetWrapper(rs, configuration);
+      final ResultSetWrapper rsw = new ResultSetWrapper(rs, configuration, mappedStatement);
       handleRowValues(rsw, resultMap, resultHandler, new RowBounds(), null);
       metaParam.setValue(parameterMapping.getProperty(), resultHandler.getResultList());
     } finally {
@@ -184,6 +203,35 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return collapseSingleResultList(multipleResults);
   }
 
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * 游标只映射第一个结果集，行由 {@link DefaultCursor} 在遍历时逐个读取
+   */
+  @Override
+  public <E> Cursor<E> handleCursorResultSets(Statement stmt) throws SQLException {
+    ErrorContext.instance().activity("handling cursor results").object(mappedStatement.getId());
+
+    ResultSetWrapper rsw = getFirstResultSet(stmt);
+
+    List<ResultMap> resultMaps = mappedStatement.getResultMaps();
+
+    int resultMapCount = resultMaps.size();
+    validateResultMapsCount(rsw, resultMapCount);
+    if (resultMapCount != 1) {
+      throw new ExecutorException("Cursor results cannot be mapped to multiple resultMaps");
+    }
+    if (rsw == null) {
+      throw new ExecutorException("A cursor was requested but the statement '" + mappedStatement.getId() + "' returned no result set");
+    }
+
+    ResultMap resultMap = resultMaps.get(0);
+    streamingResults = true;
+    return new DefaultCursor<E>(this, resultMap, rsw, rowBounds);
+  }
+
   private ResultSetWrapper getFirstResultSet(Statement stmt) throws SQLException {
     ResultSet rs = stmt.getResultSet();
     while (rs == null) {
@@ -198,7 +246,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
-    return rs != null ? new ResultSetWrapper(rs, configuration) : null;
+    return rs != null ? new ResultSetWrapper(rs, configuration, mappedStatement) : null;
   }
 
   private ResultSetWrapper getNextResultSet(Statement stmt) throws SQLException {
@@ -208,7 +256,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         // Crazy Standard JDBC way of determining if there are more results
         if (!((!stmt.getMoreResults()) && (stmt.getUpdateCount() == -1))) {
           ResultSet rs = stmt.getResultSet();
-          return rs != null ? new ResultSetWrapper(rs, configuration) : null;
+          return rs != null ? new ResultSetWrapper(rs, configuration, mappedStatement) : null;
         }
       }
     } catch (Exception e) {
@@ -230,6 +278,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private void cleanUpAfterHandlingResultSet() {
     nestedResultObjects.clear();
     ancestorColumnPrefix.clear();
+    rowMappers.clear();
+    previousRowValue = null;
   }
 
   private void validateResultMapsCount(ResultSetWrapper rsw, int resultMapCount) {
@@ -246,10 +296,22 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       } else {
         if (resultHandler == null) {
           DefaultResultHandler defaultResultHandler = new DefaultResultHandler(objectFactory);
-          handleRowValues(rsw, resultMap, defaultResultHandler, rowBounds, null);
+          // 结果全部读入内存后才返回，非延迟的嵌套查询可以攒起来按批执行
+          batchingNestedQueries = configuration.getNestedSelectBatchSize() > 0;
+          try {
+            handleRowValues(rsw, resultMap, defaultResultHandler, rowBounds, null);
+          } finally {
+            batchingNestedQueries = false;
+          }
+          loadNestedQueryBatches();
           multipleResults.add(defaultResultHandler.getResultList());
         } else {
-          handleRowValues(rsw, resultMap, resultHandler, rowBounds, null);
+          streamingResults = true;
+          try {
+            handleRowValues(rsw, resultMap, resultHandler, rowBounds, null);
+          } finally {
+            streamingResults = false;
+          }
         }
       }
     } finally {
@@ -267,7 +329,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // HANDLE ROWS FOR SIMPLE RESULTMAP
   //
 
-  private void handleRowValues(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds, ResultMapping parentMapping) throws SQLException {
+  public void handleRowValues(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds, ResultMapping parentMapping) throws SQLException {
     if (resultMap.hasNestedResultMaps()) {
       ensureNoRowBounds();
       checkResultHandler();
@@ -297,15 +359,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     DefaultResultContext<Object> resultContext = new DefaultResultContext<Object>();
     skipRows(rsw.getResultSet(), rowBounds);
     while (shouldProcessMoreRows(resultContext, rowBounds) && rsw.getResultSet().next()) {
-      ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
+      rowCount++;
+      ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw, resultMap, null);
       Object rowValue = getRowValue(rsw, discriminatedResultMap);
-      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
     }
   }
 
-  private void storeObject(ResultHandler<?> resultHandler, DefaultResultContext<Object> resultContext, Object rowValue, ResultMapping parentMapping, ResultSet rs) throws SQLException {
+  private void storeObject(ResultHandler<?> resultHandler, DefaultResultContext<Object> resultContext, Object rowValue, ResultMapping parentMapping, ResultSetWrapper rsw) throws SQLException {
     if (parentMapping != null) {
-      linkToParents(rs, parentMapping, rowValue);
+      linkToParents(rsw, parentMapping, rowValue);
     } else {
       callResultHandler(resultHandler, resultContext, rowValue);
     }
@@ -338,6 +401,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   //
 
   private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    if (configuration.isRowMappersEnabled()) {
+      RowMapper rowMapper = getRowMapper(rsw, resultMap);
+      if (rowMapper != null) {
+        return rowMapper.map(rsw.getResultSet());
+      }
+    }
     final ResultLoaderMap lazyLoader = new ResultLoaderMap();
     Object resultObject = createResultObject(rsw, resultMap, lazyLoader, null);
     if (resultObject != null && !typeHandlerRegistry.hasTypeHandler(resultMap.getType())) {
@@ -354,6 +423,15 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return resultObject;
   }
 
+  private RowMapper getRowMapper(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    if (rowMappers.containsKey(resultMap.getId())) {
+      return rowMappers.get(resultMap.getId());
+    }
+    RowMapper rowMapper = configuration.getRowMapperFactory().getRowMapper(rsw, resultMap);
+    rowMappers.put(resultMap.getId(), rowMapper);
+    return rowMapper;
+  }
+
   private boolean shouldApplyAutomaticMappings(ResultMap resultMap, boolean isNested) {
     if (resultMap.getAutoMapping() != null) {
       return resultMap.getAutoMapping();
@@ -372,19 +450,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
   private boolean applyPropertyMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, ResultLoaderMap lazyLoader, String columnPrefix)
       throws SQLException {
-    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
+    // 各属性映射的列在结果集中的序号，结果集中没有的列（以及嵌套结果映射上的列）为0
+    final int[] columnIndexes = rsw.getPropertyColumnIndexes(resultMap, columnPrefix);
     boolean foundValues = false;
     final List<ResultMapping> propertyMappings = resultMap.getPropertyResultMappings();
-    for (ResultMapping propertyMapping : propertyMappings) {
-      String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
-      if (propertyMapping.getNestedResultMapId() != null) {
-        // the user added a column attribute to a nested result map, ignore it
-        column = null;
-      }
+    for (int i = 0; i < propertyMappings.size(); i++) {
+      final ResultMapping propertyMapping = propertyMappings.get(i);
       if (propertyMapping.isCompositeResult()
-          || (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH)))
+          || columnIndexes[i] > 0
           || propertyMapping.getResultSet() != null) {
-        Object value = getPropertyMappingValue(rsw.getResultSet(), metaObject, propertyMapping, lazyLoader, columnPrefix);
+        Object value = getPropertyMappingValue(rsw, metaObject, propertyMapping, columnIndexes[i], lazyLoader, columnPrefix);
         // issue #541 make property optional
         final String property = propertyMapping.getProperty();
         // issue #377, call setter on nulls
@@ -401,23 +476,50 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return foundValues;
   }
 
-  private Object getPropertyMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
-      throws SQLException {
+  private Object getPropertyMappingValue(ResultSetWrapper rsw, MetaObject metaResultObject, ResultMapping propertyMapping, int columnIndex,
+      ResultLoaderMap lazyLoader, String columnPrefix) throws SQLException {
     if (propertyMapping.getNestedQueryId() != null) {
-      return getNestedQueryMappingValue(rs, metaResultObject, propertyMapping, lazyLoader, columnPrefix);
+      return getNestedQueryMappingValue(rsw, metaResultObject, propertyMapping, lazyLoader, columnPrefix);
     } else if (propertyMapping.getResultSet() != null) {
-      addPendingChildRelation(rs, metaResultObject, propertyMapping);   // TODO is that OK?
+      addPendingChildRelation(rsw, metaResultObject, propertyMapping);   // TODO is that OK?
       return DEFERED;
     } else {
       final TypeHandler<?> typeHandler = propertyMapping.getTypeHandler();
-      final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
-      return typeHandler.getResult(rs, column);
+      if (columnIndex > 0) {
+        return typeHandler.getResult(rsw.getResultSet(), columnIndex);
+      }
+      return typeHandler.getResult(rsw.getResultSet(), prependPrefix(propertyMapping.getColumn(), columnPrefix));
     }
   }
 
   private boolean applyAutomaticMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String columnPrefix) throws SQLException {
-    final List<String> unmappedColumnNames = rsw.getUnmappedColumnNames(resultMap, columnPrefix);
+    final Object resultObject = metaObject.getOriginalObject();
+    // Map和自定义包装的属性类型随取值变化，不能复用计划
+    final boolean cacheable = !(resultObject instanceof Map) && !configuration.getObjectWrapperFactory().hasWrapperFor(resultObject);
+    AutoMappingPlan plan = cacheable ? rsw.getAutoMappingPlan(resultMap, columnPrefix) : null;
+    if (plan == null || plan.getResultType() != resultObject.getClass()) {
+      plan = createAutoMappingPlan(rsw, resultMap, metaObject, columnPrefix);
+      if (cacheable) {
+        rsw.putAutoMappingPlan(resultMap, columnPrefix, plan);
+      }
+    }
     boolean foundValues = false;
+    for (AutoMappingPlan.ColumnMapping mapping : plan.getColumnMappings()) {
+      final Object value = mapping.typeHandler.getResult(rsw.getResultSet(), mapping.columnIndex);
+      // issue #377, call setter on nulls
+      if (value != null || configuration.isCallSettersOnNulls()) {
+        if (value != null || !mapping.primitive) {
+          metaObject.setValue(mapping.property, value);
+        }
+        foundValues = true;
+      }
+    }
+    return foundValues;
+  }
+
+  private AutoMappingPlan createAutoMappingPlan(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String columnPrefix) throws SQLException {
+    final List<String> unmappedColumnNames = rsw.getUnmappedColumnNames(resultMap, columnPrefix);
+    final List<AutoMappingPlan.ColumnMapping> columnMappings = new ArrayList<AutoMappingPlan.ColumnMapping>();
     for (String columnName : unmappedColumnNames) {
       String propertyName = columnName;
       if (columnPrefix != null && !columnPrefix.isEmpty()) {
@@ -434,24 +536,18 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         final Class<?> propertyType = metaObject.getSetterType(property);
         if (typeHandlerRegistry.hasTypeHandler(propertyType)) {
           final TypeHandler<?> typeHandler = rsw.getTypeHandler(propertyType, columnName);
-          final Object value = typeHandler.getResult(rsw.getResultSet(), columnName);
-          // issue #377, call setter on nulls
-          if (value != null || configuration.isCallSettersOnNulls()) {
-            if (value != null || !propertyType.isPrimitive()) {
-              metaObject.setValue(property, value);
-            }
-            foundValues = true;
-          }
+          final int columnIndex = rsw.getColumnNames().indexOf(columnName) + 1;
+          columnMappings.add(new AutoMappingPlan.ColumnMapping(columnName, columnIndex, property, typeHandler, propertyType.isPrimitive()));
         }
       }
     }
-    return foundValues;
+    return new AutoMappingPlan(metaObject.getOriginalObject().getClass(), columnMappings);
   }
 
   // MULTIPLE RESULT SETS
 
-  private void linkToParents(ResultSet rs, ResultMapping parentMapping, Object rowValue) throws SQLException {
-    CacheKey parentKey = createKeyForMultipleResults(rs, parentMapping, parentMapping.getColumn(), parentMapping.getForeignColumn());
+  private void linkToParents(ResultSetWrapper rsw, ResultMapping parentMapping, Object rowValue) throws SQLException {
+    CacheKey parentKey = createKeyForMultipleResults(rsw, parentMapping, parentMapping.getColumn(), parentMapping.getForeignColumn());
     List<PendingRelation> parents = pendingRelations.get(parentKey);
     if (parents != null) {
       for (PendingRelation parent : parents) {
@@ -462,8 +558,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
-  private void addPendingChildRelation(ResultSet rs, MetaObject metaResultObject, ResultMapping parentMapping) throws SQLException {
-    CacheKey cacheKey = createKeyForMultipleResults(rs, parentMapping, parentMapping.getColumn(), parentMapping.getColumn());
+  private void addPendingChildRelation(ResultSetWrapper rsw, MetaObject metaResultObject, ResultMapping parentMapping) throws SQLException {
+    CacheKey cacheKey = createKeyForMultipleResults(rsw, parentMapping, parentMapping.getColumn(), parentMapping.getColumn());
     PendingRelation deferLoad = new PendingRelation();
     deferLoad.metaObject = metaResultObject;
     deferLoad.propertyMapping = parentMapping;
@@ -484,14 +580,15 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
-  private CacheKey createKeyForMultipleResults(ResultSet rs, ResultMapping resultMapping, String names, String columns) throws SQLException {
+  private CacheKey createKeyForMultipleResults(ResultSetWrapper rsw, ResultMapping resultMapping, String names, String columns) throws SQLException {
     CacheKey cacheKey = new CacheKey();
     cacheKey.update(resultMapping);
     if (columns != null && names != null) {
       String[] columnsArray = columns.split(",");
       String[] namesArray = names.split(",");
       for (int i = 0 ; i < columnsArray.length ; i++) {
-        Object value = rs.getString(columnsArray[i]);
+        final int columnIndex = rsw.getColumnIndex(columnsArray[i]);
+        Object value = columnIndex > 0 ? rsw.getResultSet().getString(columnIndex) : rsw.getResultSet().getString(columnsArray[i]);
         if (value != null) {
           cacheKey.update(namesArray[i]);
           cacheKey.update(value);
@@ -547,13 +644,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       final Object value;
       try {
         if (constructorMapping.getNestedQueryId() != null) {
-          value = getNestedQueryConstructorValue(rsw.getResultSet(), constructorMapping, columnPrefix);
+          value = getNestedQueryConstructorValue(rsw, constructorMapping, columnPrefix);
         } else if (constructorMapping.getNestedResultMapId() != null) {
           final ResultMap resultMap = configuration.getResultMap(constructorMapping.getNestedResultMapId());
           value = getRowValue(rsw, resultMap);
         } else {
           final TypeHandler<?> typeHandler = constructorMapping.getTypeHandler();
-          value = typeHandler.getResult(rsw.getResultSet(), prependPrefix(column, columnPrefix));
+          value = getColumnValue(rsw, typeHandler, prependPrefix(column, columnPrefix));
         }
       } catch (ResultMapException e) {
         throw new ExecutorException("Could not process result for mapping: " + constructorMapping, e);
@@ -576,7 +673,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
           Class<?> parameterType = constructor.getParameterTypes()[i];
           String columnName = rsw.getColumnNames().get(i);
           TypeHandler<?> typeHandler = rsw.getTypeHandler(parameterType, columnName);
-          Object value = typeHandler.getResult(rsw.getResultSet(), prependPrefix(columnName, columnPrefix));
+          Object value = getColumnValue(rsw, typeHandler, prependPrefix(columnName, columnPrefix));
           constructorArgTypes.add(parameterType);
           constructorArgs.add(value);
           foundValues = value != null || foundValues;
@@ -606,18 +703,18 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       columnName = rsw.getColumnNames().get(0);
     }
     final TypeHandler<?> typeHandler = rsw.getTypeHandler(resultType, columnName);
-    return typeHandler.getResult(rsw.getResultSet(), columnName);
+    return getColumnValue(rsw, typeHandler, columnName);
   }
 
   //
   // NESTED QUERY
   //
 
-  private Object getNestedQueryConstructorValue(ResultSet rs, ResultMapping constructorMapping, String columnPrefix) throws SQLException {
+  private Object getNestedQueryConstructorValue(ResultSetWrapper rsw, ResultMapping constructorMapping, String columnPrefix) throws SQLException {
     final String nestedQueryId = constructorMapping.getNestedQueryId();
     final MappedStatement nestedQuery = configuration.getMappedStatement(nestedQueryId);
     final Class<?> nestedQueryParameterType = nestedQuery.getParameterMap().getType();
-    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rs, constructorMapping, nestedQueryParameterType, columnPrefix);
+    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rsw, constructorMapping, nestedQueryParameterType, columnPrefix);
     Object value = null;
     if (nestedQueryParameterObject != null) {
       final BoundSql nestedBoundSql = nestedQuery.getBoundSql(nestedQueryParameterObject);
@@ -629,13 +726,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return value;
   }
 
-  private Object getNestedQueryMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
+  private Object getNestedQueryMappingValue(ResultSetWrapper rsw, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
       throws SQLException {
     final String nestedQueryId = propertyMapping.getNestedQueryId();
     final String property = propertyMapping.getProperty();
     final MappedStatement nestedQuery = configuration.getMappedStatement(nestedQueryId);
     final Class<?> nestedQueryParameterType = nestedQuery.getParameterMap().getType();
-    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rs, propertyMapping, nestedQueryParameterType, columnPrefix);
+    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rsw, propertyMapping, nestedQueryParameterType, columnPrefix);
     Object value = null;
     if (nestedQueryParameterObject != null) {
       final BoundSql nestedBoundSql = nestedQuery.getBoundSql(nestedQueryParameterObject);
@@ -647,7 +744,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       } else {
         final ResultLoader resultLoader = new ResultLoader(configuration, executor, nestedQuery, nestedQueryParameterObject, targetType, key, nestedBoundSql);
         if (propertyMapping.isLazy()) {
-          lazyLoader.addLoader(property, metaResultObject, resultLoader);
+          lazyLoader.addLoader(property, metaResultObject, resultLoader, getResultLoaderGroup(propertyMapping, nestedQuery, nestedBoundSql));
+          value = DEFERED;
+        } else if (!propertyMapping.isCompositeResult() && addToNestedQueryBatch(nestedQuery, nestedBoundSql, nestedQueryParameterObject, metaResultObject, property, targetType)) {
           value = DEFERED;
         } else {
           value = resultLoader.loadResult();
@@ -657,32 +756,85 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return value;
   }
 
-  private Object prepareParameterForNestedQuery(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
+  private ResultLoaderGroup getResultLoaderGroup(ResultMapping propertyMapping, MappedStatement nestedQuery, BoundSql nestedBoundSql) {
+    if (configuration.getLazyLoadingBatchSize() <= 0 || propertyMapping.isCompositeResult()) {
+      return null;
+    }
+    final String batchKey = nestedQuery.getId() + "\n" + nestedBoundSql.getSql();
+    if (unbatchableNestedQueries.contains(batchKey)) {
+      return null;
+    }
+    final String groupKey = batchKey + "\n" + propertyMapping.getProperty();
+    ResultLoaderGroup group = resultLoaderGroups.get(groupKey);
+    // 流式处理时分组攒满一批就换新的，旧分组只被已交出的对象引用，随它们一起回收
+    if (group == null || (streamingResults && group.isFull())) {
+      NestedQueryBatch batch = NestedQueryBatch.forNestedQuery(nestedQuery, nestedBoundSql);
+      if (batch == null) {
+        unbatchableNestedQueries.add(batchKey);
+        return null;
+      }
+      group = new ResultLoaderGroup(batch, configuration.getLazyLoadingBatchSize());
+      resultLoaderGroups.put(groupKey, group);
+    }
+    return group;
+  }
+
+  private boolean addToNestedQueryBatch(MappedStatement nestedQuery, BoundSql nestedBoundSql, Object key, MetaObject metaResultObject, String property,
+      Class<?> targetType) {
+    if (!batchingNestedQueries) {
+      return false;
+    }
+    final String batchKey = nestedQuery.getId() + "\n" + nestedBoundSql.getSql();
+    NestedQueryBatch batch = nestedQueryBatches.get(batchKey);
+    if (batch == null) {
+      if (unbatchableNestedQueries.contains(batchKey)) {
+        return false;
+      }
+      batch = NestedQueryBatch.forNestedQuery(nestedQuery, nestedBoundSql);
+      if (batch == null) {
+        unbatchableNestedQueries.add(batchKey);
+        return false;
+      }
+      nestedQueryBatches.put(batchKey, batch);
+    }
+    batch.add(key, metaResultObject, property, targetType);
+    return true;
+  }
+
+  private void loadNestedQueryBatches() throws SQLException {
+    final int batchSize = configuration.getNestedSelectBatchSize();
+    for (NestedQueryBatch batch : nestedQueryBatches.values()) {
+      batch.load(executor, batchSize);
+    }
+    nestedQueryBatches.clear();
+  }
+
+  private Object prepareParameterForNestedQuery(ResultSetWrapper rsw, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     if (resultMapping.isCompositeResult()) {
-      return prepareCompositeKeyParameter(rs, resultMapping, parameterType, columnPrefix);
+      return prepareCompositeKeyParameter(rsw, resultMapping, parameterType, columnPrefix);
     } else {
-      return prepareSimpleKeyParameter(rs, resultMapping, parameterType, columnPrefix);
+      return prepareSimpleKeyParameter(rsw, resultMapping, parameterType, columnPrefix);
     }
   }
 
-  private Object prepareSimpleKeyParameter(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
+  private Object prepareSimpleKeyParameter(ResultSetWrapper rsw, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     final TypeHandler<?> typeHandler;
     if (typeHandlerRegistry.hasTypeHandler(parameterType)) {
       typeHandler = typeHandlerRegistry.getTypeHandler(parameterType);
     } else {
       typeHandler = typeHandlerRegistry.getUnknownTypeHandler();
     }
-    return typeHandler.getResult(rs, prependPrefix(resultMapping.getColumn(), columnPrefix));
+    return getColumnValue(rsw, typeHandler, prependPrefix(resultMapping.getColumn(), columnPrefix));
   }
 
-  private Object prepareCompositeKeyParameter(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
+  private Object prepareCompositeKeyParameter(ResultSetWrapper rsw, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     final Object parameterObject = instantiateParameterObject(parameterType);
     final MetaObject metaObject = configuration.newMetaObject(parameterObject);
     boolean foundValues = false;
     for (ResultMapping innerResultMapping : resultMapping.getComposites()) {
       final Class<?> propType = metaObject.getSetterType(innerResultMapping.getProperty());
       final TypeHandler<?> typeHandler = typeHandlerRegistry.getTypeHandler(propType);
-      final Object propValue = typeHandler.getResult(rs, prependPrefix(innerResultMapping.getColumn(), columnPrefix));
+      final Object propValue = getColumnValue(rsw, typeHandler, prependPrefix(innerResultMapping.getColumn(), columnPrefix));
       // issue #353 & #560 do not execute nested query if key is null
       if (propValue != null) {
         metaObject.setValue(innerResultMapping.getProperty(), propValue);
@@ -704,11 +856,11 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // DISCRIMINATOR
   //
 
-  public ResultMap resolveDiscriminatedResultMap(ResultSet rs, ResultMap resultMap, String columnPrefix) throws SQLException {
+  public ResultMap resolveDiscriminatedResultMap(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
     Set<String> pastDiscriminators = new HashSet<String>();
     Discriminator discriminator = resultMap.getDiscriminator();
     while (discriminator != null) {
-      final Object value = getDiscriminatorValue(rs, discriminator, columnPrefix);
+      final Object value = getDiscriminatorValue(rsw, discriminator, columnPrefix);
       final String discriminatedMapId = discriminator.getMapIdFor(String.valueOf(value));
       if (configuration.hasResultMap(discriminatedMapId)) {
         resultMap = configuration.getResultMap(discriminatedMapId);
@@ -724,10 +876,21 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return resultMap;
   }
 
-  private Object getDiscriminatorValue(ResultSet rs, Discriminator discriminator, String columnPrefix) throws SQLException {
+  private Object getDiscriminatorValue(ResultSetWrapper rsw, Discriminator discriminator, String columnPrefix) throws SQLException {
     final ResultMapping resultMapping = discriminator.getResultMapping();
     final TypeHandler<?> typeHandler = resultMapping.getTypeHandler();
-    return typeHandler.getResult(rs, prependPrefix(resultMapping.getColumn(), columnPrefix));
+    return getColumnValue(rsw, typeHandler, prependPrefix(resultMapping.getColumn(), columnPrefix));
+  }
+
+  /**
+   * 按列序号读取列值，列序号在每个结果集上只解析一次；结果集中找不到的列仍按列名读取，由驱动报告错误
+   */
+  private Object getColumnValue(ResultSetWrapper rsw, TypeHandler<?> typeHandler, String column) throws SQLException {
+    final int columnIndex = rsw.getColumnIndex(column);
+    if (columnIndex > 0) {
+      return typeHandler.getResult(rsw.getResultSet(), columnIndex);
+    }
+    return typeHandler.getResult(rsw.getResultSet(), column);
   }
 
   private String prependPrefix(String columnName, String prefix) {
@@ -744,27 +907,31 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private void handleRowValuesForNestedResultMap(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds, ResultMapping parentMapping) throws SQLException {
     final DefaultResultContext<Object> resultContext = new DefaultResultContext<Object>();
     skipRows(rsw.getResultSet(), rowBounds);
-    Object rowValue = null;
+    Object rowValue = previousRowValue;
     while (shouldProcessMoreRows(resultContext, rowBounds) && rsw.getResultSet().next()) {
-      final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
-      final CacheKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
+      rowCount++;
+      final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw, resultMap, null);
+      final RowKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
       Object partialObject = nestedResultObjects.get(rowKey);
       // issue #577 && #542
       if (mappedStatement.isResultOrdered()) {
         if (partialObject == null && rowValue != null) {
           nestedResultObjects.clear();
-          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
         }
         rowValue = getRowValue(rsw, discriminatedResultMap, rowKey, rowKey, null, partialObject);
       } else {
         rowValue = getRowValue(rsw, discriminatedResultMap, rowKey, rowKey, null, partialObject);
         if (partialObject == null) {
-          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
         }
       }
     }
     if (rowValue != null && mappedStatement.isResultOrdered() && shouldProcessMoreRows(resultContext, rowBounds)) {
-      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
+      previousRowValue = null;
+    } else if (rowValue != null) {
+      previousRowValue = rowValue;
     }
   }
 
@@ -772,7 +939,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // GET VALUE FROM ROW FOR NESTED RESULT MAP
   //
 
-  private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, CacheKey combinedKey, CacheKey absoluteKey, String columnPrefix, Object partialObject) throws SQLException {
+  private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, RowKey combinedKey, RowKey absoluteKey, String columnPrefix, Object partialObject) throws SQLException {
     final String resultMapId = resultMap.getId();
     Object resultObject = partialObject;
     if (resultObject != null) {
@@ -796,14 +963,14 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         foundValues = lazyLoader.size() > 0 || foundValues;
         resultObject = foundValues ? resultObject : null;
       }
-      if (combinedKey != CacheKey.NULL_CACHE_KEY) {
+      if (combinedKey != RowKey.NULL_ROW_KEY) {
         nestedResultObjects.put(combinedKey, resultObject);
       }
     }
     return resultObject;
   }
 
-  private void putAncestor(CacheKey rowKey, Object resultObject, String resultMapId, String columnPrefix) {
+  private void putAncestor(RowKey rowKey, Object resultObject, String resultMapId, String columnPrefix) {
     if (!ancestorColumnPrefix.containsKey(resultMapId)) {
       ancestorColumnPrefix.put(resultMapId, columnPrefix);
     }
@@ -814,15 +981,15 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // NESTED RESULT MAP (JOIN MAPPING)
   //
 
-  private boolean applyNestedResultMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String parentPrefix, CacheKey parentRowKey, boolean newObject) {
+  private boolean applyNestedResultMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String parentPrefix, RowKey parentRowKey, boolean newObject) {
     boolean foundValues = false;
     for (ResultMapping resultMapping : resultMap.getPropertyResultMappings()) {
       final String nestedResultMapId = resultMapping.getNestedResultMapId();
       if (nestedResultMapId != null && resultMapping.getResultSet() == null) {
         try {
           final String columnPrefix = getColumnPrefix(parentPrefix, resultMapping);
-          final ResultMap nestedResultMap = getNestedResultMap(rsw.getResultSet(), nestedResultMapId, columnPrefix);
-          CacheKey rowKey = null;
+          final ResultMap nestedResultMap = getNestedResultMap(rsw, nestedResultMapId, columnPrefix);
+          RowKey rowKey = null;
           Object ancestorObject = null;
           if (ancestorColumnPrefix.containsKey(nestedResultMapId)) {
             rowKey = createRowKey(nestedResultMap, rsw, ancestorColumnPrefix.get(nestedResultMapId));
@@ -834,11 +1001,11 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             }
           } else {
             rowKey = createRowKey(nestedResultMap, rsw, columnPrefix);
-            final CacheKey combinedKey = combineKeys(rowKey, parentRowKey);
+            final RowKey combinedKey = rowKey.combine(parentRowKey);
             Object rowValue = nestedResultObjects.get(combinedKey);
             boolean knownValue = (rowValue != null);
             instantiateCollectionPropertyIfAppropriate(resultMapping, metaObject); // mandatory            
-            if (anyNotNullColumnHasValue(resultMapping, columnPrefix, rsw.getResultSet())) {
+            if (anyNotNullColumnHasValue(resultMapping, columnPrefix, rsw)) {
               rowValue = getRowValue(rsw, nestedResultMap, combinedKey, rowKey, columnPrefix, rowValue);
               if (rowValue != null && !knownValue) {
                 linkObjects(metaObject, resultMapping, rowValue);
@@ -865,13 +1032,20 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return columnPrefixBuilder.length() == 0 ? null : columnPrefixBuilder.toString().toUpperCase(Locale.ENGLISH);
   }
 
-  private boolean anyNotNullColumnHasValue(ResultMapping resultMapping, String columnPrefix, ResultSet rs) throws SQLException {
+  private boolean anyNotNullColumnHasValue(ResultMapping resultMapping, String columnPrefix, ResultSetWrapper rsw) throws SQLException {
+    final ResultSet rs = rsw.getResultSet();
     Set<String> notNullColumns = resultMapping.getNotNullColumns();
     boolean anyNotNullColumnHasValue = true;
     if (notNullColumns != null && !notNullColumns.isEmpty()) {
       anyNotNullColumnHasValue = false;
       for (String column: notNullColumns) {
-        rs.getObject(prependPrefix(column, columnPrefix));
+        final String prefixedColumn = prependPrefix(column, columnPrefix);
+        final int columnIndex = rsw.getColumnIndex(prefixedColumn);
+        if (columnIndex > 0) {
+          rs.getObject(columnIndex);
+        } else {
+          rs.getObject(prefixedColumn);
+        }
         if (!rs.wasNull()) {
           anyNotNullColumnHasValue = true;
           break;
@@ -881,43 +1055,42 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return anyNotNullColumnHasValue;
   }
 
-  private ResultMap getNestedResultMap(ResultSet rs, String nestedResultMapId, String columnPrefix) throws SQLException {
+  private ResultMap getNestedResultMap(ResultSetWrapper rsw, String nestedResultMapId, String columnPrefix) throws SQLException {
     ResultMap nestedResultMap = configuration.getResultMap(nestedResultMapId);
-    return resolveDiscriminatedResultMap(rs, nestedResultMap, columnPrefix);
+    return resolveDiscriminatedResultMap(rsw, nestedResultMap, columnPrefix);
   }
 
   //
   // UNIQUE RESULT KEY
   //
 
-  private CacheKey createRowKey(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix) throws SQLException {
-    final CacheKey cacheKey = new CacheKey();
-    cacheKey.update(resultMap.getId());
+  private RowKey createRowKey(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix) throws SQLException {
+    RowKey.Columns rowKeyColumns = rsw.getRowKeyColumns(resultMap, columnPrefix);
+    if (rowKeyColumns == null) {
+      rowKeyColumns = createRowKeyColumns(resultMap, rsw, columnPrefix);
+      rsw.putRowKeyColumns(resultMap, columnPrefix, rowKeyColumns);
+    }
+    return rowKeyColumns.createRowKey(rsw.getResultSet());
+  }
+
+  private RowKey.Columns createRowKeyColumns(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix) throws SQLException {
+    final List<String> columns = new ArrayList<String>();
+    final List<TypeHandler<?>> typeHandlers = new ArrayList<TypeHandler<?>>();
     List<ResultMapping> resultMappings = getResultMappingsForRowKey(resultMap);
     if (resultMappings.size() == 0) {
       if (Map.class.isAssignableFrom(resultMap.getType())) {
-        createRowKeyForMap(rsw, cacheKey);
+        createRowKeyForMap(rsw, columns, typeHandlers);
       } else {
-        createRowKeyForUnmappedProperties(resultMap, rsw, cacheKey, columnPrefix);
+        createRowKeyForUnmappedProperties(resultMap, rsw, columns, typeHandlers, columnPrefix);
       }
     } else {
-      createRowKeyForMappedProperties(resultMap, rsw, cacheKey, resultMappings, columnPrefix);
+      createRowKeyForMappedProperties(resultMap, rsw, columns, typeHandlers, resultMappings, columnPrefix);
     }
-    return cacheKey;
-  }
-
-  private CacheKey combineKeys(CacheKey rowKey, CacheKey parentRowKey) {
-    if (rowKey.getUpdateCount() > 1 && parentRowKey.getUpdateCount() > 1) {
-      CacheKey combinedKey;
-      try {
-        combinedKey = rowKey.clone();
-      } catch (CloneNotSupportedException e) {
-        throw new ExecutorException("Error cloning cache key.  Cause: " + e, e);
-      }
-      combinedKey.update(parentRowKey);
-      return combinedKey;
+    final int[] columnIndexes = new int[columns.size()];
+    for (int i = 0; i < columnIndexes.length; i++) {
+      columnIndexes[i] = rsw.getColumnIndex(columns.get(i));
     }
-    return CacheKey.NULL_CACHE_KEY;
+    return new RowKey.Columns(resultMap.getId(), columns, columnIndexes, typeHandlers);
   }
 
   private List<ResultMapping> getResultMappingsForRowKey(ResultMap resultMap) {
@@ -928,30 +1101,27 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return resultMappings;
   }
 
-  private void createRowKeyForMappedProperties(ResultMap resultMap, ResultSetWrapper rsw, CacheKey cacheKey, List<ResultMapping> resultMappings, String columnPrefix) throws SQLException {
+  private void createRowKeyForMappedProperties(ResultMap resultMap, ResultSetWrapper rsw, List<String> columns, List<TypeHandler<?>> typeHandlers,
+      List<ResultMapping> resultMappings, String columnPrefix) throws SQLException {
     for (ResultMapping resultMapping : resultMappings) {
       if (resultMapping.getNestedResultMapId() != null && resultMapping.getResultSet() == null) {
         // Issue #392
         final ResultMap nestedResultMap = configuration.getResultMap(resultMapping.getNestedResultMapId());
-        createRowKeyForMappedProperties(nestedResultMap, rsw, cacheKey, nestedResultMap.getConstructorResultMappings(),
+        createRowKeyForMappedProperties(nestedResultMap, rsw, columns, typeHandlers, nestedResultMap.getConstructorResultMappings(),
             prependPrefix(resultMapping.getColumnPrefix(), columnPrefix));
       } else if (resultMapping.getNestedQueryId() == null) {
         final String column = prependPrefix(resultMapping.getColumn(), columnPrefix);
-        final TypeHandler<?> th = resultMapping.getTypeHandler();
-        List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
         // Issue #114
-        if (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
-          final Object value = th.getResult(rsw.getResultSet(), column);
-          if (value != null) {
-            cacheKey.update(column);
-            cacheKey.update(value);
-          }
+        if (rsw.getColumnIndex(column) > 0) {
+          columns.add(column);
+          typeHandlers.add(resultMapping.getTypeHandler());
         }
       }
     }
   }
 
-  private void createRowKeyForUnmappedProperties(ResultMap resultMap, ResultSetWrapper rsw, CacheKey cacheKey, String columnPrefix) throws SQLException {
+  private void createRowKeyForUnmappedProperties(ResultMap resultMap, ResultSetWrapper rsw, List<String> columns, List<TypeHandler<?>> typeHandlers,
+      String columnPrefix) throws SQLException {
     final MetaClass metaType = MetaClass.forClass(resultMap.getType(), reflectorFactory);
     List<String> unmappedColumnNames = rsw.getUnmappedColumnNames(resultMap, columnPrefix);
     for (String column : unmappedColumnNames) {
@@ -965,23 +1135,17 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
       if (metaType.findProperty(property, configuration.isMapUnderscoreToCamelCase()) != null) {
-        String value = rsw.getResultSet().getString(column);
-        if (value != null) {
-          cacheKey.update(column);
-          cacheKey.update(value);
-        }
+        // 按字符串读取
+        columns.add(column);
+        typeHandlers.add(null);
       }
     }
   }
 
-  private void createRowKeyForMap(ResultSetWrapper rsw, CacheKey cacheKey) throws SQLException {
-    List<String> columnNames = rsw.getColumnNames();
-    for (String columnName : columnNames) {
-      final String value = rsw.getResultSet().getString(columnName);
-      if (value != null) {
-        cacheKey.update(columnName);
-        cacheKey.update(value);
-      }
+  private void createRowKeyForMap(ResultSetWrapper rsw, List<String> columns, List<TypeHandler<?>> typeHandlers) throws SQLException {
+    for (String columnName : rsw.getColumnNames()) {
+      columns.add(columnName);
+      typeHandlers.add(null);
     }
   }
 
@@ -0,0 +1,164 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
+
+/**
+ * 用 Javassist 为 {@link RowMapper} 生成子类，把逐列的反射调用展开成对构造方法和 setter 的直接调用。
+ * 生成的类定义在结果类型的类加载器中，因此只在该加载器能看到 MyBatis 的类、且类型和 setter 都是public时生成。
+ *
+ * @author Clinton Begin
+ */
+class JavassistRowMapperGenerator {
+
+  private static final AtomicInteger classCounter = new AtomicInteger();
+
+  private JavassistRowMapperGenerator() {
+    // Prevent Instantiation of Static Class
+  }
+
+  static boolean canGenerate(RowMapper template) {
+    final Class<?> type = template.getType();
+    final ClassLoader classLoader = type.getClassLoader();
+    if (classLoader == null || !Modifier.isPublic(type.getModifiers())) {
+      return false;
+    }
+    try {
+      if (Class.forName(RowMapper.class.getName(), false, classLoader) != RowMapper.class) {
+        return false;
+      }
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+    for (RowMapper.Column column : template.columns) {
+      if (column.setter != null
+          && (column.setterMethod == null
+          || !Modifier.isPublic(column.setterMethod.getModifiers())
+          || !Modifier.isPublic(column.setterMethod.getDeclaringClass().getModifiers()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static RowMapper generate(RowMapper template) throws Exception {
+    final Class<?> type = template.getType();
+    final ClassPool pool = new ClassPool(true);
+    pool.appendClassPath(new LoaderClassPath(type.getClassLoader()));
+    pool.appendClassPath(new LoaderClassPath(RowMapper.class.getClassLoader()));
+    final String className = RowMapper.class.getName() + "$Generated" + classCounter.incrementAndGet();
+    final CtClass ctClass = pool.makeClass(className);
+    ctClass.setSuperclass(pool.get(RowMapper.class.getName()));
+    final String simpleName = className.substring(className.lastIndexOf('.') + 1);
+    ctClass.addConstructor(CtNewConstructor.make(
+        "public " + simpleName + "(" + RowMapper.class.getName() + " template) { super(template); }", ctClass));
+    ctClass.addMethod(CtNewMethod.make(mapMethod(template), ctClass));
+    final Class<?> mapperClass = ctClass.toClass(type.getClassLoader(), type.getProtectionDomain());
+    ctClass.detach();
+    final Constructor<?> constructor = mapperClass.getConstructor(RowMapper.class);
+    return (RowMapper) constructor.newInstance(template);
+  }
+
+  /*
+   * Builds the source of map(ResultSet), in the Java subset the Javassist compiler accepts (no autoboxing or generics)
+   */
+  private static String mapMethod(RowMapper template) {
+    final String typeName = sourceName(template.getType());
+    final StringBuilder src = new StringBuilder();
+    src.append("public Object map(java.sql.ResultSet rs) throws java.sql.SQLException {\n");
+    if (template.objectFactory.getClass() == DefaultObjectFactory.class && hasPublicDefaultConstructor(template.getType())) {
+      src.append("  ").append(typeName).append(" target = new ").append(typeName).append("();\n");
+    } else {
+      src.append("  ").append(typeName).append(" target = (").append(typeName).append(") objectFactory.create(type);\n");
+    }
+    src.append("  boolean found = false;\n");
+    src.append("  Object value;\n");
+    for (int i = 0; i < template.columns.length; i++) {
+      final RowMapper.Column column = template.columns[i];
+      src.append("  value = typeHandlers[").append(i).append("].getResult(rs, ").append(column.index).append(");\n");
+      src.append("  if (value != null) {\n");
+      if (column.setter != null) {
+        src.append("    target.").append(column.setterMethod.getName()).append('(')
+            .append(unbox(column.setterType, "value")).append(");\n");
+      }
+      src.append("    found = true;\n");
+      src.append("  }");
+      if (column.setNull || column.nullFound) {
+        src.append(" else {\n");
+        if (column.setNull) {
+          src.append("    target.").append(column.setterMethod.getName()).append("((")
+              .append(sourceName(column.setterType)).append(") null);\n");
+        }
+        if (column.nullFound) {
+          src.append("    found = true;\n");
+        }
+        src.append("  }");
+      }
+      src.append('\n');
+    }
+    src.append("  return found ? target : null;\n");
+    src.append("}");
+    return src.toString();
+  }
+
+  private static boolean hasPublicDefaultConstructor(Class<?> type) {
+    try {
+      return Modifier.isPublic(type.getConstructor().getModifiers());
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static String unbox(Class<?> type, String variable) {
+    if (type == int.class) {
+      return "((java.lang.Integer) " + variable + ").intValue()";
+    } else if (type == long.class) {
+      return "((java.lang.Long) " + variable + ").longValue()";
+    } else if (type == short.class) {
+      return "((java.lang.Short) " + variable + ").shortValue()";
+    } else if (type == byte.class) {
+      return "((java.lang.Byte) " + variable + ").byteValue()";
+    } else if (type == double.class) {
+      return "((java.lang.Double) " + variable + ").doubleValue()";
+    } else if (type == float.class) {
+      return "((java.lang.Float) " + variable + ").floatValue()";
+    } else if (type == boolean.class) {
+      return "((java.lang.Boolean) " + variable + ").booleanValue()";
+    } else if (type == char.class) {
+      return "((java.lang.Character) " + variable + ").charValue()";
+    }
+    return "(" + sourceName(type) + ") " + variable;
+  }
+
+  private static String sourceName(Class<?> type) {
+    if (type.isArray()) {
+      return sourceName(type.getComponentType()) + "[]";
+    }
+    return type.getName();
+  }
+
+}
@@ -0,0 +1,305 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ResultExtractor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.AutoMappingBehavior;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Collects the keys of the non lazy nested selects of one result set and runs the nested statement
+ * once per chunk of distinct keys, rewriting its single {@code column = ?} predicate into an IN list.
+ * Lazy loaders of sibling objects use {@link #selectChildren} the same way (see ResultLoaderGroup).
+ * <p>
+ * The children are grouped back by the property the key column is mapped to. When a child cannot be
+ * matched to one of the requested keys, the chunk is loaded again row by row so the result is always
+ * the same as without batching.
+ *
+ * @author Clinton Begin
+ */
+public class NestedQueryBatch {
+
+  private static final Pattern KEY_PREDICATE = Pattern.compile("([A-Za-z_][\\w.]*)\\s*=\\s*\\?");
+  //这些结构下 IN 列表和逐行查询的结果不等价（或不易判断），不做合并
+  private static final Pattern UNSUPPORTED = Pattern.compile(
+      "\\b(OR|NOT|LIMIT|OFFSET|FETCH|TOP|ROWNUM|UNION|INTERSECT|EXCEPT|MINUS|GROUP|HAVING|PROCEDURE|CALL)\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern SELECT = Pattern.compile("\\bSELECT\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern FROM = Pattern.compile("\\bFROM\\b", Pattern.CASE_INSENSITIVE);
+
+  private final Configuration configuration;
+  private final MappedStatement nestedQuery;
+  private final ParameterMapping keyParameterMapping;
+  private final String sqlBeforeKey;
+  private final String sqlAfterKey;
+  private final String keyProperty;
+  //规范化后的键 -> 原始键值 / 等待该键结果的属性
+  private final Map<Object, Object> keyValues = new LinkedHashMap<Object, Object>();
+  private final Map<Object, List<PendingLoad>> pendingLoads = new LinkedHashMap<Object, List<PendingLoad>>();
+
+  private static class PendingLoad {
+    private final MetaObject metaResultObject;
+    private final String property;
+    private final Class<?> targetType;
+
+    private PendingLoad(MetaObject metaResultObject, String property, Class<?> targetType) {
+      this.metaResultObject = metaResultObject;
+      this.property = property;
+      this.targetType = targetType;
+    }
+  }
+
+  private NestedQueryBatch(MappedStatement nestedQuery, ParameterMapping keyParameterMapping, String sqlBeforeKey, String sqlAfterKey, String keyProperty) {
+    this.configuration = nestedQuery.getConfiguration();
+    this.nestedQuery = nestedQuery;
+    this.keyParameterMapping = keyParameterMapping;
+    this.sqlBeforeKey = sqlBeforeKey;
+    this.sqlAfterKey = sqlAfterKey;
+    this.keyProperty = keyProperty;
+  }
+
+  /*
+   * Returns null when the nested statement cannot be safely rewritten into an IN query
+   */
+  public static NestedQueryBatch forNestedQuery(MappedStatement nestedQuery, BoundSql boundSql) {
+    if (nestedQuery.getSqlCommandType() != SqlCommandType.SELECT
+        || nestedQuery.getStatementType() != StatementType.PREPARED
+        || nestedQuery.getResulSets() != null
+        || nestedQuery.getCache() != null
+        || nestedQuery.getResultMaps().size() != 1
+        || boundSql.getParameterMappings().size() != 1) {
+      return null;
+    }
+    ParameterMapping keyParameterMapping = boundSql.getParameterMappings().get(0);
+    if (keyParameterMapping.getMode() != ParameterMode.IN || boundSql.hasAdditionalParameter(keyParameterMapping.getProperty())) {
+      return null;
+    }
+    String sql = boundSql.getSql();
+    if (sql.indexOf('?') != sql.lastIndexOf('?') || UNSUPPORTED.matcher(sql).find()) {
+      return null;
+    }
+    Matcher selects = SELECT.matcher(sql);
+    if (!selects.find()) {
+      return null;
+    }
+    int selectListStart = selects.end();
+    if (selects.find()) {
+      return null;
+    }
+    Matcher from = FROM.matcher(sql);
+    if (!from.find(selectListStart)) {
+      return null;
+    }
+    Matcher predicate = KEY_PREDICATE.matcher(sql);
+    if (!predicate.find(from.end())) {
+      return null;
+    }
+    String keyExpression = predicate.group(1);
+    String keyColumn = keyExpression.substring(keyExpression.lastIndexOf('.') + 1);
+    keyColumn = findColumnLabel(sql.substring(selectListStart, from.start()), keyExpression, keyColumn);
+    String keyProperty = findKeyProperty(nestedQuery.getConfiguration(), nestedQuery.getResultMaps().get(0), keyColumn);
+    if (keyProperty == null) {
+      return null;
+    }
+    return new NestedQueryBatch(nestedQuery, keyParameterMapping,
+        sql.substring(0, predicate.start()) + keyExpression + " IN (", ")" + sql.substring(predicate.end()), keyProperty);
+  }
+
+  /*
+   * Gets the alias the key column is selected with, if any
+   */
+  private static String findColumnLabel(String selectList, String keyExpression, String keyColumn) {
+    for (String expression : new String[] { keyExpression, keyColumn }) {
+      Matcher alias = Pattern.compile("(?<![\\w.])" + Pattern.quote(expression) + "\\s+(?:AS\\s+)?([A-Za-z_]\\w*)", Pattern.CASE_INSENSITIVE).matcher(selectList);
+      if (alias.find()) {
+        return alias.group(1);
+      }
+    }
+    return keyColumn;
+  }
+
+  /*
+   * Finds the property of the child objects that holds the key column, explicitly mapped or auto mapped
+   */
+  private static String findKeyProperty(Configuration configuration, ResultMap resultMap, String keyColumn) {
+    if (resultMap.hasNestedResultMaps() || resultMap.getDiscriminator() != null || configuration.getTypeHandlerRegistry().hasTypeHandler(resultMap.getType())) {
+      return null;
+    }
+    for (ResultMapping resultMapping : resultMap.getPropertyResultMappings()) {
+      if (keyColumn.equalsIgnoreCase(resultMapping.getColumn())) {
+        return resultMapping.getNestedQueryId() == null && resultMapping.getTypeHandler() != null ? resultMapping.getProperty() : null;
+      }
+    }
+    if (resultMap.getMappedColumns().contains(keyColumn.toUpperCase(Locale.ENGLISH))) {
+      return null;
+    }
+    boolean autoMapping = resultMap.getAutoMapping() != null
+        ? resultMap.getAutoMapping() : configuration.getAutoMappingBehavior() != AutoMappingBehavior.NONE;
+    if (!autoMapping || Map.class.isAssignableFrom(resultMap.getType())) {
+      return null;
+    }
+    MetaClass metaClass = MetaClass.forClass(resultMap.getType(), configuration.getReflectorFactory());
+    String property = metaClass.findProperty(keyColumn, configuration.isMapUnderscoreToCamelCase());
+    return property != null && metaClass.hasGetter(property) && metaClass.hasSetter(property) ? property : null;
+  }
+
+  void add(Object key, MetaObject metaResultObject, String property, Class<?> targetType) {
+    Object normalizedKey = normalizeKey(key);
+    List<PendingLoad> loads = pendingLoads.get(normalizedKey);
+    if (loads == null) {
+      loads = new ArrayList<PendingLoad>();
+      pendingLoads.put(normalizedKey, loads);
+      keyValues.put(normalizedKey, key);
+    }
+    loads.add(new PendingLoad(metaResultObject, property, targetType));
+  }
+
+  void load(Executor executor, int batchSize) throws SQLException {
+    final List<List<Object>> children = selectChildren(executor, new ArrayList<Object>(keyValues.values()), batchSize);
+    final ResultExtractor resultExtractor = new ResultExtractor(configuration, configuration.getObjectFactory());
+    int i = 0;
+    for (List<PendingLoad> loads : pendingLoads.values()) {
+      List<Object> list = children.get(i++);
+      for (PendingLoad load : loads) {
+        Object value = resultExtractor.extractObjectFromList(list, load.targetType);
+        // issue #377, call setter on nulls
+        if (value != null || (configuration.isCallSettersOnNulls() && !load.metaResultObject.getSetterType(load.property).isPrimitive())) {
+          load.metaResultObject.setValue(load.property, value);
+        }
+      }
+    }
+    keyValues.clear();
+    pendingLoads.clear();
+  }
+
+  /*
+   * Runs the nested statement for the given keys, at most batchSize keys per query
+   *
+   * @return the children of each key, in the order of the keys
+   */
+  public List<List<Object>> selectChildren(Executor executor, List<Object> keys, int batchSize) throws SQLException {
+    final Map<Object, Object> distinctKeys = new LinkedHashMap<Object, Object>();
+    for (Object key : keys) {
+      Object normalizedKey = normalizeKey(key);
+      if (!distinctKeys.containsKey(normalizedKey)) {
+        distinctKeys.put(normalizedKey, key);
+      }
+    }
+    final List<Object> normalizedKeys = new ArrayList<Object>(distinctKeys.keySet());
+    final Map<Object, List<Object>> children = new HashMap<Object, List<Object>>();
+    for (int start = 0; start < normalizedKeys.size(); start += batchSize) {
+      List<Object> chunk = normalizedKeys.subList(start, Math.min(start + batchSize, normalizedKeys.size()));
+      if (!selectChunk(executor, chunk, distinctKeys, children)) {
+        // 有子对象无法对应到请求的键，退回逐行查询
+        for (Object key : chunk) {
+          children.put(key, executor.<Object>query(nestedQuery, distinctKeys.get(key), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+        }
+      }
+    }
+    final List<List<Object>> result = new ArrayList<List<Object>>(keys.size());
+    for (Object key : keys) {
+      result.add(children.get(normalizeKey(key)));
+    }
+    return result;
+  }
+
+  private boolean selectChunk(Executor executor, List<Object> chunk, Map<Object, Object> distinctKeys, Map<Object, List<Object>> children) throws SQLException {
+    final Map<String, Object> parameterObject = new HashMap<String, Object>();
+    final List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    final StringBuilder sql = new StringBuilder(sqlBeforeKey);
+    for (int i = 0; i < chunk.size(); i++) {
+      String property = "__key" + i;
+      parameterObject.put(property, distinctKeys.get(chunk.get(i)));
+      parameterMappings.add(new ParameterMapping.Builder(configuration, property, keyParameterMapping.getTypeHandler())
+          .javaType(keyParameterMapping.getJavaType())
+          .jdbcType(keyParameterMapping.getJdbcType())
+          .numericScale(keyParameterMapping.getNumericScale())
+          .build());
+      sql.append(i == 0 ? "?" : ",?");
+    }
+    sql.append(sqlAfterKey);
+    final MappedStatement batchQuery = new MappedStatement.Builder(configuration, nestedQuery.getId() + "!batch",
+        new StaticSqlSource(configuration, sql.toString(), parameterMappings), SqlCommandType.SELECT)
+        .resource(nestedQuery.getResource())
+        .fetchSize(nestedQuery.getFetchSize())
+        .timeout(nestedQuery.getTimeout())
+        .priority(nestedQuery.getPriority())
+        .resultSetType(nestedQuery.getResultSetType())
+        .resultMaps(nestedQuery.getResultMaps())
+        .databaseId(nestedQuery.getDatabaseId())
+        .lang(nestedQuery.getLang())
+        .build();
+    final List<Object> rows = executor.query(batchQuery, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+    final Map<Object, List<Object>> chunkChildren = new HashMap<Object, List<Object>>();
+    for (Object key : chunk) {
+      chunkChildren.put(key, new ArrayList<Object>());
+    }
+    for (Object row : rows) {
+      List<Object> list = row == null ? null : chunkChildren.get(normalizeKey(configuration.newMetaObject(row).getValue(keyProperty)));
+      if (list == null) {
+        return false;
+      }
+      list.add(row);
+    }
+    children.putAll(chunkChildren);
+    return true;
+  }
+
+  /*
+   * Numbers of different types (Integer parent key, Long child property...) must find each other
+   */
+  private static Object normalizeKey(Object key) {
+    if (key instanceof Number) {
+      BigDecimal value;
+      if (key instanceof BigDecimal) {
+        value = (BigDecimal) key;
+      } else if (key instanceof BigInteger) {
+        value = new BigDecimal((BigInteger) key);
+      } else if (key instanceof Byte || key instanceof Short || key instanceof Integer || key instanceof Long) {
+        value = BigDecimal.valueOf(((Number) key).longValue());
+      } else {
+        value = new BigDecimal(key.toString());
+      }
+      return value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros();
+    }
+    return key;
+  }
+
+}
@@ -20,6 +20,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
+
 /**
  * 负责将JDBC返回的ResultSet结果集对象转换成List类型的集合
  * @author Clinton Begin
@@ -28,6 +30,11 @@ public interface ResultSetHandler {
 
   <E> List<E> handleResultSets(Statement stmt) throws SQLException;
 
+  /**
+   * 将第一个结果集包装为游标，按需逐行映射；游标关闭时同时关闭该Statement
+   */
+  <E> Cursor<E> handleCursorResultSets(Statement stmt) throws SQLException;
+
   void handleOutputParameters(CallableStatement cs) throws SQLException;
 
 }
@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 一种结果集列布局（列名、Java类名、JDBC类型）下可以跨执行复用的解析结果：各 ResultMap（及列前缀）
+ * 已映射和未映射的列、属性映射的列序号、每列按属性类型解析出的 TypeHandler、行标识列以及自动映射计划。
+ * <p>
+ * 由 {@link org.apache.ibatis.mapping.MappedStatement} 按列布局缓存，放入的值都不再修改，可被多个线程同时使用。
+ *
+ * @author Iwao AVE!
+ */
+public class ResultSetLayout {
+
+  private final ConcurrentMap<String, List<String>> mappedColumnNames = new ConcurrentHashMap<String, List<String>>();
+  private final ConcurrentMap<String, List<String>> unmappedColumnNames = new ConcurrentHashMap<String, List<String>>();
+  private final ConcurrentMap<String, ConcurrentMap<Class<?>, TypeHandler<?>>> typeHandlers = new ConcurrentHashMap<String, ConcurrentMap<Class<?>, TypeHandler<?>>>();
+  private final ConcurrentMap<String, AutoMappingPlan> autoMappingPlans = new ConcurrentHashMap<String, AutoMappingPlan>();
+  private final ConcurrentMap<String, int[]> propertyColumnIndexes = new ConcurrentHashMap<String, int[]>();
+  private final ConcurrentMap<String, RowKey.Columns> rowKeyColumns = new ConcurrentHashMap<String, RowKey.Columns>();
+
+  /*
+   * Builds the key of a column layout
+   */
+  public static String signatureOf(List<String> columnNames, List<String> classNames, List<JdbcType> jdbcTypes) {
+    StringBuilder signature = new StringBuilder();
+    for (int i = 0; i < columnNames.size(); i++) {
+      signature.append(columnNames.get(i)).append(':').append(classNames.get(i)).append(':').append(jdbcTypes.get(i)).append(',');
+    }
+    return signature.toString();
+  }
+
+  List<String> getMappedColumnNames(String mapKey) {
+    return mappedColumnNames.get(mapKey);
+  }
+
+  List<String> getUnmappedColumnNames(String mapKey) {
+    return unmappedColumnNames.get(mapKey);
+  }
+
+  void putColumnNames(String mapKey, List<String> mapped, List<String> unmapped) {
+    // 先放未映射的列，读取已映射列成功时未映射列一定也已存在
+    unmappedColumnNames.putIfAbsent(mapKey, unmapped);
+    mappedColumnNames.putIfAbsent(mapKey, mapped);
+  }
+
+  TypeHandler<?> getTypeHandler(String columnName, Class<?> propertyType) {
+    ConcurrentMap<Class<?>, TypeHandler<?>> columnHandlers = typeHandlers.get(columnName);
+    return columnHandlers == null ? null : columnHandlers.get(propertyType);
+  }
+
+  void putTypeHandler(String columnName, Class<?> propertyType, TypeHandler<?> typeHandler) {
+    ConcurrentMap<Class<?>, TypeHandler<?>> columnHandlers = typeHandlers.get(columnName);
+    if (columnHandlers == null) {
+      columnHandlers = new ConcurrentHashMap<Class<?>, TypeHandler<?>>();
+      ConcurrentMap<Class<?>, TypeHandler<?>> existing = typeHandlers.putIfAbsent(columnName, columnHandlers);
+      if (existing != null) {
+        columnHandlers = existing;
+      }
+    }
+    columnHandlers.putIfAbsent(propertyType, typeHandler);
+  }
+
+  int[] getPropertyColumnIndexes(String mapKey) {
+    return propertyColumnIndexes.get(mapKey);
+  }
+
+  void putPropertyColumnIndexes(String mapKey, int[] indexes) {
+    propertyColumnIndexes.putIfAbsent(mapKey, indexes);
+  }
+
+  RowKey.Columns getRowKeyColumns(String mapKey) {
+    return rowKeyColumns.get(mapKey);
+  }
+
+  void putRowKeyColumns(String mapKey, RowKey.Columns columns) {
+    rowKeyColumns.putIfAbsent(mapKey, columns);
+  }
+
+  AutoMappingPlan getAutoMappingPlan(String mapKey) {
+    return autoMappingPlans.get(mapKey);
+  }
+
+  void putAutoMappingPlan(String mapKey, AutoMappingPlan autoMappingPlan) {
+    autoMappingPlans.putIfAbsent(mapKey, autoMappingPlan);
+  }
+
+}
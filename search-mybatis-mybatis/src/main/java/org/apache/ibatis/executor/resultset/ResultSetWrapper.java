@@ -27,7 +27,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.ObjectTypeHandler;
@@ -38,18 +40,23 @@ import org.apache.ibatis.type.UnknownTypeHandler;
 /**
  * @author Iwao AVE!
  */
-class ResultSetWrapper {
+public class ResultSetWrapper {
 
   private final ResultSet resultSet;
   private final TypeHandlerRegistry typeHandlerRegistry;
   private final List<String> columnNames = new ArrayList<String>();
   private final List<String> classNames = new ArrayList<String>();
   private final List<JdbcType> jdbcTypes = new ArrayList<JdbcType>();
-  private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new HashMap<String, Map<Class<?>, TypeHandler<?>>>();
-  private Map<String, List<String>> mappedColumnNamesMap = new HashMap<String, List<String>>();
-  private Map<String, List<String>> unMappedColumnNamesMap = new HashMap<String, List<String>>();
+  //大写列名到列序号（从1开始）的映射，同名的列取第一个，与驱动按列名读取时一致
+  private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+  //已映射/未映射的列和TypeHandler的解析结果，同一语句相同列布局的结果集共用
+  private final ResultSetLayout layout;
 
   public ResultSetWrapper(ResultSet rs, Configuration configuration) throws SQLException {
+    this(rs, configuration, null);
+  }
+
+  public ResultSetWrapper(ResultSet rs, Configuration configuration, MappedStatement mappedStatement) throws SQLException {
     super();
     this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
     this.resultSet = rs;
@@ -59,6 +66,15 @@ class ResultSetWrapper {
       columnNames.add(configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i));
       jdbcTypes.add(JdbcType.forCode(metaData.getColumnType(i)));
       classNames.add(metaData.getColumnClassName(i));
+      final String upperColumnName = columnNames.get(i - 1).toUpperCase(Locale.ENGLISH);
+      if (!columnIndexes.containsKey(upperColumnName)) {
+        columnIndexes.put(upperColumnName, i);
+      }
+    }
+    if (mappedStatement != null) {
+      layout = mappedStatement.getResultSetLayout(ResultSetLayout.signatureOf(columnNames, classNames, jdbcTypes));
+    } else {
+      layout = new ResultSetLayout();
     }
   }
 
@@ -74,6 +90,24 @@ class ResultSetWrapper {
     return Collections.unmodifiableList(classNames);
   }
 
+  public List<JdbcType> getJdbcTypes() {
+    return Collections.unmodifiableList(jdbcTypes);
+  }
+
+  /**
+   * Gets the index of a column, ignoring case like JDBC does for column labels.
+   *
+   * @param columnName
+   * @return the 1-based column index, or 0 if the result set has no such column
+   */
+  public int getColumnIndex(String columnName) {
+    if (columnName == null) {
+      return 0;
+    }
+    final Integer index = columnIndexes.get(columnName.toUpperCase(Locale.ENGLISH));
+    return index == null ? 0 : index;
+  }
+
   /**
    * Gets the type handler to use when reading the result set.
    * Tries to get from the TypeHandlerRegistry by searching for the property type.
@@ -84,14 +118,7 @@ class ResultSetWrapper {
    * @return
    */
   public TypeHandler<?> getTypeHandler(Class<?> propertyType, String columnName) {
-    TypeHandler<?> handler = null;
-    Map<Class<?>, TypeHandler<?>> columnHandlers = typeHandlerMap.get(columnName);
-    if (columnHandlers == null) {
-      columnHandlers = new HashMap<Class<?>, TypeHandler<?>>();
-      typeHandlerMap.put(columnName, columnHandlers);
-    } else {
-      handler = columnHandlers.get(propertyType);
-    }
+    TypeHandler<?> handler = layout.getTypeHandler(columnName, propertyType);
     if (handler == null) {
       handler = typeHandlerRegistry.getTypeHandler(propertyType);
       // Replicate logic of UnknownTypeHandler#resolveTypeHandler
@@ -111,7 +138,7 @@ class ResultSetWrapper {
       if (handler == null || handler instanceof UnknownTypeHandler) {
         handler = new ObjectTypeHandler();
       }
-      columnHandlers.put(propertyType, handler);
+      layout.putTypeHandler(columnName, propertyType, handler);
     }
     return handler;
   }
@@ -137,32 +164,77 @@ class ResultSetWrapper {
         unmappedColumnNames.add(columnName);
       }
     }
-    mappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), mappedColumnNames);
-    unMappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), unmappedColumnNames);
+    layout.putColumnNames(getMapKey(resultMap, columnPrefix),
+        Collections.unmodifiableList(mappedColumnNames), Collections.unmodifiableList(unmappedColumnNames));
   }
 
   public List<String> getMappedColumnNames(ResultMap resultMap, String columnPrefix) throws SQLException {
-    List<String> mappedColumnNames = mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+    List<String> mappedColumnNames = layout.getMappedColumnNames(getMapKey(resultMap, columnPrefix));
     if (mappedColumnNames == null) {
       loadMappedAndUnmappedColumnNames(resultMap, columnPrefix);
-      mappedColumnNames = mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+      mappedColumnNames = layout.getMappedColumnNames(getMapKey(resultMap, columnPrefix));
     }
     return mappedColumnNames;
   }
 
   public List<String> getUnmappedColumnNames(ResultMap resultMap, String columnPrefix) throws SQLException {
-    List<String> unMappedColumnNames = unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+    List<String> unMappedColumnNames = layout.getUnmappedColumnNames(getMapKey(resultMap, columnPrefix));
     if (unMappedColumnNames == null) {
       loadMappedAndUnmappedColumnNames(resultMap, columnPrefix);
-      unMappedColumnNames = unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+      unMappedColumnNames = layout.getUnmappedColumnNames(getMapKey(resultMap, columnPrefix));
     }
     return unMappedColumnNames;
   }
 
+  /**
+   * 取得 resultMap 各属性映射（{@link ResultMap#getPropertyResultMappings()}）的列序号，
+   * 嵌套结果映射和结果集中没有的列为0
+   */
+  int[] getPropertyColumnIndexes(ResultMap resultMap, String columnPrefix) {
+    final String mapKey = getMapKey(resultMap, columnPrefix);
+    int[] indexes = layout.getPropertyColumnIndexes(mapKey);
+    if (indexes == null) {
+      final List<ResultMapping> propertyMappings = resultMap.getPropertyResultMappings();
+      indexes = new int[propertyMappings.size()];
+      for (int i = 0; i < indexes.length; i++) {
+        final ResultMapping propertyMapping = propertyMappings.get(i);
+        // the user added a column attribute to a nested result map, ignore it
+        if (propertyMapping.getNestedResultMapId() == null) {
+          indexes[i] = getColumnIndex(prependPrefix(propertyMapping.getColumn(), columnPrefix));
+        }
+      }
+      layout.putPropertyColumnIndexes(mapKey, indexes);
+    }
+    return indexes;
+  }
+
+  RowKey.Columns getRowKeyColumns(ResultMap resultMap, String columnPrefix) {
+    return layout.getRowKeyColumns(getMapKey(resultMap, columnPrefix));
+  }
+
+  void putRowKeyColumns(ResultMap resultMap, String columnPrefix, RowKey.Columns columns) {
+    layout.putRowKeyColumns(getMapKey(resultMap, columnPrefix), columns);
+  }
+
+  AutoMappingPlan getAutoMappingPlan(ResultMap resultMap, String columnPrefix) {
+    return layout.getAutoMappingPlan(getMapKey(resultMap, columnPrefix));
+  }
+
+  void putAutoMappingPlan(ResultMap resultMap, String columnPrefix, AutoMappingPlan autoMappingPlan) {
+    layout.putAutoMappingPlan(getMapKey(resultMap, columnPrefix), autoMappingPlan);
+  }
+
   private String getMapKey(ResultMap resultMap, String columnPrefix) {
     return resultMap.getId() + ":" + columnPrefix;
   }
 
+  private String prependPrefix(String columnName, String prefix) {
+    if (columnName == null || columnName.length() == 0 || prefix == null || prefix.length() == 0) {
+      return columnName;
+    }
+    return prefix + columnName;
+  }
+
   private Set<String> prependPrefixes(Set<String> columnNames, String prefix) {
     if (columnNames == null || columnNames.isEmpty() || prefix == null || prefix.length() == 0) {
       return columnNames;
@@ -0,0 +1,166 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 嵌套结果映射中一行数据的标识，用作 nestedResultObjects 和 ancestorObjects 的键。
+ * <p>
+ * 与 {@link org.apache.ibatis.cache.CacheKey} 的比较规则相同（ResultMap、标识列及其非空取值都相同才相等），
+ * 但只保存一个按列定长的取值数组（为 null 的列也占位）和预先算好的 hash；
+ * 与父行组合时只引用父行的键，不复制取值。
+ *
+ * @author Iwao AVE!
+ */
+final class RowKey {
+
+  static final RowKey NULL_ROW_KEY = new RowKey(null, new Object[0], null);
+
+  private final Columns columns;
+  private final Object[] values;
+  private final RowKey parent;
+  private final boolean hasValues;
+  private final int hashCode;
+
+  private RowKey(Columns columns, Object[] values, RowKey parent) {
+    this.columns = columns;
+    this.values = values;
+    this.parent = parent;
+    int hash = columns == null ? 0 : columns.hashCode;
+    boolean nonNull = false;
+    for (Object value : values) {
+      hash = 31 * hash + valueHashCode(value);
+      nonNull = nonNull || value != null;
+    }
+    this.hasValues = nonNull;
+    this.hashCode = parent == null ? hash : 31 * hash + parent.hashCode;
+  }
+
+  /*
+   * 至少有一个标识列不为 null，相当于 CacheKey 的 getUpdateCount() > 1
+   */
+  boolean hasValues() {
+    return hasValues;
+  }
+
+  /*
+   * 组合嵌套行和父行的键，两者都有取值时才有意义，否则返回 NULL_ROW_KEY
+   */
+  RowKey combine(RowKey parentRowKey) {
+    if (hasValues && parentRowKey.hasValues) {
+      return new RowKey(columns, values, parentRowKey);
+    }
+    return NULL_ROW_KEY;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (!(object instanceof RowKey)) {
+      return false;
+    }
+    final RowKey that = (RowKey) object;
+    if (hashCode != that.hashCode || values.length != that.values.length) {
+      return false;
+    }
+    if (columns != that.columns && (columns == null || that.columns == null || !columns.identity.equals(that.columns.identity))) {
+      return false;
+    }
+    for (int i = 0; i < values.length; i++) {
+      if (!valueEquals(values[i], that.values[i])) {
+        return false;
+      }
+    }
+    return parent == null ? that.parent == null : parent.equals(that.parent);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(columns == null ? "null" : columns.identity).append(Arrays.deepToString(values));
+    if (parent != null) {
+      builder.append(" < ").append(parent);
+    }
+    return builder.toString();
+  }
+
+  private static int valueHashCode(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    return value.getClass().isArray() ? Arrays.deepHashCode(new Object[] { value }) : value.hashCode();
+  }
+
+  private static boolean valueEquals(Object value, Object other) {
+    if (value == null || other == null) {
+      return value == other;
+    }
+    if (value.getClass().isArray()) {
+      return Arrays.deepEquals(new Object[] { value }, new Object[] { other });
+    }
+    return value.equals(other);
+  }
+
+  /**
+   * 一个 ResultMap（及列前缀）在一种列布局下参与行标识的列，由 {@link ResultSetLayout} 缓存。
+   */
+  static class Columns {
+
+    private final String identity;
+    private final int hashCode;
+    private final int[] columnIndexes;
+    private final TypeHandler<?>[] typeHandlers;
+
+    /**
+     * @param resultMapId
+     * @param columns 带前缀的列名
+     * @param columnIndexes 各列在结果集中的序号
+     * @param typeHandlers 各列的 TypeHandler，为 null 的按字符串读取
+     */
+    Columns(String resultMapId, List<String> columns, int[] columnIndexes, List<TypeHandler<?>> typeHandlers) {
+      final StringBuilder identity = new StringBuilder(resultMapId);
+      for (String column : columns) {
+        identity.append(':').append(column);
+      }
+      this.identity = identity.toString();
+      this.hashCode = this.identity.hashCode();
+      this.columnIndexes = columnIndexes;
+      this.typeHandlers = typeHandlers.toArray(new TypeHandler<?>[typeHandlers.size()]);
+    }
+
+    RowKey createRowKey(ResultSet rs) throws SQLException {
+      final Object[] values = new Object[columnIndexes.length];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = typeHandlers[i] == null ? rs.getString(columnIndexes[i]) : typeHandlers[i].getResult(rs, columnIndexes[i]);
+      }
+      return new RowKey(this, values, null);
+    }
+  }
+
+}
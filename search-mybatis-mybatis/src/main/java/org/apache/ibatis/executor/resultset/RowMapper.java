@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 为一个 (ResultMap, 列布局) 预先解析好的行映射：每列的下标、TypeHandler 和 setter 都只解析一次，
+ * 映射每行时不再经过 MetaObject、BeanWrapper 和 PropertyTokenizer。
+ * <p>
+ * 本类按列表逐列调用 setter 的 Invoker；{@link RowMapperFactory} 在 Javassist 可用时会生成直接调用构造方法
+ * 和 setter 的子类。两者的结果与 DefaultResultSetHandler 的自动映射加属性映射完全相同：
+ * 先自动映射的列、后 result 映射的列，都没有值时返回null。
+ *
+ * @author Clinton Begin
+ */
+public class RowMapper {
+
+  protected final Class<?> type;
+  protected final ObjectFactory objectFactory;
+  protected final Column[] columns;
+  protected final TypeHandler<?>[] typeHandlers;
+
+  RowMapper(Class<?> type, ObjectFactory objectFactory, Column[] columns) {
+    this.type = type;
+    this.objectFactory = objectFactory;
+    this.columns = columns;
+    this.typeHandlers = new TypeHandler<?>[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      typeHandlers[i] = columns[i].typeHandler;
+    }
+  }
+
+  protected RowMapper(RowMapper template) {
+    this(template.type, template.objectFactory, template.columns);
+  }
+
+  public Class<?> getType() {
+    return type;
+  }
+
+  /*
+   * Maps the current row, returning null if none of its columns had a value
+   */
+  public Object map(ResultSet rs) throws SQLException {
+    Object resultObject = objectFactory.create(type);
+    boolean foundValues = false;
+    for (int i = 0; i < columns.length; i++) {
+      Column column = columns[i];
+      Object value = typeHandlers[i].getResult(rs, column.index);
+      if (value != null) {
+        column.set(resultObject, value);
+        foundValues = true;
+      } else {
+        if (column.setNull) {
+          column.set(resultObject, null);
+        }
+        foundValues = column.nullFound || foundValues;
+      }
+    }
+    return foundValues ? resultObject : null;
+  }
+
+  /**
+   * 一列的映射。setter为null表示只读取值（没有property的result映射）。
+   */
+  static class Column {
+
+    final int index;
+    final String property;
+    final Invoker setter;
+    final Method setterMethod;
+    final Class<?> setterType;
+    final TypeHandler<?> typeHandler;
+    //值为null时是否调用setter，以及是否算作找到值
+    final boolean setNull;
+    final boolean nullFound;
+
+    Column(int index, String property, Invoker setter, Method setterMethod, Class<?> setterType, TypeHandler<?> typeHandler,
+        boolean setNull, boolean nullFound) {
+      this.index = index;
+      this.property = property;
+      this.setter = setter;
+      this.setterMethod = setterMethod;
+      this.setterType = setterType;
+      this.typeHandler = typeHandler;
+      this.setNull = setNull;
+      this.nullFound = nullFound;
+    }
+
+    void set(Object resultObject, Object value) {
+      if (setter == null) {
+        return;
+      }
+      try {
+        try {
+          setter.invoke(resultObject, new Object[] { value });
+        } catch (Throwable t) {
+          throw ExceptionUtil.unwrapThrowable(t);
+        }
+      } catch (Throwable t) {
+        throw new ReflectionException("Could not set property '" + property + "' of '" + resultObject.getClass() + "' with value '" + value + "' Cause: " + t.toString(), t);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,249 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.MethodInvoker;
+import org.apache.ibatis.reflection.wrapper.DefaultObjectWrapperFactory;
+import org.apache.ibatis.session.AutoMappingBehavior;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * 按 (ResultMap, 列布局) 创建并缓存 {@link RowMapper}，供 DefaultResultSetHandler 映射简单结果。
+ * <p>
+ * 只处理没有构造参数、嵌套结果、嵌套查询、鉴别器和多结果集映射，且所有属性都是结果类型自身属性的 ResultMap；
+ * 其余情况返回null，仍由解释执行的映射处理。Javassist 可用时生成直接调用 setter 的子类，否则使用反射版本。
+ * <p>
+ * 生成的类不会被卸载，所以每个 ResultMap 最多缓存 {@value #MAX_ROW_MAPPERS_PER_RESULT_MAP} 种列布局的映射器
+ * （与 MappedStatement 缓存的列布局数相同）；动态 SQL 产生更多列布局时，其余的每次使用不缓存的反射版本。
+ *
+ * @author Clinton Begin
+ */
+public class RowMapperFactory {
+
+  private static final Log log = LogFactory.getLog(RowMapperFactory.class);
+
+  private static final Object NOT_MAPPABLE = new Object();
+  private static final boolean JAVASSIST_AVAILABLE = isJavassistAvailable();
+  private static final int MAX_ROW_MAPPERS_PER_RESULT_MAP = 32;
+
+  private final Configuration configuration;
+  private final ConcurrentMap<String, Object> rowMappers = new ConcurrentHashMap<String, Object>();
+  private final ConcurrentMap<String, AtomicInteger> rowMapperCounts = new ConcurrentHashMap<String, AtomicInteger>();
+
+  public RowMapperFactory(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  private static boolean isJavassistAvailable() {
+    try {
+      Resources.classForName("javassist.ClassPool");
+      return true;
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+
+  /*
+   * Gets the mapper for the result map and the columns of the result set, or null if the result map is not supported
+   */
+  public RowMapper getRowMapper(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    String key = resultMap.getId() + ":" + rsw.getColumnNames() + ":" + rsw.getClassNames() + ":" + rsw.getJdbcTypes();
+    Object rowMapper = rowMappers.get(key);
+    if (rowMapper == null) {
+      AtomicInteger count = getRowMapperCount(resultMap.getId());
+      if (count.incrementAndGet() > MAX_ROW_MAPPERS_PER_RESULT_MAP) {
+        // 列布局太多，不再生成类也不再缓存
+        count.decrementAndGet();
+        return createRowMapper(rsw, resultMap, false);
+      }
+      rowMapper = createRowMapper(rsw, resultMap, true);
+      if (rowMapper == null) {
+        rowMapper = NOT_MAPPABLE;
+      }
+      Object existing = rowMappers.putIfAbsent(key, rowMapper);
+      if (existing != null) {
+        count.decrementAndGet();
+        rowMapper = existing;
+      }
+    }
+    return rowMapper == NOT_MAPPABLE ? null : (RowMapper) rowMapper;
+  }
+
+  private AtomicInteger getRowMapperCount(String resultMapId) {
+    AtomicInteger count = rowMapperCounts.get(resultMapId);
+    if (count == null) {
+      count = new AtomicInteger();
+      AtomicInteger existing = rowMapperCounts.putIfAbsent(resultMapId, count);
+      if (existing != null) {
+        count = existing;
+      }
+    }
+    return count;
+  }
+
+  public int size() {
+    return rowMappers.size();
+  }
+
+  public void clear() {
+    rowMappers.clear();
+    rowMapperCounts.clear();
+  }
+
+  private RowMapper createRowMapper(ResultSetWrapper rsw, ResultMap resultMap, boolean generate) throws SQLException {
+    final Class<?> type = resultMap.getType();
+    final TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    if (!isSupported(resultMap, typeHandlerRegistry)) {
+      return null;
+    }
+    final MetaClass metaClass = MetaClass.forClass(type, configuration.getReflectorFactory());
+    if (!metaClass.hasDefaultConstructor()) {
+      return null;
+    }
+    final List<RowMapper.Column> columns = new ArrayList<RowMapper.Column>();
+    if (shouldApplyAutomaticMappings(resultMap)) {
+      for (String columnName : rsw.getUnmappedColumnNames(resultMap, null)) {
+        final String property = metaClass.findProperty(columnName, configuration.isMapUnderscoreToCamelCase());
+        if (property == null || !metaClass.hasSetter(property)) {
+          continue;
+        }
+        if (!isSimpleProperty(property)) {
+          return null;
+        }
+        final Class<?> propertyType = metaClass.getSetterType(property);
+        if (typeHandlerRegistry.hasTypeHandler(propertyType)) {
+          final TypeHandler<?> typeHandler = rsw.getTypeHandler(propertyType, columnName);
+          final boolean callSettersOnNulls = configuration.isCallSettersOnNulls();
+          columns.add(newColumn(rsw, columnName, property, metaClass, typeHandler,
+              callSettersOnNulls && !propertyType.isPrimitive(), callSettersOnNulls));
+        }
+      }
+    }
+    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, null);
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      final String column = propertyMapping.getColumn();
+      if (column == null || !mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+        continue;
+      }
+      final String property = propertyMapping.getProperty();
+      if (property == null) {
+        // issue #541 只读取值
+        columns.add(newColumn(rsw, column, null, metaClass, propertyMapping.getTypeHandler(), false, false));
+        continue;
+      }
+      if (!isSimpleProperty(property) || !metaClass.hasSetter(property)) {
+        return null;
+      }
+      final boolean setNull = configuration.isCallSettersOnNulls() && !metaClass.getSetterType(property).isPrimitive();
+      columns.add(newColumn(rsw, column, property, metaClass, propertyMapping.getTypeHandler(), setNull, false));
+    }
+    final RowMapper rowMapper = new RowMapper(type, configuration.getObjectFactory(), columns.toArray(new RowMapper.Column[columns.size()]));
+    if (generate && JAVASSIST_AVAILABLE && JavassistRowMapperGenerator.canGenerate(rowMapper)) {
+      try {
+        return JavassistRowMapperGenerator.generate(rowMapper);
+      } catch (Exception e) {
+        if (log.isDebugEnabled()) {
+          log.debug("Could not generate a row mapper for result map '" + resultMap.getId() + "', using reflection. Cause: " + e);
+        }
+      }
+    }
+    return rowMapper;
+  }
+
+  private boolean isSupported(ResultMap resultMap, TypeHandlerRegistry typeHandlerRegistry) {
+    final Class<?> type = resultMap.getType();
+    if (resultMap.hasNestedResultMaps()
+        || resultMap.hasNestedQueries()
+        || resultMap.getDiscriminator() != null
+        || !resultMap.getConstructorResultMappings().isEmpty()
+        || typeHandlerRegistry.hasTypeHandler(type)
+        || type.isInterface()
+        || Modifier.isAbstract(type.getModifiers())
+        || Map.class.isAssignableFrom(type)
+        || Collection.class.isAssignableFrom(type)
+        || !configuration.isUseColumnLabel()
+        || configuration.getObjectWrapperFactory().getClass() != DefaultObjectWrapperFactory.class) {
+      return false;
+    }
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      if (propertyMapping.isCompositeResult() || propertyMapping.getResultSet() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean shouldApplyAutomaticMappings(ResultMap resultMap) {
+    if (resultMap.getAutoMapping() != null) {
+      return resultMap.getAutoMapping();
+    }
+    return AutoMappingBehavior.NONE != configuration.getAutoMappingBehavior();
+  }
+
+  private boolean isSimpleProperty(String property) {
+    return property.indexOf('.') < 0 && property.indexOf('[') < 0;
+  }
+
+  private RowMapper.Column newColumn(ResultSetWrapper rsw, String columnName, String property, MetaClass metaClass,
+      TypeHandler<?> typeHandler, boolean setNull, boolean nullFound) {
+    Invoker setter = null;
+    Method setterMethod = null;
+    Class<?> setterType = null;
+    if (property != null) {
+      setter = metaClass.getSetInvoker(property);
+      setterType = metaClass.getSetterType(property);
+      if (setter instanceof MethodInvoker) {
+        setterMethod = ((MethodInvoker) setter).getMethod();
+      }
+    }
+    return new RowMapper.Column(findColumnIndex(rsw, columnName), property, setter, setterMethod, setterType, typeHandler, setNull, nullFound);
+  }
+
+  /*
+   * Finds the 1-based index of the first column whose label matches, as drivers do for getXxx(String)
+   */
+  private int findColumnIndex(ResultSetWrapper rsw, String columnName) {
+    List<String> columnNames = rsw.getColumnNames();
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (columnNames.get(i).equalsIgnoreCase(columnName)) {
+        return i + 1;
+      }
+    }
+    throw new IllegalStateException("Column '" + columnName + "' not found in " + columnNames);
+  }
+
+}
@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.statement;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按语句记录查询读取的行数，为以后的执行选择 fetchSize。
+ * <p>
+ * 行数上升时立即跟上（大导出不必等几次执行才减少往返），下降时按指数移动平均慢慢回落；
+ * 选出的 fetchSize 比平均行数多1，使驱动在同一次往返中就能看到结果集结束，并限制在 [min, max] 之内。
+ * 没有统计数据的语句返回null，由调用方使用默认值。
+ *
+ * @author Clinton Begin
+ */
+public class AdaptiveFetchSize {
+
+  private final ConcurrentMap<String, RowStatistics> statistics = new ConcurrentHashMap<String, RowStatistics>();
+  private volatile int minFetchSize = 10;
+  private volatile int maxFetchSize = 1000;
+
+  public Integer getFetchSize(String statementId) {
+    RowStatistics rowStatistics = statistics.get(statementId);
+    return rowStatistics == null ? null : clamp(rowStatistics.getAverage());
+  }
+
+  public void record(String statementId, int rows) {
+    RowStatistics rowStatistics = statistics.get(statementId);
+    if (rowStatistics == null) {
+      RowStatistics created = new RowStatistics();
+      rowStatistics = statistics.putIfAbsent(statementId, created);
+      if (rowStatistics == null) {
+        rowStatistics = created;
+      }
+    }
+    rowStatistics.record(rows);
+  }
+
+  /*
+   * Gets the fetch size currently chosen for each statement that has been executed, by statement id
+   */
+  public Map<String, Integer> getFetchSizes() {
+    Map<String, Integer> fetchSizes = new TreeMap<String, Integer>();
+    for (Map.Entry<String, RowStatistics> entry : statistics.entrySet()) {
+      fetchSizes.put(entry.getKey(), clamp(entry.getValue().getAverage()));
+    }
+    return fetchSizes;
+  }
+
+  public void clear() {
+    statistics.clear();
+  }
+
+  public int getMinFetchSize() {
+    return minFetchSize;
+  }
+
+  public void setMinFetchSize(int minFetchSize) {
+    this.minFetchSize = minFetchSize;
+  }
+
+  public int getMaxFetchSize() {
+    return maxFetchSize;
+  }
+
+  public void setMaxFetchSize(int maxFetchSize) {
+    this.maxFetchSize = maxFetchSize;
+  }
+
+  private int clamp(double averageRows) {
+    long fetchSize = (long) Math.ceil(averageRows) + 1;
+    return (int) Math.max(minFetchSize, Math.min(maxFetchSize, fetchSize));
+  }
+
+  private static class RowStatistics {
+
+    private double average = -1;
+
+    synchronized void record(int rows) {
+      if (rows >= average) {
+        average = rows;
+      } else {
+        average += (rows - average) / 4;
+      }
+    }
+
+    synchronized double getAverage() {
+      return average;
+    }
+  }
+
+}
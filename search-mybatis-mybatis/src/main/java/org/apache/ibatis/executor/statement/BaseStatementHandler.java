@@ -24,6 +24,7 @@ import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -116,12 +117,28 @@ public abstract class BaseStatementHandler implements StatementHandler {
       stmt.setFetchSize(fetchSize);
       return;
     }
+    if (configuration.isAdaptiveFetchSizeEnabled()) {
+      Integer adaptiveFetchSize = configuration.getAdaptiveFetchSize().getFetchSize(mappedStatement.getId());
+      if (adaptiveFetchSize != null) {
+        stmt.setFetchSize(adaptiveFetchSize);
+        return;
+      }
+    }
     Integer defaultFetchSize = configuration.getDefaultFetchSize();
     if (defaultFetchSize != null) {
       stmt.setFetchSize(defaultFetchSize);
     }
   }
 
+  /**
+   * 记录本次查询读取的行数，供自适应fetchSize选择以后执行时的值；被插件代理的ResultSetHandler无法统计
+   */
+  protected void recordRowCount() {
+    if (configuration.isAdaptiveFetchSizeEnabled() && resultSetHandler instanceof DefaultResultSetHandler) {
+      configuration.getAdaptiveFetchSize().record(mappedStatement.getId(), ((DefaultResultSetHandler) resultSetHandler).getRowCount());
+    }
+  }
+
   protected void closeStatement(Statement statement) {
     try {
       if (statement != null) {
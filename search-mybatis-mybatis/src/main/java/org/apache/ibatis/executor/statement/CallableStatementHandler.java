@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -66,6 +67,16 @@ public class CallableStatementHandler extends BaseStatementHandler {
     cs.execute();
     List<E> resultList = resultSetHandler.<E>handleResultSets(cs);
     resultSetHandler.handleOutputParameters(cs);
+    recordRowCount();
+    return resultList;
+  }
+
+  @Override
+  public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
+    CallableStatement cs = (CallableStatement) statement;
+    cs.execute();
+    Cursor<E> resultList = resultSetHandler.<E>handleCursorResultSets(cs);
+    resultSetHandler.handleOutputParameters(cs);
     return resultList;
   }
 
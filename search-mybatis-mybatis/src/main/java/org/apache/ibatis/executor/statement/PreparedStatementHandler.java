@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -62,7 +63,16 @@ public class PreparedStatementHandler extends BaseStatementHandler {
 	PreparedStatement ps = (PreparedStatement) statement;
     ps.execute();
     //2. 使用ResultHandler来处理ResultSet  
-    return resultSetHandler.<E> handleResultSets(ps);
+    List<E> resultList = resultSetHandler.<E> handleResultSets(ps);
+    recordRowCount();
+    return resultList;
+  }
+
+  @Override
+  public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
+    PreparedStatement ps = (PreparedStatement) statement;
+    ps.execute();
+    return resultSetHandler.<E> handleCursorResultSets(ps);
   }
 
   @Override
@@ -20,6 +20,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
@@ -70,12 +71,39 @@ public class RoutingStatementHandler implements StatementHandler {
 
   @Override
   public int update(Statement statement) throws SQLException {
-    return delegate.update(statement);
+    StatementWatchdog watchdog = StatementWatchdog.watch(statement);
+    try {
+      return delegate.update(statement);
+    } catch (SQLException e) {
+      throw watchdog.translate(e);
+    } finally {
+      watchdog.stop();
+    }
   }
 
   @Override
   public <E> List<E> query(Statement statement, ResultHandler resultHandler) throws SQLException {
-    return delegate.<E>query(statement, resultHandler);
+    StatementWatchdog watchdog = StatementWatchdog.watch(statement);
+    try {
+      return delegate.<E>query(statement, resultHandler);
+    } catch (SQLException e) {
+      throw watchdog.translate(e);
+    } finally {
+      watchdog.stop();
+    }
+  }
+
+  @Override
+  public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
+    // 只监视执行，不监视之后逐行读取游标
+    StatementWatchdog watchdog = StatementWatchdog.watch(statement);
+    try {
+      return delegate.queryCursor(statement);
+    } catch (SQLException e) {
+      throw watchdog.translate(e);
+    } finally {
+      watchdog.stop();
+    }
   }
 
   @Override
@@ -0,0 +1,174 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.statement;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.Deadline;
+
+/**
+ * Enforces the {@link Deadline} of the calling thread on one statement execution: the remaining budget
+ * becomes the query timeout and the statement is cancelled when the deadline expires or the thread is
+ * interrupted, for drivers that do not honour the timeout or block the thread in I/O.
+ * <pre>
+ * StatementWatchdog watchdog = StatementWatchdog.watch(statement);
+ * try {
+ *   statement.execute();
+ * } catch (SQLException e) {
+ *   throw watchdog.translate(e);
+ * } finally {
+ *   watchdog.stop();
+ * }
+ * </pre>
+ *
+ * @author Clinton Begin
+ */
+public final class StatementWatchdog implements Runnable {
+
+  private static final Log log = LogFactory.getLog(StatementWatchdog.class);
+
+  //检查调用线程是否被中断的间隔（毫秒）
+  private static final long CHECK_INTERVAL = 50;
+  //没有设置deadline时使用，不做任何事
+  private static final StatementWatchdog NONE = new StatementWatchdog(null, null, 0, false);
+
+  private static ScheduledExecutorService scheduler;
+
+  private final Statement statement;
+  private final Deadline deadline;
+  private final Thread thread;
+  private final int originalTimeout;
+  private final boolean timeoutChanged;
+  private volatile ScheduledFuture<?> future;
+  private volatile boolean interrupted;
+  private volatile boolean expired;
+
+  private StatementWatchdog(Statement statement, Deadline deadline, int originalTimeout, boolean timeoutChanged) {
+    this.statement = statement;
+    this.deadline = deadline;
+    this.thread = Thread.currentThread();
+    this.originalTimeout = originalTimeout;
+    this.timeoutChanged = timeoutChanged;
+  }
+
+  /*
+   * Starts watching the statement the calling thread is about to execute
+   *
+   * @throws SQLTimeoutException if the deadline already expired
+   */
+  public static StatementWatchdog watch(Statement statement) throws SQLException {
+    final Deadline deadline = Deadline.getCurrent();
+    if (deadline == null) {
+      return NONE;
+    }
+    final long remaining = deadline.getRemaining(TimeUnit.MILLISECONDS);
+    if (remaining <= 0) {
+      throw new SQLTimeoutException("The deadline expired before the statement was executed.");
+    }
+    // 剩余预算比语句本身的超时更短时，以剩余预算（向上取整到秒）为准
+    final int originalTimeout = statement.getQueryTimeout();
+    final int remainingSeconds = (int) Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000);
+    final boolean timeoutChanged = originalTimeout == 0 || remainingSeconds < originalTimeout;
+    if (timeoutChanged) {
+      statement.setQueryTimeout(remainingSeconds);
+    }
+    final StatementWatchdog watchdog = new StatementWatchdog(statement, deadline, originalTimeout, timeoutChanged);
+    watchdog.future = getScheduler().scheduleWithFixedDelay(watchdog, Math.min(CHECK_INTERVAL, remaining), CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    return watchdog;
+  }
+
+  @Override
+  public void run() {
+    if (interrupted || expired) {
+      return;
+    }
+    if (thread.isInterrupted()) {
+      interrupted = true;
+    } else if (deadline.isExpired()) {
+      expired = true;
+    } else {
+      return;
+    }
+    ScheduledFuture<?> scheduled = future;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+    try {
+      statement.cancel();
+    } catch (Throwable t) {
+      // the statement may have completed in the meantime
+      if (log.isDebugEnabled()) {
+        log.debug("Could not cancel statement: " + t);
+      }
+    }
+  }
+
+  /*
+   * Reports a statement failure caused by the cancellation as such
+   */
+  public SQLException translate(SQLException e) {
+    if (expired && !(e instanceof SQLTimeoutException)) {
+      return new SQLTimeoutException("The statement was cancelled because the deadline expired.", e);
+    } else if (interrupted) {
+      return new SQLException("The statement was cancelled because the calling thread was interrupted.", e);
+    }
+    return e;
+  }
+
+  public void stop() {
+    if (this == NONE) {
+      return;
+    }
+    ScheduledFuture<?> scheduled = future;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+    if (timeoutChanged) {
+      // 复用的语句（REUSE执行器）之后可能在没有deadline时执行
+      try {
+        statement.setQueryTimeout(originalTimeout);
+      } catch (SQLException e) {
+        // ignore
+      }
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "mybatis-statement-watchdog");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      scheduler = executor;
+    }
+    return scheduler;
+  }
+
+}
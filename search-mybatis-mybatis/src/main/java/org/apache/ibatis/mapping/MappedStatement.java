@@ -18,15 +18,19 @@ package org.apache.ibatis.mapping;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.resultset.ResultSetLayout;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ConnectionPriority;
 
 /**
  * MappedStatement维护了一条<select|update|delete|insert>节点的封装
@@ -57,6 +61,11 @@ public final class MappedStatement {
   private Log statementLog;
   private LanguageDriver lang;
   private String[] resultSets;
+  private ConnectionPriority priority;
+  //按列布局缓存的结果集解析结果，动态SQL可能产生多种列布局，超过上限的不再缓存
+  private final ConcurrentMap<String, ResultSetLayout> resultSetLayouts = new ConcurrentHashMap<String, ResultSetLayout>();
+
+  private static final int MAX_RESULT_SET_LAYOUTS = 32;
 
   MappedStatement() {
     // constructor disabled
@@ -115,6 +124,11 @@ public final class MappedStatement {
       return this;
     }
 
+    public Builder priority(ConnectionPriority priority) {
+      mappedStatement.priority = priority;
+      return this;
+    }
+
     public Builder statementType(StatementType statementType) {
       mappedStatement.statementType = statementType;
       return this;
@@ -217,6 +231,13 @@ public final class MappedStatement {
     return timeout;
   }
 
+  /*
+   * Gets the priority this statement waits for a pooled connection with, null to use the caller's
+   */
+  public ConnectionPriority getPriority() {
+    return priority;
+  }
+
   public StatementType getStatementType() {
     return statementType;
   }
@@ -276,6 +297,25 @@ public final class MappedStatement {
   public String[] getResulSets() {
     return resultSets;
   }
+
+  /**
+   * 取得这条语句在某种列布局下的结果集解析结果，第一次遇到该布局时创建
+   * @param signature 列布局，见 {@link ResultSetLayout#signatureOf}
+   * @return
+   */
+  public ResultSetLayout getResultSetLayout(String signature) {
+    ResultSetLayout layout = resultSetLayouts.get(signature);
+    if (layout == null) {
+      layout = new ResultSetLayout();
+      if (resultSetLayouts.size() < MAX_RESULT_SET_LAYOUTS) {
+        ResultSetLayout existing = resultSetLayouts.putIfAbsent(signature, layout);
+        if (existing != null) {
+          layout = existing;
+        }
+      }
+    }
+    return layout;
+  }
   
   /**
    * 根据具体传入的参数，动态地生成需要执行的SQL语句，用BoundSql对象表示
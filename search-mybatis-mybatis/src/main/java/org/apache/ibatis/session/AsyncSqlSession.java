@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * 异步执行语句的会话，适合一次请求中并发发出多个互不依赖的查询。
+ * <p>
+ * 每次调用都会从 {@link SqlSessionFactory} 借用一个独立的 {@link SqlSession}（因此也是独立的执行器与连接），
+ * 在线程池中执行后立即关闭：更新语句执行成功后提交，失败则回滚，调用之间不共享事务和一级缓存。
+ * 调用线程的 {@link ConnectionPriority} 和 {@link Deadline} 会带到执行语句的线程上。
+ * <p>
+ * 语句失败时，{@link Future#get()} 抛出的 ExecutionException 的 cause 是带有完整 ErrorContext 信息的
+ * {@link org.apache.ibatis.exceptions.PersistenceException}。本接口的实现是线程安全的。
+ *
+ * @author Clinton Begin
+ */
+public interface AsyncSqlSession {
+
+  <T> Future<T> selectOneAsync(String statement);
+
+  <T> Future<T> selectOneAsync(String statement, Object parameter);
+
+  <E> Future<List<E>> selectListAsync(String statement);
+
+  <E> Future<List<E>> selectListAsync(String statement, Object parameter);
+
+  <E> Future<List<E>> selectListAsync(String statement, Object parameter, RowBounds rowBounds);
+
+  <K, V> Future<Map<K, V>> selectMapAsync(String statement, Object parameter, String mapKey);
+
+  Future<Integer> insertAsync(String statement, Object parameter);
+
+  Future<Integer> updateAsync(String statement, Object parameter);
+
+  Future<Integer> deleteAsync(String statement, Object parameter);
+
+  Configuration getConfiguration();
+
+}
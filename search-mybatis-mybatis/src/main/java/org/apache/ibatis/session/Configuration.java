@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -41,7 +42,9 @@ import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.executor.CachingExecutor;
+import org.apache.ibatis.executor.CoalescingExecutor;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.QueryCoalescer;
 import org.apache.ibatis.executor.ReuseExecutor;
 import org.apache.ibatis.executor.SimpleExecutor;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -51,6 +54,8 @@ import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.resultset.RowMapperFactory;
+import org.apache.ibatis.executor.statement.AdaptiveFetchSize;
 import org.apache.ibatis.executor.statement.RoutingStatementHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.logging.Log;
@@ -120,6 +125,37 @@ public class Configuration {
   //设置一个时限，以决定让驱动器等待数据库回应的多长时间为超时
   protected Integer defaultStatementTimeout;
   protected Integer defaultFetchSize;
+  //按每条语句以往读取的行数自动选择fetchSize（语句自己配置的fetchSize优先），范围由adaptiveFetchSize的上下限决定
+  protected boolean adaptiveFetchSizeEnabled;
+  protected final AdaptiveFetchSize adaptiveFetchSize = new AdaptiveFetchSize();
+  //简单的ResultMap（无嵌套、无延迟加载、无构造参数）按列布局预先生成行映射器，Javassist可用时生成直接调用setter的类
+  protected boolean rowMappersEnabled;
+  protected final RowMapperFactory rowMapperFactory = new RowMapperFactory(this);
+  //BATCH执行器累计的行数或估算的参数字节数达到该值时自动执行批次，0表示只在flushStatements时执行
+  protected int batchFlushSize;
+  protected long batchFlushBytes;
+  //BATCH执行器是否在BatchResult中保留每行的参数对象，关闭后长时间的导入不会因此占满内存；
+  //关闭时自动执行的批次结果也不保留，flushStatements只返回它自己执行的批次
+  protected boolean batchKeepParameterObjects = true;
+  //BATCH执行器是否把交替出现的insert并入各自更早的批次，会改变不同表之间insert的执行顺序，
+  //后插入的行依赖其间插入的其他表的行（外键）时不能开启
+  protected boolean batchRegroupInserts;
+  //BATCH执行器把单行insert改写为多行 INSERT ... VALUES (...),(...) 时每条语句的行数，小于2表示不改写；
+  //可按databaseId分别设置，以适应各数据库对参数个数的限制
+  protected int multiRowInsertChunkSize;
+  protected Map<String, Integer> multiRowInsertChunkSizes = new HashMap<String, Integer>();
+  //非延迟加载的嵌套查询（association/collection select）按外键合并为 IN 查询时每批的键数，0表示逐行执行
+  protected int nestedSelectBatchSize;
+  //SqlSession.selectMultiple 是否把多条查询用分号连接成一条语句在一次往返中执行，需要驱动支持（如MySQL的allowMultiQueries）
+  protected boolean multiStatementSelectsEnabled;
+  //合并不同会话中并发执行的相同查询（CacheKey相等且连接来自同一数据源），等待者最多等待queryCoalescingTimeout毫秒，
+  //未设置时最多等待语句的超时，语句也没有超时时最多等待1秒，然后自己执行查询；
+  //与只读二级缓存一样，各会话拿到的是同一批结果对象，调用方不能修改它们
+  protected boolean queryCoalescingEnabled;
+  protected Integer queryCoalescingTimeout;
+  protected final QueryCoalescer queryCoalescer = new QueryCoalescer();
+  //异步会话（AsyncSqlSession）执行语句所用的线程池，为空时使用共享的默认线程池
+  protected ExecutorService asyncExecutorService;
   //配置和设定执行器，SIMPLE 执行器执行其它语句。REUSE 执行器可能重复使用prepared statements 语句，BATCH执行器可以重复执行语句和批量更新。
   protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
   //指定MyBatis 是否并且如何来自动映射数据表字段与对象的属性。PARTIAL将只自动映射简单的，没有嵌套的结果。FULL 将自动映射所有复杂的结果。
@@ -133,6 +169,8 @@ public class Configuration {
 
   //全局性设置懒加载。如果设为‘false’，则所有相关联的都会被初始化加载。
   protected boolean lazyLoadingEnabled = false;
+  //同一查询为同一属性创建的懒加载，在第一次触发时把其余尚未加载的兄弟对象一起按 IN 查询加载，该值为每批的键数，0表示逐个加载
+  protected int lazyLoadingBatchSize;
   protected ProxyFactory proxyFactory = new JavassistProxyFactory(); // #224 Using internal Javassist instead of OGNL
 
   protected String databaseId;
@@ -321,6 +359,14 @@ public class Configuration {
     this.proxyFactory = proxyFactory;
   }
 
+  public int getLazyLoadingBatchSize() {
+    return lazyLoadingBatchSize;
+  }
+
+  public void setLazyLoadingBatchSize(int lazyLoadingBatchSize) {
+    this.lazyLoadingBatchSize = lazyLoadingBatchSize;
+  }
+
   public boolean isAggressiveLazyLoading() {
     return aggressiveLazyLoading;
   }
@@ -385,6 +431,138 @@ public class Configuration {
     this.defaultFetchSize = defaultFetchSize;
   }
 
+  public int getBatchFlushSize() {
+    return batchFlushSize;
+  }
+
+  public void setBatchFlushSize(int batchFlushSize) {
+    this.batchFlushSize = batchFlushSize;
+  }
+
+  public long getBatchFlushBytes() {
+    return batchFlushBytes;
+  }
+
+  public void setBatchFlushBytes(long batchFlushBytes) {
+    this.batchFlushBytes = batchFlushBytes;
+  }
+
+  public boolean isBatchKeepParameterObjects() {
+    return batchKeepParameterObjects;
+  }
+
+  public void setBatchKeepParameterObjects(boolean batchKeepParameterObjects) {
+    this.batchKeepParameterObjects = batchKeepParameterObjects;
+  }
+
+  public boolean isBatchRegroupInserts() {
+    return batchRegroupInserts;
+  }
+
+  public void setBatchRegroupInserts(boolean batchRegroupInserts) {
+    this.batchRegroupInserts = batchRegroupInserts;
+  }
+
+  /*
+   * Gets the chunk size for the current databaseId, falling back to the default chunk size
+   */
+  public int getMultiRowInsertChunkSize() {
+    if (databaseId != null) {
+      Integer chunkSize = multiRowInsertChunkSizes.get(databaseId);
+      if (chunkSize != null) {
+        return chunkSize;
+      }
+    }
+    return multiRowInsertChunkSize;
+  }
+
+  public void setMultiRowInsertChunkSize(int multiRowInsertChunkSize) {
+    this.multiRowInsertChunkSize = multiRowInsertChunkSize;
+  }
+
+  public void setMultiRowInsertChunkSize(String databaseId, int multiRowInsertChunkSize) {
+    multiRowInsertChunkSizes.put(databaseId, multiRowInsertChunkSize);
+  }
+
+  public Map<String, Integer> getMultiRowInsertChunkSizes() {
+    return multiRowInsertChunkSizes;
+  }
+
+  public void setMultiRowInsertChunkSizes(Map<String, Integer> multiRowInsertChunkSizes) {
+    this.multiRowInsertChunkSizes = multiRowInsertChunkSizes;
+  }
+
+  public int getNestedSelectBatchSize() {
+    return nestedSelectBatchSize;
+  }
+
+  public void setNestedSelectBatchSize(int nestedSelectBatchSize) {
+    this.nestedSelectBatchSize = nestedSelectBatchSize;
+  }
+
+  public boolean isMultiStatementSelectsEnabled() {
+    return multiStatementSelectsEnabled;
+  }
+
+  public void setMultiStatementSelectsEnabled(boolean multiStatementSelectsEnabled) {
+    this.multiStatementSelectsEnabled = multiStatementSelectsEnabled;
+  }
+
+  public boolean isAdaptiveFetchSizeEnabled() {
+    return adaptiveFetchSizeEnabled;
+  }
+
+  public void setAdaptiveFetchSizeEnabled(boolean adaptiveFetchSizeEnabled) {
+    this.adaptiveFetchSizeEnabled = adaptiveFetchSizeEnabled;
+  }
+
+  public boolean isRowMappersEnabled() {
+    return rowMappersEnabled;
+  }
+
+  public void setRowMappersEnabled(boolean rowMappersEnabled) {
+    this.rowMappersEnabled = rowMappersEnabled;
+  }
+
+  public RowMapperFactory getRowMapperFactory() {
+    return rowMapperFactory;
+  }
+
+  /*
+   * Gets the row statistics and the fetch sizes currently chosen for each statement
+   */
+  public AdaptiveFetchSize getAdaptiveFetchSize() {
+    return adaptiveFetchSize;
+  }
+
+  public boolean isQueryCoalescingEnabled() {
+    return queryCoalescingEnabled;
+  }
+
+  public void setQueryCoalescingEnabled(boolean queryCoalescingEnabled) {
+    this.queryCoalescingEnabled = queryCoalescingEnabled;
+  }
+
+  public Integer getQueryCoalescingTimeout() {
+    return queryCoalescingTimeout;
+  }
+
+  public void setQueryCoalescingTimeout(Integer queryCoalescingTimeout) {
+    this.queryCoalescingTimeout = queryCoalescingTimeout;
+  }
+
+  public QueryCoalescer getQueryCoalescer() {
+    return queryCoalescer;
+  }
+
+  public ExecutorService getAsyncExecutorService() {
+    return asyncExecutorService;
+  }
+
+  public void setAsyncExecutorService(ExecutorService asyncExecutorService) {
+    this.asyncExecutorService = asyncExecutorService;
+  }
+
   public boolean isUseColumnLabel() {
     return useColumnLabel;
   }
@@ -526,6 +704,9 @@ public class Configuration {
     if (cacheEnabled) {
       executor = new CachingExecutor(executor);
     }
+    if (queryCoalescingEnabled) {
+      executor = new CoalescingExecutor(executor, queryCoalescer, queryCoalescingTimeout);
+    }
     executor = (Executor) interceptorChain.pluginAll(executor);
     return executor;
   }
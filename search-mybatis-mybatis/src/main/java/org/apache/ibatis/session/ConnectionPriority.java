@@ -0,0 +1,60 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * The class of service a request gets when it waits for a pooled connection.
+ * <p>
+ * A statement can carry its own priority (the <code>priority</code> attribute or
+ * {@link org.apache.ibatis.annotations.Options#priority()}); otherwise the priority set on the
+ * calling thread applies, so a whole session can be marked for example as low priority reporting:
+ * <pre>
+ * ConnectionPriority.setCurrent(ConnectionPriority.LOW);
+ * try {
+ *   ...
+ * } finally {
+ *   ConnectionPriority.clearCurrent();
+ * }
+ * </pre>
+ *
+ * @author Clinton Begin
+ */
+public enum ConnectionPriority {
+  HIGH, NORMAL, LOW;
+
+  private static final ThreadLocal<ConnectionPriority> CURRENT = new ThreadLocal<ConnectionPriority>();
+
+  /*
+   * Gets the priority of the calling thread, NORMAL if none was set
+   */
+  public static ConnectionPriority getCurrent() {
+    ConnectionPriority priority = CURRENT.get();
+    return priority == null ? NORMAL : priority;
+  }
+
+  public static void setCurrent(ConnectionPriority priority) {
+    if (priority == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(priority);
+    }
+  }
+
+  public static void clearCurrent() {
+    CURRENT.remove();
+  }
+
+}
@@ -0,0 +1,88 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which the work of the calling thread must be done.
+ * <p>
+ * While a deadline is set on the calling thread, the remaining budget is used as the query timeout of
+ * every statement, a statement still running when the deadline expires or the thread is interrupted is
+ * cancelled, and waiting for a pooled connection stops at the deadline. Nested selects share the
+ * deadline, lazy loaders keep the one in force when they were created and async sessions the one in
+ * force when the call was submitted:
+ * <pre>
+ * Deadline.setCurrent(Deadline.after(200, TimeUnit.MILLISECONDS));
+ * try {
+ *   ...
+ * } finally {
+ *   Deadline.clearCurrent();
+ * }
+ * </pre>
+ *
+ * @author Clinton Begin
+ */
+public final class Deadline {
+
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+  private final long deadlineNanos;
+
+  private Deadline(long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  public static Deadline after(long duration, TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(duration));
+  }
+
+  /*
+   * Gets the remaining time, zero or negative once the deadline expired
+   */
+  public long getRemaining(TimeUnit unit) {
+    return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
+  public boolean isExpired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+
+  /*
+   * Gets the deadline of the calling thread, null if none was set
+   */
+  public static Deadline getCurrent() {
+    return CURRENT.get();
+  }
+
+  public static void setCurrent(Deadline deadline) {
+    if (deadline == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(deadline);
+    }
+  }
+
+  public static void clearCurrent() {
+    CURRENT.remove();
+  }
+
+  @Override
+  public String toString() {
+    return "Deadline[remaining=" + getRemaining(TimeUnit.MILLISECONDS) + "ms]";
+  }
+
+}
@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一组互不依赖的查询（语句id和参数），交给 {@link SqlSession#selectMultiple(MultiSelect)} 一起执行。
+ * <p>
+ * 开启 multiStatementSelectsEnabled 且驱动支持时，这些查询在一次往返中发送，
+ * 每个结果集仍用各自语句的 ResultMap 映射；否则逐条执行。
+ *
+ * @author Clinton Begin
+ */
+public class MultiSelect {
+
+  private final List<String> statements = new ArrayList<String>();
+  private final List<Object> parameters = new ArrayList<Object>();
+
+  public MultiSelect add(String statement) {
+    return add(statement, null);
+  }
+
+  public MultiSelect add(String statement, Object parameter) {
+    statements.add(statement);
+    parameters.add(parameter);
+    return this;
+  }
+
+  public List<String> getStatements() {
+    return Collections.unmodifiableList(statements);
+  }
+
+  public List<Object> getParameters() {
+    return Collections.unmodifiableList(parameters);
+  }
+
+  public int size() {
+    return statements.size();
+  }
+
+}
@@ -20,6 +20,7 @@ import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.BatchResult;
 
 /**
@@ -87,6 +88,14 @@ public interface SqlSession extends Closeable {
    */
   <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds);
 
+  /**
+   * Retrieve the lists of mapped objects of several independent statements,
+   * sent in one round trip when multiStatementSelectsEnabled is set and the driver allows it.
+   * @param select the statements and their parameters
+   * @return one list of mapped objects per statement, in the order they were added
+   */
+  List<List<Object>> selectMultiple(MultiSelect select);
+
   /**
    * The selectMap is a special case in that it is designed to convert a list
    * of results into a Map based on one of the properties in the resulting
@@ -127,6 +136,35 @@ public interface SqlSession extends Closeable {
    */
   <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds);
 
+  /**
+   * A Cursor offers the same results as a List, except it fetches data lazily using an Iterator.
+   * Rows are mapped one at a time while iterating, so memory use does not grow with the size of the result.
+   * The cursor must be consumed or closed before this session is closed; closing the session closes it anyway.
+   * @param <T> the returned cursor element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @return Cursor of mapped objects
+   */
+  <T> Cursor<T> selectCursor(String statement);
+
+  /**
+   * A Cursor offers the same results as a List, except it fetches data lazily using an Iterator.
+   * @param <T> the returned cursor element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @param parameter A parameter object to pass to the statement.
+   * @return Cursor of mapped objects
+   */
+  <T> Cursor<T> selectCursor(String statement, Object parameter);
+
+  /**
+   * A Cursor offers the same results as a List, except it fetches data lazily using an Iterator.
+   * @param <T> the returned cursor element type.
+   * @param statement Unique identifier matching the statement to use.
+   * @param parameter A parameter object to pass to the statement.
+   * @param rowBounds  Bounds to limit object retrieval
+   * @return Cursor of mapped objects
+   */
+  <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds);
+
   /**
    * Retrieve a single row mapped from the statement key and parameter
    * using a {@code ResultHandler}.
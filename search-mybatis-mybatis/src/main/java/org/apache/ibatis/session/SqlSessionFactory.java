@@ -16,6 +16,7 @@
 package org.apache.ibatis.session;
 
 import java.sql.Connection;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Creates an {@link SqlSesion} out of a connection or a DataSource
@@ -35,6 +36,13 @@ public interface SqlSessionFactory {
   SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level);
   SqlSession openSession(ExecutorType execType, Connection connection);
 
+  /**
+   * 打开异步会话，语句在 {@link Configuration#getAsyncExecutorService()} 指定的线程池中执行
+   */
+  AsyncSqlSession openAsyncSession();
+  AsyncSqlSession openAsyncSession(ExecutorService executorService);
+  AsyncSqlSession openAsyncSession(ExecutorType execType, ExecutorService executorService);
+
   Configuration getConfiguration();
 
 }
@@ -24,7 +24,9 @@ import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.reflection.ExceptionUtil;
 
@@ -115,6 +117,21 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionFactory.openSession();
   }
 
+  @Override
+  public AsyncSqlSession openAsyncSession() {
+    return sqlSessionFactory.openAsyncSession();
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(ExecutorService executorService) {
+    return sqlSessionFactory.openAsyncSession(executorService);
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(ExecutorType execType, ExecutorService executorService) {
+    return sqlSessionFactory.openAsyncSession(execType, executorService);
+  }
+
   @Override
   public SqlSession openSession(boolean autoCommit) {
     return sqlSessionFactory.openSession(autoCommit);
@@ -180,6 +197,21 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
   }
 
+  @Override
+  public <T> Cursor<T> selectCursor(String statement) {
+    return sqlSessionProxy.<T> selectCursor(statement);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter) {
+    return sqlSessionProxy.<T> selectCursor(statement, parameter);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds) {
+    return sqlSessionProxy.<T> selectCursor(statement, parameter, rowBounds);
+  }
+
   @Override
   public <E> List<E> selectList(String statement) {
     return sqlSessionProxy.<E> selectList(statement);
@@ -195,6 +227,11 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.<E> selectList(statement, parameter, rowBounds);
   }
 
+  @Override
+  public List<List<Object>> selectMultiple(MultiSelect select) {
+    return sqlSessionProxy.selectMultiple(select);
+  }
+
   @Override
   public void select(String statement, ResultHandler handler) {
     sqlSessionProxy.select(statement, handler);
@@ -0,0 +1,199 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.defaults;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.exceptions.ExceptionFactory;
+import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.session.AsyncSqlSession;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ConnectionPriority;
+import org.apache.ibatis.session.Deadline;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+/**
+ * The default implementation for {@link AsyncSqlSession}.
+ * <p>
+ * The {@link SqlSession} of each call is opened on the calling thread, so that everything resolved
+ * when a session is opened (for example the tenant of a PooledDataSourceGroup) follows the caller,
+ * while its connection is only fetched by the pool thread when the statement runs.
+ *
+ * @author Clinton Begin
+ */
+public class DefaultAsyncSqlSession implements AsyncSqlSession {
+
+  private static ExecutorService defaultExecutorService;
+
+  private final SqlSessionFactory sqlSessionFactory;
+  private final ExecutorType execType;
+  private final ExecutorService executorService;
+
+  public DefaultAsyncSqlSession(SqlSessionFactory sqlSessionFactory, ExecutorType execType, ExecutorService executorService) {
+    this.sqlSessionFactory = sqlSessionFactory;
+    this.execType = execType;
+    this.executorService = executorService != null ? executorService : getDefaultExecutorService();
+  }
+
+  @Override
+  public <T> Future<T> selectOneAsync(String statement) {
+    return this.<T>selectOneAsync(statement, null);
+  }
+
+  @Override
+  public <T> Future<T> selectOneAsync(final String statement, final Object parameter) {
+    return submit(new SessionCallback<T>() {
+      @Override
+      public T doInSession(SqlSession sqlSession) {
+        return sqlSession.<T>selectOne(statement, parameter);
+      }
+    }, false);
+  }
+
+  @Override
+  public <E> Future<List<E>> selectListAsync(String statement) {
+    return this.<E>selectListAsync(statement, null);
+  }
+
+  @Override
+  public <E> Future<List<E>> selectListAsync(String statement, Object parameter) {
+    return this.<E>selectListAsync(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <E> Future<List<E>> selectListAsync(final String statement, final Object parameter, final RowBounds rowBounds) {
+    return submit(new SessionCallback<List<E>>() {
+      @Override
+      public List<E> doInSession(SqlSession sqlSession) {
+        return sqlSession.<E>selectList(statement, parameter, rowBounds);
+      }
+    }, false);
+  }
+
+  @Override
+  public <K, V> Future<Map<K, V>> selectMapAsync(final String statement, final Object parameter, final String mapKey) {
+    return submit(new SessionCallback<Map<K, V>>() {
+      @Override
+      public Map<K, V> doInSession(SqlSession sqlSession) {
+        return sqlSession.<K, V>selectMap(statement, parameter, mapKey);
+      }
+    }, false);
+  }
+
+  @Override
+  public Future<Integer> insertAsync(final String statement, final Object parameter) {
+    return submit(new SessionCallback<Integer>() {
+      @Override
+      public Integer doInSession(SqlSession sqlSession) {
+        return sqlSession.insert(statement, parameter);
+      }
+    }, true);
+  }
+
+  @Override
+  public Future<Integer> updateAsync(final String statement, final Object parameter) {
+    return submit(new SessionCallback<Integer>() {
+      @Override
+      public Integer doInSession(SqlSession sqlSession) {
+        return sqlSession.update(statement, parameter);
+      }
+    }, true);
+  }
+
+  @Override
+  public Future<Integer> deleteAsync(final String statement, final Object parameter) {
+    return submit(new SessionCallback<Integer>() {
+      @Override
+      public Integer doInSession(SqlSession sqlSession) {
+        return sqlSession.delete(statement, parameter);
+      }
+    }, true);
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return sqlSessionFactory.getConfiguration();
+  }
+
+  private <T> Future<T> submit(final SessionCallback<T> callback, final boolean commit) {
+    final SqlSession sqlSession = sqlSessionFactory.openSession(execType);
+    final ConnectionPriority priority = ConnectionPriority.getCurrent();
+    final Deadline deadline = Deadline.getCurrent();
+    try {
+      return executorService.submit(new Callable<T>() {
+        @Override
+        public T call() {
+          ConnectionPriority.setCurrent(priority);
+          Deadline.setCurrent(deadline);
+          try {
+            T result = callback.doInSession(sqlSession);
+            if (commit) {
+              // 批量执行器在提交时才真正执行语句
+              sqlSession.commit();
+            }
+            return result;
+          } finally {
+            // 未提交的修改在关闭时回滚；线程会被复用，不能把本次的线程变量留给下一个任务
+            try {
+              sqlSession.close();
+            } finally {
+              ConnectionPriority.clearCurrent();
+              Deadline.clearCurrent();
+              ErrorContext.instance().reset();
+            }
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      sqlSession.close();
+      throw ExceptionFactory.wrapException("Error submitting asynchronous statement.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
+  private static synchronized ExecutorService getDefaultExecutorService() {
+    if (defaultExecutorService == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+      defaultExecutorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "mybatis-async-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return defaultExecutorService;
+  }
+
+  private interface SessionCallback<T> {
+    T doInSession(SqlSession sqlSession);
+  }
+
+}
@@ -15,14 +15,18 @@
  */
 package org.apache.ibatis.session.defaults;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.exceptions.TooManyResultsException;
 import org.apache.ibatis.executor.BatchResult;
@@ -32,6 +36,7 @@ import org.apache.ibatis.executor.result.DefaultMapResultHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.MultiSelect;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
@@ -50,6 +55,7 @@ public class DefaultSqlSession implements SqlSession {
 
   private boolean autoCommit;
   private boolean dirty;
+  private List<Cursor<?>> cursorList;
 
   public DefaultSqlSession(Configuration configuration, Executor executor, boolean autoCommit) {
     this.configuration = configuration;
@@ -103,6 +109,29 @@ public class DefaultSqlSession implements SqlSession {
     return mapResultHandler.getMappedResults();
   }
 
+  @Override
+  public <T> Cursor<T> selectCursor(String statement) {
+    return selectCursor(statement, null);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter) {
+    return selectCursor(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds) {
+    try {
+      MappedStatement ms = configuration.getMappedStatement(statement);
+      Cursor<T> cursor = executor.queryCursor(ms, wrapCollection(parameter), rowBounds);
+      return registerCursor(cursor);
+    } catch (Exception e) {
+      throw ExceptionFactory.wrapException("Error querying database.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
   @Override
   public <E> List<E> selectList(String statement) {
     return this.selectList(statement, null);
@@ -127,6 +156,23 @@ public class DefaultSqlSession implements SqlSession {
     }
   }
 
+  @Override
+  public List<List<Object>> selectMultiple(MultiSelect select) {
+    try {
+      List<MappedStatement> mss = new ArrayList<MappedStatement>(select.size());
+      List<Object> parameters = new ArrayList<Object>(select.size());
+      for (int i = 0; i < select.size(); i++) {
+        mss.add(configuration.getMappedStatement(select.getStatements().get(i)));
+        parameters.add(wrapCollection(select.getParameters().get(i)));
+      }
+      return executor.queryMultiple(mss, parameters);
+    } catch (Exception e) {
+      throw ExceptionFactory.wrapException("Error querying database.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
   @Override
   public void select(String statement, Object parameter, ResultHandler handler) {
     select(statement, parameter, RowBounds.DEFAULT, handler);
@@ -254,6 +300,8 @@ public class DefaultSqlSession implements SqlSession {
   @Override
   public void close() {
     try {
+      // 游标持有的Statement要在连接归还之前关闭
+      closeCursors();
       executor.close(isCommitOrRollbackRequired(false));
       dirty = false;
     } finally {
@@ -288,6 +336,29 @@ public class DefaultSqlSession implements SqlSession {
     executor.clearLocalCache();
   }
 
+  private void closeCursors() {
+    if (cursorList != null && cursorList.size() != 0) {
+      // 关闭的游标会把自己从列表中移除，所以遍历副本
+      for (Cursor<?> cursor : new ArrayList<Cursor<?>>(cursorList)) {
+        try {
+          cursor.close();
+        } catch (IOException e) {
+          throw ExceptionFactory.wrapException("Error closing cursor.  Cause: " + e, e);
+        }
+      }
+      cursorList.clear();
+    }
+  }
+
+  private <T> Cursor<T> registerCursor(Cursor<T> cursor) {
+    if (cursorList == null) {
+      cursorList = new ArrayList<Cursor<?>>();
+    }
+    SessionCursor<T> sessionCursor = new SessionCursor<T>(cursor);
+    cursorList.add(sessionCursor);
+    return sessionCursor;
+  }
+
   private boolean isCommitOrRollbackRequired(boolean force) {
     return (!autoCommit && dirty) || force;
   }
@@ -308,6 +379,75 @@ public class DefaultSqlSession implements SqlSession {
     return object;
   }
 
+  /**
+   * Keeps a cursor in the list of open cursors only until it is closed or read to the end,
+   * so that a long-lived session does not hold on to every cursor it ever opened.
+   */
+  private class SessionCursor<T> implements Cursor<T> {
+
+    private final Cursor<T> delegate;
+
+    SessionCursor(Cursor<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return delegate.isOpen();
+    }
+
+    @Override
+    public boolean isConsumed() {
+      return delegate.isConsumed();
+    }
+
+    @Override
+    public int getCurrentIndex() {
+      return delegate.getCurrentIndex();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      final Iterator<T> iterator = delegate.iterator();
+      return new Iterator<T>() {
+        @Override
+        public boolean hasNext() {
+          boolean hasNext = iterator.hasNext();
+          if (!hasNext) {
+            // 读完时游标已自行关闭
+            unregister();
+          }
+          return hasNext;
+        }
+
+        @Override
+        public T next() {
+          return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+          iterator.remove();
+        }
+      };
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        delegate.close();
+      } finally {
+        unregister();
+      }
+    }
+
+    private void unregister() {
+      if (cursorList != null) {
+        cursorList.remove(this);
+      }
+    }
+  }
+
   public static class StrictMap<V> extends HashMap<String, V> {
 
     private static final long serialVersionUID = -5741767162221585340L;
@@ -17,11 +17,16 @@ package org.apache.ibatis.session.defaults;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
 
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.TenantDataSource;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.AsyncSqlSession;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
@@ -82,6 +87,21 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
     return openSessionFromConnection(execType, connection);
   }
 
+  @Override
+  public AsyncSqlSession openAsyncSession() {
+    return openAsyncSession(configuration.getDefaultExecutorType(), configuration.getAsyncExecutorService());
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(ExecutorService executorService) {
+    return openAsyncSession(configuration.getDefaultExecutorType(), executorService);
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(ExecutorType execType, ExecutorService executorService) {
+    return new DefaultAsyncSqlSession(this, execType, executorService);
+  }
+
   @Override
   public Configuration getConfiguration() {
     return configuration;
@@ -92,7 +112,7 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
     try {
       final Environment environment = configuration.getEnvironment();
       final TransactionFactory transactionFactory = getTransactionFactoryFromEnvironment(environment);
-      tx = transactionFactory.newTransaction(environment.getDataSource(), level, autoCommit);
+      tx = transactionFactory.newTransaction(getDataSourceFromEnvironment(environment), level, autoCommit);
       final Executor executor = configuration.newExecutor(tx, execType);
       return new DefaultSqlSession(configuration, executor, autoCommit);
     } catch (Exception e) {
@@ -132,6 +152,15 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
     return environment.getTransactionFactory();
   }
 
+  private DataSource getDataSourceFromEnvironment(Environment environment) {
+    DataSource dataSource = environment.getDataSource();
+    if (dataSource instanceof TenantDataSource) {
+      // the tenant is chosen once, when the session is opened
+      return ((TenantDataSource) dataSource).getTenantDataSource();
+    }
+    return dataSource;
+  }
+
   private void closeTransaction(Transaction tx) {
     if (tx != null) {
       try {
@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.transaction;
+
+import javax.sql.DataSource;
+
+/**
+ * A {@link Transaction} that knows the DataSource its connections come from. Work that belongs
+ * to the same session but runs without its connection, such as a lazy load after the session
+ * is closed, uses this DataSource again instead of resolving one from the environment.
+ *
+ * @author Clinton Begin
+ */
+public interface DataSourceTransaction extends Transaction {
+
+  /**
+   * @return the DataSource, or null if the transaction was created from a connection
+   */
+  DataSource getDataSource();
+
+}
@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.transaction;
+
+import org.apache.ibatis.mapping.MappedStatement;
+
+/**
+ * A {@link Transaction} that may hand out a different connection depending on the statement
+ * about to run, for example to send reads to a replica.
+ * The executor calls {@link #route(MappedStatement)} right before it asks for the connection.
+ *
+ * @author Clinton Begin
+ */
+public interface RoutableTransaction extends Transaction {
+
+  /**
+   * Selects the connection that the following {@link #getConnection()} calls return.
+   * @param ms the statement about to be executed
+   */
+  void route(MappedStatement ms);
+
+}
@@ -23,6 +23,7 @@ import javax.sql.DataSource;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.DataSourceTransaction;
 import org.apache.ibatis.transaction.Transaction;
 import org.apache.ibatis.transaction.TransactionException;
 
@@ -37,7 +38,7 @@ import org.apache.ibatis.transaction.TransactionException;
 /**
  * @author Clinton Begin
  */
-public class JdbcTransaction implements Transaction {
+public class JdbcTransaction implements DataSourceTransaction {
 
   private static final Log log = LogFactory.getLog(JdbcTransaction.class);
   //数据库连接
@@ -59,6 +60,11 @@ public class JdbcTransaction implements Transaction {
     this.connection = connection;
   }
 
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
   @Override
   public Connection getConnection() throws SQLException {
     if (connection == null) {
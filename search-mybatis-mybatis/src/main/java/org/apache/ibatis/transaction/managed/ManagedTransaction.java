@@ -23,6 +23,7 @@ import javax.sql.DataSource;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.DataSourceTransaction;
 import org.apache.ibatis.transaction.Transaction;
 
 /**
@@ -40,7 +41,7 @@ import org.apache.ibatis.transaction.Transaction;
 /**
  * @author Clinton Begin
  */
-public class ManagedTransaction implements Transaction {
+public class ManagedTransaction implements DataSourceTransaction {
 
   private static final Log log = LogFactory.getLog(ManagedTransaction.class);
 
@@ -60,6 +61,11 @@ public class ManagedTransaction implements Transaction {
     this.closeConnection = closeConnection;
   }
 
+  @Override
+  public DataSource getDataSource() {
+    return this.dataSource;
+  }
+
   @Override
   public Connection getConnection() throws SQLException {
     if (this.connection == null) {
@@ -0,0 +1,152 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.transaction.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.routing.RoutingDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.DataSourceTransaction;
+import org.apache.ibatis.transaction.RoutableTransaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+
+/**
+ * {@link RoutableTransaction} that sends selects to a replica of a {@link RoutingDataSource}
+ * and everything else to its primary.
+ * <p>
+ * Once a statement other than a select has run, every following statement goes to the primary
+ * until the transaction is committed or rolled back, so a session always reads its own writes.
+ * Statements whose id or namespace is in the force-primary set always go to the primary.
+ * Both connections are opened lazily, so a read-only session never touches the primary.
+ * <p>
+ * Note that the REUSE executor keeps a statement on the connection it was first prepared on.
+ *
+ * @see RoutingTransactionFactory
+ * @author Clinton Begin
+ */
+public class RoutingTransaction implements RoutableTransaction, DataSourceTransaction {
+
+  private static final Log log = LogFactory.getLog(RoutingTransaction.class);
+
+  private final RoutingDataSource dataSource;
+  private final JdbcTransaction primary;
+  private final JdbcTransaction replica;
+  private final Set<String> forcePrimary;
+  private JdbcTransaction current;
+  private boolean writing;
+
+  public RoutingTransaction(RoutingDataSource dataSource, TransactionIsolationLevel level, boolean autoCommit) {
+    this(dataSource, level, autoCommit, Collections.<String>emptySet());
+  }
+
+  public RoutingTransaction(RoutingDataSource dataSource, TransactionIsolationLevel level, boolean autoCommit,
+      Set<String> forcePrimary) {
+    this.dataSource = dataSource;
+    this.primary = new JdbcTransaction(dataSource.getPrimary(), level, autoCommit);
+    this.replica = new JdbcTransaction(dataSource.getReplicaDataSource(), level, autoCommit);
+    this.forcePrimary = forcePrimary;
+    this.current = primary;
+  }
+
+  @Override
+  public void route(MappedStatement ms) {
+    if (ms.getSqlCommandType() != SqlCommandType.SELECT) {
+      writing = true;
+    }
+    JdbcTransaction target = isRoutedToPrimary(ms) ? primary : replica;
+    if (target != current && log.isDebugEnabled()) {
+      log.debug("Routing " + ms.getId() + " to the " + (target == primary ? "primary" : "replica"));
+    }
+    current = target;
+  }
+
+  /*
+   * Tells where a statement would run now, without routing it
+   *
+   * @return true for the primary, false for the replica
+   */
+  public boolean isRoutedToPrimary(MappedStatement ms) {
+    return writing || ms.getSqlCommandType() != SqlCommandType.SELECT || isForcedToPrimary(ms);
+  }
+
+  /*
+   * Tells whether a statement other than a select has run since the last commit or rollback
+   */
+  public boolean isWriting() {
+    return writing;
+  }
+
+  @Override
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return current.getConnection();
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    try {
+      primary.commit();
+      replica.commit();
+    } finally {
+      writing = false;
+    }
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    try {
+      primary.rollback();
+      replica.rollback();
+    } finally {
+      writing = false;
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      replica.close();
+    } finally {
+      primary.close();
+    }
+  }
+
+  private boolean isForcedToPrimary(MappedStatement ms) {
+    if (forcePrimary.isEmpty()) {
+      return false;
+    }
+    String id = ms.getId();
+    if (forcePrimary.contains(id)) {
+      return true;
+    }
+    int lastDot = id.lastIndexOf('.');
+    return lastDot > 0 && forcePrimary.contains(id.substring(0, lastDot));
+  }
+
+}
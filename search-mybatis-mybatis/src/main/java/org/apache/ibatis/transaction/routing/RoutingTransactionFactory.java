@@ -0,0 +1,70 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.transaction.routing;
+
+import java.sql.Connection;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.routing.RoutingDataSource;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+
+/**
+ * Creates {@link RoutingTransaction} instances for a {@link RoutingDataSource}
+ * and plain {@link JdbcTransaction} instances for any other data source.
+ * <p>
+ * The <code>forcePrimary</code> property takes a comma separated list of statement ids
+ * or mapper namespaces that must always run on the primary, even when they are selects.
+ *
+ * @see RoutingTransaction
+ * @author Clinton Begin
+ */
+public class RoutingTransactionFactory implements TransactionFactory {
+
+  private final Set<String> forcePrimary = new HashSet<String>();
+
+  @Override
+  public void setProperties(Properties props) {
+    String value = props.getProperty("forcePrimary");
+    if (value != null) {
+      for (String id : value.split(",")) {
+        if (id.trim().length() > 0) {
+          forcePrimary.add(id.trim());
+        }
+      }
+    }
+  }
+
+  @Override
+  public Transaction newTransaction(Connection conn) {
+    return new JdbcTransaction(conn);
+  }
+
+  @Override
+  public Transaction newTransaction(DataSource ds, TransactionIsolationLevel level, boolean autoCommit) {
+    if (ds instanceof RoutingDataSource) {
+      return new RoutingTransaction((RoutingDataSource) ds, level, autoCommit, forcePrimary);
+    }
+    return new JdbcTransaction(ds, level, autoCommit);
+  }
+
+}
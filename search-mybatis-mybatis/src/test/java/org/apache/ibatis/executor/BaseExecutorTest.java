@@ -19,7 +19,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +45,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
 import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.apache.ibatis.type.TypeException;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -461,6 +469,41 @@ public class BaseExecutorTest extends BaseDataTest {
     }
   }
 
+  @Test
+  public void shouldCloseTheStatementWhenTheCursorCannotBeOpened() throws Exception {
+    final Connection connection = ds.getConnection();
+    final List<Statement> statements = new ArrayList<Statement>();
+    Connection recordingConnection = (Connection) java.lang.reflect.Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+              Object result = method.invoke(connection, args);
+              if (result instanceof Statement) {
+                statements.add((Statement) result);
+              }
+              return result;
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+    Executor executor = createExecutor(new JdbcTransaction(recordingConnection));
+    try {
+      MappedStatement selectStatement = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      try {
+        // the id parameter is mapped with the int type handler
+        executor.queryCursor(selectStatement, "not an id", RowBounds.DEFAULT);
+        fail("Expected a TypeException");
+      } catch (TypeException e) {
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).isClosed());
+      }
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
   protected Executor createExecutor(Transaction transaction) {
     return new SimpleExecutor(config,transaction);
   }
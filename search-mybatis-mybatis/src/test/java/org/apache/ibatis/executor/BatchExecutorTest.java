@@ -15,7 +15,17 @@
  */
 package org.apache.ibatis.executor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
 import org.junit.Test;
 
 public class BatchExecutorTest extends BaseExecutorTest {
@@ -24,6 +34,74 @@ public class BatchExecutorTest extends BaseExecutorTest {
   public void dummy() {
   }
 
+  @Test
+  public void shouldGroupInterleavedInsertsIntoOneBatchPerStatement() throws Exception {
+    config.setBatchRegroupInserts(true);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertAuthor = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement insertAuthor99 = ExecutorTestHelper.createInsertAuthorWithIDof99MappedStatement(config);
+      executor.update(insertAuthor, new Author(5001, "batch1", "******", "batch1@apache.org", null, Section.NEWS));
+      executor.update(insertAuthor99, null);
+      executor.update(insertAuthor, new Author(5002, "batch2", "******", "batch2@apache.org", null, Section.NEWS));
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertSame(insertAuthor, results.get(0).getMappedStatement());
+      assertEquals(2, results.get(0).getUpdateCounts().length);
+      assertEquals(2, results.get(0).getParameterObjects().size());
+      assertSame(insertAuthor99, results.get(1).getMappedStatement());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldFlushAutomaticallyWithoutKeepingParameters() throws Exception {
+    config.setBatchFlushSize(2);
+    config.setBatchKeepParameterObjects(false);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertAuthor = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      for (int i = 0; i < 3; i++) {
+        executor.update(insertAuthor, new Author(5010 + i, "batch" + i, "******", "batch@apache.org", null, Section.NEWS));
+      }
+      // the automatically flushed batch of 2 rows is not kept
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(1, results.size());
+      assertEquals(1, results.get(0).getUpdateCounts().length);
+      assertEquals(0, results.get(0).getParameterObjects().size());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldRewriteBatchedInsertsIntoMultiRowInserts() throws Exception {
+    config.setMultiRowInsertChunkSize(2);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertAuthor = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement selectAuthor = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      Author author = new Author(5020, "multi", "******", "multi@apache.org", null, Section.NEWS);
+      for (int i = 0; i < 3; i++) {
+        // the same parameter object is reused, its values are read when the row is added
+        author.setId(5020 + i);
+        executor.update(insertAuthor, author);
+      }
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(1, results.size());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      List<Author> authors = executor.query(selectAuthor, 5022, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(1, authors.size());
+      assertEquals("multi", authors.get(0).getUsername());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
   protected Executor createExecutor(Transaction transaction) {
     return new BatchExecutor(config,transaction);
   }
@@ -0,0 +1,266 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.Test;
+
+public class CoalescingExecutorTest {
+
+  private final Configuration config = new Configuration();
+  private final MappedStatement selectAll = new MappedStatement.Builder(config, "selectAll",
+      new StaticSqlSource(config, "select * from author"), SqlCommandType.SELECT).build();
+  private final DataSource dataSource = new UnpooledDataSource();
+  private final AtomicInteger executions = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final CountDownLatch joined = new CountDownLatch(1);
+  private final QueryCoalescer coalescer = new QueryCoalescer() {
+    @Override
+    InFlightQuery start(CacheKey key, InFlightQuery query) {
+      InFlightQuery inFlight = super.start(key, query);
+      if (inFlight != null) {
+        joined.countDown();
+      }
+      return inFlight;
+    }
+  };
+
+  @Test
+  public void shouldShareOneExecutionBetweenConcurrentIdenticalQueries() throws Exception {
+    ExecutorService threads = Executors.newFixedThreadPool(2);
+    try {
+      Future<List<Object>> first = threads.submit(query(new CoalescingExecutor(new BlockingExecutor(), coalescer, null)));
+      Future<List<Object>> second = threads.submit(query(new CoalescingExecutor(new BlockingExecutor(), coalescer, null)));
+      joined.await(5, TimeUnit.SECONDS);
+      release.countDown();
+      assertEquals(Arrays.<Object>asList("a", "b"), first.get());
+      assertEquals(Arrays.<Object>asList("a", "b"), second.get());
+      assertNotSame(first.get(), second.get());
+      assertEquals(1, executions.get());
+      assertEquals(0, coalescer.getInFlightCount());
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldNotShareResultsBetweenTenants() throws Exception {
+    ExecutorService threads = Executors.newFixedThreadPool(1);
+    try {
+      Future<List<Object>> first = threads.submit(query(new CoalescingExecutor(new BlockingExecutor(), coalescer, null)));
+      while (coalescer.getInFlightCount() == 0) {
+        Thread.sleep(10);
+      }
+      // the same statement on the pool of another tenant runs on its own instead of waiting
+      CoalescingExecutor otherTenant = new CoalescingExecutor(new ImmediateExecutor(new UnpooledDataSource()), coalescer, 1000);
+      assertEquals(Arrays.<Object>asList("a", "b"), otherTenant.query(selectAll, null, RowBounds.DEFAULT, null));
+      assertEquals(1, joined.getCount());
+      release.countDown();
+      first.get();
+      assertEquals(2, executions.get());
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldRunTheQueryItselfAfterTheWaitTimeout() throws Exception {
+    ExecutorService threads = Executors.newFixedThreadPool(1);
+    try {
+      Future<List<Object>> first = threads.submit(query(new CoalescingExecutor(new BlockingExecutor(), coalescer, null)));
+      while (coalescer.getInFlightCount() == 0) {
+        Thread.sleep(10);
+      }
+      List<Object> second = new CoalescingExecutor(new ImmediateExecutor(), coalescer, 50).query(selectAll, null, RowBounds.DEFAULT, null);
+      assertEquals(Arrays.<Object>asList("a", "b"), second);
+      release.countDown();
+      first.get();
+      assertEquals(2, executions.get());
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldWaitAtMostTheStatementTimeoutWhenNoCoalescingTimeoutIsSet() throws Exception {
+    config.setDefaultStatementTimeout(1);
+    ExecutorService threads = Executors.newFixedThreadPool(1);
+    try {
+      Future<List<Object>> first = threads.submit(query(new CoalescingExecutor(new BlockingExecutor(), coalescer, null)));
+      while (coalescer.getInFlightCount() == 0) {
+        Thread.sleep(10);
+      }
+      long start = System.currentTimeMillis();
+      List<Object> second = new CoalescingExecutor(new ImmediateExecutor(), coalescer, null).query(selectAll, null, RowBounds.DEFAULT, null);
+      long waited = System.currentTimeMillis() - start;
+      assertEquals(Arrays.<Object>asList("a", "b"), second);
+      assertTrue("waited " + waited + " ms", waited >= 900 && waited < 4000);
+      release.countDown();
+      first.get();
+      assertEquals(2, executions.get());
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  private Callable<List<Object>> query(final Executor executor) {
+    return new Callable<List<Object>>() {
+      @Override
+      public List<Object> call() throws Exception {
+        return executor.query(selectAll, null, RowBounds.DEFAULT, null);
+      }
+    };
+  }
+
+  private class BlockingExecutor extends ImmediateExecutor {
+    @Override
+    public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey cacheKey, BoundSql boundSql)
+        throws SQLException {
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new SQLException(e);
+      }
+      return super.query(ms, parameter, rowBounds, resultHandler, cacheKey, boundSql);
+    }
+  }
+
+  private class ImmediateExecutor implements Executor {
+    private final Transaction transaction;
+
+    ImmediateExecutor() {
+      this(dataSource);
+    }
+
+    ImmediateExecutor(DataSource dataSource) {
+      this.transaction = new JdbcTransaction(dataSource, null, false);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey cacheKey, BoundSql boundSql)
+        throws SQLException {
+      executions.incrementAndGet();
+      List<Object> list = new ArrayList<Object>();
+      list.add("a");
+      list.add("b");
+      return (List<E>) list;
+    }
+
+    @Override
+    public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+      CacheKey cacheKey = new CacheKey();
+      cacheKey.update(ms.getId());
+      cacheKey.update(boundSql.getSql());
+      return cacheKey;
+    }
+
+    @Override
+    public boolean isCached(MappedStatement ms, CacheKey key) {
+      return false;
+    }
+
+    @Override
+    public int update(MappedStatement ms, Object parameter) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<List<Object>> queryMultiple(List<MappedStatement> mss, List<Object> parameters) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<BatchResult> flushStatements() throws SQLException {
+      return new ArrayList<BatchResult>();
+    }
+
+    @Override
+    public void commit(boolean required) throws SQLException {
+    }
+
+    @Override
+    public void rollback(boolean required) throws SQLException {
+    }
+
+    @Override
+    public void clearLocalCache() {
+    }
+
+    @Override
+    public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
+    }
+
+    @Override
+    public Transaction getTransaction() {
+      return transaction;
+    }
+
+    @Override
+    public void close(boolean forceRollback) {
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void setExecutorWrapper(Executor executor) {
+    }
+  }
+
+}
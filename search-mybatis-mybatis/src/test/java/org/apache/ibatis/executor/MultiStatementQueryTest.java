@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.datasource.routing.RoutingDataSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.transaction.routing.RoutingTransaction;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiStatementQueryTest {
+
+  private Configuration config;
+  private Connection primaryConnection;
+  private Connection replicaConnection;
+  private PreparedStatement primaryStatement;
+  private PreparedStatement joinedStatement;
+  private RoutingTransaction transaction;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new Configuration();
+    config.setMultiStatementSelectsEnabled(true);
+    DataSource primary = mock(DataSource.class);
+    DataSource replica = mock(DataSource.class);
+    primaryConnection = mockConnection(primary);
+    replicaConnection = mockConnection(replica);
+    primaryStatement = mockStatement(primaryConnection, "select * from audit where id = ?");
+    joinedStatement = mockStatement(replicaConnection, "select * from author where id = ?;\nselect * from blog where id = ?");
+    RoutingDataSource dataSource = new RoutingDataSource(primary);
+    dataSource.addReplica(replica);
+    transaction = new RoutingTransaction(dataSource, null, false, Collections.singleton("com.example.AuditMapper"));
+  }
+
+  @Test
+  public void shouldOnlyJoinStatementsRoutedToTheSameTarget() throws Exception {
+    Executor executor = new SimpleExecutor(config, transaction);
+    executor.queryMultiple(Arrays.asList(
+        select("com.example.AuthorMapper.selectAuthor", "select * from author where id = ?", 10),
+        select("com.example.AuditMapper.selectAudit", "select * from audit where id = ?", null),
+        select("com.example.BlogMapper.selectBlog", "select * from blog where id = ?", 50)),
+        Arrays.<Object>asList(101, 1, 201));
+    verify(replicaConnection).prepareStatement("select * from author where id = ?;\nselect * from blog where id = ?");
+    verify(replicaConnection, never()).prepareStatement("select * from audit where id = ?");
+    verify(primaryConnection).prepareStatement("select * from audit where id = ?");
+    verify(primaryStatement).setInt(1, 1);
+  }
+
+  @Test
+  public void shouldShiftParametersAndApplyTheLargestFetchSize() throws Exception {
+    Executor executor = new SimpleExecutor(config, transaction);
+    executor.queryMultiple(Arrays.asList(
+        select("com.example.AuthorMapper.selectAuthor", "select * from author where id = ?", 10),
+        select("com.example.BlogMapper.selectBlog", "select * from blog where id = ?", 50)),
+        Arrays.<Object>asList(101, 201));
+    verify(joinedStatement).setInt(1, 101);
+    verify(joinedStatement).setInt(2, 201);
+    verify(joinedStatement).setFetchSize(50);
+  }
+
+  private Connection mockConnection(DataSource dataSource) throws Exception {
+    Connection connection = mock(Connection.class);
+    DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+    when(metaData.supportsMultipleResultSets()).thenReturn(true);
+    when(connection.getMetaData()).thenReturn(metaData);
+    when(dataSource.getConnection()).thenReturn(connection);
+    return connection;
+  }
+
+  private PreparedStatement mockStatement(Connection connection, String sql) throws Exception {
+    PreparedStatement statement = mock(PreparedStatement.class);
+    when(statement.getUpdateCount()).thenReturn(-1);
+    when(connection.prepareStatement(sql)).thenReturn(statement);
+    return statement;
+  }
+
+  private MappedStatement select(String id, String sql, Integer fetchSize) {
+    ParameterMapping parameterMapping = new ParameterMapping.Builder(config, "id", Integer.class).build();
+    ResultMap resultMap = new ResultMap.Builder(config, id + "-Inline", Map.class, new ArrayList<ResultMapping>()).build();
+    return new MappedStatement.Builder(config, id, new StaticSqlSource(config, sql, Collections.singletonList(parameterMapping)), SqlCommandType.SELECT)
+        .resultMaps(Collections.singletonList(resultMap))
+        .fetchSize(fetchSize)
+        .build();
+  }
+
+}
@@ -0,0 +1,63 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceGroup;
+import org.apache.ibatis.datasource.pooled.ThreadLocalTenantResolver;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.transaction.DataSourceTransaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Test;
+
+public class ResultLoaderTest {
+
+  @Test
+  public void shouldLoadLazilyFromTheTenantOfTheCreatingSession() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("driver", "org.hsqldb.jdbcDriver");
+    props.setProperty("username", "sa");
+    PooledDataSourceGroup group = new PooledDataSourceGroup("jdbc:hsqldb:mem:loader_{tenant}", props);
+    try {
+      Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), group));
+      PooledDataSource tenantA = group.getTenantDataSource("a");
+      Executor executor = configuration.newExecutor(new JdbcTransaction(tenantA, null, false), ExecutorType.SIMPLE);
+      ResultLoader resultLoader = new ResultLoader(configuration, executor, null, null, Object.class, null, null);
+      executor.close(false);
+
+      // the lazy load runs later, on a thread that is set to another tenant
+      ThreadLocalTenantResolver.setCurrentTenant("b");
+      Executor lazyExecutor = resultLoader.newExecutor();
+      try {
+        assertSame(tenantA, ((DataSourceTransaction) lazyExecutor.getTransaction()).getDataSource());
+      } finally {
+        lazyExecutor.close(false);
+      }
+    } finally {
+      ThreadLocalTenantResolver.clearCurrentTenant();
+      group.forceCloseAll();
+    }
+  }
+
+}
@@ -16,13 +16,17 @@
 package org.apache.ibatis.executor.resultset;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -39,6 +43,7 @@ import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
 import org.junit.Assert;
@@ -82,7 +87,7 @@ public class DefaultResultSetHandlerTest {
     when(rs.getMetaData()).thenReturn(rsmd);
     when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
     when(rs.next()).thenReturn(true).thenReturn(false);
-    when(rs.getInt("CoLuMn1")).thenReturn(100);
+    when(rs.getInt(1)).thenReturn(100);
     when(rs.wasNull()).thenReturn(false);
     when(rsmd.getColumnCount()).thenReturn(1);
     when(rsmd.getColumnLabel(1)).thenReturn("CoLuMn1");
@@ -123,6 +128,114 @@ public class DefaultResultSetHandlerTest {
     }
   }
 
+  @Test
+  public void shouldReuseAutoMappingPlanForSameColumnLayout() throws Exception {
+    final Configuration config = new Configuration();
+    final MappedStatement ms = new MappedStatement.Builder(config, "testSelect", new StaticSqlSource(config, "some select statement"), SqlCommandType.SELECT).resultMaps(
+        new ArrayList<ResultMap>() {
+          {
+            add(new ResultMap.Builder(config, "testMap", Row.class, new ArrayList<ResultMapping>()).build());
+          }
+        }).build();
+
+    when(stmt.getResultSet()).thenReturn(rs);
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+    when(rs.next()).thenReturn(true).thenReturn(false).thenReturn(true).thenReturn(false);
+    when(rs.getInt(1)).thenReturn(1).thenReturn(2);
+    when(rs.getString(2)).thenReturn("a").thenReturn("b");
+    when(rs.wasNull()).thenReturn(false);
+    when(rsmd.getColumnCount()).thenReturn(2);
+    when(rsmd.getColumnLabel(1)).thenReturn("ID");
+    when(rsmd.getColumnLabel(2)).thenReturn("NAME");
+    when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnType(2)).thenReturn(Types.VARCHAR);
+    when(rsmd.getColumnClassName(1)).thenReturn(Integer.class.getCanonicalName());
+    when(rsmd.getColumnClassName(2)).thenReturn(String.class.getCanonicalName());
+    when(stmt.getConnection()).thenReturn(conn);
+    when(conn.getMetaData()).thenReturn(dbmd);
+    when(dbmd.supportsMultipleResultSets()).thenReturn(false);
+
+    final ResultSetLayout layout = ms.getResultSetLayout(ResultSetLayout.signatureOf(
+        Arrays.asList("ID", "NAME"), Arrays.asList(Integer.class.getCanonicalName(), String.class.getCanonicalName()),
+        Arrays.asList(JdbcType.INTEGER, JdbcType.VARCHAR)));
+
+    for (int i = 1; i <= 2; i++) {
+      final DefaultResultSetHandler handler = new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds());
+      final List<Object> results = handler.handleResultSets(stmt);
+      assertEquals(1, results.size());
+      assertEquals(i, ((Row) results.get(0)).getId());
+      assertEquals(i == 1 ? "a" : "b", ((Row) results.get(0)).getName());
+      assertNotNull(layout.getAutoMappingPlan("testMap:null"));
+    }
+  }
+
+  @Test
+  public void shouldReadMappedColumnsByIndex() throws Exception {
+    final Configuration config = new Configuration();
+    final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
+    final MappedStatement ms = new MappedStatement.Builder(config, "testSelect", new StaticSqlSource(config, "some select statement"), SqlCommandType.SELECT).resultMaps(
+        new ArrayList<ResultMap>() {
+          {
+            add(new ResultMap.Builder(config, "testMap", HashMap.class, new ArrayList<ResultMapping>() {
+              {
+                add(new ResultMapping.Builder(config, "first", "first_name", registry.getTypeHandler(String.class)).build());
+                add(new ResultMapping.Builder(config, "last", "Last_Name", registry.getTypeHandler(String.class)).build());
+              }
+            }).build());
+          }
+        }).build();
+
+    when(stmt.getResultSet()).thenReturn(rs);
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+    when(rs.next()).thenReturn(true).thenReturn(false);
+    when(rs.getString(2)).thenReturn("Clinton");
+    when(rs.getString(3)).thenReturn("Begin");
+    when(rs.wasNull()).thenReturn(false);
+    when(rsmd.getColumnCount()).thenReturn(3);
+    when(rsmd.getColumnLabel(1)).thenReturn("ID");
+    when(rsmd.getColumnLabel(2)).thenReturn("FIRST_NAME");
+    when(rsmd.getColumnLabel(3)).thenReturn("LAST_NAME");
+    when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnType(2)).thenReturn(Types.VARCHAR);
+    when(rsmd.getColumnType(3)).thenReturn(Types.VARCHAR);
+    when(rsmd.getColumnClassName(1)).thenReturn(Integer.class.getCanonicalName());
+    when(rsmd.getColumnClassName(2)).thenReturn(String.class.getCanonicalName());
+    when(rsmd.getColumnClassName(3)).thenReturn(String.class.getCanonicalName());
+    when(stmt.getConnection()).thenReturn(conn);
+    when(conn.getMetaData()).thenReturn(dbmd);
+    when(dbmd.supportsMultipleResultSets()).thenReturn(false);
+
+    final DefaultResultSetHandler handler = new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds());
+    final List<Object> results = handler.handleResultSets(stmt);
+    assertEquals(1, results.size());
+    assertEquals("Clinton", ((HashMap) results.get(0)).get("first"));
+    assertEquals("Begin", ((HashMap) results.get(0)).get("last"));
+    verify(rs, never()).getString(anyString());
+  }
+
+  public static class Row {
+    private int id;
+    private String name;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+
   MappedStatement getMappedStatement() {
     final Configuration config = new Configuration();
     final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
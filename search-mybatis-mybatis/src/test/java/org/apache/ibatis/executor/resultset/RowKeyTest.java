@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.type.ByteArrayTypeHandler;
+import org.apache.ibatis.type.TypeHandler;
+import org.junit.Test;
+
+public class RowKeyTest {
+
+  @Test
+  public void shouldTestRowKeysEqual() throws Exception {
+    RowKey.Columns columns = columns("blog", "ID", "NAME");
+    RowKey key1 = columns.createRowKey(resultSet("1", "hello"));
+    RowKey key2 = columns("blog", "ID", "NAME").createRowKey(resultSet("1", "hello"));
+    assertTrue(key1.equals(key2));
+    assertTrue(key2.equals(key1));
+    assertTrue(key1.hashCode() == key2.hashCode());
+    assertTrue(key1.hasValues());
+  }
+
+  @Test
+  public void shouldTestRowKeysNotEqualDueToColumns() throws Exception {
+    RowKey key1 = columns("blog", "A_ID").createRowKey(resultSet("1"));
+    RowKey key2 = columns("blog", "B_ID").createRowKey(resultSet("1"));
+    RowKey key3 = columns("post", "A_ID").createRowKey(resultSet("1"));
+    assertFalse(key1.equals(key2));
+    assertFalse(key1.equals(key3));
+  }
+
+  @Test
+  public void shouldTestRowKeysNotEqualDueToNulls() throws Exception {
+    RowKey.Columns columns = columns("blog", "ID", "NAME");
+    RowKey key1 = columns.createRowKey(resultSet("1", null));
+    RowKey key2 = columns.createRowKey(resultSet(null, "1"));
+    assertFalse(key1.equals(key2));
+    assertFalse(key2.equals(key1));
+  }
+
+  @Test
+  public void shouldNotCombineKeysWithoutValues() throws Exception {
+    RowKey.Columns columns = columns("blog", "ID");
+    RowKey empty = columns.createRowKey(resultSet((String) null));
+    RowKey parent = columns("author", "ID").createRowKey(resultSet("2"));
+    RowKey child = columns.createRowKey(resultSet("1"));
+    assertFalse(empty.hasValues());
+    assertSame(RowKey.NULL_ROW_KEY, empty.combine(parent));
+    assertSame(RowKey.NULL_ROW_KEY, parent.combine(empty));
+    assertSame(RowKey.NULL_ROW_KEY, child.combine(RowKey.NULL_ROW_KEY));
+    RowKey combined = child.combine(parent);
+    assertEquals(combined, columns.createRowKey(resultSet("1")).combine(parent));
+    assertFalse(combined.equals(child));
+    assertFalse(combined.equals(child.combine(columns("author", "ID").createRowKey(resultSet("3")))));
+  }
+
+  @Test
+  public void shouldTestRowKeysWithBinaryArrays() throws Exception {
+    ResultSet rs1 = mock(ResultSet.class);
+    ResultSet rs2 = mock(ResultSet.class);
+    when(rs1.getBytes(1)).thenReturn(new byte[] { 1 });
+    when(rs2.getBytes(1)).thenReturn(new byte[] { 1 });
+    List<TypeHandler<?>> typeHandlers = Arrays.<TypeHandler<?>>asList(new ByteArrayTypeHandler());
+    RowKey.Columns columns = new RowKey.Columns("blog", Arrays.asList("DATA"), new int[] { 1 }, typeHandlers);
+    RowKey key1 = columns.createRowKey(rs1);
+    RowKey key2 = columns.createRowKey(rs2);
+    assertTrue(key1.equals(key2));
+    assertTrue(key1.hashCode() == key2.hashCode());
+  }
+
+  private RowKey.Columns columns(String resultMapId, String... columns) {
+    int[] columnIndexes = new int[columns.length];
+    TypeHandler<?>[] typeHandlers = new TypeHandler<?>[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      columnIndexes[i] = i + 1;
+    }
+    return new RowKey.Columns(resultMapId, Arrays.asList(columns), columnIndexes, Arrays.asList(typeHandlers));
+  }
+
+  private ResultSet resultSet(String... values) throws Exception {
+    ResultSet rs = mock(ResultSet.class);
+    for (int i = 0; i < values.length; i++) {
+      when(rs.getString(i + 1)).thenReturn(values[i]);
+    }
+    return rs;
+  }
+
+}
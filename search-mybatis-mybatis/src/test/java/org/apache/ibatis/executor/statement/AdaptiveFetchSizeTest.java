@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class AdaptiveFetchSizeTest {
+
+  @Test
+  public void shouldHaveNoFetchSizeBeforeTheFirstExecution() {
+    AdaptiveFetchSize adaptiveFetchSize = new AdaptiveFetchSize();
+    assertNull(adaptiveFetchSize.getFetchSize("select"));
+  }
+
+  @Test
+  public void shouldFollowRowCountsWithinBounds() {
+    AdaptiveFetchSize adaptiveFetchSize = new AdaptiveFetchSize();
+    adaptiveFetchSize.setMinFetchSize(10);
+    adaptiveFetchSize.setMaxFetchSize(500);
+    adaptiveFetchSize.record("lookup", 1);
+    assertEquals(Integer.valueOf(10), adaptiveFetchSize.getFetchSize("lookup"));
+    adaptiveFetchSize.record("report", 99);
+    assertEquals(Integer.valueOf(100), adaptiveFetchSize.getFetchSize("report"));
+    adaptiveFetchSize.record("export", 100000);
+    assertEquals(Integer.valueOf(500), adaptiveFetchSize.getFetchSize("export"));
+    assertEquals(3, adaptiveFetchSize.getFetchSizes().size());
+  }
+
+  @Test
+  public void shouldRiseAtOnceAndDecayGradually() {
+    AdaptiveFetchSize adaptiveFetchSize = new AdaptiveFetchSize();
+    adaptiveFetchSize.setMinFetchSize(1);
+    adaptiveFetchSize.record("select", 100);
+    adaptiveFetchSize.record("select", 20);
+    assertEquals(Integer.valueOf(81), adaptiveFetchSize.getFetchSize("select"));
+    adaptiveFetchSize.record("select", 200);
+    assertEquals(Integer.valueOf(201), adaptiveFetchSize.getFetchSize("select"));
+  }
+
+}
@@ -0,0 +1,152 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.ibatis.session.Deadline;
+import org.junit.After;
+import org.junit.Test;
+
+public class StatementWatchdogTest {
+
+  @After
+  public void clearDeadline() {
+    Deadline.clearCurrent();
+    Thread.interrupted();
+  }
+
+  @Test
+  public void shouldCancelARunningStatementWhenTheDeadlineExpires() throws Exception {
+    SlowStatement slow = new SlowStatement(0);
+    Deadline.setCurrent(Deadline.after(200, TimeUnit.MILLISECONDS));
+    long start = System.currentTimeMillis();
+    try {
+      execute(slow.statement);
+      fail("Expected SQLTimeoutException");
+    } catch (SQLTimeoutException e) {
+      assertTrue(slow.cancelled);
+      assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+  }
+
+  @Test
+  public void shouldCancelARunningStatementWhenTheThreadIsInterrupted() throws Exception {
+    SlowStatement slow = new SlowStatement(0);
+    Deadline.setCurrent(Deadline.after(1, TimeUnit.MINUTES));
+    final Thread caller = Thread.currentThread();
+    ScheduledExecutorService interrupter = Executors.newSingleThreadScheduledExecutor();
+    try {
+      interrupter.schedule(new Runnable() {
+        @Override
+        public void run() {
+          caller.interrupt();
+        }
+      }, 100, TimeUnit.MILLISECONDS);
+      execute(slow.statement);
+      fail("Expected SQLException");
+    } catch (SQLException e) {
+      assertFalse(e instanceof SQLTimeoutException);
+      assertTrue(e.getMessage().contains("interrupted"));
+      assertTrue(slow.cancelled);
+    } finally {
+      interrupter.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldUseTheRemainingTimeAsQueryTimeout() throws Exception {
+    SlowStatement slow = new SlowStatement(0);
+    Deadline.setCurrent(Deadline.after(2500, TimeUnit.MILLISECONDS));
+    StatementWatchdog watchdog = StatementWatchdog.watch(slow.statement);
+    watchdog.stop();
+    // rounded up to whole seconds, then restored for statements reused without a deadline
+    assertEquals("[3, 0]", slow.queryTimeouts.toString());
+  }
+
+  @Test
+  public void shouldKeepAShorterQueryTimeout() throws Exception {
+    SlowStatement slow = new SlowStatement(1);
+    Deadline.setCurrent(Deadline.after(1, TimeUnit.MINUTES));
+    StatementWatchdog.watch(slow.statement).stop();
+    assertTrue(slow.queryTimeouts.isEmpty());
+  }
+
+  private void execute(Statement statement) throws SQLException {
+    StatementWatchdog watchdog = StatementWatchdog.watch(statement);
+    try {
+      statement.execute("select");
+    } catch (SQLException e) {
+      throw watchdog.translate(e);
+    } finally {
+      watchdog.stop();
+    }
+  }
+
+  /*
+   * A statement whose execution blocks, without reacting to interrupts like a driver in socket I/O, until it is cancelled
+   */
+  private static class SlowStatement implements InvocationHandler {
+
+    private final Statement statement = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Statement.class }, this);
+    private final List<Integer> queryTimeouts = new ArrayList<Integer>();
+    private final int queryTimeout;
+    private volatile boolean cancelled;
+
+    SlowStatement(int queryTimeout) {
+      this.queryTimeout = queryTimeout;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("getQueryTimeout".equals(name)) {
+        return queryTimeout;
+      } else if ("setQueryTimeout".equals(name)) {
+        queryTimeouts.add((Integer) args[0]);
+      } else if ("cancel".equals(name)) {
+        cancelled = true;
+      } else if ("execute".equals(name)) {
+        long end = System.currentTimeMillis() + 5000;
+        while (!cancelled && System.currentTimeMillis() < end) {
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        if (cancelled) {
+          throw new SQLException("Statement cancelled");
+        }
+        return false;
+      }
+      return null;
+    }
+  }
+
+}
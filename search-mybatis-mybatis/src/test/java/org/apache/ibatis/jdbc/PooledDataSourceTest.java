@@ -16,17 +16,33 @@
 package org.apache.ibatis.jdbc;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.PoolSnapshot;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceGroup;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceGroupFactory;
+import org.apache.ibatis.datasource.pooled.ThreadLocalTenantResolver;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import org.apache.ibatis.session.ConnectionPriority;
+import org.apache.ibatis.session.Deadline;
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.Test;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PooledDataSourceTest extends BaseDataTest {
 
@@ -71,6 +87,317 @@ public class PooledDataSourceTest extends BaseDataTest {
     }
   }
 
+  @Test
+  public void shouldHandOffConnectionsToWaitingThreads() throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(2);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolTimeToWait(500);
+      final int threads = 8;
+      final int iterations = 50;
+      final AtomicInteger failures = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(threads);
+      for (int i = 0; i < threads; i++) {
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < iterations; j++) {
+                Connection c = ds.getConnection();
+                try {
+                  c.getAutoCommit();
+                } finally {
+                  c.close();
+                }
+              }
+            } catch (Exception e) {
+              failures.incrementAndGet();
+            } finally {
+              done.countDown();
+            }
+          }
+        }.start();
+      }
+      done.await();
+      assertEquals(0, failures.get());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+      assertEquals(threads * iterations, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldKeepMinimumIdleConnectionsInBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(5);
+      ds.setPoolMaximumIdleConnections(5);
+      ds.setPoolMinimumIdleConnections(2);
+      ds.setPoolMaximumIdleTime(100);
+      ds.setPoolHousekeepingInterval(20);
+      List<Connection> connections = new ArrayList<Connection>();
+      for (int i = 0; i < 5; i++) {
+        connections.add(ds.getConnection());
+      }
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(5, ds.getPoolState().getIdleConnectionCount());
+      Thread.sleep(500);
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      ds.forceCloseAll();
+      Thread.sleep(200);
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.setPoolHousekeepingInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReportStatisticsAndLeaksInSnapshot() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolLeakDetectionThreshold(50);
+      for (int i = 0; i < 10; i++) {
+        ds.getConnection().close();
+      }
+      Connection leaked = ds.getConnection();
+      Thread.sleep(300);
+      PoolSnapshot snapshot = ds.getPoolState().snapshot();
+      assertEquals(11, snapshot.getRequestCount());
+      assertEquals(11, snapshot.getAcquireTime().getCount());
+      assertEquals(10, snapshot.getLeaseTime().getCount());
+      assertEquals(1, snapshot.getActiveConnectionCount());
+      assertEquals(1, snapshot.getLeakedConnectionCount());
+      leaked.close();
+    } finally {
+      ds.setPoolLeakDetectionThreshold(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolPreparedStatementCacheSize(5);
+      for (int i = 0; i < 3; i++) {
+        Connection c = ds.getConnection();
+        PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM PRODUCT");
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        rs.close();
+        ps.close();
+        assertTrue(ps.isClosed());
+        c.close();
+      }
+      assertEquals(2, ds.getPoolState().getStatementCacheHitCount());
+      assertEquals(1, ds.getPoolState().getStatementCacheMissCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldResetStatementSettingsBeforeReuse() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolPreparedStatementCacheSize(5);
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM PRODUCT");
+      int maxFieldSize = ps.getMaxFieldSize();
+      boolean poolable = ps.isPoolable();
+      ps.setMaxFieldSize(maxFieldSize + 10);
+      ps.setPoolable(!poolable);
+      // left open by the borrower
+      ResultSet rs = ps.executeQuery();
+      ps.close();
+      assertTrue(rs.isClosed());
+      ps = c.prepareStatement("SELECT COUNT(*) FROM PRODUCT");
+      assertEquals(maxFieldSize, ps.getMaxFieldSize());
+      assertEquals(poolable, ps.isPoolable());
+      assertNull(ps.getWarnings());
+      // a cursor name cannot be read back, so the statement must not be cached again
+      ps.setCursorName("leaked");
+      ps.close();
+      c.close();
+      c = ds.getConnection();
+      c.prepareStatement("SELECT COUNT(*) FROM PRODUCT").close();
+      c.close();
+      assertEquals(1, ds.getPoolState().getStatementCacheHitCount());
+      assertEquals(2, ds.getPoolState().getStatementCacheMissCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldApplyDeferredAutoCommitBeforeRunningStatements() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolTrackConnectionState(true);
+      ds.setPoolMaximumActiveConnections(1);
+      Connection c = ds.getConnection();
+      c.setAutoCommit(false);
+      c.setAutoCommit(true);
+      c.setAutoCommit(false);
+      assertEquals(false, c.getAutoCommit());
+      PreparedStatement ps = c.prepareStatement("INSERT INTO SIGNON VALUES ('deferred', 'pwd')");
+      ps.executeUpdate();
+      ps.close();
+      c.rollback();
+      c.close();
+      c = ds.getConnection();
+      assertEquals(false, c.getAutoCommit());
+      c.setAutoCommit(true);
+      ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM SIGNON WHERE USERNAME = 'deferred'");
+      assertTrue(rs.next());
+      assertEquals(0, rs.getInt(1));
+      rs.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldRollBackStatementsPreparedBeforeTheLastCommit() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolTrackConnectionState(true);
+      ds.setPoolMaximumActiveConnections(1);
+      Connection c = ds.getConnection();
+      c.setAutoCommit(false);
+      PreparedStatement ps = c.prepareStatement("INSERT INTO SIGNON VALUES ('held', 'pwd')");
+      c.commit();
+      ps.executeUpdate();
+      ps.close();
+      c.rollback();
+      ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM SIGNON WHERE USERNAME = 'held'");
+      assertTrue(rs.next());
+      assertEquals(0, rs.getInt(1));
+      rs.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReclaimIdleConnectionsOfColdTenants() throws Exception {
+    PooledDataSourceGroupFactory factory = new PooledDataSourceGroupFactory();
+    Properties props = new Properties();
+    props.setProperty("driver", "org.hsqldb.jdbcDriver");
+    props.setProperty("urlTemplate", "jdbc:hsqldb:mem:tenant_{tenant}");
+    props.setProperty("username", "sa");
+    props.setProperty("password", "");
+    props.setProperty("maximumConnections", "3");
+    props.setProperty("poolMaximumActiveConnections", "3");
+    factory.setProperties(props);
+    PooledDataSourceGroup group = (PooledDataSourceGroup) factory.getDataSource();
+    try {
+      List<Connection> connections = new ArrayList<Connection>();
+      ThreadLocalTenantResolver.setCurrentTenant("cold");
+      for (int i = 0; i < 3; i++) {
+        connections.add(group.getConnection());
+      }
+      for (Connection c : connections) {
+        c.close();
+      }
+      connections.clear();
+      assertEquals(3, group.getPoolState("cold").getIdleConnectionCount());
+      ThreadLocalTenantResolver.setCurrentTenant("busy");
+      for (int i = 0; i < 2; i++) {
+        connections.add(group.getConnection());
+      }
+      assertEquals(3, group.getConnectionCount());
+      assertEquals(1, group.getPoolState("cold").getIdleConnectionCount());
+      assertEquals(2, group.getPoolState("busy").getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+    } finally {
+      ThreadLocalTenantResolver.clearCurrentTenant();
+      group.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldKeepReservedConnectionsForHighPriorityRequests() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(2);
+      ds.setPoolReservedHighPriorityConnections(1);
+      ds.setPoolMaximumLowPriorityWaiters(0);
+      ConnectionPriority.setCurrent(ConnectionPriority.LOW);
+      Connection low = ds.getConnection();
+      try {
+        ds.getConnection();
+        fail("Expected the LOW priority request to be rejected");
+      } catch (SQLTransientConnectionException e) {
+        assertEquals(1, ds.getPoolState().getRejectedRequestCount());
+      }
+      ConnectionPriority.setCurrent(ConnectionPriority.HIGH);
+      Connection high = ds.getConnection();
+      assertEquals(2, ds.getPoolState().getActiveConnectionCount());
+      high.close();
+      low.close();
+    } finally {
+      ConnectionPriority.clearCurrent();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldStopWaitingForAConnectionAtTheDeadline() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolTimeToWait(20000);
+      Connection held = ds.getConnection();
+      Deadline.setCurrent(Deadline.after(300, TimeUnit.MILLISECONDS));
+      long start = System.currentTimeMillis();
+      try {
+        ds.getConnection();
+        fail("Expected SQLTimeoutException");
+      } catch (SQLTimeoutException e) {
+        long waited = System.currentTimeMillis() - start;
+        assertTrue("waited " + waited + " ms", waited >= 250 && waited < 5000);
+        assertEquals(1, ds.getPoolState().getRejectedRequestCount());
+      }
+      held.close();
+    } finally {
+      Deadline.clearCurrent();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldWarmUpIdleConnectionsInParallel() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumIdleConnections(3);
+      ds.setPoolWarmupConnections(5);
+      assertEquals(3, ds.warmUp());
+      assertEquals(3, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(3, ds.getPoolState().getWarmupConnectionCount());
+      assertEquals(0, ds.warmUp());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
   @Test
   public void shouldNotFailCallingToStringOverAnInvalidConnection() throws Exception {
     PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
@@ -18,16 +18,23 @@ package org.apache.ibatis.session;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.Reader;
+import java.sql.SQLTimeoutException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javassist.util.proxy.Proxy;
 
@@ -46,6 +53,7 @@ import org.apache.ibatis.domain.blog.mappers.AuthorMapper;
 import org.apache.ibatis.domain.blog.mappers.AuthorMapperWithMultipleHandlers;
 import org.apache.ibatis.domain.blog.mappers.AuthorMapperWithRowBounds;
 import org.apache.ibatis.domain.blog.mappers.BlogMapper;
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.exceptions.TooManyResultsException;
 import org.apache.ibatis.executor.result.DefaultResultHandler;
 import org.apache.ibatis.io.Resources;
@@ -158,6 +166,75 @@ public class SqlSessionTest extends BaseDataTest {
     }
   }
 
+  @Test
+  public void shouldSelectMultipleStatementsTogether() throws Exception {
+    sqlMapper.getConfiguration().setMultiStatementSelectsEnabled(true);
+    SqlSession session = sqlMapper.openSession();
+    try {
+      // Derby does not accept several statements at once, so this also covers the fallback
+      List<List<Object>> results = session.selectMultiple(new MultiSelect()
+          .add("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors")
+          .add("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101)
+          .add("org.apache.ibatis.domain.blog.mappers.BlogMapper.selectAllPosts"));
+      assertEquals(3, results.size());
+      assertEquals(2, results.get(0).size());
+      assertEquals(101, ((Author) results.get(1).get(0)).getId());
+      assertEquals(5, results.get(2).size());
+      // served from the local cache
+      assertSame(results.get(1), session.selectList("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101));
+    } finally {
+      session.close();
+      sqlMapper.getConfiguration().setMultiStatementSelectsEnabled(false);
+    }
+  }
+
+  @Test
+  public void shouldRunIndependentQueriesAsynchronously() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      AsyncSqlSession session = sqlMapper.openAsyncSession(executorService);
+      Future<List<Author>> authors = session.selectListAsync("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors");
+      Future<Author> author = session.selectOneAsync("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101);
+      Future<Object> tooMany = session.selectOneAsync("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors");
+      assertEquals(2, authors.get().size());
+      assertEquals("jim", author.get().getUsername());
+      try {
+        tooMany.get();
+        fail("Expected TooManyResultsException");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof TooManyResultsException);
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldFailStatementsOnceTheDeadlineExpired() throws Exception {
+    Deadline.setCurrent(Deadline.after(1, TimeUnit.MINUTES));
+    try {
+      SqlSession session = sqlMapper.openSession();
+      try {
+        Author author = session.selectOne("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101);
+        assertEquals("jim", author.getUsername());
+      } finally {
+        session.close();
+      }
+      Deadline.setCurrent(Deadline.after(0, TimeUnit.MILLISECONDS));
+      session = sqlMapper.openSession();
+      try {
+        session.selectOne("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor", 101);
+        fail("Expected PersistenceException");
+      } catch (PersistenceException e) {
+        assertTrue(e.getCause() instanceof SQLTimeoutException);
+      } finally {
+        session.close();
+      }
+    } finally {
+      Deadline.clearCurrent();
+    }
+  }
+
   @Test(expected=TooManyResultsException.class)
   public void shouldFailWithTooManyResultsException() throws Exception {
     SqlSession session = sqlMapper.openSession(TransactionIsolationLevel.SERIALIZABLE);
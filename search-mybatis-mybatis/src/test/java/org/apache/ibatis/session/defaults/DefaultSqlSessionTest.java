@@ -0,0 +1,63 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.defaults;
+
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.Test;
+
+public class DefaultSqlSessionTest {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldOnlyCloseCursorsThatAreStillOpen() throws Exception {
+    Configuration configuration = new Configuration();
+    MappedStatement ms = new MappedStatement.Builder(configuration, "selectAll", mock(SqlSource.class), SqlCommandType.SELECT).build();
+    configuration.addMappedStatement(ms);
+    Cursor<Object> closedByCaller = mock(Cursor.class);
+    Cursor<Object> readToTheEnd = mock(Cursor.class);
+    Cursor<Object> leftOpen = mock(Cursor.class);
+    Iterator<Object> emptyIterator = mock(Iterator.class);
+    when(readToTheEnd.iterator()).thenReturn(emptyIterator);
+    Executor executor = mock(Executor.class);
+    when(executor.<Object> queryCursor(ms, null, RowBounds.DEFAULT)).thenReturn(closedByCaller, readToTheEnd, leftOpen);
+
+    DefaultSqlSession sqlSession = new DefaultSqlSession(configuration, executor);
+    sqlSession.selectCursor("selectAll").close();
+    assertFalse(sqlSession.selectCursor("selectAll").iterator().hasNext());
+    sqlSession.selectCursor("selectAll");
+    sqlSession.close();
+
+    verify(closedByCaller, times(1)).close();
+    verify(readToTheEnd, never()).close();
+    verify(leftOpen).close();
+  }
+
+}
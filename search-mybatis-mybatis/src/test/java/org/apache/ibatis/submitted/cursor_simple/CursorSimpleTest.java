@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cursor_simple;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.Iterator;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CursorSimpleTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    // create a SqlSessionFactory
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_simple/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+    sqlSessionFactory.getConfiguration().addMapper(Mapper.class);
+
+    // populate in-memory database
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_simple/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldIterateAllUsers() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Cursor<User> usersCursor = mapper.getAllUsers();
+      Assert.assertFalse(usersCursor.isOpen());
+      Assert.assertEquals(-1, usersCursor.getCurrentIndex());
+
+      Iterator<User> iterator = usersCursor.iterator();
+      Assert.assertTrue(iterator.hasNext());
+      User user = iterator.next();
+      Assert.assertEquals("User1", user.getName());
+      Assert.assertEquals(0, usersCursor.getCurrentIndex());
+      Assert.assertTrue(usersCursor.isOpen());
+
+      int count = 1;
+      while (iterator.hasNext()) {
+        user = iterator.next();
+        count++;
+        Assert.assertEquals("User" + count, user.getName());
+      }
+      Assert.assertEquals(5, count);
+      Assert.assertEquals(4, usersCursor.getCurrentIndex());
+      Assert.assertFalse(usersCursor.isOpen());
+      Assert.assertTrue(usersCursor.isConsumed());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldApplyRowBoundsAndStopAtTheLimit() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<User> usersCursor = sqlSession.selectCursor("org.apache.ibatis.submitted.cursor_simple.Mapper.getAllUsers", null, new RowBounds(1, 2));
+      Iterator<User> iterator = usersCursor.iterator();
+      Assert.assertEquals("User2", iterator.next().getName());
+      Assert.assertEquals("User3", iterator.next().getName());
+      Assert.assertFalse(iterator.hasNext());
+      Assert.assertFalse(usersCursor.isOpen());
+      Assert.assertFalse(usersCursor.isConsumed());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldBeClosedWhenTheSessionIsClosed() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    Cursor<User> usersCursor;
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      usersCursor = mapper.getUsers(new RowBounds(0, 3));
+      Iterator<User> iterator = usersCursor.iterator();
+      Assert.assertEquals("User1", iterator.next().getName());
+      Assert.assertTrue(usersCursor.isOpen());
+    } finally {
+      sqlSession.close();
+    }
+    Assert.assertFalse(usersCursor.isOpen());
+  }
+}
@@ -0,0 +1,43 @@
+--
+--    Copyright 2009-2012 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+
+drop table employee if exists;
+drop table department if exists;
+
+create table department (
+  id int,
+  name varchar(20),
+  manager_id int
+);
+
+create table employee (
+  id int,
+  name varchar(20),
+  department_id int
+);
+
+insert into department (id, name, manager_id) values(1, 'Sales', 1);
+insert into department (id, name, manager_id) values(2, 'Support', 1);
+insert into department (id, name, manager_id) values(3, 'Research', 4);
+insert into department (id, name, manager_id) values(4, 'Archive', null);
+
+insert into employee (id, name, department_id) values(1, 'Ann', 1);
+insert into employee (id, name, department_id) values(2, 'Bob', 1);
+insert into employee (id, name, department_id) values(3, 'Carl', 2);
+insert into employee (id, name, department_id) values(4, 'Dora', 3);
+insert into employee (id, name, department_id) values(5, 'Emil', 3);
+insert into employee (id, name, department_id) values(6, 'Fay', 3);
@@ -0,0 +1,205 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.nested_select_batch;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NestedSelectBatchTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+  private static StatementCounter statementCounter = new StatementCounter();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    // create a SqlSessionFactory
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/nested_select_batch/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+    sqlSessionFactory.getConfiguration().addInterceptor(statementCounter);
+
+    // populate in-memory database
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/nested_select_batch/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldLoadNestedSelectsInBatches() {
+    List<Department> batched = getDepartments(2);
+    // 1 for the departments, 1 for the managers {1, 4}, 2 for the employees of {1, 2} and {3, 4}
+    Assert.assertEquals(4, statementCounter.count);
+
+    List<Department> perRow = getDepartments(0);
+    Assert.assertEquals(7, statementCounter.count);
+
+    Assert.assertEquals(describe(perRow), describe(batched));
+    Assert.assertEquals("Ann", batched.get(0).getManager().getName());
+    Assert.assertSame(batched.get(0).getManager(), batched.get(1).getManager());
+    Assert.assertEquals("Dora", batched.get(2).getManager().getName());
+    Assert.assertNull(batched.get(3).getManager());
+    Assert.assertEquals(2, batched.get(0).getEmployees().size());
+    Assert.assertEquals(1, batched.get(1).getEmployees().size());
+    Assert.assertEquals(3, batched.get(2).getEmployees().size());
+    Assert.assertTrue(batched.get(3).getEmployees().isEmpty());
+  }
+
+  @Test
+  public void shouldLoadLazySiblingsTogether() {
+    statementCounter.count = 0;
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<Department> departments = sqlSession.getMapper(Mapper.class).getLazyDepartments();
+      Assert.assertEquals(1, statementCounter.count);
+      Assert.assertEquals(1, departments.get(1).getEmployees().size());
+      // the employees of all 4 departments, 2 departments per query
+      Assert.assertEquals(3, statementCounter.count);
+      Assert.assertEquals(2, departments.get(0).getEmployees().size());
+      Assert.assertEquals(3, departments.get(2).getEmployees().size());
+      Assert.assertTrue(departments.get(3).getEmployees().isEmpty());
+      Assert.assertEquals("Carl", departments.get(1).getEmployees().get(0).getName());
+      Assert.assertEquals(3, statementCounter.count);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldStartNewLazyGroupWhenStreamingThroughCursor() throws Exception {
+    statementCounter.count = 0;
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<Department> cursor = sqlSession.selectCursor("org.apache.ibatis.submitted.nested_select_batch.Mapper.getLazyDepartments");
+      List<Department> departments = new ArrayList<Department>();
+      for (Department department : cursor) {
+        departments.add(department);
+      }
+      cursor.close();
+      assertLoadedPerGroup(departments);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldStartNewLazyGroupWhenStreamingThroughResultHandler() {
+    statementCounter.count = 0;
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      final List<Department> departments = new ArrayList<Department>();
+      sqlSession.select("org.apache.ibatis.submitted.nested_select_batch.Mapper.getLazyDepartments", new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          departments.add((Department) context.getResultObject());
+        }
+      });
+      assertLoadedPerGroup(departments);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  /*
+   * With a lazyLoadingBatchSize of 2 the 4 streamed departments form the groups {1, 2} and {3, 4}
+   */
+  private void assertLoadedPerGroup(List<Department> departments) {
+    Assert.assertEquals(4, departments.size());
+    Assert.assertEquals(1, statementCounter.count);
+    // loads the employees of {3, 4} only
+    Assert.assertEquals(3, departments.get(2).getEmployees().size());
+    Assert.assertEquals(2, statementCounter.count);
+    Assert.assertTrue(departments.get(3).getEmployees().isEmpty());
+    Assert.assertEquals(2, statementCounter.count);
+    // the first group is still unloaded and loads {1, 2} on its own
+    Assert.assertEquals(1, departments.get(1).getEmployees().size());
+    Assert.assertEquals(3, statementCounter.count);
+    Assert.assertEquals(2, departments.get(0).getEmployees().size());
+    Assert.assertEquals(3, statementCounter.count);
+  }
+
+  private List<Department> getDepartments(int nestedSelectBatchSize) {
+    sqlSessionFactory.getConfiguration().setNestedSelectBatchSize(nestedSelectBatchSize);
+    statementCounter.count = 0;
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      return sqlSession.getMapper(Mapper.class).getDepartments();
+    } finally {
+      sqlSession.close();
+      sqlSessionFactory.getConfiguration().setNestedSelectBatchSize(2);
+    }
+  }
+
+  private String describe(List<Department> departments) {
+    StringBuilder sb = new StringBuilder();
+    for (Department department : departments) {
+      sb.append(department.getId()).append(' ').append(department.getName()).append(" manager=");
+      sb.append(department.getManager() == null ? null : department.getManager().getName()).append(" employees=");
+      for (Employee employee : department.getEmployees()) {
+        sb.append(employee.getName()).append('/').append(employee.getDepartmentId()).append(',');
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class }))
+  public static class StatementCounter implements Interceptor {
+
+    private int count;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      count++;
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+  }
+
+}
@@ -16,12 +16,26 @@
 package org.apache.ibatis.submitted.nestedresulthandler;
 
 import java.io.Reader;
+import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
@@ -33,12 +47,22 @@ import org.junit.Test;
 
 public class NestedResultHandlerTest {
   private static SqlSessionFactory sqlSessionFactory;
+  private static final ResultSetHandlerCapture resultSetHandlers = new ResultSetHandlerCapture();
+
+  // rows of getPersonsOrderedById: grandma has 2 items, sister 2 and brother 1
+  private static final List<String> NAMES = Arrays.asList("grandma", "sister", "brother");
+  private static final int[] ITEM_COUNTS = { 2, 2, 1 };
+  // when a person is handed over only the first row of the next person has been read
+  private static final int[] ROWS_READ = { 3, 5, 5 };
+  // one person and all of its items
+  private static final int LARGEST_GRAPH = 3;
 
   @BeforeClass
   public static void setUp() throws Exception {
     // create a SqlSessionFactory
     Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/nestedresulthandler/mybatis-config.xml");
     sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    sqlSessionFactory.getConfiguration().addInterceptor(resultSetHandlers);
     reader.close();
 
     // populate in-memory database
@@ -150,4 +174,110 @@ public class NestedResultHandlerTest {
     }
   }
 
+  @Test
+  public void shouldHandEachPersonToTheHandlerBeforeReadingTheNextOne() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      final List<String> names = new ArrayList<String>();
+      sqlSession.select("getPersonsOrderedById", new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          Person person = (Person) context.getResultObject();
+          assertStreamed(person, names.size());
+          names.add(person.getName());
+        }
+      });
+      Assert.assertEquals(NAMES, names);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldFetchEachPersonFromTheCursorBeforeReadingTheNextOne() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      List<String> names = new ArrayList<String>();
+      Cursor<Person> persons = sqlSession.selectCursor("getPersonsOrderedById");
+      try {
+        for (Person person : persons) {
+          assertStreamed(person, names.size());
+          names.add(person.getName());
+        }
+      } finally {
+        persons.close();
+      }
+      Assert.assertEquals(NAMES, names);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldRunEagerNestedSelectsWhileStreaming() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      final List<String> names = new ArrayList<String>();
+      sqlSession.select("getPersonsWithSelectedItems", new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          Person person = (Person) context.getResultObject();
+          Assert.assertEquals(ITEM_COUNTS[names.size()], person.getItems().size());
+          names.add(person.getName());
+        }
+      });
+      Assert.assertEquals(NAMES, names);
+
+      names.clear();
+      Cursor<Person> persons = sqlSession.selectCursor("getPersonsWithSelectedItems");
+      try {
+        for (Person person : persons) {
+          Assert.assertEquals(ITEM_COUNTS[names.size()], person.getItems().size());
+          names.add(person.getName());
+        }
+      } finally {
+        persons.close();
+      }
+      Assert.assertEquals(NAMES, names);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void assertStreamed(Person person, int index) {
+    Assert.assertEquals(NAMES.get(index), person.getName());
+    Assert.assertEquals(ITEM_COUNTS[index], person.getItems().size());
+    DefaultResultSetHandler handler = resultSetHandlers.last;
+    Assert.assertEquals(ROWS_READ[index], handler.getRowCount());
+    Assert.assertTrue(bookkeeping(handler, "nestedResultObjects").size() <= LARGEST_GRAPH);
+    Assert.assertTrue(bookkeeping(handler, "ancestorObjects").size() <= LARGEST_GRAPH);
+  }
+
+  private static Map<?, ?> bookkeeping(DefaultResultSetHandler handler, String name) {
+    try {
+      Field field = DefaultResultSetHandler.class.getDeclaredField(name);
+      field.setAccessible(true);
+      return (Map<?, ?>) field.get(handler);
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Intercepts({
+      @Signature(type = ResultSetHandler.class, method = "handleResultSets", args = { Statement.class }),
+      @Signature(type = ResultSetHandler.class, method = "handleCursorResultSets", args = { Statement.class }) })
+  public static class ResultSetHandlerCapture implements Interceptor {
+    private volatile DefaultResultSetHandler last;
+
+    public Object intercept(Invocation invocation) throws Throwable {
+      last = (DefaultResultSetHandler) invocation.getTarget();
+      return invocation.proceed();
+    }
+
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    public void setProperties(Properties properties) {
+    }
+  }
+
 }
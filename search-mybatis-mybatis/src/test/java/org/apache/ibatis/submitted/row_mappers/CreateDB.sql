@@ -0,0 +1,32 @@
+--
+--    Copyright 2009-2012 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+
+drop table item if exists;
+
+create table item (
+  id int,
+  item_name varchar(20),
+  price decimal(10,2),
+  quantity int,
+  in_stock boolean,
+  note varchar(20)
+);
+
+insert into item values (1, 'Pen', 1.50, 10, true, 'blue');
+insert into item values (2, 'Paper', null, null, false, null);
+insert into item values (3, null, 2.00, 0, null, 'spare');
+insert into item values (null, null, null, null, null, null);
@@ -0,0 +1,119 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.row_mappers;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.List;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RowMappersTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    // create a SqlSessionFactory
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/row_mappers/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    // populate in-memory database
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/row_mappers/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    reader.close();
+    session.close();
+  }
+
+  @After
+  public void resetSettings() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setRowMappersEnabled(false);
+    configuration.setCallSettersOnNulls(false);
+    configuration.getRowMapperFactory().clear();
+  }
+
+  @Test
+  public void shouldMapLikeTheReflectivePath() {
+    assertSameAsReflective();
+  }
+
+  @Test
+  public void shouldMapLikeTheReflectivePathWhenCallingSettersOnNulls() {
+    sqlSessionFactory.getConfiguration().setCallSettersOnNulls(true);
+    assertSameAsReflective();
+  }
+
+  @Test
+  public void shouldReturnNullForRowsWithoutValues() {
+    sqlSessionFactory.getConfiguration().setRowMappersEnabled(true);
+    List<Item> items = getItems(false);
+    Assert.assertEquals(4, items.size());
+    Assert.assertNull(items.get(3));
+    Assert.assertEquals("1:Pen:1.50:10:true:null:blue", items.get(0).toString());
+  }
+
+  @Test
+  public void shouldStopCachingRowMappersOfAResultMapWithTooManyLayouts() {
+    sqlSessionFactory.getConfiguration().setRowMappersEnabled(true);
+    String expected = getItems(false).toString();
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 0; i < 40; i++) {
+        Assert.assertEquals(expected, mapper.getItemsWithExtraColumn("extra_" + i).toString());
+      }
+    } finally {
+      sqlSession.close();
+    }
+    Assert.assertEquals(32, sqlSessionFactory.getConfiguration().getRowMapperFactory().size());
+  }
+
+  private void assertSameAsReflective() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    String reflectiveAutoMapped = getItems(true).toString();
+    String reflective = getItems(false).toString();
+    configuration.setRowMappersEnabled(true);
+    Assert.assertEquals(reflectiveAutoMapped, getItems(true).toString());
+    Assert.assertEquals(reflective, getItems(false).toString());
+    Assert.assertEquals(2, configuration.getRowMapperFactory().size());
+  }
+
+  private List<Item> getItems(boolean autoMapped) {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      return autoMapped ? mapper.getItemsAutoMapped() : mapper.getItems();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
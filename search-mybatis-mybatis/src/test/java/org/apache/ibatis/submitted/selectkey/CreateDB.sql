@@ -15,6 +15,9 @@
 --
 
 drop sequence if exists TestSequence;
+drop sequence if exists PooledSequence;
+drop sequence if exists HiloSequence;
+drop sequence if exists OverflowSequence;
 drop table if exists table1;
 drop table if exists table2;
 drop table if exists table3;
@@ -31,6 +34,9 @@ name_fred varchar(25) generated always as (name || '_fred')
 );
 
 create sequence TestSequence as integer start with 33;
+create sequence PooledSequence as integer start with 100 increment by 10;
+create sequence HiloSequence as integer start with 1;
+create sequence OverflowSequence as integer start with 214748364;
 
 create table table3 (
 id int not null,
@@ -427,6 +427,87 @@ public class SelectKeyTest {
       }
   }
 
+  @Test
+  public void testAnnotatedInsertTable3Pooled() {
+      SqlSession sqlSession = sqlSessionFactory.openSession();
+
+      try {
+        AnnotatedMapper mapper = sqlSession.getMapper(AnnotatedMapper.class);
+        // the sequence is only called for the 1st and 11th insert
+        for (int i = 0; i < 12; i++) {
+          Name name = new Name();
+          name.setName("barney" + i);
+          assertEquals(1, mapper.insertTable3Pooled(name));
+          assertEquals(100 + i, name.getNameId());
+        }
+      } finally {
+        sqlSession.close();
+      }
+  }
+
+  @Test
+  public void testAnnotatedInsertTable3Hilo() {
+      SqlSession sqlSession = sqlSessionFactory.openSession();
+
+      try {
+        AnnotatedMapper mapper = sqlSession.getMapper(AnnotatedMapper.class);
+        for (int i = 0; i < 12; i++) {
+          Name name = new Name();
+          name.setName("barney" + i);
+          assertEquals(1, mapper.insertTable3Hilo(name));
+          assertEquals(10 + i, name.getNameId());
+        }
+      } finally {
+        sqlSession.close();
+      }
+  }
+
+  @Test
+  public void testAnnotatedInsertTable3PooledWithoutDataSource() throws Exception {
+      // a session opened on a connection does not know its DataSource, so it cannot share a block
+      Connection conn = DriverManager.getConnection("jdbc:hsqldb:mem:lname", "sa", "");
+      SqlSession sqlSession = sqlSessionFactory.openSession(conn);
+
+      try {
+        AnnotatedMapper mapper = sqlSession.getMapper(AnnotatedMapper.class);
+        for (int i = 0; i < 3; i++) {
+          Name name = new Name();
+          name.setName("betty" + i);
+          assertEquals(1, mapper.insertTable3Pooled(name));
+          assertEquals(100 + 10 * i, name.getNameId());
+        }
+      } finally {
+        sqlSession.close();
+        conn.close();
+      }
+  }
+
+  @Test
+  public void testAnnotatedInsertTable3HiloOverflow() {
+      SqlSession sqlSession = sqlSessionFactory.openSession();
+
+      try {
+        AnnotatedMapper mapper = sqlSession.getMapper(AnnotatedMapper.class);
+        // the block starts at 2147483640, its 9th key does not fit into an int
+        for (int i = 0; i < 8; i++) {
+          Name name = new Name();
+          name.setName("fred" + i);
+          assertEquals(1, mapper.insertTable3HiloOverflow(name));
+          assertEquals(Integer.MAX_VALUE - 7 + i, name.getNameId());
+        }
+        Name name = new Name();
+        name.setName("fred8");
+        try {
+          mapper.insertTable3HiloOverflow(name);
+          fail("the key should not wrap around");
+        } catch (PersistenceException e) {
+          assertTrue(e.getMessage().contains("does not fit into"));
+        }
+      } finally {
+        sqlSession.close();
+      }
+  }
+
   @Test(expected = PersistenceException.class)
   public void testSeleckKeyWithWrongKeyProperty() {
     SqlSession sqlSession = sqlSessionFactory.openSession();
@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2015 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.transaction.routing;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.datasource.routing.RoutingDataSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoutingTransactionFactoryTest {
+
+  private Configuration config;
+  private DataSource primary;
+  private DataSource replica;
+  private Connection primaryConnection;
+  private Connection replicaConnection;
+  private RoutingDataSource dataSource;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new Configuration();
+    primary = mock(DataSource.class);
+    replica = mock(DataSource.class);
+    primaryConnection = mock(Connection.class);
+    replicaConnection = mock(Connection.class);
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    when(replica.getConnection()).thenReturn(replicaConnection);
+    dataSource = new RoutingDataSource(primary);
+    dataSource.addReplica(replica);
+  }
+
+  @Test
+  public void shouldSendReadsToReplicaUntilFirstWrite() throws Exception {
+    RoutingTransaction tx = (RoutingTransaction) newFactory(new Properties()).newTransaction(dataSource, null, false);
+    tx.route(statement("com.example.BlogMapper.selectBlog", SqlCommandType.SELECT));
+    Connection readConnection = tx.getConnection();
+    tx.route(statement("com.example.BlogMapper.updateBlog", SqlCommandType.UPDATE));
+    assertSame(primaryConnection, tx.getConnection());
+    assertTrue(tx.isWriting());
+    tx.route(statement("com.example.BlogMapper.selectBlog", SqlCommandType.SELECT));
+    assertSame(primaryConnection, tx.getConnection());
+    assertTrue(dataSource.getOutstandingReplicaConnections()[0] == 1);
+    tx.commit();
+    tx.route(statement("com.example.BlogMapper.selectBlog", SqlCommandType.SELECT));
+    assertSame(readConnection, tx.getConnection());
+    tx.close();
+    verify(replicaConnection).close();
+    verify(primaryConnection).close();
+    assertTrue(dataSource.getOutstandingReplicaConnections()[0] == 0);
+  }
+
+  @Test
+  public void shouldForceConfiguredNamespacesToPrimary() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("forcePrimary", "com.example.AuditMapper, com.example.BlogMapper.selectFresh");
+    RoutingTransaction tx = (RoutingTransaction) newFactory(props).newTransaction(dataSource, null, false);
+    tx.route(statement("com.example.AuditMapper.selectAll", SqlCommandType.SELECT));
+    assertSame(primaryConnection, tx.getConnection());
+    tx.route(statement("com.example.BlogMapper.selectFresh", SqlCommandType.SELECT));
+    assertSame(primaryConnection, tx.getConnection());
+  }
+
+  @Test
+  public void shouldCreateJdbcTransactionForOtherDataSources() throws Exception {
+    Transaction tx = newFactory(new Properties()).newTransaction(primary, null, false);
+    assertTrue(tx instanceof JdbcTransaction);
+  }
+
+  private TransactionFactory newFactory(Properties props) {
+    TransactionFactory factory = new RoutingTransactionFactory();
+    factory.setProperties(props);
+    return factory;
+  }
+
+  private MappedStatement statement(String id, SqlCommandType type) {
+    return new MappedStatement.Builder(config, id, new StaticSqlSource(config, "some statement"), type).build();
+  }
+
+}